@@ -18,13 +18,19 @@ android {
 
     buildTypes {
         release {
-            isMinifyEnabled = false
+            // Less to load and verify when an SMS starts the process; see proguard-rules.pro
+            isMinifyEnabled = true
+            isShrinkResources = true
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
                 "proguard-rules.pro"
             )
         }
     }
+    androidResources {
+        // The place index is memory-mapped straight out of the APK; see OfflinePlaces
+        noCompress += "idx"
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -33,12 +39,41 @@ android {
 
 dependencies {
 
+    implementation(project(":core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
     implementation("com.google.android.gms:play-services-location:21.0.1")
+    // Installs src/main/baseline-prof.txt on sideloaded builds too
+    implementation(libs.profileinstaller)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+
+// The place index is generated, not checked in. -PplaceGazetteer=cities1000.zip has it built
+// from a GeoNames dump first; without it a release build fails instead of quietly shipping
+// replies with no place names.
+val placeIndex = file("src/main/assets/places.idx")
+val placeGazetteer = providers.gradleProperty("placeGazetteer")
+val checkPlaceIndex = tasks.register("checkPlaceIndex") {
+    group = "verification"
+    description = "Fails if the offline place index asset is missing."
+    if (placeGazetteer.isPresent) {
+        dependsOn(":tools:placeIndex")
+    }
+    doLast {
+        if (!placeIndex.isFile) {
+            throw GradleException(
+                "$placeIndex is missing, so replies would name no place. Build it with " +
+                    "./gradlew :tools:placeIndex --args=\"cities1000.zip\", or pass -PplaceGazetteer=cities1000.zip"
+            )
+        }
+    }
+}
+tasks.configureEach {
+    if (name == "preReleaseBuild" || name == "preBuild" && placeGazetteer.isPresent) {
+        dependsOn(checkPlaceIndex)
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.localisation_sender_with_speech;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What runs when the process starts, and the {@link StartupTrace} of it.
+ *
+ * An SMS can start the process, and the time to its reply is the number this class exists to
+ * keep small. The receiver path reads the config snapshot and nothing else before matching:
+ * the audit log recovers and the outbound journal replays on their own threads, and the
+ * location client is only created once a request needs a fix. MainActivity draws its first
+ * frame before it reads preferences or asks for a location.
+ *
+ * When an SMS started the process, the time from process start to the first reply queued is
+ * recorded as {@link ResponderMetrics.Stage#COLD_START_TO_REPLY}, logged, and appended to
+ * {@link #HISTORY_FILE}, so it can be followed across process deaths.
+ */
+final class AppStartup {
+
+    private static final Logger LOG = Logger.get("AppStartup");
+    static final String HISTORY_FILE = "startup-history.txt";
+    private static final long MAX_HISTORY_BYTES = 32 * 1024;
+
+    private static boolean started;
+
+    private AppStartup() {
+    }
+
+    /** First thing the SMS receiver does: logging, the trace origin, the RECEIVER mark. */
+    static void onReceiver(Context context) {
+        begin(context);
+        StartupTrace.getInstance().mark(StartupTrace.Phase.RECEIVER);
+    }
+
+    /**
+     * First thing MainActivity does. {@code afterFirstFrame} runs on the main thread once the
+     * first frame has been drawn; work the first frame doesn't need goes there.
+     */
+    static void onActivityCreated(Activity activity, Runnable afterFirstFrame) {
+        begin(activity);
+        StartupTrace.getInstance().mark(StartupTrace.Phase.ACTIVITY);
+        final View decor = activity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from pre-draw, so it runs once this frame is out
+                decor.post(() -> {
+                    StartupTrace.getInstance().mark(StartupTrace.Phase.FIRST_FRAME);
+                    afterFirstFrame.run();
+                });
+                return true;
+            }
+        });
+    }
+
+    /** From the other components' entry points, so their starts aren't taken for cold SMS starts. */
+    static void onOtherComponent(Context context) {
+        begin(context);
+        StartupTrace.getInstance().mark(StartupTrace.Phase.OTHER);
+    }
+
+    /** Called on a worker thread for every reply the responder queues. */
+    static void onReplyQueued(Context context) {
+        StartupTrace trace = StartupTrace.getInstance();
+        if (!trace.mark(StartupTrace.Phase.REPLY_QUEUED) || !trace.isReceiverStart()) {
+            return;
+        }
+        long nanos = trace.sinceStartNanos(StartupTrace.Phase.REPLY_QUEUED);
+        ResponderMetrics.getInstance().recordNanos(ResponderMetrics.Stage.COLD_START_TO_REPLY, nanos);
+        String summary = trace.summary();
+        LOG.i("Cold start to first reply in {} ms ({})", nanos / 1_000_000, summary);
+        appendHistory(context.getApplicationContext(), System.currentTimeMillis() + " " + summary);
+    }
+
+    private static synchronized void begin(Context context) {
+        if (started) return;
+        started = true;
+        // elapsedRealtime and nanoTime tick together while the device is awake, as it is
+        // from the fork to here
+        long sinceStartNanos = SystemClock.elapsedRealtimeNanos() - Process.getStartElapsedRealtime() * 1_000_000L;
+        StartupTrace.getInstance().setProcessStart(System.nanoTime() - sinceStartNanos);
+        Diagnostics.install(context);
+    }
+
+    private static void appendHistory(Context context, String line) {
+        File file = new File(context.getFilesDir(), HISTORY_FILE);
+        try {
+            if (file.length() > MAX_HISTORY_BYTES) {
+                File old = new File(context.getFilesDir(), HISTORY_FILE + ".old");
+                if (!file.renameTo(old)) {
+                    LOG.w("Cannot rotate {}", file);
+                }
+            }
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                out.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            LOG.w("Cannot write the startup history", e);
+        }
+    }
+}
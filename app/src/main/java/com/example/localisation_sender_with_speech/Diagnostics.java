@@ -0,0 +1,132 @@
+package com.example.localisation_sender_with_speech;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wires {@link Logger} to logcat, dumps the {@link FlightRecorder} on demand or on a crash,
+ * and owns the process-wide {@link AuditLog} and {@link LocationTrail}.
+ *
+ * Debug logging is on in debuggable builds only; on a release build it can be turned on with
+ * {@code adb shell setprop log.tag.SmsAutoResponse DEBUG} before the process starts.
+ */
+final class Diagnostics {
+
+    private static final String TAG = "SmsAutoResponse";
+    static final String CRASH_DUMP_FILE = "flight-recorder-crash.txt";
+    private static final String AUDIT_DIR = "audit";
+    private static final String TRAIL_DIR = "trail";
+
+    private static final Logger.Sink LOGCAT = (level, tag, message, error) -> {
+        String text = error != null ? message + '\n' + Log.getStackTraceString(error) : message;
+        Log.println(priorityOf(level), tag, text);
+    };
+
+    private static boolean installed;
+    private static AuditLog auditLog;
+    private static LocationTrail locationTrail;
+
+    private Diagnostics() {
+    }
+
+    /** Sets up logging and the crash dump once per process; safe to call from any entry point. */
+    static synchronized void install(Context context) {
+        if (installed) return;
+        installed = true;
+
+        final Context appContext = context.getApplicationContext();
+        boolean debuggable = (appContext.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        Logger.configure(debuggable || Log.isLoggable(TAG, Log.DEBUG) ? Logger.Level.DEBUG : Logger.Level.INFO,
+                LOGCAT);
+
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, error) -> {
+            try {
+                File file = new File(appContext.getFilesDir(), CRASH_DUMP_FILE);
+                write(file, "Uncaught " + error + " on " + thread.getName());
+                Log.e(TAG, "Flight recorder written to " + file);
+            } catch (Throwable ignored) {
+                // Never let the dump get in the way of the crash itself
+            }
+            if (previous != null) {
+                previous.uncaughtException(thread, error);
+            }
+        });
+    }
+
+    /** The request/response audit log, opened on first use and recovered on its writer thread. */
+    static synchronized AuditLog auditLog(Context context) {
+        if (auditLog == null) {
+            Context appContext = context.getApplicationContext();
+            // Keyed like the allow-list, so a national and an international number are one sender
+            AddressNormalizer senders = ResponderSettings.normalizer(appContext);
+            try {
+                auditLog = AuditLog.openInBackground(new File(appContext.getFilesDir(), AUDIT_DIR),
+                        AuditLog.Config.DEFAULT, senders, System::currentTimeMillis);
+            } catch (IOException e) {
+                // Keep auditing somewhere rather than failing the responder
+                Log.e(TAG, "Cannot open the audit log, falling back to the cache dir", e);
+                try {
+                    auditLog = AuditLog.openInBackground(new File(appContext.getCacheDir(), AUDIT_DIR),
+                            AuditLog.Config.DEFAULT, senders, System::currentTimeMillis);
+                } catch (IOException fallback) {
+                    throw new IllegalStateException("No writable directory for the audit log", fallback);
+                }
+            }
+        }
+        return auditLog;
+    }
+
+    /** The trail of every fix the service sees, opened on first use. */
+    static synchronized LocationTrail locationTrail(Context context) {
+        if (locationTrail == null) {
+            File dir = new File(context.getApplicationContext().getFilesDir(), TRAIL_DIR);
+            try {
+                locationTrail = LocationTrail.open(dir, LocationTrail.Config.DEFAULT);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open the location trail in " + dir, e);
+            }
+        }
+        return locationTrail;
+    }
+
+    /** Writes the recent events to a new file in {@code dir} and returns it. */
+    static File dump(File dir, String reason) throws IOException {
+        File file = new File(dir, "flight-recorder-" + System.currentTimeMillis() + ".txt");
+        write(file, reason);
+        return file;
+    }
+
+    private static void write(File file, String reason) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.append("# ").append(reason).append('\n');
+            out.append("# Startup: ").append(StartupTrace.getInstance().summary()).append('\n');
+            FlightRecorder.getInstance().dumpTo(out);
+            out.append('\n');
+            ResponderMetrics.getInstance().snapshot().writeTo(out);
+        }
+    }
+
+    private static int priorityOf(Logger.Level level) {
+        switch (level) {
+            case VERBOSE:
+                return Log.VERBOSE;
+            case DEBUG:
+                return Log.DEBUG;
+            case INFO:
+                return Log.INFO;
+            case WARN:
+                return Log.WARN;
+            default:
+                return Log.ERROR;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.localisation_sender_with_speech;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link LocationSource} backed by the fused location provider.
+ *
+ * Each request first checks the last known location and, if it is older than the cache
+ * policy's fresh age or misses the accuracy target, asks for high-accuracy updates until one
+ * meets the target. An older last known location is only ever a candidate, so it can't be
+ * sent as a current fix. Listeners are
+ * removed as soon as a result is delivered, on timeout, or on cancel.
+ */
+public class FusedLocationSource implements LocationSource {
+
+    private static final Logger LOG = Logger.get("FusedLocationSource");
+    private static final long UPDATE_INTERVAL_MS = 1000;
+    private static final long REQUEST_TIMEOUT_MS = 30000;
+
+    private static LocationBroker sharedBroker;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Created on the first request, so the receiver doesn't load Play Services for every SMS
+    private FusedLocationProviderClient client;
+
+    public FusedLocationSource(Context context) {
+        this.context = context;
+    }
+
+    /** The process-wide broker that the receiver and MainActivity share. */
+    public static synchronized LocationBroker sharedBroker(Context context) {
+        if (sharedBroker == null) {
+            sharedBroker = new LocationBroker(
+                    new FusedLocationSource(context.getApplicationContext()), LocationCache.getInstance(),
+                    AcquisitionPolicy.BALANCED.getAccuracyTargetMeters());
+        }
+        return sharedBroker;
+    }
+
+    /** Main thread only. */
+    private FusedLocationProviderClient client() {
+        if (client == null) {
+            client = LocationServices.getFusedLocationProviderClient(context);
+        }
+        return client;
+    }
+
+    @Override
+    public Request request(float accuracyTargetMeters, Callback callback) {
+        SingleRequest request = new SingleRequest(accuracyTargetMeters, callback);
+        mainHandler.post(request::start);
+        return request;
+    }
+
+    private final class SingleRequest extends LocationCallback implements Request, Runnable {
+        private final float accuracyTargetMeters;
+        private final Callback callback;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private boolean updatesRequested = false;
+
+        SingleRequest(float accuracyTargetMeters, Callback callback) {
+            this.accuracyTargetMeters = accuracyTargetMeters;
+            this.callback = callback;
+        }
+
+        void start() {
+            if (finished.get()) return;
+            mainHandler.postDelayed(this, REQUEST_TIMEOUT_MS);
+            try {
+                client().getLastLocation()
+                        .addOnSuccessListener(location -> {
+                            LocationCache.Policy policy = LocationCache.getInstance().getPolicy();
+                            if (location != null && policy.freshness(System.currentTimeMillis() - location.getTime())
+                                    == LocationCache.Freshness.FRESH) {
+                                onLocation(location);
+                            } else if (location != null) {
+                                candidate(location);
+                            }
+                            if (!finished.get()) {
+                                requestUpdates();
+                            }
+                        })
+                        .addOnFailureListener(e -> requestUpdates());
+            } catch (SecurityException e) {
+                fail(e);
+            }
+        }
+
+        private void requestUpdates() {
+            if (finished.get() || updatesRequested) return;
+            LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, UPDATE_INTERVAL_MS)
+                    .setDurationMillis(REQUEST_TIMEOUT_MS)
+                    .build();
+            try {
+                client().requestLocationUpdates(locationRequest, this, Looper.getMainLooper());
+                updatesRequested = true;
+            } catch (SecurityException e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            Location location = locationResult.getLastLocation();
+            if (location != null) {
+                onLocation(location);
+            }
+        }
+
+        private void onLocation(Location location) {
+            if (location.getAccuracy() <= accuracyTargetMeters) {
+                deliver(location);
+            } else {
+                candidate(location);
+            }
+        }
+
+        private void candidate(Location location) {
+            if (!finished.get()) {
+                callback.onCandidate(SmsAutoResponseService.toFix(location));
+            }
+        }
+
+        // Timeout
+        @Override
+        public void run() {
+            fail(new TimeoutException("No location fix within " + REQUEST_TIMEOUT_MS + "ms"));
+        }
+
+        @Override
+        public void cancel() {
+            if (finished.compareAndSet(false, true)) {
+                mainHandler.post(this::release);
+            }
+        }
+
+        private void deliver(Location location) {
+            if (finished.compareAndSet(false, true)) {
+                release();
+                callback.onFix(SmsAutoResponseService.toFix(location));
+            }
+        }
+
+        private void fail(Exception e) {
+            if (finished.compareAndSet(false, true)) {
+                LOG.w("Location request failed: {}", e.getMessage());
+                release();
+                callback.onError(e);
+            }
+        }
+
+        private void release() {
+            mainHandler.removeCallbacks(this);
+            if (updatesRequested) {
+                client().removeLocationUpdates(this);
+                updatesRequested = false;
+            }
+        }
+    }
+}
@@ -10,7 +10,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.provider.Settings;
-import android.telephony.SmsManager;
 import android.view.KeyEvent;
 import android.widget.Button;
 import android.widget.EditText;
@@ -29,25 +28,42 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.tasks.OnSuccessListener;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int PERMISSION_REQUEST_CODE = 1001;
     private static final int SMS_PERMISSION_REQUEST_CODE = 1003;
+    private static final int BACKGROUND_LOCATION_REQUEST_CODE = 1004;
     private static final String DEFAULT_PHONE_NUMBER = "+33780542575"; // Change this to your default number
+    // Full message when it fits in one SMS, otherwise the compact one; each naming the
+    // nearest place when the offline index has one
+    private static final SmsPayloadEncoder MANUAL_PLAN = new SmsPayloadEncoder(1,
+            ResponseTemplate.MANUAL_NEAR, ResponseTemplate.MANUAL, ResponseTemplate.MANUAL_COMPACT_NEAR,
+            ResponseTemplate.MANUAL_COMPACT);
 
     private FusedLocationProviderClient fusedLocationClient;
     private TextView tvLocationStatus;
     private TextView tvLocationDetails;
     private Button btnGetLocation;
+    private Button btnExportTrail;
     private Button btnSendSMS;
     private EditText etPhoneNumber;
     
@@ -55,15 +71,41 @@ public class MainActivity extends AppCompatActivity {
     private TextView tvAutoResponseStatus;
     private TextView tvAutoResponseInfo;
     private Button btnToggleAutoResponse;
+    private TextView tvResponderMetrics;
+    private Button btnExportMetrics;
+    private Button btnDumpFlightRecorder;
     private boolean autoResponseEnabled = false;
-
-    private double currentLatitude = 0;
-    private double currentLongitude = 0;
-    private boolean locationAvailable = false;
+    private boolean commandPinSet = false;
+    // The fix whose details are on screen, for the place name looked up after it
+    private LocationFix shownFix;
+    
+    // Settings, history pages, exports, dumps and manual sends are handled off the main thread
+    private final ExecutorService storeReader =
+            Executors.newSingleThreadExecutor(SmsResponsePipeline.namedThreads("store-reader"));
+    
+    // Request history, read from the audit log one page at a time
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private EditText etHistorySender;
+    private TextView tvHistory;
+    private Button btnHistoryNewer;
+    private Button btnHistoryLatest;
+    private Button btnHistoryOlder;
+    // Cursors of the newer pages we came from, for "Newer"
+    private final ArrayDeque<Long> newerHistoryCursors = new ArrayDeque<>();
+    private long historyCursor = AuditLog.NEWEST;
+    private long olderHistoryCursor = AuditLog.NEWEST;
+    private String historySender;
+
+    // The last fix lives in the process-wide LocationCache, shared with the SMS auto-responder
+    private final LocationCache locationCache = LocationCache.getInstance();
+    private LocationBroker locationBroker;
+    private LocationBroker.Waiter pendingFreshLocation;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Preferences and the location lookup wait for the first frame
+        AppStartup.onActivityCreated(this, this::onFirstFrame);
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
 
@@ -74,12 +116,17 @@ public class MainActivity extends AppCompatActivity {
         });
 
         initializeViews();
-        initializeLocationClient();
         setupClickListeners();
 
         // Set default phone number
         etPhoneNumber.setText(DEFAULT_PHONE_NUMBER);
         
+        // The toggle stays off until the saved state is read
+        btnToggleAutoResponse.setEnabled(false);
+    }
+    
+    private void onFirstFrame() {
+        if (isDestroyed()) return;
         // Initialize auto-response status
         initializeAutoResponseStatus();
         
@@ -91,6 +138,7 @@ public class MainActivity extends AppCompatActivity {
         tvLocationStatus = findViewById(R.id.tvLocationStatus);
         tvLocationDetails = findViewById(R.id.tvLocationDetails);
         btnGetLocation = findViewById(R.id.btnGetLocation);
+        btnExportTrail = findViewById(R.id.btnExportTrail);
         btnSendSMS = findViewById(R.id.btnSendSMS);
         etPhoneNumber = findViewById(R.id.etPhoneNumber);
         
@@ -98,29 +146,75 @@ public class MainActivity extends AppCompatActivity {
         tvAutoResponseStatus = findViewById(R.id.tvAutoResponseStatus);
         tvAutoResponseInfo = findViewById(R.id.tvAutoResponseInfo);
         btnToggleAutoResponse = findViewById(R.id.btnToggleAutoResponse);
+        tvResponderMetrics = findViewById(R.id.tvResponderMetrics);
+        btnExportMetrics = findViewById(R.id.btnExportMetrics);
+        btnDumpFlightRecorder = findViewById(R.id.btnDumpFlightRecorder);
+        
+        // Request history views
+        etHistorySender = findViewById(R.id.etHistorySender);
+        tvHistory = findViewById(R.id.tvHistory);
+        btnHistoryNewer = findViewById(R.id.btnHistoryNewer);
+        btnHistoryLatest = findViewById(R.id.btnHistoryLatest);
+        btnHistoryOlder = findViewById(R.id.btnHistoryOlder);
     }
 
-    private void initializeLocationClient() {
-        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+    // Play Services is loaded on the first lookup, not while the activity is created
+    private FusedLocationProviderClient locationClient() {
+        if (fusedLocationClient == null) {
+            fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+        }
+        return fusedLocationClient;
+    }
+    
+    private LocationBroker locationBroker() {
+        if (locationBroker == null) {
+            locationBroker = FusedLocationSource.sharedBroker(this);
+        }
+        return locationBroker;
     }
 
     private void setupClickListeners() {
         btnGetLocation.setOnClickListener(v -> getCurrentLocation());
+        btnExportTrail.setOnClickListener(v -> exportTrail());
         btnSendSMS.setOnClickListener(v -> sendLocationSMS());
         btnToggleAutoResponse.setOnClickListener(v -> toggleAutoResponseMode());
+        btnExportMetrics.setOnClickListener(v -> exportResponderMetrics());
+        btnDumpFlightRecorder.setOnClickListener(v -> dumpFlightRecorder());
+        tvResponderMetrics.setOnClickListener(v -> updateResponderMetrics());
+        btnHistoryLatest.setOnClickListener(v -> showLatestHistory());
+        btnHistoryOlder.setOnClickListener(v -> {
+            newerHistoryCursors.push(historyCursor);
+            loadHistoryPage(olderHistoryCursor);
+        });
+        btnHistoryNewer.setOnClickListener(v -> {
+            if (!newerHistoryCursors.isEmpty()) {
+                loadHistoryPage(newerHistoryCursors.pop());
+            }
+        });
     }
 
     private void initializeAutoResponseStatus() {
-        autoResponseEnabled = SmsAutoResponseReceiver.isAutoResponseEnabled(this);
-        
-        // If auto-response was enabled before, restart the service
-        if (autoResponseEnabled) {
-            Intent serviceIntent = new Intent(this, SmsAutoResponseService.class);
-            serviceIntent.setAction("START_AUTO_RESPONSE");
-            startForegroundService(serviceIntent);
-        }
-        
-        updateAutoResponseUI();
+        final Context appContext = getApplicationContext();
+        // The first config snapshot reads preferences and permissions
+        storeReader.execute(() -> {
+            boolean enabled = SmsAutoResponseReceiver.isAutoResponseEnabled(appContext);
+            boolean pinSet = ResponderSettings.current(appContext).hasCommandPin();
+            runOnUiThread(() -> {
+                if (isDestroyed()) return;
+                autoResponseEnabled = enabled;
+                commandPinSet = pinSet;
+                
+                // If auto-response was enabled before, restart the service
+                if (autoResponseEnabled) {
+                    Intent serviceIntent = new Intent(this, SmsAutoResponseService.class);
+                    serviceIntent.setAction("START_AUTO_RESPONSE");
+                    startForegroundService(serviceIntent);
+                }
+                
+                btnToggleAutoResponse.setEnabled(true);
+                updateAutoResponseUI();
+            });
+        });
     }
     
     private void toggleAutoResponseMode() {
@@ -147,6 +241,18 @@ public class MainActivity extends AppCompatActivity {
         
         updateAutoResponseUI();
         Toast.makeText(this, "SMS Auto-Response enabled! I will automatically respond with location when someone asks.", Toast.LENGTH_LONG).show();
+        requestBackgroundLocationPermission();
+    }
+    
+    // Without "Allow all the time", tracking can't start once the system has stopped the
+    // service, since it would have to be started from the background. Android only offers it once
+    // foreground location has been granted.
+    private void requestBackgroundLocationPermission() {
+        if (checkLocationPermissions() && !SmsAutoResponseService.hasBackgroundLocationPermission(this)) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.ACCESS_BACKGROUND_LOCATION},
+                    BACKGROUND_LOCATION_REQUEST_CODE);
+        }
     }
     
     private void disableAutoResponse() {
@@ -167,7 +273,7 @@ public class MainActivity extends AppCompatActivity {
             btnToggleAutoResponse.setBackgroundTintList(ContextCompat.getColorStateList(this, R.color.danger_red));
             tvAutoResponseStatus.setText("SMS Auto-Response: ON");
             tvAutoResponseStatus.setTextColor(getColor(R.color.success_green));
-            tvAutoResponseInfo.setText("✅ Will auto-reply with location when receiving:\n• \"give me your location\"\n• \"send location\"\n• \"where are you\"\n• \"share location\"\n• \"location please\"");
+            tvAutoResponseInfo.setText(autoResponseInfo(commandPinSet));
             tvAutoResponseInfo.setTextColor(getColor(R.color.success_green));
         } else {
             btnToggleAutoResponse.setText("💬 Enable SMS Auto-Response");
@@ -178,6 +284,19 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    /** What the responder answers to, from the phrases and commands it actually matches. */
+    private static String autoResponseInfo(boolean pinSet) {
+        StringBuilder info = new StringBuilder(512).append("✅ Will auto-reply with location when receiving:");
+        for (String phrase : ResponderConfig.TRIGGER_PHRASES) {
+            info.append("\n• \"").append(phrase).append('"');
+        }
+        info.append("\n\nOr the commands LOC, TRACK 30M, STATUS and STOP.");
+        if (pinSet) {
+            info.append("\n\n🔒 Every request but STOP has to start with your PIN, e.g. \"<PIN> where are you\".");
+        }
+        return info.toString();
+    }
+
     private boolean checkSmsReceivePermissions() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.RECEIVE_SMS) 
                 == PackageManager.PERMISSION_GRANTED &&
@@ -240,20 +359,26 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        // Served straight from memory when the background service has a fresh fix
+        LocationCache.Entry cached = locationCache.get(System.currentTimeMillis());
+        if (cached != null && cached.getFreshness() == LocationCache.Freshness.FRESH) {
+            updateLocationUI(cached.getFix());
+            return;
+        }
+
         tvLocationStatus.setText("🔄 Getting location...");
         tvLocationStatus.setTextColor(getColor(R.color.warning_orange));
 
-        fusedLocationClient.getLastLocation()
+        locationClient().getLastLocation()
                 .addOnSuccessListener(this, new OnSuccessListener<Location>() {
                     @Override
                     public void onSuccess(Location location) {
                         if (location != null) {
-                            long locationAge = System.currentTimeMillis() - location.getTime();
-                            if (locationAge < 2 * 60 * 1000) {
-                                updateLocationUI(location);
-                            } else {
-                                requestFreshLocation();
-                            }
+                            locationCache.offer(SmsAutoResponseService.toFix(location));
+                        }
+                        LocationCache.Entry entry = locationCache.get(System.currentTimeMillis());
+                        if (entry != null && entry.getFreshness() == LocationCache.Freshness.FRESH) {
+                            updateLocationUI(entry.getFix());
                         } else {
                             requestFreshLocation();
                         }
@@ -269,17 +394,27 @@ public class MainActivity extends AppCompatActivity {
                 });
     }
 
-    private void updateLocationUI(Location location) {
-        currentLatitude = location.getLatitude();
-        currentLongitude = location.getLongitude();
-        locationAvailable = true;
-
+    private void updateLocationUI(LocationFix fix) {
         tvLocationStatus.setText("✅ Location: Available");
         tvLocationStatus.setTextColor(getColor(R.color.success_green));
-        tvLocationDetails.setText(String.format(Locale.US,
+        String details = String.format(Locale.US,
                 "📍 Lat: %.6f\n📍 Lng: %.6f\n🎯 Accuracy: %.1fm",
-                currentLatitude, currentLongitude, location.getAccuracy()));
+                fix.getLatitude(), fix.getLongitude(), fix.getAccuracyMeters());
+        tvLocationDetails.setText(details);
         tvLocationDetails.setTextColor(getColor(R.color.text_primary));
+        shownFix = fix;
+        // The first lookup maps the place index out of the APK
+        final Context appContext = getApplicationContext();
+        final String shown = details;
+        storeReader.execute(() -> {
+            PlaceIndex.Place place = SmsAutoResponseReceiver.renderer(appContext).placeNear(fix);
+            if (place == null) return;
+            runOnUiThread(() -> {
+                // Unless a newer fix has replaced this one meanwhile
+                if (isDestroyed() || shownFix != fix) return;
+                tvLocationDetails.setText(shown + "\n🏙️ Near " + place);
+            });
+        });
 
         btnSendSMS.setEnabled(true);
 
@@ -296,19 +431,23 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        LocationRequest locationRequest = LocationRequest.create()
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
-                .setInterval(10000)
-                .setFastestInterval(5000)
-                .setNumUpdates(1);
+        // Only one fresh-fix request is ever in flight; repeated taps just wait on it
+        if (pendingFreshLocation != null) {
+            return;
+        }
+        pendingFreshLocation = locationBroker().requestFresh(new LocationSource.Callback() {
+            @Override
+            public void onFix(LocationFix fix) {
+                runOnUiThread(() -> {
+                    pendingFreshLocation = null;
+                    updateLocationUI(fix);
+                });
+            }
 
-        LocationCallback locationCallback = new LocationCallback() {
             @Override
-            public void onLocationResult(LocationResult locationResult) {
-                if (locationResult != null && !locationResult.getLocations().isEmpty()) {
-                    Location location = locationResult.getLastLocation();
-                    updateLocationUI(location);
-                } else {
+            public void onError(Exception e) {
+                runOnUiThread(() -> {
+                    pendingFreshLocation = null;
                     tvLocationStatus.setText("⚠️ Location: Not available");
                     tvLocationStatus.setTextColor(getColor(R.color.warning_orange));
                     tvLocationDetails.setText("Unable to get current location.\nPlease check GPS settings.");
@@ -316,15 +455,13 @@ public class MainActivity extends AppCompatActivity {
                     Toast.makeText(MainActivity.this,
                             "⚠️ Unable to get location. Make sure GPS is enabled.",
                             Toast.LENGTH_LONG).show();
-                }
+                });
             }
-        };
-
-        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, null);
+        });
     }
 
     private void sendLocationSMS() {
-        if (!locationAvailable) {
+        if (locationCache.getSendable(System.currentTimeMillis()) == null) {
             Toast.makeText(this, "Please get location first", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -354,26 +491,169 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void sendSMS(String phoneNumber) {
-        try {
-            SmsManager smsManager = SmsManager.getDefault();
+        LocationCache.Entry entry = locationCache.getSendable(System.currentTimeMillis());
+        if (entry == null) {
+            Toast.makeText(this, "Location is too old, please get location again", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        LocationFix fix = entry.getFix();
+
+        final Context appContext = getApplicationContext();
+        final long now = System.currentTimeMillis();
+        // Enqueueing syncs the journal to disk, and may wait for a compaction
+        storeReader.execute(() -> {
+            String result;
+            try {
+                ResponseRenderer.Rendered message = SmsAutoResponseReceiver.renderer(appContext)
+                        .render(MANUAL_PLAN, fix, now);
+                
+                // Retried in the background until the radio accepts it
+                SmsManagerGateway.sharedQueue(appContext).enqueue(phoneNumber, message.getParts());
+                result = "✅ Location SMS queued for sending";
+                
+            } catch (Exception e) {
+                result = "❌ Failed to send SMS: " + e.getMessage();
+            }
+            final String toast = result;
+            runOnUiThread(() -> Toast.makeText(MainActivity.this, toast, Toast.LENGTH_LONG).show());
+        });
+    }
 
-            String message = String.format(Locale.US,
-                    "My current location:\nLatitude: %.6f\nLongitude: %.6f\n\nGoogle Maps: https://maps.google.com/?q=%.6f,%.6f",
-                    currentLatitude, currentLongitude, currentLatitude, currentLongitude);
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Permissions may have been granted from system settings while we were away
+        final Context appContext = getApplicationContext();
+        storeReader.execute(() -> ResponderSettings.refreshPermissions(appContext));
+        updateResponderMetrics();
+        showLatestHistory();
+    }
 
-            smsManager.sendTextMessage(phoneNumber, null, message, null, null);
+    private void updateResponderMetrics() {
+        tvResponderMetrics.setText(ResponderMetrics.getInstance().snapshot().summary());
+    }
 
-            Toast.makeText(this, "✅ Location SMS sent successfully!", Toast.LENGTH_LONG).show();
+    private void exportResponderMetrics() {
+        final ResponderMetrics.Snapshot snapshot = ResponderMetrics.getInstance().snapshot();
+        tvResponderMetrics.setText(snapshot.summary());
+        btnExportMetrics.setEnabled(false);
+        storeReader.execute(() -> {
+            String message;
+            File file = new File(exportDir(), "responder-metrics-" + snapshot.getTakenAtMillis() + ".txt");
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                snapshot.writeTo(out);
+                message = "Metrics written to " + file.getAbsolutePath();
+            } catch (IOException e) {
+                message = "❌ Failed to export metrics: " + e.getMessage();
+            }
+            final String result = message;
+            runOnUiThread(() -> {
+                btnExportMetrics.setEnabled(true);
+                Toast.makeText(MainActivity.this, result, Toast.LENGTH_LONG).show();
+            });
+        });
+    }
 
-        } catch (Exception e) {
-            Toast.makeText(this, "❌ Failed to send SMS: " + e.getMessage(), Toast.LENGTH_LONG).show();
+    private void dumpFlightRecorder() {
+        btnDumpFlightRecorder.setEnabled(false);
+        storeReader.execute(() -> {
+            String message;
+            try {
+                File file = Diagnostics.dump(exportDir(), "Requested from MainActivity");
+                message = "Recent events written to " + file.getAbsolutePath();
+            } catch (IOException e) {
+                message = "❌ Failed to dump recent events: " + e.getMessage();
+            }
+            final String result = message;
+            runOnUiThread(() -> {
+                btnDumpFlightRecorder.setEnabled(true);
+                Toast.makeText(MainActivity.this, result, Toast.LENGTH_LONG).show();
+            });
+        });
+    }
+
+    private void exportTrail() {
+        final long now = System.currentTimeMillis();
+        final File file = new File(exportDir(), "location-trail-" + now + ".gpx");
+        final Context appContext = getApplicationContext();
+        btnExportTrail.setEnabled(false);
+        // Streams fix by fix, so a week at 1 Hz never sits in memory
+        storeReader.execute(() -> {
+            String message;
+            try (Writer out = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                long fixes = Diagnostics.locationTrail(appContext).export(now - TimeUnit.DAYS.toMillis(7), now,
+                        LocationTrail.Format.GPX, out);
+                message = fixes + " fixes written to " + file.getAbsolutePath();
+            } catch (IOException e) {
+                message = "❌ Failed to export trail: " + e.getMessage();
+            }
+            final String result = message;
+            runOnUiThread(() -> {
+                btnExportTrail.setEnabled(true);
+                Toast.makeText(MainActivity.this, result, Toast.LENGTH_LONG).show();
+            });
+        });
+    }
+
+    private void showLatestHistory() {
+        String filter = etHistorySender.getText() != null ? etHistorySender.getText().toString().trim() : "";
+        historySender = filter.isEmpty() ? null : filter;
+        newerHistoryCursors.clear();
+        loadHistoryPage(AuditLog.NEWEST);
+    }
+
+    /** Reads one page off the main thread; the log itself is never loaded as a whole. */
+    private void loadHistoryPage(final long cursor) {
+        final String sender = historySender;
+        final Context appContext = getApplicationContext();
+        btnHistoryNewer.setEnabled(false);
+        btnHistoryOlder.setEnabled(false);
+        storeReader.execute(() -> {
+            try {
+                AuditLog.Page page = Diagnostics.auditLog(appContext).page(sender, cursor, HISTORY_PAGE_SIZE);
+                String text = formatHistory(page);
+                runOnUiThread(() -> {
+                    historyCursor = cursor;
+                    olderHistoryCursor = page.getNextCursor();
+                    tvHistory.setText(text);
+                    btnHistoryNewer.setEnabled(!newerHistoryCursors.isEmpty());
+                    btnHistoryOlder.setEnabled(page.hasMore());
+                });
+            } catch (IOException e) {
+                runOnUiThread(() -> tvHistory.setText("❌ Failed to read history: " + e.getMessage()));
+            }
+        });
+    }
+
+    private static String formatHistory(AuditLog.Page page) {
+        if (page.getEntries().isEmpty()) {
+            return "No location requests recorded yet";
+        }
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.getDefault());
+        StringBuilder text = new StringBuilder(page.getEntries().size() * 64);
+        for (AuditLog.Entry entry : page.getEntries()) {
+            if (text.length() > 0) text.append('\n');
+            text.append(format.format(new Date(entry.getTimeMillis())))
+                    .append(' ').append(String.format(Locale.US, "%-9s", entry.getType()))
+                    .append(' ').append(entry.getSender())
+                    .append(' ').append(entry.getDetail());
         }
+        return text.toString();
+    }
+
+    private File exportDir() {
+        File dir = getExternalFilesDir(null);
+        return dir != null ? dir : getFilesDir();
     }
 
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
                                            @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        // The auto-responder works from a cached permission state
+        final Context appContext = getApplicationContext();
+        storeReader.execute(() -> ResponderSettings.refreshPermissions(appContext));
 
         if (requestCode == PERMISSION_REQUEST_CODE) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
@@ -407,11 +687,20 @@ public class MainActivity extends AppCompatActivity {
                 autoResponseEnabled = false;
                 updateAutoResponseUI();
             }
+        } else if (requestCode == BACKGROUND_LOCATION_REQUEST_CODE) {
+            if (grantResults.length == 0 || grantResults[0] != PackageManager.PERMISSION_GRANTED) {
+                Toast.makeText(this, "Tracking requests may fail if the system stops the auto-response service", Toast.LENGTH_LONG).show();
+            }
         }
     }
 
     @Override
     protected void onDestroy() {
+        if (pendingFreshLocation != null) {
+            pendingFreshLocation.cancel();
+            pendingFreshLocation = null;
+        }
+        storeReader.shutdown();
         super.onDestroy();
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.example.localisation_sender_with_speech;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * The {@link PlaceIndex} bundled as an asset, mapped straight out of the APK on first use.
+ *
+ * The asset is stored uncompressed (see app/build.gradle.kts) so it can be mapped in place;
+ * it is built with {@code ./gradlew :tools:placeIndex} or {@code -PplaceGazetteer=}. Release
+ * builds refuse to go without it; in a debug build, replies simply don't name a place.
+ */
+final class OfflinePlaces {
+
+    private static final Logger LOG = Logger.get("OfflinePlaces");
+    static final String ASSET = "places.idx";
+
+    private static boolean opened;
+    private static PlaceIndex index;
+
+    private OfflinePlaces() {
+    }
+
+    /** For {@link ResponseRenderer}: opens the index on the first render that needs it. */
+    static Supplier<PlaceIndex> supplier(Context context) {
+        Context appContext = context.getApplicationContext();
+        return () -> get(appContext);
+    }
+
+    /** The index, or null if none is bundled or it can't be read. */
+    static synchronized PlaceIndex get(Context context) {
+        if (opened) return index;
+        opened = true;
+        try (AssetFileDescriptor fd = context.getAssets().openFd(ASSET);
+             FileInputStream in = fd.createInputStream()) {
+            index = PlaceIndex.map(in.getChannel(), fd.getStartOffset(), fd.getDeclaredLength());
+            LOG.i("Mapped {} places", index.size());
+        } catch (FileNotFoundException e) {
+            LOG.i("No place index bundled, replies won't name places");
+        } catch (IOException e) {
+            LOG.w("Cannot map the place index", e);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.localisation_sender_with_speech;
+
+import android.telephony.SmsManager;
+import android.telephony.SmsMessage;
+
+import java.util.ArrayList;
+
+/** {@link SmsCodec} backed by SmsManager and SmsMessage. */
+final class PlatformSmsCodec implements SmsCodec {
+
+    static final PlatformSmsCodec INSTANCE = new PlatformSmsCodec();
+
+    private PlatformSmsCodec() {
+    }
+
+    @Override
+    public ArrayList<String> divide(String text) {
+        return SmsManager.getDefault().divideMessage(text);
+    }
+
+    @Override
+    public SmsPdu parseSingle(byte[] pdu, String format) {
+        SmsMessage message = format != null
+                ? SmsMessage.createFromPdu(pdu, format)
+                : SmsMessage.createFromPdu(pdu);
+        if (message == null) {
+            return null;
+        }
+        return SmsPdu.single(message.getOriginatingAddress(), message.getMessageBody());
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.localisation_sender_with_speech;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.telephony.TelephonyManager;
+
+import androidx.core.content.ContextCompat;
+
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Publishes the current {@link ResponderConfig}.
+ *
+ * The snapshot is built once per process and rebuilt when a preference changes or when
+ * {@link #refreshPermissions} is called after the user grants a permission. Revoking a
+ * runtime permission kills the process, so a live snapshot can't overstate what we hold.
+ * Every change to the snapshot is made under the class lock, so a reload can't undo a
+ * concurrent permission or enabled update.
+ */
+public final class ResponderSettings {
+
+    private static final Logger LOG = Logger.get("ResponderSettings");
+
+    static final String PREFS_NAME = "SmsAutoResponsePrefs";
+    static final String KEY_AUTO_RESPONSE_ENABLED = "auto_response_enabled";
+    static final String KEY_ALLOWED_CONTACTS = "allowed_contacts";
+    static final String KEY_ACQUISITION_POLICY = "acquisition_policy";
+    static final String KEY_SEGMENT_BUDGET = "reply_segment_budget";
+    static final String KEY_COORDINATE_DECIMALS = "reply_coordinate_decimals";
+    static final String KEY_MAP_LINK = "reply_map_link";
+    static final String KEY_COMMAND_PIN = "command_pin";
+    static final String KEY_RECORDER_SALT_0 = "recorder_salt_0";
+    static final String KEY_RECORDER_SALT_1 = "recorder_salt_1";
+
+    // Built once per process; the cost of matching a message is bounded whatever the phrase count
+    private static final FuzzyPhraseMatcher TRIGGER_MATCHER = FuzzyPhraseMatcher.compile(ResponderConfig.TRIGGER_PHRASES);
+    private static final TriggerPhraseMatcher EMERGENCY_MATCHER = TriggerPhraseMatcher.compile(ResponderConfig.EMERGENCY_KEYWORDS);
+
+    private static final AtomicReference<ResponderConfig> CURRENT = new AtomicReference<>();
+    // Held in a field: SharedPreferences only keeps a weak reference to listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener watcher;
+    private static AddressNormalizer normalizer;
+
+    private ResponderSettings() {
+    }
+
+    public static ResponderConfig current(Context context) {
+        ResponderConfig config = CURRENT.get();
+        return config != null ? config : initialize(context.getApplicationContext());
+    }
+
+    /** Canonical form of addresses for the SIM's home calling code, shared with the allow-list. */
+    static AddressNormalizer normalizer(Context context) {
+        current(context);
+        return normalizer;
+    }
+    
+    private static synchronized ResponderConfig initialize(Context context) {
+        ResponderConfig config = CURRENT.get();
+        if (config != null) {
+            return config;
+        }
+        SharedPreferences prefs = prefs(context);
+        normalizer = new AddressNormalizer(homeCallingCode(context));
+        installRecorderSalt(prefs);
+        watcher = (changed, key) -> reload(context, key);
+        prefs.registerOnSharedPreferenceChangeListener(watcher);
+        config = build(context, prefs, null, null);
+        CURRENT.set(config);
+        return config;
+    }
+
+    /** Re-reads the permission state, e.g. after the user answered a permission request. */
+    public static void refreshPermissions(Context context) {
+        Context appContext = context.getApplicationContext();
+        current(appContext);
+        boolean sms = hasSmsPermissions(appContext);
+        boolean location = hasLocationPermissions(appContext);
+        update(config -> config.withPermissions(sms, location));
+    }
+
+    private static synchronized void update(UnaryOperator<ResponderConfig> change) {
+        CURRENT.set(change.apply(CURRENT.get()));
+    }
+
+    private static synchronized void reload(Context context, String changedKey) {
+        ResponderConfig previous = CURRENT.get();
+        if (previous == null) {
+            return;
+        }
+        CURRENT.set(build(context, prefs(context), previous, changedKey));
+        LOG.d("Config reloaded after change to {}", changedKey);
+    }
+
+    private static ResponderConfig build(Context context, SharedPreferences prefs, ResponderConfig previous,
+                                         String changedKey) {
+        // The allow-list can hold thousands of numbers; only rebuild it when it changed
+        AllowList allowList;
+        if (previous != null && !KEY_ALLOWED_CONTACTS.equals(changedKey)) {
+            allowList = previous.getAllowList();
+        } else {
+            allowList = AllowList.build(prefs.getStringSet(KEY_ALLOWED_CONTACTS, Collections.<String>emptySet()),
+                    normalizer);
+            LOG.d("{} allowed contacts", allowList.size());
+        }
+        boolean smsPermitted = previous != null ? previous.isSmsPermitted() : hasSmsPermissions(context);
+        boolean locationPermitted = previous != null ? previous.isLocationPermitted() : hasLocationPermissions(context);
+
+        int segmentBudget = prefs.getInt(KEY_SEGMENT_BUDGET, SmsPayloadEncoder.DEFAULT_SEGMENT_BUDGET);
+        int decimals = prefs.getInt(KEY_COORDINATE_DECIMALS, SmsPayloadEncoder.DEFAULT_COORDINATE_DECIMALS);
+        boolean mapLink = prefs.getBoolean(KEY_MAP_LINK, true);
+
+        ResponderConfig config = new ResponderConfig(
+                prefs.getBoolean(KEY_AUTO_RESPONSE_ENABLED, false),
+                smsPermitted,
+                locationPermitted,
+                TRIGGER_MATCHER,
+                EMERGENCY_MATCHER,
+                AcquisitionPolicy.named(prefs.getString(KEY_ACQUISITION_POLICY, null)),
+                SmsPayloadEncoder.autoReply(segmentBudget, decimals, mapLink, false),
+                SmsPayloadEncoder.autoReply(segmentBudget, decimals, mapLink, true),
+                allowList,
+                prefs.getString(KEY_COMMAND_PIN, null));
+        LOG.d("Config: enabled {}, SMS permitted {}, location permitted {}", config.isEnabled(), smsPermitted,
+                locationPermitted);
+        return config;
+    }
+
+    public static void setEnabled(Context context, boolean enabled) {
+        prefs(context).edit().putBoolean(KEY_AUTO_RESPONSE_ENABLED, enabled).apply();
+        // Visible right away, before the change listener runs on the main thread
+        current(context);
+        update(config -> config.withEnabled(enabled));
+    }
+
+    public static void setAcquisitionPolicy(Context context, String policyName) {
+        prefs(context).edit().putString(KEY_ACQUISITION_POLICY, policyName).apply();
+    }
+
+    public static void setReplyFormat(Context context, int segmentBudget, int coordinateDecimals,
+                                      boolean includeMapLink) {
+        prefs(context).edit()
+                .putInt(KEY_SEGMENT_BUDGET, segmentBudget)
+                .putInt(KEY_COORDINATE_DECIMALS, coordinateDecimals)
+                .putBoolean(KEY_MAP_LINK, includeMapLink)
+                .apply();
+    }
+
+    /** Commands then have to start with {@code pin}; null or anything but 4 to 8 digits clears it. */
+    public static void setCommandPin(Context context, String pin) {
+        prefs(context).edit().putString(KEY_COMMAND_PIN, SmsCommand.isValidPin(pin) ? pin : null).apply();
+    }
+
+    public static void setAllowedContacts(Context context, Collection<String> contacts) {
+        prefs(context).edit().putStringSet(KEY_ALLOWED_CONTACTS, new HashSet<>(contacts)).apply();
+    }
+
+    /** Keys senders in the flight recorder the same way for the life of the install. */
+    private static void installRecorderSalt(SharedPreferences prefs) {
+        if (!prefs.contains(KEY_RECORDER_SALT_0) || !prefs.contains(KEY_RECORDER_SALT_1)) {
+            SecureRandom random = new SecureRandom();
+            prefs.edit()
+                    .putLong(KEY_RECORDER_SALT_0, random.nextLong())
+                    .putLong(KEY_RECORDER_SALT_1, random.nextLong())
+                    .apply();
+        }
+        FlightRecorder.getInstance().setSenderSalt(prefs.getLong(KEY_RECORDER_SALT_0, 0),
+                prefs.getLong(KEY_RECORDER_SALT_1, 0));
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static boolean hasSmsPermissions(Context context) {
+        return granted(context, Manifest.permission.RECEIVE_SMS)
+                && granted(context, Manifest.permission.SEND_SMS)
+                && granted(context, Manifest.permission.READ_SMS);
+    }
+
+    private static boolean hasLocationPermissions(Context context) {
+        return granted(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                || granted(context, Manifest.permission.ACCESS_COARSE_LOCATION);
+    }
+
+    private static boolean granted(Context context, String permission) {
+        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static String homeCallingCode(Context context) {
+        TelephonyManager telephony = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        String region = telephony != null ? telephony.getSimCountryIso() : null;
+        if (region == null || region.isEmpty()) {
+            region = Locale.getDefault().getCountry();
+        }
+        return PhoneNumbers.callingCodeForRegion(region);
+    }
+}
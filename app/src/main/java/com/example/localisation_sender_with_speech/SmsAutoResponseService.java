@@ -1,37 +1,143 @@
 package com.example.localisation_sender_with_speech;
 
+import android.Manifest;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.content.pm.ServiceInfo;
+import android.location.Location;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.util.Log;
 import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class SmsAutoResponseService extends Service {
     
-    private static final String TAG = "SmsAutoResponseService";
+    private static final Logger LOG = Logger.get("SmsAutoResponseService");
     private static final String CHANNEL_ID = "SmsAutoResponseChannel";
     private static final int NOTIFICATION_ID = 2;
     
+    static final String ACTION_START_TRACKING = "START_TRACKING";
+    static final String ACTION_STOP_TRACKING = "STOP_TRACKING";
+    static final String EXTRA_SENDER = "sender";
+    static final String EXTRA_DURATION = "duration";
+    
+    // Passive updates cost nothing extra: we only see fixes other apps already asked for.
+    // The balanced request is a slow heartbeat so the cache doesn't go stale when nobody else
+    // is using location.
+    private static final long PASSIVE_MIN_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long HEARTBEAT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+    
+    private FusedLocationProviderClient fusedLocationClient;
+    private LocationTrail trail;
+    private boolean receivingUpdates = false;
+    
+    // One callback per request: registering the same callback again would replace the first request
+    private final LocationCallback passiveFeeder = newCacheFeeder();
+    private final LocationCallback heartbeatFeeder = newCacheFeeder();
+    
+    // Fixes are delivered on their own thread: the trail, the tracker and the geofences write
+    // and sync files for them. Tracking sessions live on that thread too, and the tracking
+    // feeder is re-registered whenever the tracker wants a different interval.
+    private HandlerThread fixThread;
+    private Handler fixHandler;
+    private final LocationCallback trackingFeeder = newCacheFeeder();
+    private final Runnable expireSessions = this::updateTracking;
+    private LocationTracker tracker;
+    private LocationTracker.Request trackingRequest;
+    private volatile int notifiedSessions;
+    
+    // Set while the service runs, so tracking commands can reach it without starting it again
+    private static volatile SmsAutoResponseService running;
+    
+    // Zones from the geofence file, checked against every fix the service sees. Near a zone
+    // the engine wants more fixes than the heartbeat gives; its feeder asks for them.
+    static final String GEOFENCE_FILE = "geofences.txt";
+    private GeofenceEngine geofences;
+    private final LocationCallback geofenceFeeder = newCacheFeeder();
+    private LocationTracker.Request geofenceRequest;
+    
     @Override
     public void onCreate() {
         super.onCreate();
-        Log.d(TAG, "SMS Auto-Response Service created");
+        AppStartup.onOtherComponent(this);
+        LOG.d("SMS Auto-Response Service created");
         createNotificationChannel();
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+        trail = Diagnostics.locationTrail(this);
+        // The shared queue resends anything a previous process queued but never got onto the
+        // radio; tracking updates go out through it too
+        tracker = new LocationTracker(LocationTracker.Config.DEFAULT, SmsManagerGateway.sharedQueue(this),
+                Diagnostics.auditLog(this), FlightRecorder.getInstance(), ResponderMetrics.getInstance(),
+                System::currentTimeMillis);
+        geofences = new GeofenceEngine(GeofenceEngine.Config.DEFAULT, loadGeofences(),
+                SmsManagerGateway.sharedQueue(this), Diagnostics.auditLog(this), FlightRecorder.getInstance(),
+                ResponderMetrics.getInstance());
+        fixThread = new HandlerThread("location-fixes");
+        fixThread.start();
+        fixHandler = new Handler(fixThread.getLooper());
+        running = this;
+    }
+    
+    /** The zones in the geofence file, or none if there is no file or it doesn't parse. */
+    private List<Geofence> loadGeofences() {
+        File file = new File(getFilesDir(), GEOFENCE_FILE);
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            List<Geofence> zones = Geofence.readAll(in);
+            LOG.i("Watching {} geofence(s)", zones.size());
+            return zones;
+        } catch (FileNotFoundException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            LOG.e("Ignoring " + GEOFENCE_FILE, e);
+            return Collections.emptyList();
+        }
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "SMS Auto-Response Service started");
+        LOG.d("SMS Auto-Response Service started");
         
         if (intent != null && "START_AUTO_RESPONSE".equals(intent.getAction())) {
-            startForeground(NOTIFICATION_ID, createNotification());
-            Log.d(TAG, "SMS Auto-Response Service running in foreground");
+            goForeground();
+            FlightRecorder.getInstance().record(FlightRecorder.Event.SERVICE_STARTED);
+            LOG.d("SMS Auto-Response Service running in foreground");
+            startLocationCacheUpdates();
+        } else if (intent != null && (ACTION_START_TRACKING.equals(intent.getAction())
+                || ACTION_STOP_TRACKING.equals(intent.getAction()))) {
+            // Started with startForegroundService, so it has to go to the foreground either way
+            goForeground();
+            startLocationCacheUpdates();
+            String sender = intent.getStringExtra(EXTRA_SENDER);
+            String action = intent.getAction();
+            long durationMillis = intent.getLongExtra(EXTRA_DURATION, 0);
+            fixHandler.post(() -> onTrackingCommand(action, sender, durationMillis));
         }
         
         // Return START_STICKY to ensure service restarts if killed
@@ -45,8 +151,232 @@ public class SmsAutoResponseService extends Service {
     
     @Override
     public void onDestroy() {
+        // Sessions are not persisted; a restarted service waits for the next request
+        running = null;
+        fusedLocationClient.removeLocationUpdates(trackingFeeder);
+        fusedLocationClient.removeLocationUpdates(geofenceFeeder);
+        stopLocationCacheUpdates();
+        fixHandler.removeCallbacksAndMessages(null);
+        fixThread.quitSafely();
         super.onDestroy();
-        Log.d(TAG, "SMS Auto-Response Service destroyed");
+        FlightRecorder.getInstance().record(FlightRecorder.Event.SERVICE_STOPPED);
+        LOG.d("SMS Auto-Response Service destroyed");
+    }
+    
+    /**
+     * Runs as a location foreground service so that the cache, trail, tracking and geofences
+     * keep getting fixes while the app is in the background; Android 14 requires the type to be
+     * passed here. Without location permission the type would be refused, so the service only
+     * keeps the queue going as a data sync service.
+     */
+    private void goForeground() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, createNotification());
+            return;
+        }
+        int type = hasLocationPermission()
+                ? ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION
+                : ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC;
+        startForeground(NOTIFICATION_ID, createNotification(), type);
+    }
+    
+    private boolean hasLocationPermission() {
+        return ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED
+                || ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+    
+    private void startLocationCacheUpdates() {
+        if (receivingUpdates) {
+            return;
+        }
+        if (!hasLocationPermission()) {
+            LOG.w("No location permission, location cache will stay cold");
+            return;
+        }
+        
+        try {
+            // Seed the cache right away so the first request after start is served from memory
+            fusedLocationClient.getLastLocation().addOnSuccessListener(fixHandler::post, location -> {
+                if (location != null) {
+                    onFix(toFix(location));
+                }
+            });
+            
+            LocationRequest passive = new LocationRequest.Builder(Priority.PRIORITY_PASSIVE, PASSIVE_MIN_INTERVAL_MS)
+                    .setMinUpdateIntervalMillis(PASSIVE_MIN_INTERVAL_MS)
+                    .build();
+            LocationRequest heartbeat = new LocationRequest.Builder(
+                    Priority.PRIORITY_BALANCED_POWER_ACCURACY, HEARTBEAT_INTERVAL_MS)
+                    .setMinUpdateIntervalMillis(HEARTBEAT_INTERVAL_MS / 2)
+                    .build();
+            fusedLocationClient.requestLocationUpdates(passive, passiveFeeder, fixThread.getLooper());
+            fusedLocationClient.requestLocationUpdates(heartbeat, heartbeatFeeder, fixThread.getLooper());
+            receivingUpdates = true;
+            LOG.d("Location cache updates started");
+        } catch (SecurityException e) {
+            LOG.e("Security exception when requesting location updates: {}", e.getMessage());
+        }
+    }
+    
+    private void stopLocationCacheUpdates() {
+        if (receivingUpdates) {
+            fusedLocationClient.removeLocationUpdates(passiveFeeder);
+            fusedLocationClient.removeLocationUpdates(heartbeatFeeder);
+            receivingUpdates = false;
+        }
+    }
+    
+    private LocationCallback newCacheFeeder() {
+        return new LocationCallback() {
+            @Override
+            public void onLocationResult(LocationResult locationResult) {
+                for (Location location : locationResult.getLocations()) {
+                    onFix(toFix(location));
+                }
+            }
+        };
+    }
+    
+    // On the fix thread. The feeders can deliver the same fix; the trail, the geofences and the
+    // tracker keep it once.
+    private void onFix(LocationFix fix) {
+        LocationCache.getInstance().offer(fix);
+        trail.append(fix);
+        geofences.onFix(fix);
+        geofenceRequest = register(geofenceFeeder, geofences.request(), geofenceRequest, "Geofence");
+        if (tracker.isActive()) {
+            tracker.onFix(fix);
+            updateTracking();
+        }
+    }
+    
+    /** On the fix thread, like everything else that touches the sessions. */
+    private void onTrackingCommand(String action, String sender, long durationMillis) {
+        if (sender != null) {
+            if (ACTION_START_TRACKING.equals(action)) {
+                tracker.start(sender, durationMillis);
+            } else {
+                tracker.stop(sender);
+            }
+        }
+        updateTracking();
+    }
+    
+    /**
+     * Ends expired sessions and brings the tracking request in line with the tracker: none
+     * without sessions, a slow balanced poll while stationary, faster high-accuracy fixes
+     * while moving.
+     */
+    private void updateTracking() {
+        long nextExpiry = tracker.expire();
+        fixHandler.removeCallbacks(expireSessions);
+        if (nextExpiry > 0) {
+            fixHandler.postDelayed(expireSessions, Math.max(0, nextExpiry - System.currentTimeMillis()));
+        }
+        
+        trackingRequest = register(trackingFeeder, tracker.request(), trackingRequest, "Tracking");
+        
+        if (tracker.sessionCount() != notifiedSessions) {
+            notifiedSessions = tracker.sessionCount();
+            NotificationManager notificationManager = getSystemService(NotificationManager.class);
+            if (notificationManager != null) {
+                notificationManager.notify(NOTIFICATION_ID, createNotification());
+            }
+        }
+    }
+    
+    /**
+     * Brings {@code feeder}'s registration in line with {@code wanted}, removing it for null.
+     * Returns the request now registered.
+     */
+    private LocationTracker.Request register(LocationCallback feeder, LocationTracker.Request wanted,
+                                             LocationTracker.Request current, String name) {
+        if (wanted == null) {
+            if (current != null) {
+                fusedLocationClient.removeLocationUpdates(feeder);
+                LOG.d("{} updates stopped", name);
+            }
+            return null;
+        }
+        if (!wanted.differsFrom(current)) {
+            return current;
+        }
+        LocationRequest locationRequest = new LocationRequest.Builder(wanted.isHighAccuracy()
+                ? Priority.PRIORITY_HIGH_ACCURACY : Priority.PRIORITY_BALANCED_POWER_ACCURACY,
+                wanted.getIntervalMillis())
+                .setMinUpdateIntervalMillis(wanted.getIntervalMillis() / 2)
+                .build();
+        try {
+            fusedLocationClient.requestLocationUpdates(locationRequest, feeder, fixThread.getLooper());
+            LOG.d("{} updates every {} ms, high accuracy {}", name, wanted.getIntervalMillis(),
+                    wanted.isHighAccuracy());
+            return wanted;
+        } catch (SecurityException e) {
+            LOG.e("Security exception when requesting {} updates: {}", name, e.getMessage());
+            return current;
+        }
+    }
+    
+    /**
+     * Hands tracking commands to the service, which owns the sessions. When it is running, as it
+     * is whenever auto-response is on, they go straight to it. Otherwise it has to be started
+     * from the background, which Android 12 and later may refuse, and it only gets location
+     * with background access ("Allow all the time"); when either is missing the start fails
+     * and the responder tells the sender.
+     */
+    static SmsResponder.Tracking tracking(Context context) {
+        final Context appContext = context.getApplicationContext();
+        return new SmsResponder.Tracking() {
+            @Override
+            public boolean start(String sender, long durationMillis) {
+                return send(ACTION_START_TRACKING, sender, durationMillis);
+            }
+            
+            @Override
+            public void stop(String sender) {
+                // Without the service there is no session to stop
+                if (running != null) {
+                    send(ACTION_STOP_TRACKING, sender, 0);
+                }
+            }
+            
+            private boolean send(String action, String sender, long durationMillis) {
+                SmsAutoResponseService service = running;
+                if (service != null && service.fixHandler.post(
+                        () -> service.onTrackingCommand(action, sender, durationMillis))) {
+                    return true;
+                }
+                if (!hasBackgroundLocationPermission(appContext)) {
+                    LOG.w("No background location permission, cannot start tracking for {*}", sender);
+                    return false;
+                }
+                Intent intent = new Intent(appContext, SmsAutoResponseService.class);
+                intent.setAction(action);
+                intent.putExtra(EXTRA_SENDER, sender);
+                intent.putExtra(EXTRA_DURATION, durationMillis);
+                try {
+                    appContext.startForegroundService(intent);
+                    return true;
+                } catch (IllegalStateException e) {
+                    // ForegroundServiceStartNotAllowedException, from Android 12 on
+                    LOG.w("Cannot start the service from the background: {}", e.getMessage());
+                    return false;
+                }
+            }
+        };
+    }
+    
+    static boolean hasBackgroundLocationPermission(Context context) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_BACKGROUND_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+    
+    static LocationFix toFix(Location location) {
+        return new LocationFix(location.getLatitude(), location.getLongitude(),
+                location.getAccuracy(), location.getTime());
     }
     
     private void createNotificationChannel() {
@@ -72,9 +402,12 @@ public class SmsAutoResponseService extends Service {
                 this, 0, notificationIntent, 
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
         
+        int sessions = notifiedSessions;
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("SMS Auto-Response Active")
-                .setContentText("Automatically responding to location requests")
+                .setContentText(sessions > 0
+                        ? "Sharing your location with " + sessions + " contact(s)"
+                        : "Automatically responding to location requests")
                 .setSmallIcon(R.drawable.ic_sms)
                 .setContentIntent(pendingIntent)
                 .setOngoing(true)
@@ -0,0 +1,99 @@
+package com.example.localisation_sender_with_speech;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.telephony.SmsManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link SmsGateway} backed by SmsManager.
+ *
+ * Every part carries its own sent and delivered PendingIntent, addressed to
+ * {@link SmsSendStatusReceiver} and tagged with the message id, attempt and part index.
+ */
+public class SmsManagerGateway implements SmsGateway {
+
+    private static final Logger LOG = Logger.get("SmsManagerGateway");
+    private static final String JOURNAL_FILE = "outbound_sms.journal";
+
+    static final String ACTION_SENT = "com.example.localisation_sender_with_speech.SMS_SENT";
+    static final String ACTION_DELIVERED = "com.example.localisation_sender_with_speech.SMS_DELIVERED";
+    static final String EXTRA_MESSAGE_ID = "message_id";
+    static final String EXTRA_ATTEMPT = "attempt";
+    static final String EXTRA_PART = "part";
+
+    private static OutboundSmsQueue sharedQueue;
+
+    private final Context context;
+
+    public SmsManagerGateway(Context context) {
+        this.context = context;
+    }
+
+    /** The process-wide queue; resends anything left in the journal by a previous process. */
+    public static synchronized OutboundSmsQueue sharedQueue(Context context) {
+        if (sharedQueue == null) {
+            Context appContext = context.getApplicationContext();
+            sharedQueue = new OutboundSmsQueue(
+                    new SmsManagerGateway(appContext),
+                    new OutboundJournal(new File(appContext.getFilesDir(), JOURNAL_FILE)),
+                    Executors.newSingleThreadScheduledExecutor(SmsResponsePipeline.namedThreads("sms-outbound")),
+                    OutboundSmsQueue.RetryPolicy.DEFAULT,
+                    System::currentTimeMillis,
+                    new OutboundMetrics(ResponderMetrics.getInstance(), FlightRecorder.getInstance(),
+                            Diagnostics.auditLog(appContext)));
+            // The journal is replayed on the queue's thread; a broadcast receiver calling this
+            // on the main thread doesn't wait for the file
+            sharedQueue.startInBackground();
+        }
+        return sharedQueue;
+    }
+
+    /** Splits {@code text} into parts and queues it. */
+    public static long enqueueText(Context context, String destination, String text) {
+        return sharedQueue(context).enqueue(destination, PlatformSmsCodec.INSTANCE.divide(text));
+    }
+
+    @Override
+    public void send(long messageId, int attempt, String destination, List<String> parts) {
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+        ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(parts.size());
+        for (int part = 0; part < parts.size(); part++) {
+            sentIntents.add(statusIntent(ACTION_SENT, messageId, attempt, part));
+            deliveryIntents.add(statusIntent(ACTION_DELIVERED, messageId, attempt, part));
+        }
+
+        SmsManager smsManager = SmsManager.getDefault();
+        if (parts.size() > 1) {
+            smsManager.sendMultipartTextMessage(destination, null, new ArrayList<>(parts),
+                    sentIntents, deliveryIntents);
+        } else {
+            smsManager.sendTextMessage(destination, null, parts.get(0),
+                    sentIntents.get(0), deliveryIntents.get(0));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.d("SMS {} attempt {} handed to radio ({} parts)", messageId, attempt, parts.size());
+        }
+    }
+
+    private PendingIntent statusIntent(String action, long messageId, int attempt, int part) {
+        Intent intent = new Intent(context, SmsSendStatusReceiver.class)
+                .setAction(action)
+                // Distinct data so PendingIntents for different parts aren't merged
+                .setData(Uri.parse("sms-status://" + messageId + "/" + attempt + "/" + part))
+                .putExtra(EXTRA_MESSAGE_ID, messageId)
+                .putExtra(EXTRA_ATTEMPT, attempt)
+                .putExtra(EXTRA_PART, part);
+        // Mutable, or telephony can't fill in the delivery report PDU and the send error code;
+        // the intent names its receiver, so nothing else can be filled in
+        int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0;
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.localisation_sender_with_speech;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.telephony.SmsManager;
+import android.telephony.SmsMessage;
+
+/**
+ * Receives the sent and delivered PendingIntents from {@link SmsManagerGateway} and reports
+ * them to the outbound queue. The queue handles them on its own thread, where it journals
+ * and compacts; the broadcast stays pending until it is done.
+ */
+public class SmsSendStatusReceiver extends BroadcastReceiver {
+    
+    private static final Logger LOG = Logger.get("SmsSendStatusReceiver");
+    
+    // TP-Status ranges from 3GPP TS 23.040 9.2.3.15
+    private static final int STATUS_TEMPORARY_ERROR = 0x20;
+    private static final int STATUS_PERMANENT_ERROR = 0x40;
+    private static final int STATUS_UNKNOWN = -1;
+    
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        AppStartup.onOtherComponent(context);
+        long id = intent.getLongExtra(SmsManagerGateway.EXTRA_MESSAGE_ID, -1);
+        int attempt = intent.getIntExtra(SmsManagerGateway.EXTRA_ATTEMPT, -1);
+        int part = intent.getIntExtra(SmsManagerGateway.EXTRA_PART, -1);
+        if (id < 0) return;
+        
+        OutboundSmsQueue queue = SmsManagerGateway.sharedQueue(context);
+        if (SmsManagerGateway.ACTION_SENT.equals(intent.getAction())) {
+            int resultCode = getResultCode();
+            if (LOG.isDebugEnabled()) {
+                LOG.d("SMS {} part {} sent result: {}", id, part, resultCode);
+            }
+            PendingResult pending = goAsync();
+            queue.reportSent(id, attempt, part, toSendResult(resultCode), pending::finish);
+        } else if (SmsManagerGateway.ACTION_DELIVERED.equals(intent.getAction())) {
+            int status = deliveryStatus(intent);
+            if (status == STATUS_UNKNOWN) {
+                // Not evidence either way; the message stays awaiting a report
+                LOG.w("SMS {} part {} delivery report without a status", id, part);
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.d("SMS {} part {} delivery status: {}", id, part, status);
+            }
+            // Temporary errors mean the SMSC is still trying; wait for the next report
+            if (status < STATUS_TEMPORARY_ERROR || status >= STATUS_PERMANENT_ERROR) {
+                PendingResult pending = goAsync();
+                queue.reportDelivered(id, part, status < STATUS_TEMPORARY_ERROR, pending::finish);
+            }
+        }
+    }
+    
+    static OutboundSmsQueue.SendResult toSendResult(int resultCode) {
+        switch (resultCode) {
+            case Activity.RESULT_OK:
+                return OutboundSmsQueue.SendResult.OK;
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+            case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
+                return OutboundSmsQueue.SendResult.RETRY;
+            default:
+                return OutboundSmsQueue.SendResult.FAILED;
+        }
+    }
+    
+    /** The report's TP-Status, or {@link #STATUS_UNKNOWN} if it carries none. */
+    private static int deliveryStatus(Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu == null) return STATUS_UNKNOWN;
+        SmsMessage report = SmsMessage.createFromPdu(pdu, intent.getStringExtra("format"));
+        return report != null ? report.getStatus() : STATUS_UNKNOWN;
+    }
+}
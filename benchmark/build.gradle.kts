@@ -0,0 +1,33 @@
+// JMH benchmarks for the :core hot path. Run with ./gradlew :benchmark:jmh
+// Headless load replay through the whole responder: ./gradlew :benchmark:replay --args="--rates 10,100,1000"
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation(testFixtures(project(":core")))
+    testImplementation(libs.junit)
+    jmh(project(":core"))
+    jmh(testFixtures(project(":core")))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    // -Pjmh.includes=Trigger runs a subset
+    project.findProperty("jmh.includes")?.let { includes.set(listOf(it.toString())) }
+    resultFormat.set("JSON")
+}
+
+tasks.register<JavaExec>("replay") {
+    group = "verification"
+    description = "Replays generated or recorded SMS load through the responder and prints a report."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.localisation_sender_with_speech.ReplayHarness")
+}
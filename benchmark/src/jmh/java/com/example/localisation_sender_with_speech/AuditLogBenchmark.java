@@ -0,0 +1,94 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * History pages read off a log holding months of traffic, as the "Request History" card does:
+ * the newest page, a page filtered to one rare sender, and a page that starts mid-log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditLogBenchmark {
+
+    private static final int PAGE = 20;
+    private static final long STEP_MILLIS = 30_000;
+
+    @Param({"300000"})
+    public int entries;
+
+    private File dir;
+    private AuditLog log;
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private String rareSender;
+    private long midCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("audit-bench").toFile();
+        log = AuditLog.open(dir, new AuditLog.Config(Long.MAX_VALUE, 1 << 20, TimeUnit.DAYS.toMillis(1), 4096),
+                clock::get);
+        rareSender = PduStream.contact(9_999);
+        for (int i = 0; i < entries; i++) {
+            clock.addAndGet(STEP_MILLIS);
+            // One request in a thousand comes from the rare sender, the rest from 200 contacts
+            String sender = i % 1000 == 0 ? rareSender : PduStream.contact(i % 200);
+            log.record(AuditLog.Type.values()[i % AuditLog.Type.values().length], sender, i, "benchmark");
+            if (i % 2048 == 2047 && !log.sync(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Audit writer fell behind");
+            }
+        }
+        if (!log.sync(10, TimeUnit.SECONDS) || log.droppedCount() != 0) {
+            throw new IllegalStateException("Audit log not filled: " + log.droppedCount() + " dropped");
+        }
+        midCursor = log.cursorAt(clock.get() - entries / 2 * STEP_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public AuditLog.Page newestPage() throws IOException {
+        return log.page(null, AuditLog.NEWEST, PAGE);
+    }
+
+    @Benchmark
+    public AuditLog.Page rareSenderPage() throws IOException {
+        return log.page(rareSender, AuditLog.NEWEST, PAGE);
+    }
+
+    @Benchmark
+    public AuditLog.Page pageFromMidLog() throws IOException {
+        return log.page(null, midCursor, PAGE);
+    }
+}
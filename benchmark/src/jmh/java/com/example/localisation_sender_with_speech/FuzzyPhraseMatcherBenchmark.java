@@ -0,0 +1,94 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What typo tolerance costs: the labelled trigger corpus through the exact automaton and
+ * through the fuzzy matcher, as the phrase set grows, plus a maximum-size concatenated
+ * message with no trigger in it, the worst case for both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuzzyPhraseMatcherBenchmark {
+
+    @Param({"13", "1000"})
+    public int phraseCount;
+
+    private TriggerPhraseMatcher exact;
+    private FuzzyPhraseMatcher fuzzy;
+    private String[] corpus;
+    private String longMessage;
+
+    @Setup
+    public void setUp() {
+        List<String> phrases = new ArrayList<>(Arrays.asList(ResponderConfig.TRIGGER_PHRASES));
+        String[] filler = Workload.phrases(Math.max(7, phraseCount - phrases.size() + 7));
+        phrases.addAll(Arrays.asList(filler).subList(7, filler.length));
+        exact = TriggerPhraseMatcher.compile(phrases);
+        fuzzy = FuzzyPhraseMatcher.compile(phrases);
+
+        List<TriggerCorpus.Sample> samples = TriggerCorpus.samples();
+        corpus = new String[samples.size()];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = samples.get(i).body;
+        }
+        // 255 parts of 153 chars, the most a concatenated SMS can carry
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 255 * 153) {
+            sb.append(Workload.MESSAGES[0]).append(' ');
+        }
+        longMessage = sb.substring(0, 255 * 153);
+    }
+
+    @Benchmark
+    public int exactCorpus() {
+        int hits = 0;
+        for (String message : corpus) {
+            if (exact.matches(message)) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int fuzzyCorpus() {
+        int hits = 0;
+        for (String message : corpus) {
+            if (fuzzy.matches(message)) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public boolean exactLongMessage() {
+        return exact.matches(longMessage);
+    }
+
+    @Benchmark
+    public boolean fuzzyLongMessage() {
+        return fuzzy.matches(longMessage);
+    }
+
+    @Benchmark
+    public FuzzyPhraseMatcher compile() {
+        return FuzzyPhraseMatcher.compile(ResponderConfig.TRIGGER_PHRASES);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One fix through the geofence engine, with thousands of circles and polygons of 30 m to 1 km
+ * scattered over a city-sized area, along synthetic walking and driving tracks through it.
+ * The zones alert nobody, so this is the cost of deciding, not of queueing texts. The brute
+ * force benchmark measures every zone for the same fixes, which is what the index saves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceEngineBenchmark {
+
+    private static final double LAT = 48.8566;
+    private static final double LON = 2.3522;
+    private static final int TRACKS = 64;
+    private static final int TRACK_FIXES = 256;
+    private static final int FIXES = TRACKS * TRACK_FIXES;
+
+    @Param({"1000", "10000"})
+    public int zones;
+
+    private ScheduledExecutorService scheduler;
+    private File dir;
+    private OutboundJournal journal;
+    private AuditLog audit;
+    private List<Geofence> geofences;
+    private GeofenceEngine engine;
+    private LocationFix[] walking;
+    private LocationFix[] driving;
+    private long time;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        Geofence.Alert nobody = new Geofence.Alert(Workload.SENDER, EnumSet.noneOf(Geofence.Transition.class), 0);
+        geofences = new ArrayList<>(zones);
+        for (int i = 0; i < zones; i++) {
+            // About 20 km across
+            double lat = LAT - 0.09 + random.nextDouble() * 0.18;
+            double lon = LON - 0.14 + random.nextDouble() * 0.28;
+            if (i % 2 == 0) {
+                geofences.add(Geofence.circle("c" + i, "Circle " + i, nobody, lat, lon, 30 + random.nextDouble() * 500));
+            } else {
+                double size = 0.0003 + random.nextDouble() * 0.009;
+                geofences.add(Geofence.polygon("p" + i, "Polygon " + i, nobody, lat, lon, lat + size, lon + size / 3,
+                        lat + size * 0.8, lon + size, lat + size / 3, lon + size * 1.2, lat - size / 4, lon + size / 2));
+            }
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        dir = Files.createTempDirectory("geofence").toFile();
+        journal = new OutboundJournal(new File(dir, "outbound.journal"));
+        audit = AuditLog.open(new File(dir, "audit"), AuditLog.Config.DEFAULT, System::currentTimeMillis);
+        ResponderMetrics metrics = new ResponderMetrics();
+        OutboundSmsQueue queue = new OutboundSmsQueue(new FakeSmsGateway(), journal, scheduler,
+                OutboundSmsQueue.RetryPolicy.DEFAULT, System::currentTimeMillis,
+                new OutboundMetrics(metrics, new FlightRecorder(64), audit));
+        engine = new GeofenceEngine(GeofenceEngine.Config.DEFAULT, geofences, queue, audit, new FlightRecorder(64),
+                metrics);
+
+        walking = tracks(random, 1.4, 8f, 5_000);
+        driving = tracks(random, 14, 12f, 2_000);
+    }
+
+    /** Short tracks from random starts, so that even driving stays among the zones. */
+    private static LocationFix[] tracks(Random random, double speedMetersPerSecond, float accuracyMeters,
+                                        long intervalMillis) {
+        LocationFix[] fixes = new LocationFix[FIXES];
+        for (int i = 0; i < TRACKS; i++) {
+            LocationFix[] track = SyntheticTrack.walk(random, LAT - 0.05 + random.nextDouble() * 0.1,
+                    LON - 0.08 + random.nextDouble() * 0.16, random.nextDouble() * 360, speedMetersPerSecond,
+                    accuracyMeters, 0, intervalMillis, TRACK_FIXES);
+            System.arraycopy(track, 0, fixes, i * TRACK_FIXES, TRACK_FIXES);
+        }
+        return fixes;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        scheduler.shutdownNow();
+        journal.close();
+        audit.close();
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Benchmark
+    public GeofenceEngine walking() {
+        return feed(walking);
+    }
+
+    @Benchmark
+    public GeofenceEngine driving() {
+        return feed(driving);
+    }
+
+    @Benchmark
+    public int bruteForceDriving() {
+        LocationFix fix = driving[next++ & (FIXES - 1)];
+        int inside = 0;
+        for (int i = 0; i < geofences.size(); i++) {
+            if (geofences.get(i).signedDistanceMeters(fix.getLatitude(), fix.getLongitude()) <= 0) inside++;
+        }
+        return inside;
+    }
+
+    /** Tracks repeat, so each fix is re-stamped to stay newer than the last. */
+    private GeofenceEngine feed(LocationFix[] track) {
+        LocationFix fix = track[next++ & (FIXES - 1)];
+        engine.onFix(new LocationFix(fix.getLatitude(), fix.getLongitude(), fix.getAccuracyMeters(), ++time));
+        return engine;
+    }
+}
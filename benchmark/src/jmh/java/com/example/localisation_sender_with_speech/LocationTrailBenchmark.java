@@ -0,0 +1,146 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range lookups and export on weeks of 1 Hz history, and the cost of one append.
+ * Setup prints how many bytes the trail takes per fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationTrailBenchmark {
+
+    private static final long START = 1_714_521_600_000L;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Param({"14"})
+    public int days;
+
+    private File dir;
+    private LocationTrail trail;
+    private long end;
+    private long appendTime;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("trail-bench").toFile();
+        trail = LocationTrail.open(dir, LocationTrail.Config.DEFAULT);
+        random = new Random(42);
+        int count = (int) (days * TimeUnit.DAYS.toSeconds(1));
+        double lat = 48.8566;
+        double lon = 2.3522;
+        double heading = 0;
+        for (int i = 0; i < count; i++) {
+            heading += random.nextGaussian() * 0.1;
+            lat += Math.cos(heading) * 1.3e-5 + random.nextGaussian() * 2e-6;
+            lon += Math.sin(heading) * 1.9e-5 + random.nextGaussian() * 2e-6;
+            trail.append(new LocationFix(lat, lon, 3.5f + (float) Math.abs(random.nextGaussian()),
+                    START + i * 1000L + random.nextInt(21) - 10));
+        }
+        end = START + count * 1000L;
+        appendTime = end;
+        System.out.printf("%n%d fixes in %d buckets, %.2f bytes per fix, %d KB of files%n", trail.size(),
+                trail.bucketCount(), (double) trail.dataBytes() / trail.size(), directoryBytes() / 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        trail.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void oneMinuteMidTrail(Blackhole blackhole) throws IOException {
+        long from = START + random.nextInt(days * 24) * HOUR + 1_800_000;
+        trail.scan(from, from + 60_000, (time, latitude, longitude, accuracy) -> {
+            blackhole.consume(latitude);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public void oneHourAcrossMidnight(Blackhole blackhole) throws IOException {
+        long from = START + TimeUnit.DAYS.toMillis(days / 2) - HOUR / 2;
+        trail.scan(from, from + HOUR, (time, latitude, longitude, accuracy) -> {
+            blackhole.consume(latitude);
+            return true;
+        });
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long exportOneDayCsv() throws IOException {
+        long from = START + TimeUnit.DAYS.toMillis(days / 2);
+        return trail.export(from, from + TimeUnit.DAYS.toMillis(1), LocationTrail.Format.CSV, NullWriter.INSTANCE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean append() {
+        appendTime += 1000;
+        return trail.append(new LocationFix(48.8566, 2.3522, 4f, appendTime));
+    }
+
+    private long directoryBytes() {
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private static final class NullWriter extends Writer {
+        static final NullWriter INSTANCE = new NullWriter();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public Writer append(CharSequence text) {
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
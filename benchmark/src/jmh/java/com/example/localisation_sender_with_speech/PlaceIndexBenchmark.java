@@ -0,0 +1,127 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reverse geocoding against a synthetic gazetteer the size of GeoNames' cities1000 (about
+ * 150,000 places), clustered like real settlements so that dense cells cost what they would
+ * around a big city. Queries near settlements find a place; queries far from any scan their
+ * cells and find none. Setup prints the index size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceIndexBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"150000"})
+    public int places;
+
+    @Param({"0.25", "0.5", "1"})
+    public double cellDegrees;
+
+    private File file;
+    private PlaceIndex index;
+    private ResponseRenderer renderer;
+    private SmsPayloadEncoder plan;
+    private double[] nearLatitudes;
+    private double[] nearLongitudes;
+    private double[] remoteLatitudes;
+    private double[] remoteLongitudes;
+    private LocationFix[] fixes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        // Settlements cluster around a few thousand regional centers
+        int centers = 3000;
+        double[] centerLatitudes = new double[centers];
+        double[] centerLongitudes = new double[centers];
+        for (int i = 0; i < centers; i++) {
+            centerLatitudes[i] = -50 + random.nextDouble() * 115;
+            centerLongitudes[i] = -180 + random.nextDouble() * 360;
+        }
+        PlaceIndex.Writer writer = new PlaceIndex.Writer(cellDegrees);
+        for (int i = 0; i < places; i++) {
+            int center = random.nextInt(centers);
+            double lat = clamp(centerLatitudes[center] + random.nextGaussian() * 0.6, -89.9, 89.9);
+            double lon = wrap(centerLongitudes[center] + random.nextGaussian() * 0.8);
+            writer.add("Place " + i, lat, lon);
+        }
+        file = Files.createTempFile("places", ".idx").toFile();
+        writer.writeTo(file);
+        index = PlaceIndex.open(file);
+        renderer = new ResponseRenderer(Workload::divide, () -> index);
+        plan = SmsPayloadEncoder.autoReply(1, 5, true, false);
+
+        nearLatitudes = new double[QUERIES];
+        nearLongitudes = new double[QUERIES];
+        remoteLatitudes = new double[QUERIES];
+        remoteLongitudes = new double[QUERIES];
+        fixes = new LocationFix[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            int center = random.nextInt(centers);
+            nearLatitudes[i] = clamp(centerLatitudes[center] + random.nextGaussian() * 0.3, -89.9, 89.9);
+            nearLongitudes[i] = wrap(centerLongitudes[center] + random.nextGaussian() * 0.4);
+            // Antarctica, where there are none
+            remoteLatitudes[i] = -75 - random.nextDouble() * 10;
+            remoteLongitudes[i] = -180 + random.nextDouble() * 360;
+            fixes[i] = new LocationFix(nearLatitudes[i], nearLongitudes[i], 10f, 0);
+        }
+        System.out.printf("%n%d places in %d KB%n", index.size(), file.length() / 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public PlaceIndex.Place nearestInSettledArea() {
+        int i = next++ & (QUERIES - 1);
+        return index.nearest(nearLatitudes[i], nearLongitudes[i]);
+    }
+
+    @Benchmark
+    public PlaceIndex.Place nearestFarFromAnyPlace() {
+        int i = next++ & (QUERIES - 1);
+        return index.nearest(remoteLatitudes[i], remoteLongitudes[i]);
+    }
+
+    /** The whole compact reply with the place named; a new fix every time, so nothing is cached. */
+    @Benchmark
+    public ResponseRenderer.Rendered renderReplyWithPlace() {
+        return renderer.render(plan, fixes[next++ & (QUERIES - 1)], 0);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static double wrap(double longitude) {
+        return longitude >= 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message in, reply out: the same steps as the receiver, minus the radio and the location
+ * lookup. PDUs are decoded and assembled, matched, checked against the allow-list and the rate
+ * limiter, and the reply for a cached fix is rendered and split.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponderPathBenchmark {
+
+    private final byte[] request = SmsPduFixtures.gsm7(Workload.SENDER, "Hi! Where are you? Send location please");
+    private final byte[] chatter = SmsPduFixtures.gsm7(Workload.SENDER, Workload.MESSAGES[0]);
+    private final LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+    private final AtomicLong clock = new AtomicLong();
+
+    private ResponderConfig config;
+    private SenderRateLimiter limiter;
+    private ResponseRenderer renderer;
+
+    @Setup
+    public void setUp() {
+        List<String> contacts = new ArrayList<>(Workload.contacts(100));
+        contacts.add(Workload.SENDER);
+        config = new ResponderConfig(true, true, true,
+                FuzzyPhraseMatcher.compile(Workload.phrases(7)),
+                TriggerPhraseMatcher.compile("sos", "emergency", "urgent", "help me"),
+                AcquisitionPolicy.BALANCED,
+                SmsPayloadEncoder.autoReply(1, 5, true, false),
+                SmsPayloadEncoder.autoReply(1, 5, true, true),
+                AllowList.build(contacts, new AddressNormalizer("33")), null);
+        // The clock jumps past the refill interval on every call so every request is allowed
+        limiter = new SenderRateLimiter(SenderRateLimiter.Config.DEFAULT, () -> clock.addAndGet(10 * 60_000));
+        renderer = new ResponseRenderer(Workload::divide);
+        cache.offer(Workload.fixes(1)[0]);
+    }
+
+    @Benchmark
+    public List<String> locationRequest() {
+        return handle(request);
+    }
+
+    @Benchmark
+    public List<String> ordinaryMessage() {
+        return handle(chatter);
+    }
+
+    private List<String> handle(byte[] pdu) {
+        List<SmsPdu> parts = new ArrayList<>(1);
+        parts.add(SmsPdu.decode(pdu));
+        for (SmsMessageAssembler.InboundMessage message : SmsMessageAssembler.assemble(parts)) {
+            if (!config.getTriggerMatcher().matches(message.getBody())) continue;
+            String sender = message.getSender();
+            if (!config.isSenderAllowed(sender)) continue;
+            config.priorityOf(sender, message.getBody());
+            if (limiter.tryAcquire(sender) != SenderRateLimiter.Decision.ALLOW) continue;
+            LocationCache.Entry cached = cache.getSendable(0);
+            return renderer.render(config.replyPlan(false), cached.getFix(), 0).getParts();
+        }
+        return Collections.emptyList();
+    }
+}
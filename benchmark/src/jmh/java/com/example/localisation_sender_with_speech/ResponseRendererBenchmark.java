@@ -0,0 +1,76 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reply rendering and splitting: the compiled templates against the previous String.format
+ * reply, from scratch and with the per-fix cache a burst would hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseRendererBenchmark {
+
+    private final LocationFix[] fixes = Workload.fixes(64);
+    private final ResponseRenderer.Splitter splitter = Workload::divide;
+    private final StringBuilder buffer = new StringBuilder(512);
+    private final SmsPayloadEncoder plan = SmsPayloadEncoder.autoReply(1, 5, true, false);
+    private ResponseRenderer renderer;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        renderer = new ResponseRenderer(splitter);
+    }
+
+    private LocationFix nextFix() {
+        return fixes[next++ & 63];
+    }
+
+    @Benchmark
+    public ArrayList<String> stringFormat() {
+        LocationFix fix = nextFix();
+        String text = String.format(Locale.US,
+                "📍 My current location:\n" +
+                "Latitude: %.6f\n" +
+                "Longitude: %.6f\n" +
+                "Accuracy: %.1fm\n\n" +
+                "🗺️ Google Maps: https://maps.google.com/?q=%.6f,%.6f\n\n" +
+                "⏰ Sent automatically in response to your request",
+                fix.getLatitude(), fix.getLongitude(), fix.getAccuracyMeters(),
+                fix.getLatitude(), fix.getLongitude());
+        return splitter.divide(text);
+    }
+
+    @Benchmark
+    public ArrayList<String> template() {
+        buffer.setLength(0);
+        return splitter.divide(ResponseTemplate.AUTO_REPLY.render(nextFix(), 0, buffer).toString());
+    }
+
+    @Benchmark
+    public ResponseRenderer.Rendered segmentBudgetedPlan() {
+        return renderer.render(plan, nextFix(), 0);
+    }
+
+    @Benchmark
+    public ResponseRenderer.Rendered cachedSameFix() {
+        return renderer.render(ResponseTemplate.AUTO_REPLY, fixes[0], 0);
+    }
+}
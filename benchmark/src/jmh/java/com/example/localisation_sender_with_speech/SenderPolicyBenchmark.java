@@ -0,0 +1,75 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Allow-list lookups, per-sender rate limiting and priority classification. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenderPolicyBenchmark {
+
+    @Param({"10", "1000"})
+    public int contactCount;
+
+    private AllowList allowList;
+    private String knownSender;
+    private SenderRateLimiter limiter;
+    private final AtomicLong clock = new AtomicLong();
+    private final ResponderConfig config = new ResponderConfig(true, true, true,
+            FuzzyPhraseMatcher.compile(Workload.phrases(7)),
+            TriggerPhraseMatcher.compile("sos", "emergency", "urgent", "help me"),
+            AcquisitionPolicy.BALANCED,
+            SmsPayloadEncoder.autoReply(1, 5, true, false),
+            SmsPayloadEncoder.autoReply(1, 5, true, true),
+            AllowList.build(Collections.<String>emptyList(), new AddressNormalizer("33")), null);
+
+    @Setup
+    public void setUp() {
+        List<String> contacts = Workload.contacts(contactCount);
+        allowList = AllowList.build(contacts, new AddressNormalizer("33"));
+        // Stored in national format, looked up in international format as the network delivers it
+        knownSender = "+33" + contacts.get(contactCount - 1).substring(1);
+        // Every call moves the clock past the coalescing window, so the bucket logic runs each time
+        limiter = new SenderRateLimiter(SenderRateLimiter.Config.DEFAULT, () -> clock.addAndGet(61_000));
+    }
+
+    @Benchmark
+    public boolean allowListHit() {
+        return allowList.contains(knownSender);
+    }
+
+    @Benchmark
+    public boolean allowListMiss() {
+        return allowList.contains("+447700900123");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SenderRateLimiter.Decision rateLimiterContended() {
+        return limiter.tryAcquire(Workload.SENDER);
+    }
+
+    @Benchmark
+    public RequestPriority priority() {
+        return config.priorityOf(Workload.SENDER, Workload.MESSAGES[2]);
+    }
+}
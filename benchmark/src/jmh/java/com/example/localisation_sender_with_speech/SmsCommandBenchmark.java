@@ -0,0 +1,73 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command parsing ahead of phrase matching: valid commands, the everyday messages that have
+ * to be told apart from them, and a maximum-size message, which should cost no more than a
+ * short one. Run with -prof gc to check the argument-less commands allocate nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmsCommandBenchmark {
+
+    private static final String PIN = "4821";
+
+    private final String[] commands = {"LOC", "4821 loc", "status?", "STOP TRACKING", "4821 TRACK"};
+    private String[] messages;
+    private String longMessage;
+
+    @Setup
+    public void setUp() {
+        messages = Workload.MESSAGES;
+        // 255 parts of 153 chars, the most a concatenated SMS can carry
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 255 * 153) {
+            sb.append("LOC ACC<20 ");
+        }
+        longMessage = sb.substring(0, 255 * 153);
+    }
+
+    @Benchmark
+    public int parseCommands() {
+        int found = 0;
+        for (String command : commands) {
+            if (SmsCommand.parse(command, PIN).isCommand()) found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public SmsCommand parseWithArgument() {
+        return SmsCommand.parse("4821 LOC ACC<20", PIN);
+    }
+
+    @Benchmark
+    public int parseOrdinaryMessages() {
+        int found = 0;
+        for (String message : messages) {
+            if (SmsCommand.parse(message, PIN).isCommand()) found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public SmsCommand parseLongMessage() {
+        return SmsCommand.parse(longMessage, PIN);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** PDU decoding and reassembly, for a single GSM-7 SMS and for a three-part UCS-2 one. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmsMessageAssemblerBenchmark {
+
+    private final byte[] single = SmsPduFixtures.gsm7(Workload.SENDER, "Where are you? The meeting started ten minutes ago");
+    private final List<byte[]> concatenated = SmsPduFixtures.concatenated(Workload.SENDER,
+            "Salut 😊 tu peux m'envoyer ta position ? Je suis devant la gare et je ne te vois pas. "
+                    + "Send location quand tu peux, merci !", 40, 0x42, true, false);
+
+    @Benchmark
+    public SmsPdu decodeGsm7() {
+        return SmsPdu.decode(single);
+    }
+
+    @Benchmark
+    public List<SmsMessageAssembler.InboundMessage> decodeAndAssembleSingle() {
+        List<SmsPdu> parts = new ArrayList<>(1);
+        parts.add(SmsPdu.decode(single));
+        return SmsMessageAssembler.assemble(parts);
+    }
+
+    @Benchmark
+    public List<SmsMessageAssembler.InboundMessage> decodeAndAssembleConcatenatedUcs2() {
+        List<SmsPdu> parts = new ArrayList<>(concatenated.size());
+        for (byte[] pdu : concatenated) {
+            parts.add(SmsPdu.decode(pdu));
+        }
+        return SmsMessageAssembler.assemble(parts);
+    }
+}
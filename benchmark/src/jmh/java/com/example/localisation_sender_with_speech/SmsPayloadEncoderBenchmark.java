@@ -0,0 +1,45 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Segment counting and picking the richest reply that fits the segment budget. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmsPayloadEncoderBenchmark {
+
+    private final String gsm7 = "My location: 48.85837,2.29448 maps.google.com/?q=48.85837,2.29448 [accuracy ~12m]";
+    private final String ucs2 = "📍 My current location:\nLatitude: 48.858370\nLongitude: 2.294481\n"
+            + "Accuracy: 12.0m\n\n🗺️ Google Maps: https://maps.google.com/?q=48.858370,2.294481";
+    private final SmsPayloadEncoder plan = SmsPayloadEncoder.autoReply(1, 5, true, false);
+    private final LocationFix fix = Workload.fixes(1)[0];
+    private final StringBuilder buffer = new StringBuilder(512);
+
+    @Benchmark
+    public SmsPayloadEncoder.Count countGsm7() {
+        return SmsPayloadEncoder.count(gsm7);
+    }
+
+    @Benchmark
+    public SmsPayloadEncoder.Count countUcs2() {
+        return SmsPayloadEncoder.count(ucs2);
+    }
+
+    @Benchmark
+    public int renderBest() {
+        return plan.renderBest(fix, null, 0, buffer);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.localisation_sender_with_speech;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trigger matching over a batch of messages: the automaton against the previous
+ * lowercase-and-contains loop, as the phrase set grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriggerPhraseMatcherBenchmark {
+
+    @Param({"7", "100", "1000"})
+    public int phraseCount;
+
+    private String[] phrases;
+    private TriggerPhraseMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        phrases = Workload.phrases(phraseCount);
+        matcher = TriggerPhraseMatcher.compile(phrases);
+    }
+
+    @Benchmark
+    public int automaton() {
+        int hits = 0;
+        for (String message : Workload.MESSAGES) {
+            if (matcher.matches(message)) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int hits = 0;
+        for (String message : Workload.MESSAGES) {
+            if (linearContains(phrases, message)) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public TriggerPhraseMatcher compile() {
+        return TriggerPhraseMatcher.compile(phrases);
+    }
+
+    // The pre-automaton implementation, kept here as the baseline
+    private static boolean linearContains(String[] phrases, String message) {
+        String lowerMessage = message.toLowerCase().trim();
+        for (String trigger : phrases) {
+            if (lowerMessage.contains(trigger.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Inputs shared by the benchmarks: realistic messages, trigger sets and fixes. */
+final class Workload {
+
+    static final String[] MESSAGES = {
+        "Hey, are you coming to dinner tonight? Let me know when you leave the office.",
+        "Call me back when you can, the car broke down near the bridge",
+        "Where are you? The meeting started ten minutes ago",
+        "ok",
+        "Bonjour, peux-tu m'envoyer ta position quand tu arrives ? Merci beaucoup !"
+    };
+
+    static final String SENDER = "+33612345678";
+
+    private Workload() {
+    }
+
+    /** The default trigger phrases followed by random filler phrases, {@code count} in total. */
+    static String[] phrases(int count) {
+        List<String> phrases = new ArrayList<>(count);
+        phrases.add("give me your location");
+        phrases.add("send location");
+        phrases.add("where are you");
+        phrases.add("share location");
+        phrases.add("your location");
+        phrases.add("location please");
+        phrases.add("send me location");
+        Random random = new Random(7);
+        while (phrases.size() < count) {
+            StringBuilder sb = new StringBuilder();
+            int words = 2 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) sb.append(' ');
+                int length = 3 + random.nextInt(6);
+                for (int i = 0; i < length; i++) {
+                    sb.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            phrases.add(sb.toString());
+        }
+        return phrases.subList(0, count).toArray(new String[0]);
+    }
+
+    static LocationFix[] fixes(int count) {
+        LocationFix[] fixes = new LocationFix[count];
+        for (int i = 0; i < count; i++) {
+            fixes[i] = new LocationFix(48.8 + i * 0.001, 2.29 + i * 0.002, 5f + i, i);
+        }
+        return fixes;
+    }
+
+    /** Contacts in mixed national and international formats, as typed into an address book. */
+    static List<String> contacts(int count) {
+        List<String> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String digits = String.format("6%08d", i * 7919 % 100_000_000);
+            contacts.add(i % 2 == 0 ? "+33 " + digits : "0" + digits);
+        }
+        return contacts;
+    }
+
+    /** Stands in for SmsManager.divideMessage, which is not available off-device. */
+    static ArrayList<String> divide(String text) {
+        ArrayList<String> parts = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += 67) {
+            parts.add(text.substring(i, Math.min(text.length(), i + 67)));
+        }
+        return parts;
+    }
+}
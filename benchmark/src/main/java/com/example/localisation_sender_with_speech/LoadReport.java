@@ -0,0 +1,130 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/** Throughput, latency percentiles and drops for one replay run. */
+final class LoadReport {
+
+    static final String TABLE_HEADER = String.format(Locale.US, "%10s %10s %9s %8s %8s %6s %9s %9s %9s %9s",
+            "offered/s", "achieved/s", "requests", "queued", "dropped", "shed",
+            "e2e_p50", "e2e_p99", "sent_p99", "dlvr_p99");
+
+    final String source;
+    final double offeredRate;
+    final int broadcasts;
+    final long dispatchNanos;
+    final LatencyHistogram.Snapshot dispatchLag;
+    final long drainMillis;
+    final int unsettled;
+    final long locationRequests;
+    final long partsSent;
+    final long retries;
+    final long auditEntries;
+    final long auditDropped;
+    final ResponderMetrics.Snapshot metrics;
+
+    LoadReport(String source, double offeredRate, int broadcasts, long dispatchNanos,
+               LatencyHistogram.Snapshot dispatchLag, long drainMillis, int unsettled,
+               long locationRequests, long partsSent, long retries, long auditEntries, long auditDropped,
+               ResponderMetrics.Snapshot metrics) {
+        this.source = source;
+        this.offeredRate = offeredRate;
+        this.broadcasts = broadcasts;
+        this.dispatchNanos = dispatchNanos;
+        this.dispatchLag = dispatchLag;
+        this.drainMillis = drainMillis;
+        this.unsettled = unsettled;
+        this.locationRequests = locationRequests;
+        this.partsSent = partsSent;
+        this.retries = retries;
+        this.auditEntries = auditEntries;
+        this.auditDropped = auditDropped;
+        this.metrics = metrics;
+    }
+
+    /** Broadcasts actually handed to the responder per second. */
+    double achievedRate() {
+        return dispatchNanos > 0 ? broadcasts * 1e9 / dispatchNanos : 0;
+    }
+
+    /** Location requests that got neither a location nor an error reply. */
+    long dropped() {
+        return counter(ResponderMetrics.Counter.NOT_ALLOWED)
+                + counter(ResponderMetrics.Counter.COALESCED)
+                + counter(ResponderMetrics.Counter.RATE_LIMITED)
+                + counter(ResponderMetrics.Counter.SHED)
+                + counter(ResponderMetrics.Counter.DEADLINE_EXCEEDED);
+    }
+
+    long counter(ResponderMetrics.Counter counter) {
+        return metrics.counter(counter);
+    }
+
+    /** One row under {@link #TABLE_HEADER}. */
+    String tableRow() {
+        return String.format(Locale.US, "%10.1f %10.1f %9d %8d %8d %6d %9.1f %9.1f %9.1f %9.1f",
+                offeredRate, achievedRate(), counter(ResponderMetrics.Counter.MATCHES),
+                counter(ResponderMetrics.Counter.REPLIES_QUEUED), dropped(), counter(ResponderMetrics.Counter.SHED),
+                percentile(ResponderMetrics.Stage.RECEIVE_TO_SEND, 50),
+                percentile(ResponderMetrics.Stage.RECEIVE_TO_SEND, 99),
+                percentile(ResponderMetrics.Stage.SENT, 99),
+                percentile(ResponderMetrics.Stage.DELIVERED, 99));
+    }
+
+    void writeTo(Appendable out) throws IOException {
+        double seconds = dispatchNanos / 1e9;
+        out.append(String.format(Locale.US, "# Replay of %s at %.1f SMS/s offered%n", source, offeredRate));
+        out.append(String.format(Locale.US,
+                "throughput      %d broadcasts in %.2f s (%.1f/s), dispatch lag p99 %.2f ms, max %.2f ms%n",
+                broadcasts, seconds, achievedRate(), dispatchLag.percentileMillis(99), dispatchLag.maxMillis()));
+        out.append(String.format(Locale.US,
+                "replies         %d location requests, %d queued (%.1f/s), %d sent, %d delivered, %d failed;"
+                        + " %d parts to the radio, %d retries, %d location fixes requested%n",
+                counter(ResponderMetrics.Counter.MATCHES), counter(ResponderMetrics.Counter.REPLIES_QUEUED),
+                seconds > 0 ? counter(ResponderMetrics.Counter.REPLIES_QUEUED) / seconds : 0,
+                counter(ResponderMetrics.Counter.SENT), counter(ResponderMetrics.Counter.DELIVERED),
+                counter(ResponderMetrics.Counter.SEND_FAILED), partsSent, retries, locationRequests));
+        out.append(String.format(Locale.US,
+                "drops           %d: %d not allowed, %d coalesced, %d rate-limited, %d shed, %d past deadline;"
+                        + " %d without a fix, %d errors%n",
+                dropped(), counter(ResponderMetrics.Counter.NOT_ALLOWED), counter(ResponderMetrics.Counter.COALESCED),
+                counter(ResponderMetrics.Counter.RATE_LIMITED), counter(ResponderMetrics.Counter.SHED),
+                counter(ResponderMetrics.Counter.DEADLINE_EXCEEDED), counter(ResponderMetrics.Counter.NO_FIX),
+                counter(ResponderMetrics.Counter.ERRORS)));
+        for (ResponderMetrics.Stage stage : new ResponderMetrics.Stage[] {
+                ResponderMetrics.Stage.RECEIVE_TO_SEND, ResponderMetrics.Stage.SENT, ResponderMetrics.Stage.DELIVERED}) {
+            LatencyHistogram.Snapshot histogram = metrics.stage(stage);
+            out.append(String.format(Locale.US, "%-15s p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms (%d)%n",
+                    stage.name().toLowerCase(Locale.US), histogram.percentileMillis(50),
+                    histogram.percentileMillis(90), histogram.percentileMillis(99), histogram.maxMillis(),
+                    histogram.getCount()));
+        }
+        out.append(String.format(Locale.US, "audit           %d entries written, %d dropped%n",
+                auditEntries, auditDropped));
+        if (unsettled == 0) {
+            out.append(String.format(Locale.US, "drain           every reply settled %d ms after the last broadcast%n",
+                    drainMillis));
+        } else {
+            out.append(String.format(Locale.US, "drain           %d replies still unsettled %d ms after the last broadcast%n",
+                    unsettled, drainMillis));
+        }
+        out.append('\n');
+        metrics.writeTo(out);
+    }
+
+    private double percentile(ResponderMetrics.Stage stage, double percentile) {
+        return metrics.stage(stage).percentileMillis(percentile);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(4096);
+        try {
+            writeTo(report);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw
+        }
+        return report.toString();
+    }
+}
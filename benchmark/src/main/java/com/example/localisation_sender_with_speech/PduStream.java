@@ -0,0 +1,228 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A timed sequence of SMS_RECEIVED broadcasts, generated or read from a recording.
+ *
+ * The text format has one broadcast per line: the offset from the start in milliseconds, the
+ * PDU format and the broadcast's PDUs in hex, separated by commas. Lines starting with
+ * {@code #} are comments.
+ * <pre>
+ * 0 3gpp 07913306091093F0040B913316325476F8000052605121430508...
+ * 12 3gpp 07913306...,07913306...
+ * </pre>
+ */
+final class PduStream {
+
+    /** Mix of traffic in a generated stream. */
+    static final class Mix {
+        static final Mix DEFAULT = new Mix(500, 0.2, 0.6, 0.02, 0.1, 0.05);
+
+        /** Senders on the allow-list; see {@link #contact}. */
+        final int contacts;
+        /** Share of messages from numbers that are not contacts. */
+        final double strangerRate;
+        /** Share of messages that ask for the location. */
+        final double triggerRate;
+        /** Share of location requests that mention an emergency. */
+        final double emergencyRate;
+        /** Share of messages long enough to arrive in several parts. */
+        final double concatenatedRate;
+        /** Share of messages in UCS-2. */
+        final double ucs2Rate;
+
+        Mix(int contacts, double strangerRate, double triggerRate, double emergencyRate,
+            double concatenatedRate, double ucs2Rate) {
+            this.contacts = contacts;
+            this.strangerRate = strangerRate;
+            this.triggerRate = triggerRate;
+            this.emergencyRate = emergencyRate;
+            this.concatenatedRate = concatenatedRate;
+            this.ucs2Rate = ucs2Rate;
+        }
+
+        Mix withContacts(int contacts) {
+            return new Mix(contacts, strangerRate, triggerRate, emergencyRate, concatenatedRate, ucs2Rate);
+        }
+    }
+
+    static final class Broadcast {
+        final long offsetMillis;
+        final String format;
+        final byte[][] pdus;
+
+        Broadcast(long offsetMillis, String format, byte[][] pdus) {
+            this.offsetMillis = offsetMillis;
+            this.format = format;
+            this.pdus = pdus;
+        }
+    }
+
+    private static final String[] REQUESTS = {
+        "Where are you?",
+        "hey, send location when you can",
+        "Can you share location please",
+        "Give me your location, I'm outside",
+        "location please",
+        "Mum says: where are you??"
+    };
+
+    private static final String[] EMERGENCIES = {
+        "SOS where are you",
+        "Accident on the A6, send location",
+        "urgent: share location now"
+    };
+
+    private static final String[] CHATTER = {
+        "Hey, are you coming to dinner tonight? Let me know when you leave the office.",
+        "Call me back when you can",
+        "ok",
+        "Bonjour, tu rentres à quelle heure ce soir ?",
+        "Your parcel will be delivered tomorrow between 9:00 and 13:00"
+    };
+
+    // Long enough to be split by the sender's phone
+    private static final String LONG_PADDING = " Sorry for the long message, I tried calling twice but it went"
+            + " straight to voicemail and the battery on this phone is almost gone so I'll keep it short.";
+
+    private final List<Broadcast> broadcasts;
+
+    PduStream(List<Broadcast> broadcasts) {
+        this.broadcasts = Collections.unmodifiableList(broadcasts);
+    }
+
+    List<Broadcast> getBroadcasts() {
+        return broadcasts;
+    }
+
+    int size() {
+        return broadcasts.size();
+    }
+
+    long durationMillis() {
+        return broadcasts.isEmpty() ? 0 : broadcasts.get(broadcasts.size() - 1).offsetMillis;
+    }
+
+    /** The allow-listed number with the given index, in international format. */
+    static String contact(int index) {
+        return String.format(Locale.US, "+3361%07d", index);
+    }
+
+    /**
+     * Poisson arrivals at {@code ratePerSecond} for {@code durationMillis}. The same seed
+     * always gives the same stream.
+     */
+    static PduStream generate(double ratePerSecond, long durationMillis, Mix mix, long seed) {
+        Random random = new Random(seed);
+        List<Broadcast> broadcasts = new ArrayList<>((int) (ratePerSecond * durationMillis / 1000) + 16);
+        double offset = 0;
+        int reference = 0;
+        while (true) {
+            offset += -Math.log(1 - random.nextDouble()) * 1000 / ratePerSecond;
+            if (offset >= durationMillis) break;
+
+            String sender = random.nextDouble() < mix.strangerRate || mix.contacts == 0
+                    ? String.format(Locale.US, "+4477009%05d", random.nextInt(100_000))
+                    : contact(random.nextInt(mix.contacts));
+            String text;
+            if (random.nextDouble() < mix.triggerRate) {
+                text = random.nextDouble() < mix.emergencyRate
+                        ? pick(random, EMERGENCIES)
+                        : pick(random, REQUESTS);
+            } else {
+                text = pick(random, CHATTER);
+            }
+            boolean ucs2 = random.nextDouble() < mix.ucs2Rate;
+
+            byte[][] pdus;
+            if (random.nextDouble() < mix.concatenatedRate) {
+                // Trigger at the start, so with 60-char parts it is usually split across two
+                List<byte[]> parts = SmsPduFixtures.concatenated(sender, text + LONG_PADDING, 60,
+                        reference++ & 0xFF, ucs2, false);
+                pdus = parts.toArray(new byte[0][]);
+            } else {
+                pdus = new byte[][] {ucs2 ? SmsPduFixtures.ucs2(sender, text) : SmsPduFixtures.gsm7(sender, text)};
+            }
+            broadcasts.add(new Broadcast((long) offset, "3gpp", pdus));
+        }
+        return new PduStream(broadcasts);
+    }
+
+    static PduStream read(File file) throws IOException {
+        List<Broadcast> broadcasts = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII))) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length != 3) {
+                    throw new IOException(file + ":" + number + ": expected 'offset_ms format pdu[,pdu...]'");
+                }
+                String[] hex = fields[2].split(",");
+                byte[][] pdus = new byte[hex.length][];
+                try {
+                    for (int i = 0; i < hex.length; i++) {
+                        pdus[i] = SmsPduFixtures.hex(hex[i]);
+                    }
+                    broadcasts.add(new Broadcast(Long.parseLong(fields[0]), fields[1], pdus));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        // Recordings from several devices may be concatenated
+        broadcasts.sort((a, b) -> Long.compare(a.offsetMillis, b.offsetMillis));
+        return new PduStream(broadcasts);
+    }
+
+    void write(File file) throws IOException {
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII))) {
+            out.write("# offset_ms format pdu[,pdu...]\n");
+            for (Broadcast broadcast : broadcasts) {
+                out.write(Long.toString(broadcast.offsetMillis));
+                out.write(' ');
+                out.write(broadcast.format);
+                out.write(' ');
+                for (int i = 0; i < broadcast.pdus.length; i++) {
+                    if (i > 0) out.write(',');
+                    out.write(hex(broadcast.pdus[i]));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] digits = "0123456789ABCDEF".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = digits[(bytes[i] >> 4) & 0x0F];
+            out[2 * i + 1] = digits[bytes[i] & 0x0F];
+        }
+        return new String(out);
+    }
+
+    private static String pick(Random random, String[] options) {
+        return options[random.nextInt(options.length)];
+    }
+}
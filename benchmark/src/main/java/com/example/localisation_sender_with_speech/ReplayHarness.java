@@ -0,0 +1,314 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds SMS_RECEIVED broadcasts through the real responder on a plain JVM, with the radio and
+ * the location provider replaced by {@link SimulatedSmsGateway} and
+ * {@link SimulatedLocationSource}, and reports throughput, latency percentiles and drops.
+ *
+ * <pre>
+ * ./gradlew :benchmark:replay --args="--rates 10,100,1000 --duration 10"
+ * ./gradlew :benchmark:replay --args="--stream recorded.pdus --location-latency 3000"
+ * </pre>
+ *
+ * Each rate gets a fresh responder, metrics, journal and audit log. Broadcasts are dispatched from one
+ * thread at their recorded offsets, like the main thread running the receiver, and the run
+ * ends once every queued reply has been sent and delivered or failed.
+ */
+public final class ReplayHarness {
+
+    static final class Options {
+        double[] rates = {10, 100, 1000};
+        long durationMillis = 10_000;
+        long seed = 1;
+        int contacts = PduStream.Mix.DEFAULT.contacts;
+        File stream;
+        File record;
+        File report;
+        double sendLatencyMillis = 300;
+        double sendFailureRate = 0.01;
+        double deliveryLatencyMillis = 2000;
+        double deliveryFailureRate = 0.01;
+        double locationLatencyMillis = 1500;
+        double locationFailureRate = 0.02;
+        float locationAccuracyMeters = 12f;
+        boolean coldCache;
+        boolean rateLimit = true;
+        long drainTimeoutMillis = 60_000;
+        Logger.Level logLevel = Logger.Level.ERROR;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String flag = args[i];
+                switch (flag) {
+                    case "--cold-cache":
+                        options.coldCache = true;
+                        continue;
+                    case "--no-rate-limit":
+                        options.rateLimit = false;
+                        continue;
+                    default:
+                        break;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + flag);
+                }
+                String value = args[++i];
+                switch (flag) {
+                    case "--rates":
+                        options.rates = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+                        break;
+                    case "--duration":
+                        options.durationMillis = (long) (Double.parseDouble(value) * 1000);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--contacts":
+                        options.contacts = Integer.parseInt(value);
+                        break;
+                    case "--stream":
+                        options.stream = new File(value);
+                        break;
+                    case "--record":
+                        options.record = new File(value);
+                        break;
+                    case "--report":
+                        options.report = new File(value);
+                        break;
+                    case "--send-latency":
+                        options.sendLatencyMillis = Double.parseDouble(value);
+                        break;
+                    case "--send-failure":
+                        options.sendFailureRate = Double.parseDouble(value);
+                        break;
+                    case "--delivery-latency":
+                        options.deliveryLatencyMillis = Double.parseDouble(value);
+                        break;
+                    case "--delivery-failure":
+                        options.deliveryFailureRate = Double.parseDouble(value);
+                        break;
+                    case "--location-latency":
+                        options.locationLatencyMillis = Double.parseDouble(value);
+                        break;
+                    case "--location-failure":
+                        options.locationFailureRate = Double.parseDouble(value);
+                        break;
+                    case "--location-accuracy":
+                        options.locationAccuracyMeters = Float.parseFloat(value);
+                        break;
+                    case "--drain-timeout":
+                        options.drainTimeoutMillis = (long) (Double.parseDouble(value) * 1000);
+                        break;
+                    case "--log-level":
+                        options.logLevel = Logger.Level.valueOf(value.toUpperCase(Locale.US));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + flag);
+                }
+            }
+            return options;
+        }
+    }
+
+    private static final String USAGE = "Usage: ReplayHarness [--rates 10,100,1000] [--duration seconds]"
+            + " [--seed n] [--contacts n] [--stream file | --record file] [--report file]"
+            + " [--send-latency ms] [--send-failure rate] [--delivery-latency ms] [--delivery-failure rate]"
+            + " [--location-latency ms] [--location-failure rate] [--location-accuracy m]"
+            + " [--cold-cache] [--no-rate-limit] [--drain-timeout seconds] [--log-level level]";
+
+    // The generated streams hold no tracking commands
+    private static final SmsResponder.Tracking NO_TRACKING = new SmsResponder.Tracking() {
+        @Override
+        public boolean start(String sender, long durationMillis) {
+            return true;
+        }
+
+        @Override
+        public void stop(String sender) {
+        }
+    };
+
+    private ReplayHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        Logger.configure(options.logLevel, Logger.STDERR);
+
+        List<LoadReport> reports = new ArrayList<>();
+        if (options.stream != null) {
+            PduStream stream = PduStream.read(options.stream);
+            double rate = stream.durationMillis() > 0 ? stream.size() * 1000.0 / stream.durationMillis() : 0;
+            reports.add(run(options, stream, options.stream.getName(), rate));
+        } else {
+            PduStream.Mix mix = PduStream.Mix.DEFAULT.withContacts(options.contacts);
+            for (double rate : options.rates) {
+                PduStream stream = PduStream.generate(rate, options.durationMillis, mix, options.seed);
+                if (options.record != null) {
+                    // One recording per rate, next to the requested name
+                    stream.write(options.rates.length == 1 ? options.record
+                            : new File(options.record.getPath() + "." + (long) rate));
+                }
+                reports.add(run(options, stream, "generated stream (seed " + options.seed + ")", rate));
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (LoadReport report : reports) {
+            report.writeTo(out);
+            out.append('\n');
+        }
+        out.append(LoadReport.TABLE_HEADER).append('\n');
+        for (LoadReport report : reports) {
+            out.append(report.tableRow()).append('\n');
+        }
+        System.out.print(out);
+        if (options.report != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(options.report), StandardCharsets.UTF_8)) {
+                writer.append(out);
+            }
+        }
+    }
+
+    /** Replays {@code stream} against a fresh responder and waits for every reply to settle. */
+    static LoadReport run(Options options, PduStream stream, String source, double offeredRate)
+            throws IOException, InterruptedException {
+        ResponderMetrics metrics = new ResponderMetrics();
+        FlightRecorder recorder = new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY);
+        ScheduledExecutorService radio = Executors.newScheduledThreadPool(2, SmsResponsePipeline.namedThreads("sim-radio"));
+        ScheduledExecutorService provider = Executors.newSingleThreadScheduledExecutor(
+                SmsResponsePipeline.namedThreads("sim-location"));
+        ScheduledExecutorService outboundThread = Executors.newSingleThreadScheduledExecutor(
+                SmsResponsePipeline.namedThreads("sms-outbound"));
+        File journalFile = File.createTempFile("replay-outbound", ".journal");
+        journalFile.deleteOnExit();
+        OutboundJournal journal = new OutboundJournal(journalFile);
+        File auditDir = Files.createTempDirectory("replay-audit").toFile();
+        AuditLog audit = AuditLog.open(auditDir, AuditLog.Config.DEFAULT, System::currentTimeMillis);
+        SmsResponder responder = null;
+        try {
+            SimulatedSmsGateway gateway = new SimulatedSmsGateway(radio, options.sendLatencyMillis,
+                    options.sendFailureRate, options.deliveryLatencyMillis, options.deliveryFailureRate);
+            OutboundSmsQueue queue = new OutboundSmsQueue(gateway, journal, outboundThread,
+                    OutboundSmsQueue.RetryPolicy.DEFAULT, System::currentTimeMillis,
+                    new OutboundMetrics(metrics, recorder, audit));
+            gateway.attach(queue);
+            queue.start();
+
+            SimulatedLocationSource location = new SimulatedLocationSource(provider, options.locationLatencyMillis,
+                    options.locationFailureRate, options.locationAccuracyMeters);
+            LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+            if (!options.coldCache) {
+                cache.offer(location.fix(0));
+            }
+            LocationBroker broker = new LocationBroker(location, cache,
+                    AcquisitionPolicy.BALANCED.getAccuracyTargetMeters());
+
+            SmsResponder.Limits defaults = SmsResponder.Limits.DEFAULT;
+            SmsResponder.Limits limits = options.rateLimit ? defaults : new SmsResponder.Limits(
+                    defaults.budgetMillis, defaults.workerThreads, defaults.maxQueuedRequests,
+                    defaults.locationLimit, defaults.locationReserved, defaults.sendLimit, defaults.sendReserved,
+                    new SenderRateLimiter.Config(Integer.MAX_VALUE, 1, 0, 60_000, Integer.MAX_VALUE));
+            responder = new SmsResponder(limits, new LocationResolver(cache, broker),
+                    new ResponseRenderer(SimulatedSmsCodec.INSTANCE), SimulatedSmsCodec.INSTANCE, queue,
+                    metrics, recorder, audit, NO_TRACKING, sender -> { });
+
+            ResponderConfig config = config(options.contacts);
+            LatencyHistogram lag = new LatencyHistogram();
+            AtomicInteger inFlight = new AtomicInteger();
+
+            long start = System.nanoTime();
+            for (PduStream.Broadcast broadcast : stream.getBroadcasts()) {
+                long due = start + TimeUnit.MILLISECONDS.toNanos(broadcast.offsetMillis);
+                long now;
+                while ((now = System.nanoTime()) < due) {
+                    LockSupport.parkNanos(due - now);
+                }
+                lag.recordNanos(now - due);
+                SmsResponder.Batch batch = responder.prepare(config, broadcast.pdus, broadcast.format, now);
+                if (batch != null) {
+                    inFlight.incrementAndGet();
+                    responder.submit(batch, inFlight::decrementAndGet);
+                }
+            }
+            long dispatchNanos = System.nanoTime() - start;
+
+            // Pipeline first (bounded by the broadcast budget), then the radio
+            long drainStart = System.nanoTime();
+            long drainDeadline = drainStart + TimeUnit.MILLISECONDS.toNanos(options.drainTimeoutMillis);
+            while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+                Thread.sleep(5);
+            }
+            while ((queue.depth() > 0 || queue.awaitingDeliveryCount() > 0) && System.nanoTime() < drainDeadline) {
+                Thread.sleep(5);
+            }
+            int unsettled = inFlight.get() + queue.depth() + queue.awaitingDeliveryCount();
+            long drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart);
+            audit.sync(options.drainTimeoutMillis, TimeUnit.MILLISECONDS);
+
+            return new LoadReport(source, offeredRate, stream.size(), dispatchNanos, lag.snapshot(), drainMillis,
+                    unsettled, location.requestCount(), gateway.partsSent(), queue.retryCount(), audit.size(),
+                    audit.droppedCount(), metrics.snapshot());
+        } finally {
+            if (responder != null) {
+                responder.shutdown();
+            }
+            outboundThread.shutdownNow();
+            radio.shutdownNow();
+            provider.shutdownNow();
+            journal.close();
+            journalFile.delete();
+            audit.close();
+            File[] auditFiles = auditDir.listFiles();
+            if (auditFiles != null) {
+                for (File file : auditFiles) {
+                    file.delete();
+                }
+            }
+            auditDir.delete();
+        }
+    }
+
+    /** The app's triggers and reply plans, enabled, with every generated contact allow-listed. */
+    static ResponderConfig config(int contacts) {
+        List<String> allowed = new ArrayList<>(contacts);
+        for (int i = 0; i < contacts; i++) {
+            allowed.add(PduStream.contact(i));
+        }
+        return new ResponderConfig(true, true, true,
+                FuzzyPhraseMatcher.compile(ResponderConfig.TRIGGER_PHRASES),
+                TriggerPhraseMatcher.compile(ResponderConfig.EMERGENCY_KEYWORDS),
+                AcquisitionPolicy.BALANCED,
+                SmsPayloadEncoder.autoReply(SmsPayloadEncoder.DEFAULT_SEGMENT_BUDGET,
+                        SmsPayloadEncoder.DEFAULT_COORDINATE_DECIMALS, true, false),
+                SmsPayloadEncoder.autoReply(SmsPayloadEncoder.DEFAULT_SEGMENT_BUDGET,
+                        SmsPayloadEncoder.DEFAULT_COORDINATE_DECIMALS, true, true),
+                AllowList.build(allowed, new AddressNormalizer("33")), null);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Random latencies and failures for the simulated radio and location provider. */
+final class SimulatedDelay {
+
+    private SimulatedDelay() {
+    }
+
+    /** Exponentially distributed delay with the given mean; 0 for a mean of 0. */
+    static long millis(double meanMillis) {
+        if (meanMillis <= 0) return 0;
+        double u = ThreadLocalRandom.current().nextDouble();
+        return Math.round(-meanMillis * Math.log(1 - u));
+    }
+
+    /** True with probability {@code rate}. */
+    static boolean fails(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
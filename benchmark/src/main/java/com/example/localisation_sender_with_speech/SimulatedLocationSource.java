@@ -0,0 +1,53 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process location provider: every request ends after a random delay with either a fix
+ * near Paris at the configured accuracy or a timeout error.
+ */
+final class SimulatedLocationSource implements LocationSource {
+
+    private final ScheduledExecutorService provider;
+    private final double latencyMillis;
+    private final double failureRate;
+    private final float accuracyMeters;
+    private final AtomicLong requests = new AtomicLong();
+
+    SimulatedLocationSource(ScheduledExecutorService provider, double latencyMillis, double failureRate,
+                            float accuracyMeters) {
+        this.provider = provider;
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.accuracyMeters = accuracyMeters;
+    }
+
+    @Override
+    public Request request(float accuracyTargetMeters, Callback callback) {
+        long n = requests.incrementAndGet();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        provider.schedule(() -> {
+            if (cancelled.get()) return;
+            if (SimulatedDelay.fails(failureRate)) {
+                callback.onError(new TimeoutException("Simulated location timeout"));
+            } else {
+                callback.onFix(fix(n));
+            }
+        }, SimulatedDelay.millis(latencyMillis), TimeUnit.MILLISECONDS);
+        return () -> cancelled.set(true);
+    }
+
+    /** The {@code n}th simulated fix; also used to seed the cache before a run. */
+    LocationFix fix(long n) {
+        return new LocationFix(48.8584 + (n % 100) * 1e-5, 2.2945 + (n % 100) * 1e-5, accuracyMeters,
+                System.currentTimeMillis());
+    }
+
+    long requestCount() {
+        return requests.get();
+    }
+}
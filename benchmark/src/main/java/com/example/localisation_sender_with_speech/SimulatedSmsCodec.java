@@ -0,0 +1,44 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+
+/**
+ * Stand-in for SmsManager.divideMessage and SmsMessage.createFromPdu: splits on the standard
+ * per-part sizes and leaves non-3GPP PDUs unparsed, which the harness never generates.
+ */
+final class SimulatedSmsCodec implements SmsCodec {
+
+    static final SimulatedSmsCodec INSTANCE = new SimulatedSmsCodec();
+
+    private SimulatedSmsCodec() {
+    }
+
+    @Override
+    public ArrayList<String> divide(String text) {
+        SmsPayloadEncoder.Count count = SmsPayloadEncoder.count(text);
+        ArrayList<String> parts = new ArrayList<>(count.getSegments());
+        if (count.getSegments() <= 1) {
+            parts.add(text);
+            return parts;
+        }
+        // Close enough for GSM-7 extension characters, which take two septets
+        int partLength = count.getEncoding() == SmsPayloadEncoder.Encoding.GSM7
+                ? SmsPayloadEncoder.GSM7_PART_SEPTETS
+                : SmsPayloadEncoder.UCS2_PART_UNITS;
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + partLength);
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            parts.add(text.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+
+    @Override
+    public SmsPdu parseSingle(byte[] pdu, String format) {
+        return null;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process radio: accepts each part after a random delay, fails a share of sends with a
+ * transient error the queue retries, and reports delivery of accepted parts after another
+ * delay. Outcomes go back to the attached {@link OutboundSmsQueue}, as the status broadcasts do
+ * on a device.
+ */
+final class SimulatedSmsGateway implements SmsGateway {
+
+    private final ScheduledExecutorService radio;
+    private final double sendLatencyMillis;
+    private final double sendFailureRate;
+    private final double deliveryLatencyMillis;
+    private final double deliveryFailureRate;
+    private final AtomicLong partsSent = new AtomicLong();
+    private volatile OutboundSmsQueue queue;
+
+    SimulatedSmsGateway(ScheduledExecutorService radio, double sendLatencyMillis, double sendFailureRate,
+                        double deliveryLatencyMillis, double deliveryFailureRate) {
+        this.radio = radio;
+        this.sendLatencyMillis = sendLatencyMillis;
+        this.sendFailureRate = sendFailureRate;
+        this.deliveryLatencyMillis = deliveryLatencyMillis;
+        this.deliveryFailureRate = deliveryFailureRate;
+    }
+
+    /** The queue is built with this gateway, so it is attached afterwards. */
+    void attach(OutboundSmsQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void send(long messageId, int attempt, String destination, List<String> parts) {
+        for (int part = 0; part < parts.size(); part++) {
+            final int index = part;
+            partsSent.incrementAndGet();
+            radio.schedule(() -> {
+                if (SimulatedDelay.fails(sendFailureRate)) {
+                    queue.onSent(messageId, attempt, index, OutboundSmsQueue.SendResult.RETRY);
+                    return;
+                }
+                queue.onSent(messageId, attempt, index, OutboundSmsQueue.SendResult.OK);
+                radio.schedule(() -> queue.onDelivered(messageId, index, !SimulatedDelay.fails(deliveryFailureRate)),
+                        SimulatedDelay.millis(deliveryLatencyMillis), TimeUnit.MILLISECONDS);
+            }, SimulatedDelay.millis(sendLatencyMillis), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Parts handed to the radio, retries included. */
+    long partsSent() {
+        return partsSent.get();
+    }
+}
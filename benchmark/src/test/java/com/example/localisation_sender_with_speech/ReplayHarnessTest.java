@@ -0,0 +1,59 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ReplayHarnessTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void generatedStreamIsReproducibleAndSurvivesRecording() throws Exception {
+        PduStream stream = PduStream.generate(200, 1000, PduStream.Mix.DEFAULT, 42);
+        PduStream again = PduStream.generate(200, 1000, PduStream.Mix.DEFAULT, 42);
+        assertTrue(stream.size() > 100);
+        assertEquals(stream.size(), again.size());
+
+        File file = folder.newFile("stream.pdus");
+        stream.write(file);
+        PduStream read = PduStream.read(file);
+        assertEquals(stream.size(), read.size());
+        for (int i = 0; i < stream.size(); i++) {
+            PduStream.Broadcast expected = stream.getBroadcasts().get(i);
+            PduStream.Broadcast actual = read.getBroadcasts().get(i);
+            assertEquals(expected.offsetMillis, actual.offsetMillis);
+            assertEquals(expected.format, actual.format);
+            assertArrayEquals(expected.pdus, actual.pdus);
+        }
+    }
+
+    @Test
+    public void everyLocationRequestIsAccountedFor() throws Exception {
+        ReplayHarness.Options options = ReplayHarness.Options.parse(new String[] {
+                "--send-latency", "5", "--delivery-latency", "5", "--send-failure", "0",
+                "--delivery-failure", "0", "--location-latency", "5", "--location-failure", "0",
+                "--drain-timeout", "10"});
+        PduStream stream = PduStream.generate(100, 1000, PduStream.Mix.DEFAULT.withContacts(options.contacts), 7);
+
+        LoadReport report = ReplayHarness.run(options, stream, "test", 100);
+
+        assertEquals(stream.size(), report.broadcasts);
+        assertEquals(stream.size(), report.counter(ResponderMetrics.Counter.BROADCASTS));
+        assertEquals(0, report.unsettled);
+        assertEquals(0, report.counter(ResponderMetrics.Counter.ERRORS));
+        assertTrue(report.auditEntries > 0);
+        assertEquals(0, report.auditDropped);
+        long requests = report.counter(ResponderMetrics.Counter.MATCHES);
+        assertTrue(requests > 0);
+        assertEquals(requests, report.counter(ResponderMetrics.Counter.REPLIES_QUEUED) + report.dropped());
+        assertEquals(report.counter(ResponderMetrics.Counter.REPLIES_QUEUED),
+                report.counter(ResponderMetrics.Counter.DELIVERED));
+        assertTrue(report.toString(), report.toString().contains("receive_to_send"));
+    }
+}
@@ -0,0 +1,14 @@
+// Responder logic with no Android dependencies, so it can be tested and benchmarked on any JVM
+plugins {
+    `java-library`
+    `java-test-fixtures`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,53 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Locale;
+
+/**
+ * How an auto-reply trades latency for accuracy when no cached fix is good enough.
+ *
+ * A fresh fix is requested and the first one within {@link #getAccuracyTargetMeters()} is
+ * sent. If none arrives within {@link #getFreshTimeoutMillis()} (or the broadcast deadline,
+ * whichever is sooner), the best fix seen so far is sent, marked with its age and accuracy.
+ */
+public final class AcquisitionPolicy {
+
+    /** Reply quickly with whatever is reasonable. */
+    public static final AcquisitionPolicy LATENCY_FIRST = new AcquisitionPolicy("latency_first", 100f, 2000);
+    public static final AcquisitionPolicy BALANCED = new AcquisitionPolicy("balanced", 50f, 5000);
+    /** Wait as long as the broadcast allows for a GPS-grade fix. */
+    public static final AcquisitionPolicy ACCURACY_FIRST = new AcquisitionPolicy("accuracy_first", 15f, 7000);
+
+    private final String name;
+    private final float accuracyTargetMeters;
+    private final long freshTimeoutMillis;
+
+    public AcquisitionPolicy(String name, float accuracyTargetMeters, long freshTimeoutMillis) {
+        this.name = name;
+        this.accuracyTargetMeters = accuracyTargetMeters;
+        this.freshTimeoutMillis = freshTimeoutMillis;
+    }
+
+    /** Looks up a preset by name, falling back to {@link #BALANCED}. */
+    public static AcquisitionPolicy named(String name) {
+        if (name != null) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "latency_first": return LATENCY_FIRST;
+                case "accuracy_first": return ACCURACY_FIRST;
+                default: break;
+            }
+        }
+        return BALANCED;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getAccuracyTargetMeters() {
+        return accuracyTargetMeters;
+    }
+
+    public long getFreshTimeoutMillis() {
+        return freshTimeoutMillis;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoized {@link PhoneNumbers#toE164} for one home calling code.
+ *
+ * Senders repeat, so after the first message from an address its canonical form is a single
+ * hash lookup with no parsing or allocation. The cache is bounded by simply starting over
+ * when it fills up.
+ */
+public final class AddressNormalizer {
+
+    static final int MAX_CACHED = 4096;
+
+    private final String callingCode;
+    private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+
+    /** @param callingCode home calling code such as "33", or null to leave national numbers as they are */
+    public AddressNormalizer(String callingCode) {
+        this.callingCode = callingCode;
+    }
+
+    public String normalize(String address) {
+        if (address == null) return "";
+        String normalized = cache.get(address);
+        if (normalized == null) {
+            normalized = PhoneNumbers.toE164(address, callingCode);
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(address, normalized);
+        }
+        return normalized;
+    }
+
+    public String getCallingCode() {
+        return callingCode;
+    }
+
+    int cachedCount() {
+        return cache.size();
+    }
+}
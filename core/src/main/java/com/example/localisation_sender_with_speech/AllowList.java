@@ -0,0 +1,51 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable hashed index of allowed contacts in E.164 form.
+ *
+ * Built once from the stored contacts and replaced as a whole when they change, so checking
+ * a sender is one memoized normalization plus one hash lookup whatever the list size.
+ */
+public final class AllowList {
+
+    private final AddressNormalizer normalizer;
+    private final Set<String> numbers;
+
+    private AllowList(AddressNormalizer normalizer, Set<String> numbers) {
+        this.normalizer = normalizer;
+        this.numbers = numbers;
+    }
+
+    public static AllowList build(Collection<String> contacts, AddressNormalizer normalizer) {
+        Set<String> numbers = new HashSet<>(Math.max(16, contacts.size() * 2));
+        for (String contact : contacts) {
+            // Contacts are normalized directly; only incoming addresses go through the cache
+            String number = PhoneNumbers.toE164(contact, normalizer.getCallingCode());
+            if (!number.isEmpty()) {
+                numbers.add(number);
+            }
+        }
+        return new AllowList(normalizer, Collections.unmodifiableSet(numbers));
+    }
+
+    public boolean contains(String address) {
+        return !numbers.isEmpty() && numbers.contains(normalizer.normalize(address));
+    }
+
+    public boolean isEmpty() {
+        return numbers.isEmpty();
+    }
+
+    public int size() {
+        return numbers.size();
+    }
+
+    public AddressNormalizer getNormalizer() {
+        return normalizer;
+    }
+}
@@ -0,0 +1,1073 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of who asked for the location, what was decided, which fix was used
+ * and what became of the reply.
+ *
+ * {@link #record} never blocks: entries go to a single writer thread that group-commits
+ * them, writing whatever accumulated during the previous fsync as one batch with one fsync.
+ * The log is split into segments that roll by size and by age, and retention deletes whole
+ * segments. Every sealed segment gets an index file with a sparse offset/time index and
+ * per-sender postings, loaded on demand, so a page of history reads a few blocks of the
+ * segments it returns however long the log has grown.
+ *
+ * Senders are matched in E.164 through an {@link AddressNormalizer}, so with home code 33
+ * "0612345678" and "+33612345678" share one history. Index files record the calling code they
+ * were keyed with; recovery rebuilds those keyed with another.
+ */
+public final class AuditLog implements Closeable {
+
+    public enum Type {
+        /** A location request arrived; detail is its priority and part count. */
+        REQUEST,
+        /** Allow-list, rate-limit or overload decision for a request. */
+        DECISION,
+        /** The fix a reply was built from, or why there was none. */
+        FIX,
+        /** A reply was queued; ref is its outbound message id. */
+        QUEUED,
+        SENT,
+        DELIVERED,
+        FAILED
+    }
+
+    public static final class Config {
+        /** Six months of history in segments of at most 1 MB or one day. */
+        public static final Config DEFAULT = new Config(TimeUnit.DAYS.toMillis(183), 1 << 20,
+                TimeUnit.DAYS.toMillis(1), 4096);
+
+        final long retentionMillis;
+        final int maxSegmentBytes;
+        final long maxSegmentSpanMillis;
+        final int maxPendingEntries;
+
+        /** @param maxPendingEntries entries waiting for the writer beyond this are dropped */
+        public Config(long retentionMillis, int maxSegmentBytes, long maxSegmentSpanMillis, int maxPendingEntries) {
+            this.retentionMillis = retentionMillis;
+            this.maxSegmentBytes = maxSegmentBytes;
+            this.maxSegmentSpanMillis = maxSegmentSpanMillis;
+            this.maxPendingEntries = maxPendingEntries;
+        }
+    }
+
+    public static final class Entry {
+        private final long seq;
+        private final long timeMillis;
+        private final Type type;
+        private final String sender;
+        private final long ref;
+        private final String detail;
+
+        Entry(long seq, long timeMillis, Type type, String sender, long ref, String detail) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.type = type;
+            this.sender = sender;
+            this.ref = ref;
+            this.detail = detail;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /** The requester's address as received, or "" if not known. */
+        public String getSender() {
+            return sender;
+        }
+
+        /** The outbound message id for QUEUED, SENT, DELIVERED and FAILED, otherwise 0. */
+        public long getRef() {
+            return ref;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "#%d %d %s %s%s %s", seq, timeMillis, type, sender,
+                    ref != 0 ? " sms " + ref : "", detail);
+        }
+    }
+
+    /** Entries newest first, and the cursor for the next (older) page. */
+    public static final class Page {
+        private final List<Entry> entries;
+        private final long nextCursor;
+        private final boolean hasMore;
+
+        Page(List<Entry> entries, long nextCursor, boolean hasMore) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /** Pass to {@link #page} for the entries older than this page. */
+        public long getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+
+    /** Cursor for the first page: everything. */
+    public static final long NEWEST = Long.MAX_VALUE;
+
+    private static final Logger LOG = Logger.get("AuditLog");
+
+    private static final String PREFIX = "audit-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_MAGIC = 0x41494458; // "AIDX"
+    private static final int INDEX_VERSION = 2;
+    // One sparse index point per block of entries; a page reads whole blocks
+    static final int BLOCK_ENTRIES = 32;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_DETAIL_CHARS = 512;
+    private static final int MAX_BATCH = 512;
+    private static final int CACHED_INDEXES = 4;
+    private static final int MAX_TRACKED_REPLIES = 1024;
+    private static final long RETENTION_CHECK_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Queued by close(); the writer commits what came before it and stops
+    private static final Entry CLOSE = new Entry(0, 0, Type.REQUEST, "", 0, "");
+
+    private final File dir;
+    private final Config config;
+    private final LongSupplier clock;
+    private final AddressNormalizer senders;
+    // The calling code the postings are keyed with, as written in index files
+    private final String keyedWith;
+    private final LinkedBlockingQueue<Entry> pending;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    // Outbound ids of replies still waiting for an outcome, so SENT and DELIVERED land in the sender's history
+    private final ConcurrentHashMap<Long, String> replies = new ConcurrentHashMap<>();
+    private final Thread writer;
+    // Open until recovery is done; readers wait on it, record() doesn't
+    private final CountDownLatch recovered = new CountDownLatch(1);
+    private volatile IOException recoveryError;
+    private volatile boolean closed;
+
+    // Guarded by this: the segment list, the active segment's live index and the index cache
+    private final List<Segment> segments = new ArrayList<>();
+    private final LinkedHashMap<Segment, SegmentIndex> indexCache = new LinkedHashMap<>(8, 0.75f, true);
+    private long committed;
+
+    // Writer thread only
+    private Segment active;
+    private FileChannel activeChannel;
+    private long nextSeq = 1;
+    private long lastRetentionCheck;
+
+    private AuditLog(File dir, Config config, AddressNormalizer senders, LongSupplier clock) {
+        this.dir = dir;
+        this.config = config;
+        this.clock = clock;
+        this.senders = senders;
+        this.keyedWith = senders.getCallingCode() == null ? "" : senders.getCallingCode();
+        this.pending = new LinkedBlockingQueue<>(config.maxPendingEntries);
+        this.writer = SmsResponsePipeline.namedThreads("audit-log").newThread(this::writeLoop);
+    }
+
+    /** Opens the log in {@code dir}, recovering from a torn last write, and starts the writer. */
+    public static AuditLog open(File dir, Config config, LongSupplier clock) throws IOException {
+        return open(dir, config, new AddressNormalizer(null), clock);
+    }
+
+    /** Like {@link #open(File, Config, LongSupplier)}, matching senders through {@code senders}. */
+    public static AuditLog open(File dir, Config config, AddressNormalizer senders, LongSupplier clock)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        AuditLog log = new AuditLog(dir, config, senders, clock);
+        log.recover();
+        log.recovered.countDown();
+        log.writer.start();
+        return log;
+    }
+
+    /**
+     * Like {@link #open}, but recovery runs on the writer thread, so a caller on a latency
+     * path (a broadcast receiver's first call after process start) doesn't read the segments.
+     * Entries recorded meanwhile queue up as usual; reads wait for recovery. If it fails, the
+     * log drops every entry and reads throw.
+     */
+    public static AuditLog openInBackground(File dir, Config config, LongSupplier clock) throws IOException {
+        return openInBackground(dir, config, new AddressNormalizer(null), clock);
+    }
+
+    /** Like {@link #openInBackground(File, Config, LongSupplier)}, matching senders through {@code senders}. */
+    public static AuditLog openInBackground(File dir, Config config, AddressNormalizer senders, LongSupplier clock)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        AuditLog log = new AuditLog(dir, config, senders, clock);
+        log.writer.start();
+        return log;
+    }
+
+    /** Queues an entry for the writer. Drops it, and counts the drop, if the writer is that far behind. */
+    public void record(Type type, String sender, long ref, String detail) {
+        if (closed) return;
+        String text = detail == null ? "" : detail.length() > MAX_DETAIL_CHARS ? detail.substring(0, MAX_DETAIL_CHARS) : detail;
+        Entry entry = new Entry(0, clock.getAsLong(), type, sender == null ? "" : sender, ref, text);
+        if (pending.offer(entry)) {
+            recorded.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** Records a queued reply and remembers its sender for the outcome entries. */
+    public void replyQueued(String sender, long id, String detail) {
+        if (replies.size() < MAX_TRACKED_REPLIES) {
+            replies.put(id, sender);
+        }
+        record(Type.QUEUED, sender, id, detail);
+    }
+
+    /** Records what became of a reply queued through {@link #replyQueued}; other messages are ignored. */
+    public void replyOutcome(Type outcome, long id, String detail) {
+        String sender = outcome == Type.SENT ? replies.get(id) : replies.remove(id);
+        if (sender != null) {
+            record(outcome, sender, id, detail);
+        }
+    }
+
+    /**
+     * Up to {@code limit} entries older than {@code cursor}, newest first, from every sender
+     * or, if {@code sender} is not null, from that sender only (in any address format).
+     */
+    public Page page(String sender, long cursor, int limit) throws IOException {
+        awaitRecovery();
+        String key = sender == null ? null : senders.normalize(sender);
+        List<Entry> out = new ArrayList<>(limit + 1);
+        List<Segment> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+        }
+        for (int s = snapshot.size() - 1; s >= 0 && out.size() <= limit; s--) {
+            Segment segment = snapshot.get(s);
+            if (segment.firstSeq >= cursor) continue;
+            IndexView view = view(segment);
+            if (view == null || view.count == 0) continue;
+            int end = (int) Math.min(view.count, cursor - segment.firstSeq);
+            FileChannel channel = openForReading(segment);
+            if (channel == null) continue;
+            try {
+                if (key == null) {
+                    readBackwards(channel, view, end, limit + 1, out);
+                } else {
+                    readPostingsBackwards(channel, view, view.postings(key), end, limit + 1, out);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+        boolean hasMore = out.size() > limit;
+        List<Entry> entries = hasMore ? new ArrayList<>(out.subList(0, limit)) : out;
+        long next = entries.isEmpty() ? cursor : entries.get(entries.size() - 1).seq;
+        return new Page(entries, next, hasMore);
+    }
+
+    /** The cursor whose first page starts at the newest entry recorded at or before {@code timeMillis}. */
+    public long cursorAt(long timeMillis) throws IOException {
+        awaitRecovery();
+        List<Segment> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+        }
+        long cursor = snapshot.isEmpty() ? NEWEST : snapshot.get(0).firstSeq;
+        for (int s = snapshot.size() - 1; s >= 0; s--) {
+            Segment segment = snapshot.get(s);
+            IndexView view = view(segment);
+            if (view == null || view.count == 0 || view.blockTimes[0] > timeMillis) continue;
+            int block = lastBlockAtOrBefore(view, timeMillis);
+            int first = block * BLOCK_ENTRIES;
+            int last = Math.min(view.count, first + BLOCK_ENTRIES);
+            FileChannel channel = openForReading(segment);
+            if (channel == null) continue;
+            try {
+                for (Entry entry : readBlock(channel, view, block, last)) {
+                    if (entry.timeMillis > timeMillis) {
+                        return entry.seq;
+                    }
+                }
+            } finally {
+                channel.close();
+            }
+            return segment.firstSeq + last;
+        }
+        return cursor;
+    }
+
+    /** Waits until everything recorded so far is on disk. */
+    public boolean sync(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = recorded.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (committed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return true;
+    }
+
+    /** Deletes sealed segments whose newest entry is past the retention period. */
+    public void enforceRetention() {
+        long cutoff = clock.getAsLong() - config.retentionMillis;
+        List<Segment> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Segment> it = segments.iterator();
+            while (it.hasNext()) {
+                Segment segment = it.next();
+                if (segment.live == null && segment.lastTime < cutoff) {
+                    it.remove();
+                    indexCache.remove(segment);
+                    expired.add(segment);
+                }
+            }
+        }
+        for (Segment segment : expired) {
+            // An open reader keeps its handle; the file goes once it is closed
+            segment.log.delete();
+            segment.index.delete();
+            LOG.i("Deleted audit segment {} ({} entries)", segment.log.getName(), segment.count);
+        }
+    }
+
+    /** Entries on disk; 0 if recovery failed. */
+    public long size() {
+        awaitRecoveryUninterruptibly();
+        synchronized (this) {
+            long size = 0;
+            for (Segment segment : segments) {
+                size += segment.count;
+            }
+            return size;
+        }
+    }
+
+    public int segmentCount() {
+        awaitRecoveryUninterruptibly();
+        synchronized (this) {
+            return segments.size();
+        }
+    }
+
+    /** Entries dropped because the writer had fallen behind. */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /** Stops the writer after it has committed what was already recorded. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            // Not an interrupt: that would close the segment's FileChannel under the writer
+            pending.put(CLOSE);
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitRecovery() throws IOException {
+        try {
+            recovered.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for audit log recovery");
+        }
+        if (recoveryError != null) {
+            throw new IOException("Audit log could not be recovered", recoveryError);
+        }
+    }
+
+    private void awaitRecoveryUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                recovered.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---- Writer ----
+
+    private void writeLoop() {
+        if (recovered.getCount() > 0) {
+            try {
+                recover();
+            } catch (IOException e) {
+                recoveryError = e;
+                closed = true;
+                dropped.addAndGet(pending.size());
+                pending.clear();
+                LOG.e("Audit log recovery failed, not recording", e);
+                return;
+            } finally {
+                recovered.countDown();
+            }
+        }
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            boolean stop = false;
+            while (!stop) {
+                Entry first;
+                try {
+                    first = pending.poll(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (first == null) {
+                    maybeEnforceRetention();
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, MAX_BATCH - 1);
+                stop = batch.remove(CLOSE);
+                if (!batch.isEmpty()) {
+                    try {
+                        commit(batch);
+                    } catch (IOException e) {
+                        // Whatever reached the file past the last commit is overwritten by the next one
+                        nextSeq = active.firstSeq + active.count;
+                        dropped.addAndGet(batch.size());
+                        LOG.e("Audit log write failed", e);
+                        markCommitted(batch.size());
+                    }
+                }
+                batch.clear();
+            }
+        } finally {
+            try {
+                if (activeChannel != null) activeChannel.close();
+            } catch (IOException e) {
+                LOG.w("Closing audit segment failed", e);
+            }
+        }
+    }
+
+    private void commit(List<Entry> batch) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(batch.size() * 64);
+        List<Entry> written = new ArrayList<>(batch.size());
+        List<Integer> offsets = new ArrayList<>(batch.size());
+        long segmentBytes = active.bytes;
+        long segmentStart = active.count > 0 ? active.firstTime : batch.get(0).timeMillis;
+        for (Entry queued : batch) {
+            Entry entry = new Entry(nextSeq, queued.timeMillis, queued.type, queued.sender, queued.ref, queued.detail);
+            byte[] record = encode(entry);
+            boolean full = segmentBytes + record.length > config.maxSegmentBytes
+                    || entry.timeMillis - segmentStart >= config.maxSegmentSpanMillis;
+            if (active.count + written.size() > 0 && full) {
+                flush(buffer, written, offsets);
+                roll();
+                segmentBytes = 0;
+                segmentStart = entry.timeMillis;
+            }
+            offsets.add((int) segmentBytes);
+            written.add(entry);
+            buffer.write(record);
+            segmentBytes += record.length;
+            nextSeq++;
+        }
+        flush(buffer, written, offsets);
+        maybeEnforceRetention();
+    }
+
+    /** Writes and forces the buffered records, then publishes them to readers. */
+    private void flush(ByteArrayOutputStream buffer, List<Entry> written, List<Integer> offsets) throws IOException {
+        if (written.isEmpty()) return;
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            activeChannel.write(bytes, active.bytes + bytes.position());
+        }
+        activeChannel.force(false);
+        synchronized (this) {
+            SegmentIndex index = active.live;
+            for (int i = 0; i < written.size(); i++) {
+                index.add(written.get(i), offsets.get(i));
+            }
+            active.count = index.count;
+            active.bytes += buffer.size();
+            if (active.count == written.size()) {
+                active.firstTime = written.get(0).timeMillis;
+            }
+            active.lastTime = written.get(written.size() - 1).timeMillis;
+        }
+        markCommitted(written.size());
+        buffer.reset();
+        written.clear();
+        offsets.clear();
+    }
+
+    private void markCommitted(int count) {
+        synchronized (this) {
+            committed += count;
+            notifyAll();
+        }
+    }
+
+    /** Seals the active segment with its index file and starts a new one. */
+    private void roll() throws IOException {
+        activeChannel.close();
+        SegmentIndex sealed;
+        synchronized (this) {
+            sealed = active.live;
+        }
+        writeIndex(active, sealed);
+        Segment next = new Segment(dir, nextSeq);
+        FileChannel channel = new RandomAccessFile(next.log, "rw").getChannel();
+        synchronized (this) {
+            active.live = null;
+            indexCache.put(active, sealed);
+            trimCache();
+            next.live = new SegmentIndex(senders);
+            segments.add(next);
+        }
+        active = next;
+        activeChannel = channel;
+    }
+
+    private void maybeEnforceRetention() {
+        long now = clock.getAsLong();
+        if (now - lastRetentionCheck >= RETENTION_CHECK_MILLIS) {
+            lastRetentionCheck = now;
+            enforceRetention();
+        }
+    }
+
+    // ---- Recovery ----
+
+    private void recover() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(LOG_SUFFIX));
+        List<Segment> found = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    found.add(new Segment(dir,
+                            Long.parseLong(name.substring(PREFIX.length(), name.length() - LOG_SUFFIX.length()))));
+                } catch (NumberFormatException e) {
+                    LOG.w("Ignoring {}", name);
+                }
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.firstSeq, b.firstSeq));
+
+        for (int i = 0; i < found.size(); i++) {
+            Segment segment = found.get(i);
+            boolean last = i == found.size() - 1;
+            if (!last && readIndexHeader(segment)) continue;
+            // The active segment, or a sealed one whose index was never written
+            SegmentIndex index = scan(segment);
+            if (last) {
+                segment.live = index;
+                // Left over if we stopped between sealing it and starting the next segment
+                segment.index.delete();
+            } else {
+                writeIndex(segment, index);
+            }
+        }
+
+        if (found.isEmpty() || found.get(found.size() - 1).count > 0 && segmentIsFull(found.get(found.size() - 1))) {
+            long first = found.isEmpty() ? 1 : found.get(found.size() - 1).firstSeq + found.get(found.size() - 1).count;
+            if (!found.isEmpty()) {
+                Segment previous = found.get(found.size() - 1);
+                writeIndex(previous, previous.live);
+                previous.live = null;
+            }
+            Segment fresh = new Segment(dir, first);
+            fresh.live = new SegmentIndex(senders);
+            found.add(fresh);
+        }
+        active = found.get(found.size() - 1);
+        activeChannel = new RandomAccessFile(active.log, "rw").getChannel();
+        // Drop a torn final record so the next append starts on a record boundary
+        activeChannel.truncate(active.bytes);
+        nextSeq = active.firstSeq + active.count;
+        synchronized (this) {
+            segments.addAll(found);
+        }
+        lastRetentionCheck = clock.getAsLong();
+        enforceRetention();
+    }
+
+    private boolean segmentIsFull(Segment segment) {
+        return segment.bytes >= config.maxSegmentBytes
+                || clock.getAsLong() - segment.firstTime >= config.maxSegmentSpanMillis;
+    }
+
+    /** Reads every intact record of a segment and rebuilds its index. */
+    private SegmentIndex scan(Segment segment) throws IOException {
+        SegmentIndex index = new SegmentIndex(senders);
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.log)))) {
+            while (true) {
+                Entry entry;
+                int length;
+                try {
+                    length = in.readInt();
+                    int crc = in.readInt();
+                    if (length <= 0 || length > config.maxSegmentBytes) break;
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    if (crc(body) != crc) break;
+                    entry = decode(body);
+                } catch (IOException e) {
+                    // EOF or a record we can't make sense of: nothing after it is trusted
+                    break;
+                }
+                if (entry.seq != segment.firstSeq + index.count) break;
+                index.add(entry, (int) offset);
+                offset += HEADER_BYTES + length;
+                if (index.count == 1) segment.firstTime = entry.timeMillis;
+                segment.lastTime = entry.timeMillis;
+            }
+        }
+        segment.count = index.count;
+        segment.bytes = offset;
+        return index;
+    }
+
+    // ---- Index files ----
+
+    private void writeIndex(Segment segment, SegmentIndex index) throws IOException {
+        File tmp = new File(segment.index.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(segment.firstSeq);
+            out.writeUTF(keyedWith);
+            out.writeInt(index.count);
+            out.writeLong(segment.bytes);
+            out.writeLong(segment.firstTime);
+            out.writeLong(segment.lastTime);
+            int blocks = index.blocks();
+            out.writeInt(blocks);
+            for (int b = 0; b < blocks; b++) {
+                out.writeInt(index.blockOffsets[b]);
+                out.writeLong(index.blockTimes[b]);
+            }
+            out.writeInt(index.postings.size());
+            for (Map.Entry<String, Postings> posting : index.postings.entrySet()) {
+                Postings p = posting.getValue();
+                out.writeUTF(posting.getKey());
+                out.writeInt(p.size);
+                for (int i = 0; i < p.size; i++) {
+                    out.writeInt(p.ordinals[i]);
+                    out.writeInt(p.offsets[i]);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!tmp.renameTo(segment.index)) {
+            throw new IOException("Cannot write " + segment.index);
+        }
+    }
+
+    /**
+     * Loads the summary of a sealed segment; false if the index file is missing, unreadable or
+     * keyed with another calling code.
+     */
+    private boolean readIndexHeader(Segment segment) {
+        if (!segment.index.exists()) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.index), 64))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION || in.readLong() != segment.firstSeq
+                    || !in.readUTF().equals(keyedWith)) {
+                return false;
+            }
+            segment.count = in.readInt();
+            segment.bytes = in.readLong();
+            segment.firstTime = in.readLong();
+            segment.lastTime = in.readLong();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private SegmentIndex readIndex(Segment segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.index)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION || in.readLong() != segment.firstSeq
+                    || !in.readUTF().equals(keyedWith)) {
+                throw new IOException("Bad index " + segment.index);
+            }
+            SegmentIndex index = new SegmentIndex(senders);
+            index.count = in.readInt();
+            in.readLong();
+            in.readLong();
+            in.readLong();
+            int blocks = in.readInt();
+            index.blockOffsets = new int[Math.max(1, blocks)];
+            index.blockTimes = new long[Math.max(1, blocks)];
+            for (int b = 0; b < blocks; b++) {
+                index.blockOffsets[b] = in.readInt();
+                index.blockTimes[b] = in.readLong();
+            }
+            int senders = in.readInt();
+            for (int s = 0; s < senders; s++) {
+                String key = in.readUTF();
+                int size = in.readInt();
+                Postings p = new Postings(size);
+                for (int i = 0; i < size; i++) {
+                    p.ordinals[i] = in.readInt();
+                    p.offsets[i] = in.readInt();
+                }
+                p.size = size;
+                index.postings.put(key, p);
+            }
+            return index;
+        }
+    }
+
+    // ---- Reading ----
+
+    /** A consistent read view of a segment's index: the cached one, or a snapshot of the live one. */
+    private IndexView view(Segment segment) throws IOException {
+        synchronized (this) {
+            if (segment.live != null) {
+                return new IndexView(segment.live, segment.bytes, true);
+            }
+            SegmentIndex cached = indexCache.get(segment);
+            if (cached != null) {
+                return new IndexView(cached, segment.bytes, false);
+            }
+        }
+        synchronized (this) {
+            if (!segments.contains(segment)) return null;
+        }
+        SegmentIndex loaded;
+        try {
+            loaded = readIndex(segment);
+        } catch (IOException e) {
+            if (!segment.log.exists()) return null; // Deleted by retention meanwhile
+            throw e;
+        }
+        synchronized (this) {
+            indexCache.put(segment, loaded);
+            trimCache();
+        }
+        return new IndexView(loaded, segment.bytes, false);
+    }
+
+    /** Null if retention deleted the segment since the caller looked at the list. */
+    private static FileChannel openForReading(Segment segment) {
+        try {
+            return new RandomAccessFile(segment.log, "r").getChannel();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void trimCache() {
+        Iterator<Segment> it = indexCache.keySet().iterator();
+        while (indexCache.size() > CACHED_INDEXES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static int lastBlockAtOrBefore(IndexView view, long timeMillis) {
+        int lo = 0;
+        int hi = view.blocks - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (view.blockTimes[mid] <= timeMillis) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Appends entries with ordinal below {@code end}, newest first, until {@code out} holds {@code max}. */
+    private static void readBackwards(FileChannel channel, IndexView view, int end, int max, List<Entry> out)
+            throws IOException {
+        for (int block = (end - 1) / BLOCK_ENTRIES; block >= 0 && out.size() < max; block--) {
+            List<Entry> entries = readBlock(channel, view, block, end);
+            for (int i = entries.size() - 1; i >= 0 && out.size() < max; i--) {
+                out.add(entries.get(i));
+            }
+        }
+    }
+
+    private static void readPostingsBackwards(FileChannel channel, IndexView view, Postings postings, int end,
+                                              int max, List<Entry> out) throws IOException {
+        if (postings == null) return;
+        int size = view.live ? postings.sizeAt(view.count) : postings.size;
+        int i = Arrays.binarySearch(postings.ordinals, 0, size, end);
+        i = i >= 0 ? i - 1 : -i - 2;
+        for (; i >= 0 && out.size() < max; i--) {
+            out.add(readAt(channel, postings.offsets[i]));
+        }
+    }
+
+    /** Entries of one block with ordinal below {@code end}, oldest first. */
+    private static List<Entry> readBlock(FileChannel channel, IndexView view, int block, int end) throws IOException {
+        int first = block * BLOCK_ENTRIES;
+        int count = Math.min(end, first + BLOCK_ENTRIES) - first;
+        long from = view.blockOffsets[block];
+        long to = block + 1 < view.blocks ? view.blockOffsets[block + 1] : view.bytes;
+        ByteBuffer bytes = ByteBuffer.allocate((int) (to - from));
+        readFully(channel, bytes, from);
+        bytes.flip();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = bytes.getInt();
+            bytes.getInt();
+            byte[] body = new byte[length];
+            bytes.get(body);
+            entries.add(decode(body));
+        }
+        return entries;
+    }
+
+    private static Entry readAt(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, offset);
+        header.flip();
+        ByteBuffer body = ByteBuffer.allocate(header.getInt());
+        readFully(channel, body, offset + HEADER_BYTES);
+        return decode(body.array());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Audit segment truncated");
+            }
+        }
+    }
+
+    // ---- Records ----
+
+    /** length, CRC32 of the body, then seq, time, type, ref, sender and detail. */
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeLong(entry.seq);
+        out.writeLong(entry.timeMillis);
+        out.writeByte(entry.type.ordinal());
+        out.writeLong(entry.ref);
+        out.writeUTF(entry.sender);
+        out.writeUTF(entry.detail);
+        byte[] bytes = body.toByteArray();
+        return ByteBuffer.allocate(HEADER_BYTES + bytes.length)
+                .putInt(bytes.length)
+                .putInt(crc(bytes))
+                .put(bytes)
+                .array();
+    }
+
+    private static Entry decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long seq = in.readLong();
+        long time = in.readLong();
+        int type = in.readUnsignedByte();
+        long ref = in.readLong();
+        String sender = in.readUTF();
+        String detail = in.readUTF();
+        if (type >= Type.values().length) {
+            throw new IOException("Unknown audit entry type " + type);
+        }
+        return new Entry(seq, time, Type.values()[type], sender, ref, detail);
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    // ---- Segments and their indexes ----
+
+    private static final class Segment {
+        final long firstSeq;
+        final File log;
+        final File index;
+        int count;
+        long bytes;
+        long firstTime;
+        long lastTime;
+        // The writer's index while this is the active segment, null once sealed
+        SegmentIndex live;
+
+        Segment(File dir, long firstSeq) {
+            this.firstSeq = firstSeq;
+            String name = String.format(Locale.US, "%s%020d", PREFIX, firstSeq);
+            this.log = new File(dir, name + LOG_SUFFIX);
+            this.index = new File(dir, name + INDEX_SUFFIX);
+        }
+    }
+
+    /** Block offsets and times, and the entries of each sender, in ordinal order. */
+    private static final class SegmentIndex {
+        int count;
+        int[] blockOffsets = new int[16];
+        long[] blockTimes = new long[16];
+        final Map<String, Postings> postings = new HashMap<>();
+        private final AddressNormalizer senders;
+
+        SegmentIndex(AddressNormalizer senders) {
+            this.senders = senders;
+        }
+
+        int blocks() {
+            return (count + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+        }
+
+        void add(Entry entry, int offset) {
+            int ordinal = count++;
+            if (ordinal % BLOCK_ENTRIES == 0) {
+                int block = ordinal / BLOCK_ENTRIES;
+                if (block == blockOffsets.length) {
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                    blockTimes = Arrays.copyOf(blockTimes, block * 2);
+                }
+                blockOffsets[block] = offset;
+                blockTimes[block] = entry.timeMillis;
+            }
+            if (!entry.sender.isEmpty()) {
+                String key = senders.normalize(entry.sender);
+                Postings p = postings.get(key);
+                if (p == null) {
+                    p = new Postings(4);
+                    postings.put(key, p);
+                }
+                p.add(ordinal, offset);
+            }
+        }
+    }
+
+    private static final class Postings {
+        int[] ordinals;
+        int[] offsets;
+        int size;
+
+        Postings(int capacity) {
+            ordinals = new int[Math.max(1, capacity)];
+            offsets = new int[Math.max(1, capacity)];
+        }
+
+        void add(int ordinal, int offset) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            ordinals[size] = ordinal;
+            offsets[size] = offset;
+            size++;
+        }
+
+        /** Postings for the first {@code count} entries of the segment. */
+        int sizeAt(int count) {
+            int i = Arrays.binarySearch(ordinals, 0, size, count);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+
+    /**
+     * What a reader may look at: taken under the lock, so the arrays and counts belong together
+     * even while the writer appends to a live index.
+     */
+    private final class IndexView {
+        final int count;
+        final int blocks;
+        final int[] blockOffsets;
+        final long[] blockTimes;
+        final long bytes;
+        final boolean live;
+        private final SegmentIndex index;
+
+        IndexView(SegmentIndex index, long bytes, boolean live) {
+            this.index = index;
+            this.count = index.count;
+            this.blocks = index.blocks();
+            this.blockOffsets = index.blockOffsets;
+            this.blockTimes = index.blockTimes;
+            this.bytes = bytes;
+            this.live = live;
+        }
+
+        Postings postings(String key) {
+            if (!live) return index.postings.get(key);
+            synchronized (AuditLog.this) {
+                Postings p = index.postings.get(key);
+                if (p == null) return null;
+                // The writer may grow the arrays after we let go of the lock; keep the ones we saw
+                Postings copy = new Postings(0);
+                copy.ordinals = p.ordinals;
+                copy.offsets = p.offsets;
+                copy.size = p.size;
+                return copy;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.localisation_sender_with_speech;
+
+/**
+ * Appends doubles with a fixed number of decimals, without boxing or a Formatter.
+ * Rounds half away from zero, like {@code String.format("%.Nf")}.
+ */
+public final class FixedPoint {
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L
+    };
+
+    public static final int MAX_DECIMALS = POWERS_OF_TEN.length - 1;
+
+    private FixedPoint() {
+    }
+
+    public static StringBuilder append(StringBuilder out, double value, int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("decimals out of range: " + decimals);
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(value);
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        boolean negative = value < 0;
+        double magnitude = Math.abs(value);
+        long scaled = Math.round(magnitude * scale);
+        long whole = scaled / scale;
+        long fraction = scaled % scale;
+
+        if (negative) {
+            out.append('-');
+        }
+        out.append(whole);
+        if (decimals > 0) {
+            out.append('.');
+            for (long p = scale / 10; p > 1 && fraction < p; p /= 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+        return out;
+    }
+
+    /**
+     * Shortest form of {@code value} at {@code decimals} precision: trailing zeros and a bare
+     * decimal point are dropped, so 2.350000 becomes "2.35" and 3.000000 becomes "3".
+     */
+    public static StringBuilder appendTrimmed(StringBuilder out, double value, int decimals) {
+        int start = out.length();
+        append(out, value, decimals);
+        if (decimals > 0 && out.indexOf(".", start) >= 0) {
+            int end = out.length();
+            while (out.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (out.charAt(end - 1) == '.') {
+                end--;
+            }
+            out.setLength(end);
+            if (out.length() - start == 2 && out.charAt(start) == '-' && out.charAt(start + 1) == '0') {
+                // "-0" after rounding away the fraction
+                out.deleteCharAt(start);
+            }
+        }
+        return out;
+    }
+}
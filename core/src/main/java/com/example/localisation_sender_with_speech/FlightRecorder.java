@@ -0,0 +1,244 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring buffer of recent pipeline events, for diagnosing an incident after the fact.
+ *
+ * Each event is four longs (sequence, wall-clock time, event and int argument, long argument)
+ * in one preallocated array. Writers claim a slot with an atomic increment and a
+ * compare-and-set, never lock, wait or allocate, and overwrite the oldest events. Senders are
+ * stored as a keyed hash, never as a number, and message text is never stored. {@link #dumpTo}
+ * decodes the buffer to text and skips any slot that a writer was filling at the time.
+ */
+public final class FlightRecorder {
+
+    public enum Event {
+        SMS_RECEIVED("parts", null, "sender"),
+        TRIGGER_MATCHED("phrase", null, "sender"),
+        DISABLED(null, null, null),
+        NOT_ALLOWED(null, null, "sender"),
+        COALESCED(null, null, "sender"),
+        RATE_LIMITED(null, null, "sender"),
+        SHED("priority", RequestPriority.class, null),
+        DEADLINE_EXCEEDED(null, null, null),
+        LOCATION_RESOLVED("path", LocationResolver.Path.class, "age_ms"),
+        NO_FIX(null, null, "waited_ms"),
+        REPLY_QUEUED("segments", null, "id"),
+        SMS_SENT("ms", null, "id"),
+        SMS_DELIVERED("ms", null, "id"),
+        SMS_FAILED(null, null, "id"),
+        ERROR(null, null, null),
+        SERVICE_STARTED(null, null, null),
+        SERVICE_STOPPED(null, null, null),
+        TRACKING_STARTED("sessions", null, "sender"),
+        TRACKING_UPDATE("update", null, "id"),
+        TRACKING_ENDED("updates", null, "sender"),
+        COMMAND("verb", SmsCommand.Verb.class, "sender"),
+        COMMAND_REJECTED("outcome", SmsCommand.Outcome.class, "sender"),
+        GEOFENCE_ALERT("transition", Geofence.Transition.class, "id");
+
+        private final String intLabel;
+        private final Class<? extends Enum<?>> intType;
+        private final String longLabel;
+
+        Event(String intLabel, Class<? extends Enum<?>> intType, String longLabel) {
+            this.intLabel = intLabel;
+            this.intType = intType;
+            this.longLabel = longLabel;
+        }
+    }
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int SLOT_LONGS = 4;
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+    private static final int EVENT = 2;
+    private static final int VALUE = 3;
+    // Marks a slot a writer is filling; real sequences start at 0
+    private static final long WRITING = -1;
+    private static final long EMPTY = -2;
+
+    private static final FlightRecorder INSTANCE = new FlightRecorder(DEFAULT_CAPACITY);
+    private static final Event[] EVENTS = Event.values();
+
+    private final int mask;
+    private final AtomicLongArray slots;
+    private final AtomicLong next = new AtomicLong();
+    // SipHash key for senders; random until the app installs its per-install salt
+    private volatile long[] senderSalt;
+
+    /** {@code capacity} is rounded up to a power of two. */
+    FlightRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        slots = new AtomicLongArray(size * SLOT_LONGS);
+        for (int i = 0; i < size; i++) {
+            slots.set(i * SLOT_LONGS + SEQUENCE, EMPTY);
+        }
+        SecureRandom random = new SecureRandom();
+        senderSalt = new long[] {random.nextLong(), random.nextLong()};
+    }
+
+    public static FlightRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    public void record(Event event) {
+        record(event, 0, 0);
+    }
+
+    public void record(Event event, int intValue, long longValue) {
+        long sequence = next.getAndIncrement();
+        int base = (int) (sequence & mask) * SLOT_LONGS;
+        // Take the slot. Only a writer lapped by a full buffer's worth of events can find it
+        // taken: if a newer event is there this one is dropped, and if another writer is still
+        // filling it this one is dropped too rather than spin behind a stalled thread.
+        while (true) {
+            long current = slots.get(base + SEQUENCE);
+            if (current > sequence || current == WRITING) return;
+            if (slots.compareAndSet(base + SEQUENCE, current, WRITING)) break;
+        }
+        slots.set(base + TIME, System.currentTimeMillis());
+        slots.set(base + EVENT, ((long) event.ordinal() << 32) | (intValue & 0xFFFFFFFFL));
+        slots.set(base + VALUE, longValue);
+        slots.set(base + SEQUENCE, sequence);
+    }
+
+    /** Records an event about {@code sender} without storing the number itself. */
+    public void record(Event event, int intValue, String sender) {
+        record(event, intValue, senderKey(sender));
+    }
+
+    /**
+     * Keys senders with a secret salt, kept by the app for the life of the install so that
+     * dumps from several runs can be correlated. Without the salt a key can't be traced back
+     * to a number by hashing every number in a range, as a plain hash could.
+     */
+    public void setSenderSalt(long salt0, long salt1) {
+        senderSalt = new long[] {salt0, salt1};
+    }
+
+    /** Stable key for a sender so one incident's events can be correlated: 32 bits of a keyed SipHash. */
+    long senderKey(String sender) {
+        if (sender == null) return 0;
+        long[] salt = senderSalt;
+        return sipHash(salt[0], salt[1], sender) & 0xFFFFFFFFL;
+    }
+
+    /** SipHash-2-4 of the UTF-16LE encoding of {@code text}. */
+    static long sipHash(long k0, long k1, String text) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int length = text.length();
+        int words = length / 4;
+        // One pass per 4-char word, one for the tail and the length, then the finalization
+        for (int word = 0; word <= words + 1; word++) {
+            long m = 0;
+            int rounds = 2;
+            if (word < words) {
+                int i = word * 4;
+                m = text.charAt(i) | (long) text.charAt(i + 1) << 16
+                        | (long) text.charAt(i + 2) << 32 | (long) text.charAt(i + 3) << 48;
+            } else if (word == words) {
+                m = (long) (length * 2 & 0xFF) << 56;
+                for (int i = words * 4; i < length; i++) {
+                    m |= (long) text.charAt(i) << 16 * (i - words * 4);
+                }
+            } else {
+                v2 ^= 0xFF;
+                rounds = 4;
+            }
+            v3 ^= m;
+            for (int round = 0; round < rounds; round++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /** Number of events recorded since start, including overwritten ones. */
+    public long recordedCount() {
+        return next.get();
+    }
+
+    /** Writes the retained events, oldest first, one per line. */
+    public void dumpTo(Appendable out) throws IOException {
+        long end = next.get();
+        long start = Math.max(0, end - capacity());
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        out.append("# Flight recorder: ").append(Long.toString(end - start)).append(" of ")
+                .append(Long.toString(end)).append(" events\n");
+
+        StringBuilder line = new StringBuilder(96);
+        for (long sequence = start; sequence < end; sequence++) {
+            int base = (int) (sequence & mask) * SLOT_LONGS;
+            if (slots.get(base + SEQUENCE) != sequence) continue;
+            long timeMillis = slots.get(base + TIME);
+            long word = slots.get(base + EVENT);
+            long value = slots.get(base + VALUE);
+            // Overwritten while we were reading it
+            if (slots.get(base + SEQUENCE) != sequence) continue;
+
+            int ordinal = (int) (word >>> 32);
+            if (ordinal < 0 || ordinal >= EVENTS.length) continue;
+            line.setLength(0);
+            line.append(time.format(new Date(timeMillis))).append(" #").append(sequence).append(' ');
+            appendEvent(line, EVENTS[ordinal], (int) word, value);
+            out.append(line).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder dump = new StringBuilder(capacity() * 64);
+        try {
+            dumpTo(dump);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw
+        }
+        return dump.toString();
+    }
+
+    private static void appendEvent(StringBuilder out, Event event, int intValue, long longValue) {
+        out.append(event.name());
+        if (event.intLabel != null) {
+            out.append(' ').append(event.intLabel).append('=');
+            Enum<?>[] constants = event.intType != null ? event.intType.getEnumConstants() : null;
+            if (constants != null && intValue >= 0 && intValue < constants.length) {
+                out.append(constants[intValue].name());
+            } else {
+                out.append(intValue);
+            }
+        }
+        if (event.longLabel != null) {
+            out.append(' ').append(event.longLabel).append('=');
+            if ("sender".equals(event.longLabel)) {
+                String hex = Long.toHexString(longValue);
+                for (int i = hex.length(); i < 8; i++) {
+                    out.append('0');
+                }
+                out.append(hex);
+            } else {
+                out.append(longValue);
+            }
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Typo-tolerant phrase matcher for requests typed in a hurry: "were r u", "sned location",
+ * "ou es tu".
+ *
+ * Both phrases and messages go through {@link TextNormalizer} first. The normalized message is
+ * scanned for an exact occurrence of a phrase with a {@link TriggerPhraseMatcher}; only if
+ * there is none is it split into words and matched word by word, where each word may be
+ * within a small edit distance of the phrase word (none up to 3 letters, one up to 8, two
+ * beyond, an adjacent transposition counting as one edit) and starting with the same letter,
+ * or one of a few SMS abbreviations ("u", "r", "pls"). Two edits anywhere in an eight-letter
+ * word are enough to read "vacation" or "donation" as "location", and people rarely get the
+ * first letter wrong, so that is where the tolerance stops.
+ *
+ * Candidate words come from a symmetric-deletion index: every phrase word is stored under
+ * each string it becomes with up to its tolerance of letters deleted, and a message word
+ * looks up its own deletions. Two words within k edits always share a string k deletions
+ * from each, so the lookups find every candidate, and a message word costs a few dozen hash
+ * probes however many phrases there are. Candidates are then confirmed with a bounded
+ * edit distance.
+ *
+ * Only the first {@link #MAX_CHARS} normalized chars of a message are looked at, which bounds
+ * the cost of a message whatever its length. Instances are immutable and safe to share
+ * between threads; matching does not allocate once a thread has used the matcher.
+ */
+public final class FuzzyPhraseMatcher {
+
+    public static final int NO_MATCH = TriggerPhraseMatcher.NO_MATCH;
+
+    // A three-part concatenated SMS; requests come first in practice
+    static final int MAX_CHARS = 480;
+    // Longer words are only matched exactly; a word costs up to (n + 1) * n / 2 + 1 probes
+    static final int MAX_WORD = 16;
+
+    private static final int ROOT = 0;
+    private static final int MAX_CANDIDATES = 16;
+    private static final int MAX_FRONTIER = 32;
+
+    // Shorthand seen in real requests, applied when the expansion is a phrase word
+    private static final String[][] ABBREVIATIONS = {
+        {"u", "you"},
+        {"r", "are"},
+        {"ur", "your"},
+        {"yr", "your"},
+        {"pls", "please"},
+        {"plz", "please"},
+        {"stp", "please"},
+        {"loc", "location"},
+    };
+
+    private final String[] phrases;
+    private final TriggerPhraseMatcher exact;
+
+    // Distinct phrase words; word i is words[wordStart[i] .. wordStart[i + 1])
+    private final char[] words;
+    private final int[] wordStart;
+    private final int longestWord;
+
+    // Symmetric-deletion index: slot s holds the hash of a deletion variant in slotKeys and
+    // the words it came from in the chain postingWords/postingNext starting at slotHeads[s]
+    // (1-based, 0 for an empty slot)
+    private final long[] slotKeys;
+    private final int[] slotHeads;
+    private final int[] postingWords;
+    private final int[] postingNext;
+
+    private final char[] abbreviations;
+    private final int[] abbreviationStart;
+    private final int[] abbreviationWords;
+
+    // Trie of phrases over word ids, flattened as in TriggerPhraseMatcher
+    private final int[] edgeStart;
+    private final int[] edgeWords;
+    private final int[] edgeTargets;
+    private final int[] output;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(longestWord);
+        }
+    };
+
+    private FuzzyPhraseMatcher(String[] phrases, TriggerPhraseMatcher exact, char[] words, int[] wordStart,
+                               long[] slotKeys, int[] slotHeads, int[] postingWords, int[] postingNext,
+                               char[] abbreviations,
+                               int[] abbreviationStart, int[] abbreviationWords, int[] edgeStart,
+                               int[] edgeWords, int[] edgeTargets, int[] output) {
+        this.phrases = phrases;
+        this.exact = exact;
+        this.words = words;
+        this.wordStart = wordStart;
+        int longest = 0;
+        for (int i = 0; i + 1 < wordStart.length; i++) {
+            longest = Math.max(longest, wordStart[i + 1] - wordStart[i]);
+        }
+        this.longestWord = longest;
+        this.slotKeys = slotKeys;
+        this.slotHeads = slotHeads;
+        this.postingWords = postingWords;
+        this.postingNext = postingNext;
+        this.abbreviations = abbreviations;
+        this.abbreviationStart = abbreviationStart;
+        this.abbreviationWords = abbreviationWords;
+        this.edgeStart = edgeStart;
+        this.edgeWords = edgeWords;
+        this.edgeTargets = edgeTargets;
+        this.output = output;
+    }
+
+    public static FuzzyPhraseMatcher compile(String... phrases) {
+        return compile(Arrays.asList(phrases));
+    }
+
+    public static FuzzyPhraseMatcher compile(Collection<String> phrases) {
+        List<String> kept = new ArrayList<>(phrases.size());
+        List<String> normalized = new ArrayList<>(phrases.size());
+        for (String phrase : phrases) {
+            String folded = phrase == null ? "" : TextNormalizer.normalize(phrase);
+            if (!folded.isEmpty()) {
+                kept.add(phrase);
+                normalized.add(folded);
+            }
+        }
+
+        // Word ids in first-seen order, and each phrase as a sequence of them
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> vocabulary = new ArrayList<>();
+        int[][] sequences = new int[normalized.size()][];
+        for (int i = 0; i < normalized.size(); i++) {
+            String[] split = normalized.get(i).split(" ");
+            sequences[i] = new int[split.length];
+            for (int j = 0; j < split.length; j++) {
+                Integer id = ids.get(split[j]);
+                if (id == null) {
+                    id = vocabulary.size();
+                    ids.put(split[j], id);
+                    vocabulary.add(split[j]);
+                }
+                sequences[i][j] = id;
+            }
+        }
+
+        int[] wordStart = new int[vocabulary.size() + 1];
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < vocabulary.size(); i++) {
+            wordStart[i] = chars.length();
+            chars.append(vocabulary.get(i));
+        }
+        wordStart[vocabulary.size()] = chars.length();
+        char[] words = chars.toString().toCharArray();
+
+        int variants = 0;
+        for (String word : vocabulary) {
+            int n = word.length();
+            int deletes = tolerance(n);
+            variants += 1 + (deletes >= 1 ? n : 0) + (deletes >= 2 ? n * (n - 1) / 2 : 0);
+        }
+        int capacity = Integer.highestOneBit(Math.max(8, variants)) * 4;
+        long[] slotKeys = new long[capacity];
+        int[] slotHeads = new int[capacity];
+        int[] postingWords = new int[variants + 1];
+        int[] postingNext = new int[variants + 1];
+        int postings = 0;
+        for (int w = 0; w < vocabulary.size(); w++) {
+            int offset = wordStart[w];
+            int n = wordStart[w + 1] - offset;
+            int deletes = tolerance(n);
+            for (int a = -1; a < (deletes >= 1 ? n : 0); a++) {
+                for (int b = a; b < (deletes >= 2 && a >= 0 ? n : a + 1); b++) {
+                    // (-1, -1) is the word itself, (a, a) one deletion, (a, b) two
+                    long key = variantHash(words, offset, n, a, b == a ? -1 : b);
+                    int slot = slot(slotKeys, slotHeads, key);
+                    int head = slotHeads[slot];
+                    // A word reaches the same variant by deleting either of a double letter
+                    if (head != 0 && postingWords[head] == w) continue;
+                    slotKeys[slot] = key;
+                    postingWords[++postings] = w;
+                    postingNext[postings] = head;
+                    slotHeads[slot] = postings;
+                }
+            }
+        }
+
+        StringBuilder shorthand = new StringBuilder();
+        List<Integer> expansions = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        for (String[] abbreviation : ABBREVIATIONS) {
+            Integer id = ids.get(abbreviation[1]);
+            if (id != null && !ids.containsKey(abbreviation[0])) {
+                starts.add(shorthand.length());
+                shorthand.append(abbreviation[0]);
+                expansions.add(id);
+            }
+        }
+        starts.add(shorthand.length());
+
+        // Phrase trie over word ids, keeping the first phrase that ends at each node
+        List<TreeMap<Integer, Integer>> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(NO_MATCH);
+        for (int i = 0; i < sequences.length; i++) {
+            int state = ROOT;
+            for (int word : sequences[i]) {
+                Integer next = trie.get(state).get(word);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(NO_MATCH);
+                    trie.get(state).put(word, next);
+                }
+                state = next;
+            }
+            if (terminal.get(state) == NO_MATCH) {
+                terminal.set(state, i);
+            }
+        }
+        int[] edgeStart = new int[trie.size() + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < trie.size(); s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += trie.get(s).size();
+        }
+        edgeStart[trie.size()] = edgeCount;
+        int[] edgeWords = new int[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        int[] output = new int[trie.size()];
+        for (int s = 0, e = 0; s < trie.size(); s++) {
+            output[s] = terminal.get(s);
+            for (Map.Entry<Integer, Integer> entry : trie.get(s).entrySet()) {
+                edgeWords[e] = entry.getKey();
+                edgeTargets[e] = entry.getValue();
+                e++;
+            }
+        }
+
+        return new FuzzyPhraseMatcher(kept.toArray(new String[0]), TriggerPhraseMatcher.compile(normalized),
+                words, wordStart, slotKeys, slotHeads, postingWords, postingNext, shorthand.toString().toCharArray(),
+                toArray(starts), toArray(expansions), edgeStart, edgeWords, edgeTargets, output);
+    }
+
+    /**
+     * Returns the index of a phrase found in {@code text}, exactly or within tolerance,
+     * or {@link #NO_MATCH}. An exact occurrence wins over a fuzzy one.
+     */
+    public int find(CharSequence text) {
+        if (text == null || phrases.length == 0) return NO_MATCH;
+        Scratch s = scratch.get();
+        int length = TextNormalizer.normalize(text, s.text);
+        int match = exact.find(s.text, 0, length);
+        return match != NO_MATCH ? match : findFuzzy(s, length);
+    }
+
+    public boolean matches(CharSequence text) {
+        return find(text) != NO_MATCH;
+    }
+
+    public String phrase(int index) {
+        return phrases[index];
+    }
+
+    public int phraseCount() {
+        return phrases.length;
+    }
+
+    private int findFuzzy(Scratch s, int length) {
+        char[] text = s.text;
+        int[] frontier = s.frontier;
+        int[] next = s.next;
+        int size = 0;
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && text[end] != TextNormalizer.SEPARATOR) end++;
+
+            int candidates = candidates(s, start, end - start);
+            int nextSize = 0;
+            // Every word may also start a phrase, so the root is always in the frontier
+            for (int f = -1; f < size; f++) {
+                int state = f < 0 ? ROOT : frontier[f];
+                for (int c = 0; c < candidates; c++) {
+                    int child = step(state, s.candidates[c]);
+                    if (child < 0) continue;
+                    if (output[child] != NO_MATCH) return output[child];
+                    if (nextSize < MAX_FRONTIER && edgeStart[child + 1] > edgeStart[child]) {
+                        next[nextSize++] = child;
+                    }
+                }
+            }
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            size = nextSize;
+            start = end + 1;
+        }
+        return NO_MATCH;
+    }
+
+    /** Fills {@code s.candidates} with the ids of phrase words the message word could be. */
+    private int candidates(Scratch s, int offset, int length) {
+        int count = abbreviation(s.text, offset, length, s.candidates);
+        if (length > MAX_WORD) return count;
+        int deletes = tolerance(length);
+        count = lookup(s, offset, length, -1, -1, count);
+        for (int a = 0; a < (deletes >= 1 ? length : 0); a++) {
+            if (a == 0 || s.text[offset + a] != s.text[offset + a - 1]) {
+                count = lookup(s, offset, length, a, -1, count);
+            }
+            for (int b = a + 1; b < (deletes >= 2 ? length : 0); b++) {
+                count = lookup(s, offset, length, a, b, count);
+            }
+        }
+        return count;
+    }
+
+    private int lookup(Scratch s, int offset, int length, int skipA, int skipB, int count) {
+        long key = variantHash(s.text, offset, length, skipA, skipB);
+        int slot = slot(slotKeys, slotHeads, key);
+        for (int p = slotHeads[slot]; p != 0 && count < MAX_CANDIDATES; p = postingNext[p]) {
+            int word = postingWords[p];
+            if (contains(s.candidates, count, word)) continue;
+            if (s.text[offset] != words[wordStart[word]]) continue;
+            int wordLength = wordStart[word + 1] - wordStart[word];
+            int accept = Math.min(tolerance(length), tolerance(wordLength));
+            if (distance(s.text, offset, length, words, wordStart[word], wordLength, accept, s.rows) <= accept) {
+                s.candidates[count++] = word;
+            }
+        }
+        return count;
+    }
+
+    /** Open-addressing probe: the slot holding {@code key}, or the empty slot where it goes. */
+    private static int slot(long[] keys, int[] heads, long key) {
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        while (heads[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Hash of {@code text[offset .. offset + length)} without the chars at skipA and skipB (-1 for none). */
+    private static long variantHash(char[] text, int offset, int length, int skipA, int skipB) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            if (i == skipA || i == skipB) continue;
+            h = (h ^ text[offset + i]) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+
+    private int abbreviation(char[] text, int offset, int length, int[] out) {
+        for (int a = 0; a + 1 < abbreviationStart.length; a++) {
+            int from = abbreviationStart[a];
+            if (abbreviationStart[a + 1] - from != length) continue;
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = abbreviations[from + i] == text[offset + i];
+            }
+            if (same) {
+                out[0] = abbreviationWords[a];
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private int step(int state, int word) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int m = edgeWords[mid];
+            if (m < word) {
+                lo = mid + 1;
+            } else if (m > word) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /** Edits a word of this length may be away from a phrase word and still match it. */
+    static int tolerance(int length) {
+        return length <= 3 ? 0 : length <= 8 ? 1 : 2;
+    }
+
+    /**
+     * Edit distance between two char ranges, counting an adjacent transposition as a single
+     * edit (optimal string alignment). Gives up once the distance is certain to exceed
+     * {@code limit} and returns {@code limit + 1}. {@code rows} holds three rows of the table,
+     * so at least {@code 3 * (bLength + 1)} ints.
+     */
+    static int distance(char[] a, int aOffset, int aLength, char[] b, int bOffset, int bLength,
+                        int limit, int[] rows) {
+        if (Math.abs(aLength - bLength) > limit) return limit + 1;
+        int width = bLength + 1;
+        int previous2 = 0;
+        int previous = width;
+        int current = 2 * width;
+        for (int j = 0; j <= bLength; j++) {
+            rows[previous + j] = j;
+        }
+        int previousMin = 0;
+        for (int i = 1; i <= aLength; i++) {
+            rows[current] = i;
+            int rowMin = i;
+            char ca = a[aOffset + i - 1];
+            for (int j = 1; j <= bLength; j++) {
+                char cb = b[bOffset + j - 1];
+                int value = Math.min(Math.min(rows[previous + j] + 1, rows[current + j - 1] + 1),
+                        rows[previous + j - 1] + (ca == cb ? 0 : 1));
+                if (i > 1 && j > 1 && ca == b[bOffset + j - 2] && a[aOffset + i - 2] == cb) {
+                    value = Math.min(value, rows[previous2 + j - 2] + 1);
+                }
+                rows[current + j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            // The next row builds on this one, or on the one before plus a transposition
+            if (rowMin > limit && previousMin >= limit) return limit + 1;
+            previousMin = rowMin;
+            int rotate = previous2;
+            previous2 = previous;
+            previous = current;
+            current = rotate;
+        }
+        int result = rows[previous + bLength];
+        return result > limit ? limit + 1 : result;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /** Per-thread buffers, so matching does not allocate. */
+    private static final class Scratch {
+        final char[] text = new char[MAX_CHARS];
+        final int[] rows;
+        final int[] candidates = new int[MAX_CANDIDATES];
+        final int[] frontier = new int[MAX_FRONTIER];
+        final int[] next = new int[MAX_FRONTIER];
+
+        Scratch(int longestWord) {
+            rows = new int[3 * (longestWord + 1)];
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A zone to watch, a circle or a simple polygon, and who to text when the device enters it,
+ * leaves it or stays in it for a while. Immutable.
+ *
+ * Distances are taken in a local equirectangular projection around the fix, which is within
+ * a meter for zones a few kilometers across. Zones crossing the antimeridian or reaching a pole
+ * are rejected rather than special-cased. Zones are kept one per line in a text file:
+ *
+ * <pre>
+ * # id | name | contact | alerts | shape
+ * home | Home | +33612345678 | enter,exit | circle 48.85837,2.29448 150
+ * school | School | +33612345678 | enter,dwell=15m | polygon 48.8601,2.3402 48.8612,2.3431 48.8590,2.3447
+ * </pre>
+ */
+public final class Geofence {
+
+    public enum Transition {
+        ENTER,
+        EXIT,
+        /** Still inside the dwell time after entering. */
+        DWELL
+    }
+
+    /** Who to text, and on which transitions. */
+    public static final class Alert {
+        private final String contact;
+        private final Set<Transition> on;
+        private final long dwellMillis;
+
+        public Alert(String contact, Set<Transition> on, long dwellMillis) {
+            if (contact == null || contact.isEmpty()) {
+                throw new IllegalArgumentException("No contact");
+            }
+            if (on.contains(Transition.DWELL) && dwellMillis <= 0) {
+                throw new IllegalArgumentException("Dwell alert without a dwell time");
+            }
+            this.contact = contact;
+            this.on = on.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(on));
+            this.dwellMillis = on.contains(Transition.DWELL) ? dwellMillis : 0;
+        }
+
+        public String getContact() {
+            return contact;
+        }
+
+        public boolean isOn(Transition transition) {
+            return on.contains(transition);
+        }
+
+        public long getDwellMillis() {
+            return dwellMillis;
+        }
+    }
+
+    static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_000;
+    static final int MAX_NAME_SEPTETS = 32;
+    static final int MAX_VERTICES = 256;
+    static final double MAX_RADIUS_METERS = 100_000;
+    // Keeps cos(latitude) well away from zero
+    private static final double MAX_LATITUDE = 85;
+
+    private final String id;
+    private final String name;
+    private final Alert alert;
+    // Center and radius of a circle; vertices (latitude, longitude pairs) of a polygon
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+    private final double[] vertices;
+
+    final double minLatitude;
+    final double minLongitude;
+    final double maxLatitude;
+    final double maxLongitude;
+
+    private Geofence(String id, String name, Alert alert, double latitude, double longitude, double radiusMeters,
+                     double[] vertices, double minLatitude, double minLongitude, double maxLatitude,
+                     double maxLongitude) {
+        if (id == null || id.isEmpty() || id.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Invalid id: " + id);
+        }
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Name must be 1 to " + MAX_NAME_SEPTETS + " GSM-7 characters: " + name);
+        }
+        if (minLatitude < -MAX_LATITUDE || maxLatitude > MAX_LATITUDE) {
+            throw new IllegalArgumentException("Too close to a pole: " + id);
+        }
+        if (minLongitude < -180 || maxLongitude > 180 || maxLongitude - minLongitude >= 180) {
+            throw new IllegalArgumentException("Crosses the antimeridian: " + id);
+        }
+        this.id = id;
+        this.name = name;
+        this.alert = alert;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+        this.vertices = vertices;
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    public static Geofence circle(String id, String name, Alert alert, double latitude, double longitude,
+                                  double radiusMeters) {
+        if (!(radiusMeters > 0 && radiusMeters <= MAX_RADIUS_METERS)) {
+            throw new IllegalArgumentException("Radius out of range: " + radiusMeters);
+        }
+        checkCoordinates(latitude, longitude);
+        double latitudeSpan = radiusMeters / METERS_PER_DEGREE;
+        double longitudeSpan = latitudeSpan / Math.cos(Math.toRadians(Math.min(89, Math.abs(latitude))));
+        return new Geofence(id, name, alert, latitude, longitude, radiusMeters, null,
+                latitude - latitudeSpan, longitude - longitudeSpan, latitude + latitudeSpan, longitude + longitudeSpan);
+    }
+
+    /** A simple polygon from latitude, longitude pairs, in either winding order. */
+    public static Geofence polygon(String id, String name, Alert alert, double... latLons) {
+        if (latLons.length % 2 != 0 || latLons.length < 6 || latLons.length > MAX_VERTICES * 2) {
+            throw new IllegalArgumentException("A polygon needs 3 to " + MAX_VERTICES + " vertices");
+        }
+        double minLatitude = 90;
+        double minLongitude = 180;
+        double maxLatitude = -90;
+        double maxLongitude = -180;
+        for (int i = 0; i < latLons.length; i += 2) {
+            checkCoordinates(latLons[i], latLons[i + 1]);
+            minLatitude = Math.min(minLatitude, latLons[i]);
+            maxLatitude = Math.max(maxLatitude, latLons[i]);
+            minLongitude = Math.min(minLongitude, latLons[i + 1]);
+            maxLongitude = Math.max(maxLongitude, latLons[i + 1]);
+        }
+        return new Geofence(id, name, alert, Double.NaN, Double.NaN, Double.NaN, latLons.clone(),
+                minLatitude, minLongitude, maxLatitude, maxLongitude);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Alert getAlert() {
+        return alert;
+    }
+
+    public boolean isCircle() {
+        return vertices == null;
+    }
+
+    /**
+     * Distance from the point to the zone's boundary: negative inside, positive outside. Only
+     * meaningful near the zone; far away it overstates little but doesn't follow the Earth.
+     */
+    public double signedDistanceMeters(double lat, double lon) {
+        double cos = Math.cos(Math.toRadians(lat));
+        if (vertices == null) {
+            double x = (longitude - lon) * cos;
+            double y = latitude - lat;
+            return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE - radiusMeters;
+        }
+        // Vertices relative to the point, in degrees of latitude
+        int n = vertices.length;
+        double px = (vertices[n - 1] - lon) * cos;
+        double py = vertices[n - 2] - lat;
+        boolean inside = false;
+        double nearest = Double.MAX_VALUE;
+        for (int i = 0; i < n; i += 2) {
+            double x = (vertices[i + 1] - lon) * cos;
+            double y = vertices[i] - lat;
+            // Crossing of the ray from the point towards +x
+            if ((y > 0) != (py > 0) && px + (x - px) * -py / (y - py) > 0) {
+                inside = !inside;
+            }
+            nearest = Math.min(nearest, segmentDistanceSquared(px, py, x, y));
+            px = x;
+            py = y;
+        }
+        double meters = Math.sqrt(nearest) * METERS_PER_DEGREE;
+        return inside ? -meters : meters;
+    }
+
+    public boolean contains(double lat, double lon) {
+        return signedDistanceMeters(lat, lon) <= 0;
+    }
+
+    /** Squared distance from the origin to the segment from a to b. */
+    private static double segmentDistanceSquared(double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared));
+        double x = ax + t * dx;
+        double y = ay + t * dy;
+        return x * x + y * y;
+    }
+
+    /** Reads a zone file, skipping blank lines and '#' comments; rejects it whole if any line is bad. */
+    public static List<Geofence> readAll(BufferedReader in) throws IOException {
+        List<Geofence> zones = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        String line;
+        int number = 0;
+        while ((line = in.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                Geofence zone = parse(line);
+                if (!ids.add(zone.id)) {
+                    throw new IllegalArgumentException("Duplicate id " + zone.id);
+                }
+                zones.add(zone);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + number + ": " + e.getMessage(), e);
+            }
+        }
+        return zones;
+    }
+
+    /** Parses one line of the zone file format; see the class comment. */
+    public static Geofence parse(String line) {
+        String[] fields = line.split("\\|", -1);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Expected id | name | contact | alerts | shape");
+        }
+        String id = fields[0].trim();
+        String name = fields[1].trim();
+        Alert alert = parseAlert(fields[2].trim(), fields[3].trim());
+        String[] shape = fields[4].trim().split("\\s+");
+        try {
+            switch (shape[0].toLowerCase(Locale.US)) {
+                case "circle":
+                    if (shape.length != 3) {
+                        throw new IllegalArgumentException("Expected circle lat,lon radius");
+                    }
+                    double[] center = parsePoint(shape[1]);
+                    return circle(id, name, alert, center[0], center[1], Double.parseDouble(shape[2]));
+                case "polygon":
+                    double[] latLons = new double[(shape.length - 1) * 2];
+                    for (int i = 1; i < shape.length; i++) {
+                        double[] point = parsePoint(shape[i]);
+                        latLons[(i - 1) * 2] = point[0];
+                        latLons[(i - 1) * 2 + 1] = point[1];
+                    }
+                    return polygon(id, name, alert, latLons);
+                default:
+                    throw new IllegalArgumentException("Unknown shape " + shape[0]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in " + fields[4].trim(), e);
+        }
+    }
+
+    private static Alert parseAlert(String contact, String alerts) {
+        EnumSet<Transition> on = EnumSet.noneOf(Transition.class);
+        long dwellMillis = 0;
+        for (String token : alerts.split(",")) {
+            String alert = token.trim().toLowerCase(Locale.US);
+            if (alert.equals("enter")) {
+                on.add(Transition.ENTER);
+            } else if (alert.equals("exit")) {
+                on.add(Transition.EXIT);
+            } else if (alert.startsWith("dwell=")) {
+                on.add(Transition.DWELL);
+                dwellMillis = parseDuration(alert.substring("dwell=".length()));
+            } else if (!alert.isEmpty()) {
+                throw new IllegalArgumentException("Unknown alert " + token.trim());
+            }
+        }
+        return new Alert(contact, on, dwellMillis);
+    }
+
+    /** 90s, 15m or 2h. */
+    private static long parseDuration(String text) {
+        if (text.length() < 2) {
+            throw new IllegalArgumentException("Bad duration " + text);
+        }
+        long value;
+        try {
+            value = Long.parseLong(text.substring(0, text.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad duration " + text, e);
+        }
+        switch (text.charAt(text.length() - 1)) {
+            case 's':
+                return TimeUnit.SECONDS.toMillis(value);
+            case 'm':
+                return TimeUnit.MINUTES.toMillis(value);
+            case 'h':
+                return TimeUnit.HOURS.toMillis(value);
+            default:
+                throw new IllegalArgumentException("Bad duration " + text);
+        }
+    }
+
+    private static double[] parsePoint(String text) {
+        int comma = text.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("Expected lat,lon: " + text);
+        }
+        return new double[] {Double.parseDouble(text.substring(0, comma)), Double.parseDouble(text.substring(comma + 1))};
+    }
+
+    private static void checkCoordinates(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Coordinates out of range: " + latitude + "," + longitude);
+        }
+    }
+
+    private static boolean isValidName(String name) {
+        if (name == null || name.isEmpty() || name.indexOf('|') >= 0) {
+            return false;
+        }
+        int septets = 0;
+        for (int i = 0; i < name.length(); i++) {
+            int needed = Gsm7.septets(name.charAt(i));
+            if (needed == 0) return false;
+            septets += needed;
+        }
+        return septets <= MAX_NAME_SEPTETS;
+    }
+
+    /** The zone as a line of the zone file. */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(64).append(id).append(" | ").append(name).append(" | ")
+                .append(alert.contact).append(" | ");
+        String separator = "";
+        for (Transition transition : alert.on) {
+            out.append(separator).append(transition.name().toLowerCase(Locale.US));
+            if (transition == Transition.DWELL) {
+                out.append('=').append(TimeUnit.MILLISECONDS.toSeconds(alert.dwellMillis)).append('s');
+            }
+            separator = ",";
+        }
+        out.append(" | ");
+        if (vertices == null) {
+            out.append("circle ");
+            appendPoint(out, latitude, longitude).append(' ');
+            return FixedPoint.appendTrimmed(out, radiusMeters, 1).toString();
+        }
+        out.append("polygon");
+        for (int i = 0; i < vertices.length; i += 2) {
+            appendPoint(out.append(' '), vertices[i], vertices[i + 1]);
+        }
+        return out.toString();
+    }
+
+    private static StringBuilder appendPoint(StringBuilder out, double lat, double lon) {
+        FixedPoint.appendTrimmed(out, lat, 6).append(',');
+        return FixedPoint.appendTrimmed(out, lon, 6);
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches every fix against a set of {@link Geofence}s and texts each zone's contact when the
+ * device enters it, leaves it, or has stayed in it for the zone's dwell time.
+ *
+ * A fix only looks at the zones whose boxes come within the hysteresis margin of it, found
+ * through a {@link GeofenceIndex}, plus the zones it is currently inside. Fixes less accurate
+ * than {@link Config#maxAccuracyMeters} are ignored. Boundaries have two kinds of hysteresis so
+ * that GPS jitter along an edge doesn't send a stream of enter/exit messages: the device has to
+ * be more than the margin inside a zone to enter it and more than the margin outside to leave,
+ * and a change only counts once {@link Config#confirmFixes} fixes in a row agree. The first fix
+ * only establishes where the device is; it sends nothing.
+ *
+ * Every alert is a single GSM-7 segment with the zone's name, coordinates and a map link. Times
+ * are the fixes' own, so a batch of late fixes dwells as long as the device did. Not
+ * thread-safe; the owning service calls it from one thread.
+ *
+ * The fixes the service gets anyway can be ten minutes apart, too few to confirm a change in
+ * time. So {@link #request} asks for more while it matters: balanced fixes every minute within
+ * {@link Config#approachMeters} of a zone's box, high-accuracy fixes every
+ * {@value #EDGE_INTERVAL_SECONDS} seconds within {@link Config#edgeMeters} of a boundary.
+ */
+public final class GeofenceEngine {
+
+    public static final class Config {
+        public static final Config DEFAULT = new Config(20f, 75f, 2, 2000f, 150f);
+
+        final float hysteresisMeters;
+        final float maxAccuracyMeters;
+        final int confirmFixes;
+        final float approachMeters;
+        final float edgeMeters;
+
+        public Config(float hysteresisMeters, float maxAccuracyMeters, int confirmFixes, float approachMeters,
+                      float edgeMeters) {
+            this.hysteresisMeters = hysteresisMeters;
+            this.maxAccuracyMeters = maxAccuracyMeters;
+            this.confirmFixes = Math.max(1, confirmFixes);
+            this.approachMeters = approachMeters;
+            this.edgeMeters = edgeMeters;
+        }
+    }
+
+    private static final Logger LOG = Logger.get("GeofenceEngine");
+
+    private static final int DECIMALS = 5;
+    static final int EDGE_INTERVAL_SECONDS = 15;
+    private static final LocationTracker.Request APPROACH_REQUEST =
+            new LocationTracker.Request(TimeUnit.MINUTES.toMillis(1), false);
+    private static final LocationTracker.Request EDGE_REQUEST =
+            new LocationTracker.Request(TimeUnit.SECONDS.toMillis(EDGE_INTERVAL_SECONDS), true);
+
+    private final Config config;
+    private final GeofenceIndex index;
+    private final OutboundSmsQueue outbound;
+    private final AuditLog audit;
+    private final FlightRecorder recorder;
+    private final ResponderMetrics metrics;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final StringBuilder text = new StringBuilder(160);
+
+    // Per zone, by index number
+    private final boolean[] inside;
+    private final long[] enteredAtMillis;
+    private final boolean[] dwellDone;
+    private final int[] pendingFixes;
+    private final long[] pendingEpoch;
+    private final long[] seenEpoch;
+    private final int[] hits;
+    // The zones the device is inside, in no order
+    private final int[] insideZones;
+    private int insideCount;
+
+    private long epoch;
+    private long lastFixMillis = Long.MIN_VALUE;
+    private LocationTracker.Request request;
+
+    public GeofenceEngine(Config config, List<Geofence> zones, OutboundSmsQueue outbound, AuditLog audit,
+                          FlightRecorder recorder, ResponderMetrics metrics) {
+        this.config = config;
+        this.index = GeofenceIndex.build(zones);
+        this.outbound = outbound;
+        this.audit = audit;
+        this.recorder = recorder;
+        this.metrics = metrics;
+        int count = index.size();
+        for (int i = 0; i < count; i++) {
+            ids.put(index.get(i).getId(), i);
+        }
+        inside = new boolean[count];
+        enteredAtMillis = new long[count];
+        dwellDone = new boolean[count];
+        pendingFixes = new int[count];
+        pendingEpoch = new long[count];
+        seenEpoch = new long[count];
+        hits = new int[count];
+        insideZones = new int[count];
+    }
+
+    public int zoneCount() {
+        return index.size();
+    }
+
+    /** Whether the device is inside the zone as far as alerts go; false for an unknown id. */
+    public boolean isInside(String id) {
+        Integer zone = ids.get(id);
+        return zone != null && inside[zone];
+    }
+
+    /**
+     * The location updates wanted on top of the service's own, as of the last fix: none far
+     * from every zone, more and better ones closer in.
+     */
+    public LocationTracker.Request request() {
+        return request;
+    }
+
+    /** Feeds a fix: updates which zones the device is in and sends whatever alerts are due. */
+    public void onFix(LocationFix fix) {
+        if (index.size() == 0 || fix.getTimeMillis() <= lastFixMillis) {
+            return;
+        }
+        long start = System.nanoTime();
+        // Even a fix too rough to decide on says roughly how close the zones are
+        request = requestNear(fix.getLatitude(), fix.getLongitude());
+        if (fix.getAccuracyMeters() > config.maxAccuracyMeters) {
+            metrics.recordNanos(ResponderMetrics.Stage.GEOFENCE, System.nanoTime() - start);
+            return;
+        }
+        boolean first = lastFixMillis == Long.MIN_VALUE;
+        lastFixMillis = fix.getTimeMillis();
+        epoch++;
+
+        double lat = fix.getLatitude();
+        double lon = fix.getLongitude();
+        double margin = config.hysteresisMeters;
+        int found = search(lat, lon, margin);
+        for (int h = 0; h < found; h++) {
+            int zone = hits[h];
+            seenEpoch[zone] = epoch;
+            double distance = index.get(zone).signedDistanceMeters(lat, lon);
+            // Inside until clearly out, outside until clearly in
+            boolean in = inside[zone] ? distance < margin : distance <= -margin;
+            update(zone, in, fix, first);
+        }
+        // A zone not found is more than the margin away; backwards so leaving can swap-remove
+        for (int i = insideCount - 1; i >= 0; i--) {
+            int zone = insideZones[i];
+            if (seenEpoch[zone] != epoch) {
+                update(zone, false, fix, first);
+            }
+        }
+        for (int i = 0; i < insideCount; i++) {
+            checkDwell(insideZones[i], fix);
+        }
+        metrics.recordNanos(ResponderMetrics.Stage.GEOFENCE, System.nanoTime() - start);
+    }
+
+    private LocationTracker.Request requestNear(double lat, double lon) {
+        double latMargin = config.approachMeters / Geofence.METERS_PER_DEGREE;
+        double lonMargin = lonMargin(latMargin, lat);
+        if (!index.intersects(lat - latMargin, lon - lonMargin, lat + latMargin, lon + lonMargin)) {
+            return null;
+        }
+        int found = search(lat, lon, config.edgeMeters);
+        for (int h = 0; h < found; h++) {
+            if (Math.abs(index.get(hits[h]).signedDistanceMeters(lat, lon)) <= config.edgeMeters) {
+                return EDGE_REQUEST;
+            }
+        }
+        return APPROACH_REQUEST;
+    }
+
+    /** Zones whose boxes come within {@code meters} of the point, into {@link #hits}. */
+    private int search(double lat, double lon, double meters) {
+        double latMargin = meters / Geofence.METERS_PER_DEGREE;
+        double lonMargin = lonMargin(latMargin, lat);
+        return index.search(lat - latMargin, lon - lonMargin, lat + latMargin, lon + lonMargin, hits);
+    }
+
+    private static double lonMargin(double latMargin, double lat) {
+        return latMargin / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+    }
+
+    private void update(int zone, boolean in, LocationFix fix, boolean first) {
+        if (in == inside[zone]) {
+            pendingFixes[zone] = 0;
+            return;
+        }
+        if (first) {
+            // Already there when watching began: no alert, and no dwell alert either
+            setInside(zone, in, fix.getTimeMillis());
+            dwellDone[zone] = true;
+            return;
+        }
+        // Only consecutive fixes count towards a change
+        if (pendingEpoch[zone] != epoch - 1) {
+            pendingFixes[zone] = 0;
+        }
+        pendingEpoch[zone] = epoch;
+        if (++pendingFixes[zone] < config.confirmFixes) {
+            return;
+        }
+        pendingFixes[zone] = 0;
+        setInside(zone, in, fix.getTimeMillis());
+        Geofence geofence = index.get(zone);
+        Geofence.Transition transition = in ? Geofence.Transition.ENTER : Geofence.Transition.EXIT;
+        LOG.d("Geofence {} {}", geofence.getId(), transition);
+        if (geofence.getAlert().isOn(transition)) {
+            send(geofence, transition, fix);
+        }
+    }
+
+    private void checkDwell(int zone, LocationFix fix) {
+        if (dwellDone[zone]) {
+            return;
+        }
+        Geofence geofence = index.get(zone);
+        Geofence.Alert alert = geofence.getAlert();
+        if (!alert.isOn(Geofence.Transition.DWELL)) {
+            dwellDone[zone] = true;
+        } else if (fix.getTimeMillis() - enteredAtMillis[zone] >= alert.getDwellMillis()) {
+            dwellDone[zone] = true;
+            send(geofence, Geofence.Transition.DWELL, fix);
+        }
+    }
+
+    private void setInside(int zone, boolean in, long timeMillis) {
+        inside[zone] = in;
+        if (in) {
+            enteredAtMillis[zone] = timeMillis;
+            dwellDone[zone] = false;
+            insideZones[insideCount++] = zone;
+            return;
+        }
+        for (int i = 0; i < insideCount; i++) {
+            if (insideZones[i] == zone) {
+                insideZones[i] = insideZones[--insideCount];
+                break;
+            }
+        }
+    }
+
+    private void send(Geofence geofence, Geofence.Transition transition, LocationFix fix) {
+        text.setLength(0);
+        switch (transition) {
+            case ENTER:
+                text.append("Entered ").append(geofence.getName());
+                break;
+            case EXIT:
+                text.append("Left ").append(geofence.getName());
+                break;
+            default:
+                text.append("In ").append(geofence.getName()).append(" for ")
+                        .append(TimeUnit.MILLISECONDS.toMinutes(geofence.getAlert().getDwellMillis())).append(" min");
+                break;
+        }
+        text.append(": ");
+        appendCoordinate(fix.getLatitude()).append(',');
+        appendCoordinate(fix.getLongitude()).append(" (accuracy ");
+        FixedPoint.append(text, fix.getAccuracyMeters(), 0).append("m) maps.google.com/?q=");
+        appendCoordinate(fix.getLatitude()).append(',');
+        appendCoordinate(fix.getLongitude());
+
+        String contact = geofence.getAlert().getContact();
+        try {
+            long id = outbound.enqueue(contact, Collections.singletonList(text.toString()));
+            audit.replyQueued(contact, id,
+                    "geofence " + transition.name().toLowerCase(Locale.US) + " " + geofence.getId());
+            metrics.increment(ResponderMetrics.Counter.GEOFENCE_ALERTS);
+            recorder.record(FlightRecorder.Event.GEOFENCE_ALERT, transition.ordinal(), id);
+        } catch (Exception e) {
+            metrics.increment(ResponderMetrics.Counter.ERRORS);
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Failed to queue geofence alert", e);
+        }
+    }
+
+    private StringBuilder appendCoordinate(double degrees) {
+        return FixedPoint.appendTrimmed(text, degrees, DECIMALS);
+    }
+}
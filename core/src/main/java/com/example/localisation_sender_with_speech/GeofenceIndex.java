@@ -0,0 +1,176 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Static R-tree over the bounding boxes of a set of {@link Geofence}s, so a fix is checked
+ * against the few zones around it rather than all of them.
+ *
+ * The tree is bulk-loaded once with Sort-Tile-Recursive packing: each level's entries are cut
+ * into vertical slices by longitude, each slice sorted by latitude, and runs of
+ * {@link #NODE_CAPACITY} become the nodes of the level above. Nodes are full and barely overlap,
+ * and every level is a few flat arrays, so a search is a handful of box tests per level and
+ * allocates nothing. Zones are numbered in the order they were given. Immutable; safe to
+ * search from any thread.
+ */
+public final class GeofenceIndex {
+
+    static final int NODE_CAPACITY = 16;
+
+    private static final int MIN_LAT = 0;
+    private static final int MIN_LON = 1;
+    private static final int MAX_LAT = 2;
+    private static final int MAX_LON = 3;
+
+    private final Geofence[] zones;
+    // Four bounds per zone, so leaves are tested without touching the zones themselves
+    private final double[] zoneBoxes;
+    // Per level, leaves first: four bounds per node, and each node's children as a range of
+    // the children array (zone numbers for leaves, node numbers one level down otherwise)
+    private final double[][] boxes;
+    private final int[][] childStart;
+    private final int[][] children;
+
+    private GeofenceIndex(Geofence[] zones, double[] zoneBoxes, double[][] boxes, int[][] childStart,
+                          int[][] children) {
+        this.zones = zones;
+        this.zoneBoxes = zoneBoxes;
+        this.boxes = boxes;
+        this.childStart = childStart;
+        this.children = children;
+    }
+
+    public static GeofenceIndex build(List<Geofence> zones) {
+        Geofence[] array = zones.toArray(new Geofence[0]);
+        double[] entries = new double[array.length * 4];
+        for (int i = 0; i < array.length; i++) {
+            entries[i * 4 + MIN_LAT] = array[i].minLatitude;
+            entries[i * 4 + MIN_LON] = array[i].minLongitude;
+            entries[i * 4 + MAX_LAT] = array[i].maxLatitude;
+            entries[i * 4 + MAX_LON] = array[i].maxLongitude;
+        }
+        double[] zoneBoxes = entries;
+        int levels = 1;
+        for (long capacity = NODE_CAPACITY; capacity < array.length; capacity *= NODE_CAPACITY) {
+            levels++;
+        }
+        double[][] boxes = new double[levels][];
+        int[][] childStart = new int[levels][];
+        int[][] children = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            int count = entries.length / 4;
+            int[] order = sortTileRecursive(entries, count);
+            int nodes = Math.max(1, (count + NODE_CAPACITY - 1) / NODE_CAPACITY);
+            double[] nodeBoxes = new double[nodes * 4];
+            int[] starts = new int[nodes + 1];
+            for (int node = 0; node < nodes; node++) {
+                int start = node * NODE_CAPACITY;
+                int end = Math.min(count, start + NODE_CAPACITY);
+                starts[node] = start;
+                nodeBoxes[node * 4 + MIN_LAT] = Double.MAX_VALUE;
+                nodeBoxes[node * 4 + MIN_LON] = Double.MAX_VALUE;
+                nodeBoxes[node * 4 + MAX_LAT] = -Double.MAX_VALUE;
+                nodeBoxes[node * 4 + MAX_LON] = -Double.MAX_VALUE;
+                for (int i = start; i < end; i++) {
+                    int entry = order[i] * 4;
+                    nodeBoxes[node * 4 + MIN_LAT] = Math.min(nodeBoxes[node * 4 + MIN_LAT], entries[entry + MIN_LAT]);
+                    nodeBoxes[node * 4 + MIN_LON] = Math.min(nodeBoxes[node * 4 + MIN_LON], entries[entry + MIN_LON]);
+                    nodeBoxes[node * 4 + MAX_LAT] = Math.max(nodeBoxes[node * 4 + MAX_LAT], entries[entry + MAX_LAT]);
+                    nodeBoxes[node * 4 + MAX_LON] = Math.max(nodeBoxes[node * 4 + MAX_LON], entries[entry + MAX_LON]);
+                }
+            }
+            starts[nodes] = count;
+            boxes[level] = nodeBoxes;
+            childStart[level] = starts;
+            children[level] = order;
+            entries = nodeBoxes;
+        }
+        return new GeofenceIndex(array, zoneBoxes, boxes, childStart, children);
+    }
+
+    /** Entry numbers in STR order: slices by longitude center, each sorted by latitude center. */
+    private static int[] sortTileRecursive(double[] entries, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> entries[i * 4 + MIN_LON] + entries[i * 4 + MAX_LON]));
+        int nodes = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceSize = (int) Math.ceil(Math.sqrt(nodes)) * NODE_CAPACITY;
+        for (int start = 0; start < count; start += sliceSize) {
+            Arrays.sort(order, start, Math.min(count, start + sliceSize),
+                    Comparator.comparingDouble(i -> entries[i * 4 + MIN_LAT] + entries[i * 4 + MAX_LAT]));
+        }
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    public int size() {
+        return zones.length;
+    }
+
+    public Geofence get(int zone) {
+        return zones[zone];
+    }
+
+    /**
+     * Writes the numbers of the zones whose bounding box meets the given box into {@code hits},
+     * which must hold {@link #size()} entries, and returns how many there are.
+     */
+    public int search(double minLat, double minLon, double maxLat, double maxLon, int[] hits) {
+        if (zones.length == 0) {
+            return 0;
+        }
+        int top = boxes.length - 1;
+        return search(top, 0, minLat, minLon, maxLat, maxLon, hits, 0);
+    }
+
+    private int search(int level, int node, double minLat, double minLon, double maxLat, double maxLon,
+                       int[] hits, int count) {
+        int[] levelChildren = children[level];
+        double[] below = level == 0 ? zoneBoxes : boxes[level - 1];
+        int end = childStart[level][node + 1];
+        for (int i = childStart[level][node]; i < end; i++) {
+            int child = levelChildren[i];
+            int box = child * 4;
+            if (level == 0) {
+                if (below[box + MIN_LAT] <= maxLat && below[box + MAX_LAT] >= minLat
+                        && below[box + MIN_LON] <= maxLon && below[box + MAX_LON] >= minLon) {
+                    hits[count++] = child;
+                }
+                continue;
+            }
+            if (below[box + MIN_LAT] <= maxLat && below[box + MAX_LAT] >= minLat
+                    && below[box + MIN_LON] <= maxLon && below[box + MAX_LON] >= minLon) {
+                count = search(level - 1, child, minLat, minLon, maxLat, maxLon, hits, count);
+            }
+        }
+        return count;
+    }
+
+    /** Whether any zone's bounding box meets the given box; stops at the first one. */
+    public boolean intersects(double minLat, double minLon, double maxLat, double maxLon) {
+        return zones.length > 0 && intersects(boxes.length - 1, 0, minLat, minLon, maxLat, maxLon);
+    }
+
+    private boolean intersects(int level, int node, double minLat, double minLon, double maxLat, double maxLon) {
+        int[] levelChildren = children[level];
+        double[] below = level == 0 ? zoneBoxes : boxes[level - 1];
+        int end = childStart[level][node + 1];
+        for (int i = childStart[level][node]; i < end; i++) {
+            int child = levelChildren[i];
+            int box = child * 4;
+            if (below[box + MIN_LAT] <= maxLat && below[box + MAX_LAT] >= minLat
+                    && below[box + MIN_LON] <= maxLon && below[box + MAX_LON] >= minLon
+                    && (level == 0 || intersects(level - 1, child, minLat, minLon, maxLat, maxLon))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
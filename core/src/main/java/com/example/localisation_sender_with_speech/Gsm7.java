@@ -0,0 +1,115 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Arrays;
+
+/**
+ * GSM 03.38 default alphabet and its extension table.
+ */
+public final class Gsm7 {
+
+    public static final int ESCAPE = 0x1B;
+    public static final int UNENCODABLE = -1;
+
+    private static final String BASIC =
+            "@£$¥èéùìòÇ\nØø\rÅå"
+            + "Δ_ΦΓΛΩΠΨΣΘΞ\u001BÆæßÉ"
+            + " !\"#¤%&'()*+,-./"
+            + "0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNO"
+            + "PQRSTUVWXYZÄÖÑÜ§"
+            + "¿abcdefghijklmno"
+            + "pqrstuvwxyzäöñüà";
+
+    // Pairs of (septet after ESCAPE, character)
+    private static final String EXTENSION =
+            "\n\f" + "\u0014^" + "({" + ")}" + "/\\" + "<[" + "=~" + ">]" + "@|" + "e€";
+
+    private static final char[] DECODE_EXTENSION = new char[128];
+    // Indexed by char for the Latin-1 range; anything above goes through the slow path
+    private static final short[] ENCODE_LATIN1 = new short[256];
+
+    static {
+        Arrays.fill(ENCODE_LATIN1, (short) UNENCODABLE);
+        for (int i = 0; i < BASIC.length(); i++) {
+            char c = BASIC.charAt(i);
+            if (i != ESCAPE && c < 256) {
+                ENCODE_LATIN1[c] = (short) i;
+            }
+        }
+        for (int i = 0; i < EXTENSION.length(); i += 2) {
+            int septet = EXTENSION.charAt(i);
+            char c = EXTENSION.charAt(i + 1);
+            DECODE_EXTENSION[septet] = c;
+            if (c < 256) {
+                ENCODE_LATIN1[c] = (short) (0x80 | septet);
+            }
+        }
+    }
+
+    private Gsm7() {
+    }
+
+    public static char decode(int septet) {
+        return BASIC.charAt(septet & 0x7F);
+    }
+
+    /** Character for a septet that followed {@link #ESCAPE}, or a space if undefined. */
+    public static char decodeExtension(int septet) {
+        char c = DECODE_EXTENSION[septet & 0x7F];
+        return c != 0 ? c : ' ';
+    }
+
+    /**
+     * Returns the basic-table septet for {@code c}, the extension septet with bit 7 set,
+     * or {@link #UNENCODABLE}.
+     */
+    public static int encode(char c) {
+        if (c < 256) {
+            return ENCODE_LATIN1[c];
+        }
+        int basic = BASIC.indexOf(c);
+        if (basic >= 0 && basic != ESCAPE) {
+            return basic;
+        }
+        for (int i = 1; i < EXTENSION.length(); i += 2) {
+            if (EXTENSION.charAt(i) == c) {
+                return 0x80 | EXTENSION.charAt(i - 1);
+            }
+        }
+        return UNENCODABLE;
+    }
+
+    /** Septets needed for {@code c}: 1, 2 for extension characters, or 0 if unencodable. */
+    public static int septets(char c) {
+        int code = encode(c);
+        if (code == UNENCODABLE) return 0;
+        return (code & 0x80) != 0 ? 2 : 1;
+    }
+
+    /**
+     * Unpacks {@code septetCount} septets starting {@code bitOffset} bits into {@code data}.
+     */
+    public static String unpack(byte[] data, int byteOffset, int bitOffset, int septetCount) {
+        StringBuilder sb = new StringBuilder(septetCount);
+        boolean escaped = false;
+        for (int i = 0; i < septetCount; i++) {
+            int bit = bitOffset + i * 7;
+            int index = byteOffset + (bit >> 3);
+            int shift = bit & 7;
+            int value = (data[index] & 0xFF) >> shift;
+            if (shift > 1 && index + 1 < data.length) {
+                value |= (data[index + 1] & 0xFF) << (8 - shift);
+            }
+            value &= 0x7F;
+            if (escaped) {
+                sb.append(decodeExtension(value));
+                escaped = false;
+            } else if (value == ESCAPE) {
+                escaped = true;
+            } else {
+                sb.append(decode(value));
+            }
+        }
+        return sb.toString();
+    }
+}
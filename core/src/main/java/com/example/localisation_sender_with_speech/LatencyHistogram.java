@@ -0,0 +1,133 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets.
+ *
+ * Values are kept in microseconds: exact below 16µs, then 16 buckets per power of two, so a
+ * reported percentile is within about 6% of the true value. 448 buckets cover up to ~35
+ * minutes; anything longer lands in the last bucket. Recording is lock-free and never
+ * allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_MICROS = Integer.MAX_VALUE;
+    static final int BUCKET_COUNT = (63 - Long.numberOfLeadingZeros(MAX_MICROS) - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_MICROS));
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sumMicros.addAndGet(value);
+        long max;
+        while (value > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, value)) {
+            // Retry until our value is stored or a larger one wins
+        }
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that falls into bucket {@code index}. */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sumMicros.get(), maxMicros.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    /** Point-in-time copy of the histogram. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /** Value at or below which {@code percentile}% of samples fall, in microseconds. */
+        public long percentileMicros(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        public double percentileMillis(double percentile) {
+            return percentileMicros(percentile) / 1000.0;
+        }
+
+        public double meanMillis() {
+            return count == 0 ? 0 : sumMicros / 1000.0 / count;
+        }
+
+        public double maxMillis() {
+            return maxMicros / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces concurrent requests for a fresh fix into a single in-flight request.
+ *
+ * The first caller starts a request on the {@link LocationSource}; callers arriving while it
+ * is in flight just join the waiter list. The result is fanned out to every waiter and the
+ * request is torn down. If every waiter cancels, the underlying request is cancelled too.
+ */
+public final class LocationBroker {
+
+    /** A caller's place in the current request. */
+    public final class Waiter {
+        private final LocationSource.Callback callback;
+        private final InFlight flight;
+
+        Waiter(LocationSource.Callback callback, InFlight flight) {
+            this.callback = callback;
+            this.flight = flight;
+        }
+
+        /** Stops waiting. Has no effect if the result is already being delivered. */
+        public void cancel() {
+            LocationSource.Request toCancel = null;
+            synchronized (lock) {
+                if (flight.waiters.remove(this) && flight.waiters.isEmpty() && current == flight) {
+                    current = null;
+                    toCancel = flight.request;
+                    flight.cancelled = true;
+                }
+            }
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+        }
+    }
+
+    private final class InFlight implements LocationSource.Callback {
+        final List<Waiter> waiters = new ArrayList<>(4);
+        LocationSource.Request request;
+        boolean cancelled;
+        LocationFix bestCandidate;
+
+        @Override
+        public void onCandidate(LocationFix fix) {
+            if (cache != null && fix != null) {
+                cache.offer(fix);
+            }
+            List<Waiter> snapshot;
+            synchronized (lock) {
+                if (bestCandidate == null || fix.getAccuracyMeters() <= bestCandidate.getAccuracyMeters()) {
+                    bestCandidate = fix;
+                }
+                snapshot = new ArrayList<>(waiters);
+            }
+            for (Waiter waiter : snapshot) {
+                waiter.callback.onCandidate(fix);
+            }
+        }
+
+        @Override
+        public void onFix(LocationFix fix) {
+            if (cache != null && fix != null) {
+                cache.offer(fix);
+            }
+            for (Waiter waiter : finish()) {
+                waiter.callback.onFix(fix);
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            for (Waiter waiter : finish()) {
+                waiter.callback.onError(e);
+            }
+        }
+
+        private List<Waiter> finish() {
+            synchronized (lock) {
+                if (current == this) {
+                    current = null;
+                }
+                List<Waiter> delivered = new ArrayList<>(waiters);
+                waiters.clear();
+                return delivered;
+            }
+        }
+    }
+
+    private final Object lock = new Object();
+    private final LocationSource source;
+    private final LocationCache cache;
+    private final float defaultAccuracyTargetMeters;
+
+    private InFlight current;
+    private long underlyingRequests;
+
+    /**
+     * @param cache receives every fix the source delivers; may be null
+     * @param defaultAccuracyTargetMeters target used by {@link #requestFresh(LocationSource.Callback)}
+     */
+    public LocationBroker(LocationSource source, LocationCache cache, float defaultAccuracyTargetMeters) {
+        this.source = source;
+        this.cache = cache;
+        this.defaultAccuracyTargetMeters = defaultAccuracyTargetMeters;
+    }
+
+    public Waiter requestFresh(LocationSource.Callback callback) {
+        return requestFresh(defaultAccuracyTargetMeters, callback);
+    }
+
+    /**
+     * Joins the in-flight request, starting one with {@code accuracyTargetMeters} if none is
+     * running. A request that is already running keeps its own target, so a joiner with a
+     * tighter target may get a final fix that misses it and should check.
+     */
+    public Waiter requestFresh(float accuracyTargetMeters, LocationSource.Callback callback) {
+        InFlight flight;
+        Waiter waiter;
+        LocationFix bestSoFar;
+        boolean start = false;
+        synchronized (lock) {
+            if (current == null) {
+                current = new InFlight();
+                underlyingRequests++;
+                start = true;
+            }
+            flight = current;
+            waiter = new Waiter(callback, flight);
+            flight.waiters.add(waiter);
+            bestSoFar = flight.bestCandidate;
+        }
+        if (bestSoFar != null) {
+            callback.onCandidate(bestSoFar);
+        }
+        if (start) {
+            // Started outside the lock: a synchronous source may deliver from inside request()
+            LocationSource.Request request = source.request(accuracyTargetMeters, flight);
+            boolean cancelNow;
+            synchronized (lock) {
+                flight.request = request;
+                cancelNow = flight.cancelled;
+            }
+            if (cancelNow && request != null) {
+                request.cancel();
+            }
+        }
+        return waiter;
+    }
+
+    public boolean isRequestInFlight() {
+        synchronized (lock) {
+            return current != null;
+        }
+    }
+
+    /** Number of requests actually started on the source since creation. */
+    public long underlyingRequestCount() {
+        synchronized (lock) {
+            return underlyingRequests;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Process-wide store for the best recent location fix.
+ *
+ * SmsAutoResponseService keeps it filled from passive updates so that auto-replies and
+ * MainActivity can answer from memory. Reads are a single volatile load; each read is
+ * classified into freshness and accuracy tiers by a {@link Policy}.
+ */
+public final class LocationCache {
+
+    public enum Freshness { FRESH, RECENT, STALE, EXPIRED }
+
+    public enum Accuracy { PRECISE, GOOD, COARSE, POOR }
+
+    /** Tier boundaries and the limits beyond which a cached fix must not be sent. */
+    public static final class Policy {
+        public static final Policy DEFAULT = new Policy(
+                TimeUnit.MINUTES.toMillis(2),
+                TimeUnit.MINUTES.toMillis(10),
+                TimeUnit.MINUTES.toMillis(30),
+                20f, 100f, 1000f,
+                2000f);
+
+        final long freshMillis;
+        final long recentMillis;
+        final long maxAgeMillis;
+        final float preciseMeters;
+        final float goodMeters;
+        final float coarseMeters;
+        final float maxAccuracyMeters;
+
+        public Policy(long freshMillis, long recentMillis, long maxAgeMillis,
+                      float preciseMeters, float goodMeters, float coarseMeters,
+                      float maxAccuracyMeters) {
+            this.freshMillis = freshMillis;
+            this.recentMillis = recentMillis;
+            this.maxAgeMillis = maxAgeMillis;
+            this.preciseMeters = preciseMeters;
+            this.goodMeters = goodMeters;
+            this.coarseMeters = coarseMeters;
+            this.maxAccuracyMeters = maxAccuracyMeters;
+        }
+
+        public Freshness freshness(long ageMillis) {
+            if (ageMillis <= freshMillis) return Freshness.FRESH;
+            if (ageMillis <= recentMillis) return Freshness.RECENT;
+            if (ageMillis <= maxAgeMillis) return Freshness.STALE;
+            return Freshness.EXPIRED;
+        }
+
+        public Accuracy accuracy(float meters) {
+            if (meters <= preciseMeters) return Accuracy.PRECISE;
+            if (meters <= goodMeters) return Accuracy.GOOD;
+            if (meters <= coarseMeters) return Accuracy.COARSE;
+            return Accuracy.POOR;
+        }
+
+        public boolean isSendable(long ageMillis, float accuracyMeters) {
+            return ageMillis <= maxAgeMillis && accuracyMeters <= maxAccuracyMeters;
+        }
+    }
+
+    /** A cached fix together with how it was classified at read time. */
+    public static final class Entry {
+        private final LocationFix fix;
+        private final long ageMillis;
+        private final Freshness freshness;
+        private final Accuracy accuracy;
+        private final boolean sendable;
+
+        Entry(LocationFix fix, long ageMillis, Policy policy) {
+            this.fix = fix;
+            this.ageMillis = ageMillis;
+            this.freshness = policy.freshness(ageMillis);
+            this.accuracy = policy.accuracy(fix.getAccuracyMeters());
+            this.sendable = policy.isSendable(ageMillis, fix.getAccuracyMeters());
+        }
+
+        public LocationFix getFix() {
+            return fix;
+        }
+
+        public long getAgeMillis() {
+            return ageMillis;
+        }
+
+        public Freshness getFreshness() {
+            return freshness;
+        }
+
+        public Accuracy getAccuracy() {
+            return accuracy;
+        }
+
+        public boolean isSendable() {
+            return sendable;
+        }
+    }
+
+    // A newer fix wins unless it is this much less accurate and arrived within the window
+    private static final long SIGNIFICANTLY_NEWER_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final float SIGNIFICANTLY_LESS_ACCURATE_METERS = 200f;
+
+    private static final LocationCache INSTANCE = new LocationCache(Policy.DEFAULT);
+
+    private final AtomicReference<LocationFix> best = new AtomicReference<>();
+    private volatile Policy policy;
+
+    public LocationCache(Policy policy) {
+        this.policy = policy;
+    }
+
+    public static LocationCache getInstance() {
+        return INSTANCE;
+    }
+
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /** Offers a new fix; it replaces the cached one only if it is better. Returns whether it did. */
+    public boolean offer(LocationFix candidate) {
+        while (true) {
+            LocationFix current = best.get();
+            if (!isBetter(candidate, current)) {
+                return false;
+            }
+            if (best.compareAndSet(current, candidate)) {
+                return true;
+            }
+        }
+    }
+
+    /** The cached fix classified at {@code nowMillis}, or null if nothing has been cached. */
+    public Entry get(long nowMillis) {
+        LocationFix fix = best.get();
+        return fix != null ? new Entry(fix, fix.ageMillis(nowMillis), policy) : null;
+    }
+
+    /** The cached fix if the policy allows sending it at {@code nowMillis}, otherwise null. */
+    public Entry getSendable(long nowMillis) {
+        Entry entry = get(nowMillis);
+        return entry != null && entry.isSendable() ? entry : null;
+    }
+
+    public void clear() {
+        best.set(null);
+    }
+
+    static boolean isBetter(LocationFix candidate, LocationFix current) {
+        if (candidate == null) return false;
+        if (current == null) return true;
+
+        long timeDelta = candidate.getTimeMillis() - current.getTimeMillis();
+        if (timeDelta > SIGNIFICANTLY_NEWER_MILLIS) return true;
+        if (timeDelta < -SIGNIFICANTLY_NEWER_MILLIS) return false;
+
+        float accuracyDelta = candidate.getAccuracyMeters() - current.getAccuracyMeters();
+        if (accuracyDelta < 0) return true;
+        return timeDelta > 0 && accuracyDelta <= SIGNIFICANTLY_LESS_ACCURATE_METERS;
+    }
+}
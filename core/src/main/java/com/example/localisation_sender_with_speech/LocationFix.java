@@ -0,0 +1,41 @@
+package com.example.localisation_sender_with_speech;
+
+/**
+ * An immutable position fix, independent of android.location.Location so it can be shared
+ * across threads and used off-device.
+ */
+public final class LocationFix {
+
+    private final double latitude;
+    private final double longitude;
+    private final float accuracyMeters;
+    private final long timeMillis;
+
+    public LocationFix(double latitude, double longitude, float accuracyMeters, long timeMillis) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.timeMillis = timeMillis;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    /** Wall-clock time of the fix, in milliseconds since the epoch. */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long ageMillis(long nowMillis) {
+        return Math.max(0, nowMillis - timeMillis);
+    }
+}
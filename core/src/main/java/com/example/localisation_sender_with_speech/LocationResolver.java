@@ -0,0 +1,159 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Picks the fix an auto-reply is sent with: from the cache, a fresh fix, or, when the
+ * fresh fix runs out of time, the best one seen so far.
+ *
+ * Only a cached fix within the cache policy's fresh age is sent as is. An older one is the
+ * fallback while a fresh fix is sought, and if it is what gets sent, it goes out on the
+ * DEGRADED path, whose replies state its age.
+ */
+public final class LocationResolver {
+
+    /** Which path served a request. */
+    public enum Path { CACHED, FRESH, DEGRADED }
+
+    public static final class Resolution {
+        private final LocationFix fix;
+        private final Path path;
+
+        Resolution(LocationFix fix, Path path) {
+            this.fix = fix;
+            this.path = path;
+        }
+
+        public LocationFix getFix() {
+            return fix;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+    }
+
+    private final LocationCache cache;
+    private final LocationBroker broker;
+    private final AtomicLongArray pathCounts = new AtomicLongArray(Path.values().length);
+
+    public LocationResolver(LocationCache cache, LocationBroker broker) {
+        this.cache = cache;
+        this.broker = broker;
+    }
+
+    /**
+     * Blocks the calling worker thread until a fix is chosen or the deadline passes.
+     * Never call this on the main thread.
+     *
+     * @return the chosen fix, or null if no fix at all was available in time
+     * @throws Exception the source's error, if it failed and nothing usable had been seen
+     */
+    public Resolution resolve(AcquisitionPolicy policy, Deadline deadline, long nowMillis) throws Exception {
+        float target = policy.getAccuracyTargetMeters();
+
+        LocationCache.Entry cached = cache.get(nowMillis);
+        if (servesFromCache(policy, cached)) {
+            return record(cached.getFix(), Path.CACHED);
+        }
+
+        Attempt attempt = new Attempt(target);
+        // An older fix the policy wouldn't send on its own is still better than nothing
+        if (cached != null) {
+            attempt.best = cached.getFix();
+        }
+
+        LocationBroker.Waiter waiter = broker.requestFresh(target, attempt);
+        long waitMillis = Math.min(deadline.remainingMillis(), policy.getFreshTimeoutMillis());
+        try {
+            attempt.done.await(waitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiter.cancel();
+        }
+
+        synchronized (attempt) {
+            if (attempt.met != null) {
+                return record(attempt.met, Path.FRESH);
+            }
+            if (attempt.best != null) {
+                return record(attempt.best, Path.DEGRADED);
+            }
+            if (attempt.error != null) {
+                throw attempt.error;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether {@link #resolve} would be answered now without starting a location request: from
+     * the cache, or by joining the request already running. Those cost nothing more.
+     */
+    public boolean isShared(AcquisitionPolicy policy, long nowMillis) {
+        return servesFromCache(policy, cache.get(nowMillis)) || broker.isRequestInFlight();
+    }
+
+    private static boolean servesFromCache(AcquisitionPolicy policy, LocationCache.Entry cached) {
+        return cached != null && cached.getFreshness() == LocationCache.Freshness.FRESH && cached.isSendable()
+                && cached.getFix().getAccuracyMeters() <= policy.getAccuracyTargetMeters();
+    }
+
+    /** The cached fix, however old or coarse, or null if there is none worth keeping. */
+    public LocationFix lastKnown(long nowMillis) {
+        LocationCache.Entry cached = cache.get(nowMillis);
+        return cached != null ? cached.getFix() : null;
+    }
+
+    public long pathCount(Path path) {
+        return pathCounts.get(path.ordinal());
+    }
+
+    private Resolution record(LocationFix fix, Path path) {
+        pathCounts.incrementAndGet(path.ordinal());
+        return new Resolution(fix, path);
+    }
+
+    private static final class Attempt implements LocationSource.Callback {
+        final CountDownLatch done = new CountDownLatch(1);
+        final float target;
+        LocationFix met;
+        LocationFix best;
+        Exception error;
+
+        Attempt(float target) {
+            this.target = target;
+        }
+
+        @Override
+        public void onFix(LocationFix fix) {
+            consider(fix);
+            // The shared request may have had a looser target; either way it is over
+            done.countDown();
+        }
+
+        @Override
+        public void onCandidate(LocationFix fix) {
+            consider(fix);
+        }
+
+        @Override
+        public synchronized void onError(Exception e) {
+            error = e;
+            done.countDown();
+        }
+
+        synchronized void consider(LocationFix fix) {
+            if (fix == null) return;
+            if (fix.getAccuracyMeters() <= target) {
+                if (met == null) {
+                    met = fix;
+                }
+                done.countDown();
+            } else if (LocationCache.isBetter(fix, best)) {
+                best = fix;
+            }
+        }
+    }
+}
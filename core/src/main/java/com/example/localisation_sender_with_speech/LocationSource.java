@@ -0,0 +1,32 @@
+package com.example.localisation_sender_with_speech;
+
+/**
+ * Something that can produce a fresh location fix, such as the fused provider.
+ */
+public interface LocationSource {
+
+    interface Callback {
+        /** The final fix for the request: it met the accuracy target. */
+        void onFix(LocationFix fix);
+
+        void onError(Exception e);
+
+        /** An intermediate fix that did not meet the accuracy target. */
+        default void onCandidate(LocationFix fix) {
+        }
+    }
+
+    interface Request {
+        /** Stops the request and releases any listeners it registered. */
+        void cancel();
+    }
+
+    /**
+     * Starts one request that runs until a fix within {@code accuracyTargetMeters} arrives.
+     * Fixes that miss the target are reported through {@link Callback#onCandidate}. The
+     * source must report exactly one final result ({@code onFix} or {@code onError}),
+     * including on its own timeout, and release its listeners once it has, unless the
+     * request was cancelled first.
+     */
+    Request request(float accuracyTargetMeters, Callback callback);
+}
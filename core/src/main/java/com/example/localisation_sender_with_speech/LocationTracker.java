@@ -0,0 +1,355 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * "Track me" sessions: periodic location updates to trusted senders for a bounded time.
+ *
+ * Updates follow movement rather than a clock. One is sent when the device has moved more
+ * than the session's distance threshold since the last update, no sooner than the minimum
+ * interval, so nothing goes out while stationary and updates come more often at speed. The
+ * provider interval follows the same estimate: a slow balanced poll while stationary, faster
+ * high-accuracy fixes while moving.
+ *
+ * Every update is a single GSM-7 segment. The first and every {@link Config#keyframeEvery}th
+ * carry absolute coordinates and a map link; the others only the offset from the previous
+ * update at the same 5-decimal precision, so a lost message costs at most a few updates of
+ * precision. Not thread-safe; the owning service calls it from one thread.
+ */
+public final class LocationTracker {
+
+    public static final class Config {
+        public static final Config DEFAULT = new Config(TimeUnit.MINUTES.toMillis(30), TimeUnit.SECONDS.toMillis(30),
+                50f, TimeUnit.SECONDS.toMillis(60), TimeUnit.SECONDS.toMillis(5), 4, 3);
+
+        final long durationMillis;
+        final long minIntervalMillis;
+        final float minDistanceMeters;
+        final long stationaryPollMillis;
+        final long fastestPollMillis;
+        final int keyframeEvery;
+        final int maxSessions;
+
+        public Config(long durationMillis, long minIntervalMillis, float minDistanceMeters,
+                      long stationaryPollMillis, long fastestPollMillis, int keyframeEvery, int maxSessions) {
+            this.durationMillis = durationMillis;
+            this.minIntervalMillis = minIntervalMillis;
+            this.minDistanceMeters = minDistanceMeters;
+            this.stationaryPollMillis = stationaryPollMillis;
+            this.fastestPollMillis = fastestPollMillis;
+            this.keyframeEvery = Math.max(1, keyframeEvery);
+            this.maxSessions = maxSessions;
+        }
+    }
+
+    /** What the location provider should deliver while sessions run. */
+    public static final class Request {
+        private final long intervalMillis;
+        private final boolean highAccuracy;
+
+        Request(long intervalMillis, boolean highAccuracy) {
+            this.intervalMillis = intervalMillis;
+            this.highAccuracy = highAccuracy;
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public boolean isHighAccuracy() {
+            return highAccuracy;
+        }
+
+        /** Worth re-registering for: the accuracy mode flips or the interval moves by a quarter. */
+        public boolean differsFrom(Request other) {
+            return other == null || highAccuracy != other.highAccuracy
+                    || Math.abs(intervalMillis - other.intervalMillis) * 4 > other.intervalMillis;
+        }
+    }
+
+    private static final Logger LOG = Logger.get("LocationTracker");
+
+    private static final int DECIMALS = 5;
+    private static final double SCALE = 1e5;
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+    // Below this the estimate is GPS noise
+    private static final float MOVING_METERS_PER_SECOND = 0.5f;
+    private static final double SPEED_SMOOTHING = 0.5;
+    private static final long FRESH_START_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private final Config config;
+    private final OutboundSmsQueue outbound;
+    private final AuditLog audit;
+    private final FlightRecorder recorder;
+    private final ResponderMetrics metrics;
+    private final LongSupplier clock;
+    private final Map<String, Session> sessions = new LinkedHashMap<>();
+    private final StringBuilder text = new StringBuilder(160);
+
+    private LocationFix lastFix;
+    private double speed;
+
+    public LocationTracker(Config config, OutboundSmsQueue outbound, AuditLog audit, FlightRecorder recorder,
+                           ResponderMetrics metrics, LongSupplier clock) {
+        this.config = config;
+        this.outbound = outbound;
+        this.audit = audit;
+        this.recorder = recorder;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    /** Starts or extends a session of the configured duration; see {@link #start(String, long)}. */
+    public boolean start(String sender) {
+        return start(sender, 0);
+    }
+
+    /**
+     * Starts a session for {@code sender}, or extends the running one, to end
+     * {@code durationMillis} from now (0 for the configured duration). Returns false when the
+     * session limit is reached; the oldest session is never evicted for a new one.
+     */
+    public boolean start(String sender, long durationMillis) {
+        long duration = durationMillis > 0 ? durationMillis : config.durationMillis;
+        long now = clock.getAsLong();
+        Session session = sessions.get(sender);
+        if (session == null) {
+            if (sessions.size() >= config.maxSessions) {
+                LOG.w("Tracking limit reached, not tracking for {*}", sender);
+                audit.record(AuditLog.Type.DECISION, sender, 0, "TRACKING_LIMIT");
+                return false;
+            }
+            session = new Session(sender);
+            sessions.put(sender, session);
+            recorder.record(FlightRecorder.Event.TRACKING_STARTED, sessions.size(), sender);
+        }
+        session.endsAtMillis = now + duration;
+        session.durationMillis = duration;
+        // Answer right away if the last fix is recent, otherwise with the next one
+        if (lastFix != null && session.updates == 0 && now - lastFix.getTimeMillis() <= FRESH_START_MILLIS) {
+            send(session, lastFix, now);
+        }
+        return true;
+    }
+
+    /** Ends the session for {@code sender}, telling them so. Returns false if there was none. */
+    public boolean stop(String sender) {
+        Session session = sessions.remove(sender);
+        if (session == null) {
+            return false;
+        }
+        end(session, "Tracking stopped");
+        return true;
+    }
+
+    /** Feeds a fix: updates the motion estimate and sends whatever is due. */
+    public void onFix(LocationFix fix) {
+        if (lastFix != null && fix.getTimeMillis() <= lastFix.getTimeMillis()) {
+            return;
+        }
+        updateSpeed(fix);
+        lastFix = fix;
+        long now = clock.getAsLong();
+        expire(now);
+        for (Session session : sessions.values()) {
+            if (isDue(session, fix, now)) {
+                send(session, fix, now);
+            }
+        }
+    }
+
+    /** Ends sessions whose time is up; returns when the next one ends, or 0 if none are left. */
+    public long expire() {
+        long now = clock.getAsLong();
+        expire(now);
+        long next = Long.MAX_VALUE;
+        for (Session session : sessions.values()) {
+            next = Math.min(next, session.endsAtMillis);
+        }
+        return sessions.isEmpty() ? 0 : next;
+    }
+
+    public boolean isActive() {
+        return !sessions.isEmpty();
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /** Smoothed ground speed from consecutive fixes. */
+    public double speedMetersPerSecond() {
+        return speed;
+    }
+
+    /**
+     * The provider request for the current motion, or null when no session is running. While
+     * moving, fixes come twice per expected update so the distance threshold isn't overshot
+     * by a whole interval.
+     */
+    public Request request() {
+        if (sessions.isEmpty()) {
+            return null;
+        }
+        if (speed < MOVING_METERS_PER_SECOND) {
+            return new Request(config.stationaryPollMillis, false);
+        }
+        long cadence = Math.max(config.minIntervalMillis, (long) (config.minDistanceMeters / speed * 1000));
+        long interval = Math.max(config.fastestPollMillis, Math.min(config.stationaryPollMillis, cadence / 2));
+        return new Request(interval, true);
+    }
+
+    private void expire(long now) {
+        List<Session> ended = null;
+        for (Session session : sessions.values()) {
+            if (now >= session.endsAtMillis) {
+                if (ended == null) ended = new ArrayList<>();
+                ended.add(session);
+            }
+        }
+        if (ended != null) {
+            for (Session session : ended) {
+                sessions.remove(session.sender);
+                end(session, "Tracking ended");
+            }
+        }
+    }
+
+    private boolean isDue(Session session, LocationFix fix, long now) {
+        if (session.updates == 0) {
+            return true;
+        }
+        if (now - session.lastSentAtMillis < config.minIntervalMillis) {
+            return false;
+        }
+        // Moving less than the fix's own uncertainty is not movement
+        double threshold = Math.max(config.minDistanceMeters, 2 * fix.getAccuracyMeters());
+        return distanceMeters(session.lastLat / SCALE, session.lastLon / SCALE,
+                fix.getLatitude(), fix.getLongitude()) >= threshold;
+    }
+
+    private void send(Session session, LocationFix fix, long now) {
+        long lat = Math.round(fix.getLatitude() * SCALE);
+        long lon = Math.round(fix.getLongitude() * SCALE);
+        int number = session.updates + 1;
+        text.setLength(0);
+        if (session.updates % config.keyframeEvery == 0) {
+            appendKeyframe(number, fix, lat, lon);
+            if (session.updates == 0) {
+                text.append(" For ").append(TimeUnit.MILLISECONDS.toMinutes(session.durationMillis))
+                        .append(" min, reply STOP TRACKING to end");
+            }
+        } else {
+            text.append("Track ").append(number).append(": ");
+            appendOffset(lat - session.lastLat).append(',');
+            appendOffset(lon - session.lastLon);
+            text.append(" from #").append(number - 1).append(" (accuracy ");
+            FixedPoint.append(text, fix.getAccuracyMeters(), 0).append("m) ");
+            appendDuration(now - session.lastSentAtMillis).append(" later");
+        }
+        long id = enqueue(session.sender, "update " + number);
+        if (id < 0) {
+            return;
+        }
+        session.updates = number;
+        session.lastLat = lat;
+        session.lastLon = lon;
+        session.lastSentAtMillis = now;
+        metrics.increment(ResponderMetrics.Counter.TRACKING_UPDATES);
+        recorder.record(FlightRecorder.Event.TRACKING_UPDATE, number, id);
+    }
+
+    private void end(Session session, String reason) {
+        text.setLength(0);
+        text.append(reason).append(" after ").append(session.updates).append(" update(s).");
+        if (session.updates > 0) {
+            text.append(" Last: ");
+            appendCoordinate(session.lastLat).append(',');
+            appendCoordinate(session.lastLon);
+        }
+        enqueue(session.sender, reason.toLowerCase(Locale.US));
+        recorder.record(FlightRecorder.Event.TRACKING_ENDED, session.updates, session.sender);
+    }
+
+    private long enqueue(String sender, String detail) {
+        try {
+            long id = outbound.enqueue(sender, Collections.singletonList(text.toString()));
+            audit.replyQueued(sender, id, "tracking " + detail);
+            return id;
+        } catch (Exception e) {
+            metrics.increment(ResponderMetrics.Counter.ERRORS);
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Failed to queue tracking update", e);
+            return -1;
+        }
+    }
+
+    private void appendKeyframe(int number, LocationFix fix, long lat, long lon) {
+        text.append("Track ").append(number).append(": ");
+        appendCoordinate(lat).append(',');
+        appendCoordinate(lon).append(" (accuracy ");
+        FixedPoint.append(text, fix.getAccuracyMeters(), 0).append("m) maps.google.com/?q=");
+        appendCoordinate(lat).append(',');
+        appendCoordinate(lon).append('.');
+    }
+
+    private StringBuilder appendCoordinate(long scaled) {
+        return FixedPoint.appendTrimmed(text, scaled / SCALE, DECIMALS);
+    }
+
+    private StringBuilder appendOffset(long scaled) {
+        if (scaled >= 0) text.append('+');
+        return FixedPoint.appendTrimmed(text, scaled / SCALE, DECIMALS);
+    }
+
+    private StringBuilder appendDuration(long millis) {
+        long seconds = Math.max(0, millis / 1000);
+        if (seconds < 60) {
+            return text.append(seconds).append('s');
+        }
+        text.append(seconds / 60).append("m");
+        return seconds % 60 == 0 ? text : text.append(seconds % 60).append('s');
+    }
+
+    private void updateSpeed(LocationFix fix) {
+        if (lastFix == null) {
+            return;
+        }
+        double seconds = (fix.getTimeMillis() - lastFix.getTimeMillis()) / 1000.0;
+        double meters = distanceMeters(lastFix.getLatitude(), lastFix.getLongitude(),
+                fix.getLatitude(), fix.getLongitude());
+        // Jitter within the fixes' accuracy reads as standing still
+        if (meters < Math.max(fix.getAccuracyMeters(), lastFix.getAccuracyMeters())) {
+            meters = 0;
+        }
+        speed = speed * (1 - SPEED_SMOOTHING) + (meters / seconds) * SPEED_SMOOTHING;
+    }
+
+    /** Equirectangular distance; plenty for the few hundred meters between updates. */
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    private static final class Session {
+        final String sender;
+        long endsAtMillis;
+        long durationMillis;
+        int updates;
+        long lastLat;
+        long lastLon;
+        long lastSentAtMillis;
+
+        Session(String sender) {
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,669 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every fix the device sees, kept as a compact trail in memory-mapped files.
+ *
+ * Fixes are stored in fixed point (1e-6 degrees, like the replies, and decimeters of
+ * accuracy) as zigzag varint deltas from the previous fix, with delta-of-delta for time, so a
+ * fix at 1 Hz costs about four bytes. Every {@link #KEYFRAME_INTERVAL}th fix is stored in
+ * full and indexed, so a range lookup decodes at most that many fixes before its start.
+ *
+ * The trail is split into one file per time bucket (a UTC day by default); buckets older than
+ * the retention are deleted whole. Appends write straight into the mapping and are
+ * forced to disk every few hundred fixes and when a bucket is sealed, so the trail survives
+ * process death and loses at most those fixes on a power cut. Fixes that are not newer than
+ * the last one appended are dropped, which also removes duplicates delivered by several
+ * location requests.
+ */
+public final class LocationTrail implements Closeable {
+
+    public enum Format { GPX, CSV }
+
+    /** Receives decoded fixes in time order; return false to stop the scan. */
+    public interface Visitor {
+        boolean visit(long timeMillis, double latitude, double longitude, float accuracyMeters) throws IOException;
+    }
+
+    public static final class Config {
+        public static final Config DEFAULT = new Config(TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(28));
+
+        final long bucketMillis;
+        final long retentionMillis;
+
+        public Config(long bucketMillis, long retentionMillis) {
+            // Keyframe times are stored as int offsets into their bucket
+            if (bucketMillis <= 0 || bucketMillis > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("bucketMillis out of range: " + bucketMillis);
+            }
+            this.bucketMillis = bucketMillis;
+            this.retentionMillis = retentionMillis;
+        }
+    }
+
+    private static final Logger LOG = Logger.get("LocationTrail");
+
+    private static final String PREFIX = "trail-";
+    private static final String SUFFIX = ".bin";
+    private static final int MAGIC = 0x4c54524c; // "LTRL"
+    private static final int VERSION = 1;
+
+    static final int KEYFRAME_INTERVAL = 256;
+    private static final int KEYFRAME_CAPACITY = 512;
+
+    // Header: magic, version, bucket start, count, used bytes, keyframe count, then the keyframe
+    // table of (time offset, data offset) pairs
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int START_AT = 8;
+    private static final int COUNT_AT = 16;
+    private static final int USED_AT = 20;
+    private static final int KEYFRAMES_AT = 24;
+    private static final int HEADER_BYTES = 32;
+    private static final int DATA_START = HEADER_BYTES + KEYFRAME_CAPACITY * 8;
+
+    // A long and three ints as varints
+    private static final int MAX_RECORD_BYTES = 10 + 3 * 5;
+    private static final int GROW_BYTES = 16 * 1024;
+    private static final int FORCE_EVERY = 256;
+    private static final int CACHED_BUCKETS = 8;
+    private static final double E6 = 1e6;
+    private static final int MAX_ACCURACY_DM = 10_000_000;
+
+    private final File dir;
+    private final Config config;
+    // Sealed buckets by start time; the active one is also in here
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+    private final Map<Long, ByteBuffer> mapped = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+            return size() > CACHED_BUCKETS;
+        }
+    };
+    private Bucket active;
+    private MappedByteBuffer activeBuffer;
+    private long fixes;
+    private long dataBytes;
+    private boolean closed;
+
+    // Appender state: the last fix of the active bucket and the time step that led to it
+    private long lastTime = Long.MIN_VALUE;
+    private int lastLat;
+    private int lastLon;
+    private int lastAccuracy;
+    private long lastStep;
+
+    private LocationTrail(File dir, Config config) {
+        this.dir = dir;
+        this.config = config;
+    }
+
+    /** Opens the trail in {@code dir}, creating it if needed and recovering the newest bucket. */
+    public static LocationTrail open(File dir, Config config) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        LocationTrail trail = new LocationTrail(dir, config);
+        trail.load();
+        return trail;
+    }
+
+    /**
+     * Appends a fix if it is newer than the last one. Never throws: a fix that can't be written
+     * is logged and dropped, like one that arrives out of order.
+     */
+    public synchronized boolean append(LocationFix fix) {
+        long time = fix.getTimeMillis();
+        if (closed || time <= lastTime) {
+            return false;
+        }
+        try {
+            long start = bucketStart(time);
+            if (active == null || start != active.start) {
+                roll(start);
+            }
+            ensureCapacity(MAX_RECORD_BYTES);
+            write(time, toE6(fix.getLatitude()), toE6(fix.getLongitude()), toDecimeters(fix.getAccuracyMeters()));
+            return true;
+        } catch (IOException e) {
+            LOG.w("Dropping fix at {}: {}", time, e.getMessage());
+            return false;
+        }
+    }
+
+    /** The most recent fix in the trail, at stored precision, or null if it is empty. */
+    public synchronized LocationFix last() {
+        return active != null && active.count > 0
+                ? new LocationFix(lastLat / E6, lastLon / E6, lastAccuracy / 10f, lastTime)
+                : null;
+    }
+
+    /**
+     * Visits the fixes with {@code fromMillis <= time <= toMillis} in time order. Only the
+     * buckets overlapping the range are read, each from the keyframe before {@code fromMillis}.
+     */
+    public void scan(long fromMillis, long toMillis, Visitor visitor) throws IOException {
+        if (fromMillis > toMillis) {
+            return;
+        }
+        for (View view : views(fromMillis, toMillis)) {
+            if (!view.scan(fromMillis, toMillis, visitor)) {
+                return;
+            }
+        }
+    }
+
+    /** Up to {@code limit} fixes from {@code fromMillis} on, oldest first. */
+    public List<LocationFix> range(long fromMillis, long toMillis, int limit) throws IOException {
+        List<LocationFix> out = new ArrayList<>(Math.min(limit, 1024));
+        scan(fromMillis, toMillis, (time, latitude, longitude, accuracy) -> {
+            out.add(new LocationFix(latitude, longitude, accuracy, time));
+            return out.size() < limit;
+        });
+        return out;
+    }
+
+    /**
+     * Writes the fixes in the range as GPX or CSV, one at a time, and returns how many were
+     * written. The trail is never held in memory; {@code out} should be buffered.
+     */
+    public long export(long fromMillis, long toMillis, Format format, Writer out) throws IOException {
+        final UtcTimeFormatter times = new UtcTimeFormatter();
+        final StringBuilder line = new StringBuilder(128);
+        final long[] written = new long[1];
+        if (format == Format.GPX) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<gpx version=\"1.1\" creator=\"localisation_sender_with_speech\""
+                    + " xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                    + "<trk><name>Location trail</name><trkseg>\n");
+        } else {
+            out.write("time_utc,epoch_ms,latitude,longitude,accuracy_m\n");
+        }
+        scan(fromMillis, toMillis, (time, latitude, longitude, accuracy) -> {
+            line.setLength(0);
+            if (format == Format.GPX) {
+                line.append("<trkpt lat=\"");
+                FixedPoint.append(line, latitude, 6).append("\" lon=\"");
+                FixedPoint.append(line, longitude, 6).append("\"><time>");
+                times.append(line, time).append("</time></trkpt>\n");
+            } else {
+                times.append(line, time).append(',').append(time).append(',');
+                FixedPoint.append(line, latitude, 6).append(',');
+                FixedPoint.append(line, longitude, 6).append(',');
+                FixedPoint.append(line, accuracy, 1).append('\n');
+            }
+            out.append(line);
+            written[0]++;
+            return true;
+        });
+        if (format == Format.GPX) {
+            out.write("</trkseg></trk>\n</gpx>\n");
+        }
+        return written[0];
+    }
+
+    /** Fixes currently stored. */
+    public synchronized long size() {
+        return fixes;
+    }
+
+    /** Encoded bytes of the stored fixes, excluding file headers and preallocated space. */
+    public synchronized long dataBytes() {
+        return dataBytes;
+    }
+
+    public synchronized int bucketCount() {
+        return buckets.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (activeBuffer != null) {
+            activeBuffer.force();
+        }
+        activeBuffer = null;
+        active = null;
+        mapped.clear();
+    }
+
+    // --- Writing ---
+
+    private void write(long time, int lat, int lon, int accuracy) {
+        MappedByteBuffer buffer = activeBuffer;
+        int position = active.used;
+        if (active.count % KEYFRAME_INTERVAL == 0) {
+            position = putVarint(buffer, position, time - active.start);
+            position = putVarint(buffer, position, zigzag(lat));
+            position = putVarint(buffer, position, zigzag(lon));
+            position = putVarint(buffer, position, accuracy);
+            if (active.keyframes < KEYFRAME_CAPACITY) {
+                int at = HEADER_BYTES + active.keyframes * 8;
+                buffer.putInt(at, (int) (time - active.start));
+                buffer.putInt(at + 4, active.used);
+                active.keyframes++;
+            }
+            lastStep = 0;
+        } else {
+            long step = time - lastTime;
+            position = putVarint(buffer, position, zigzag(step - lastStep));
+            position = putVarint(buffer, position, zigzag((long) lat - lastLat));
+            position = putVarint(buffer, position, zigzag((long) lon - lastLon));
+            position = putVarint(buffer, position, zigzag((long) accuracy - lastAccuracy));
+            lastStep = step;
+        }
+        lastTime = time;
+        lastLat = lat;
+        lastLon = lon;
+        lastAccuracy = accuracy;
+        dataBytes += position - active.used;
+        fixes++;
+        active.used = position;
+        active.count++;
+        // The header goes last, so a reader or a recovery never sees a half-written fix
+        buffer.putInt(COUNT_AT, active.count);
+        buffer.putInt(USED_AT, active.used);
+        buffer.putInt(KEYFRAMES_AT, active.keyframes);
+        if (active.count % FORCE_EVERY == 0) {
+            buffer.force();
+        }
+    }
+
+    private void roll(long start) throws IOException {
+        if (activeBuffer != null) {
+            activeBuffer.force();
+        }
+        File file = new File(dir, String.format(Locale.US, "%s%020d%s", PREFIX, start, SUFFIX));
+        Bucket bucket = new Bucket(file, start);
+        bucket.used = DATA_START;
+        MappedByteBuffer buffer = map(file, DATA_START + GROW_BYTES);
+        buffer.putInt(MAGIC_AT, MAGIC);
+        buffer.putInt(VERSION_AT, VERSION);
+        buffer.putLong(START_AT, start);
+        buffer.putInt(COUNT_AT, 0);
+        buffer.putInt(USED_AT, DATA_START);
+        buffer.putInt(KEYFRAMES_AT, 0);
+        active = bucket;
+        activeBuffer = buffer;
+        buckets.put(start, bucket);
+        enforceRetention(start);
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (active.used + bytes > activeBuffer.capacity()) {
+            activeBuffer.force();
+            activeBuffer = map(active.file, activeBuffer.capacity() + GROW_BYTES);
+        }
+    }
+
+    private void enforceRetention(long nowMillis) {
+        long cutoff = nowMillis - config.retentionMillis;
+        while (!buckets.isEmpty()) {
+            Bucket oldest = buckets.firstEntry().getValue();
+            if (oldest == active || oldest.start + config.bucketMillis > cutoff) {
+                break;
+            }
+            buckets.pollFirstEntry();
+            mapped.remove(oldest.start);
+            fixes -= oldest.count;
+            dataBytes -= oldest.used - DATA_START;
+            if (!oldest.file.delete()) {
+                LOG.w("Cannot delete expired {}", oldest.file.getName());
+            }
+        }
+    }
+
+    private long bucketStart(long time) {
+        return Math.floorDiv(time, config.bucketMillis) * config.bucketMillis;
+    }
+
+    private static MappedByteBuffer map(File file, int length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < length) {
+                raf.setLength(length);
+            }
+            // The mapping outlives the channel
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(length, raf.length()));
+        }
+    }
+
+    // --- Loading and recovery ---
+
+    private void load() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            throw new IOException("Cannot list " + dir);
+        }
+        for (File file : files) {
+            Bucket bucket = readHeader(file);
+            if (bucket != null) {
+                buckets.put(bucket.start, bucket);
+            }
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+        Bucket newest = buckets.lastEntry().getValue();
+        recover(newest);
+        for (Bucket bucket : buckets.values()) {
+            fixes += bucket.count;
+            dataBytes += bucket.used - DATA_START;
+        }
+        if (lastTime != Long.MIN_VALUE) {
+            enforceRetention(lastTime);
+        }
+    }
+
+    private static Bucket readHeader(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < DATA_START || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                LOG.w("Ignoring {}: not a trail bucket", file.getName());
+                return null;
+            }
+            Bucket bucket = new Bucket(file, raf.readLong());
+            bucket.count = raf.readInt();
+            bucket.used = raf.readInt();
+            bucket.keyframes = raf.readInt();
+            if (bucket.used < DATA_START || bucket.used > raf.length() || bucket.keyframes > KEYFRAME_CAPACITY) {
+                LOG.w("Ignoring {}: bad header", file.getName());
+                return null;
+            }
+            return bucket;
+        } catch (IOException e) {
+            LOG.w("Ignoring {}: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /** Re-decodes the newest bucket to restore the appender state, dropping a torn last fix. */
+    private void recover(Bucket bucket) throws IOException {
+        MappedByteBuffer buffer = map(bucket.file, (int) bucket.file.length());
+        int position = DATA_START;
+        int count = 0;
+        int keyframes = 0;
+        long time = 0;
+        int lat = 0;
+        int lon = 0;
+        int accuracy = 0;
+        long step = 0;
+        long[] value = new long[1];
+        while (count < bucket.count) {
+            int start = position;
+            try {
+                if (count % KEYFRAME_INTERVAL == 0) {
+                    position = getVarint(buffer, position, bucket.used, value);
+                    long decodedTime = bucket.start + value[0];
+                    position = getVarint(buffer, position, bucket.used, value);
+                    int decodedLat = (int) unzigzag(value[0]);
+                    position = getVarint(buffer, position, bucket.used, value);
+                    int decodedLon = (int) unzigzag(value[0]);
+                    position = getVarint(buffer, position, bucket.used, value);
+                    time = decodedTime;
+                    lat = decodedLat;
+                    lon = decodedLon;
+                    accuracy = (int) value[0];
+                    step = 0;
+                    if (keyframes < KEYFRAME_CAPACITY) {
+                        buffer.putInt(HEADER_BYTES + keyframes * 8, (int) (time - bucket.start));
+                        buffer.putInt(HEADER_BYTES + keyframes * 8 + 4, start);
+                        keyframes++;
+                    }
+                } else {
+                    position = getVarint(buffer, position, bucket.used, value);
+                    long nextStep = step + unzigzag(value[0]);
+                    position = getVarint(buffer, position, bucket.used, value);
+                    long dLat = unzigzag(value[0]);
+                    position = getVarint(buffer, position, bucket.used, value);
+                    long dLon = unzigzag(value[0]);
+                    position = getVarint(buffer, position, bucket.used, value);
+                    step = nextStep;
+                    time += step;
+                    lat += dLat;
+                    lon += dLon;
+                    accuracy += unzigzag(value[0]);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                LOG.w("Truncating {} after {} fixes", bucket.file.getName(), count);
+                position = start;
+                break;
+            }
+            count++;
+        }
+        bucket.count = count;
+        bucket.used = position;
+        bucket.keyframes = keyframes;
+        buffer.putInt(COUNT_AT, count);
+        buffer.putInt(USED_AT, position);
+        buffer.putInt(KEYFRAMES_AT, keyframes);
+        active = bucket;
+        activeBuffer = buffer;
+        if (count > 0) {
+            lastTime = time;
+            lastLat = lat;
+            lastLon = lon;
+            lastAccuracy = accuracy;
+            lastStep = step;
+        }
+    }
+
+    // --- Reading ---
+
+    private synchronized List<View> views(long fromMillis, long toMillis) throws IOException {
+        if (closed) {
+            throw new IOException("Trail is closed");
+        }
+        List<View> views = new ArrayList<>();
+        Long first = buckets.floorKey(fromMillis);
+        Map<Long, Bucket> overlapping = buckets.subMap(first != null ? first : Long.MIN_VALUE, true, toMillis, true);
+        for (Bucket bucket : overlapping.values()) {
+            if (bucket == active) {
+                // Bytes below used never change, so a snapshot of the counters is enough
+                views.add(new View(bucket.start, activeBuffer.duplicate(), bucket.count, bucket.used,
+                        bucket.keyframes));
+                continue;
+            }
+            ByteBuffer buffer = mapped.get(bucket.start);
+            if (buffer == null) {
+                if (!bucket.file.exists()) continue;
+                try (RandomAccessFile raf = new RandomAccessFile(bucket.file, "r")) {
+                    buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bucket.used);
+                }
+                mapped.put(bucket.start, buffer);
+            }
+            views.add(new View(bucket.start, buffer.duplicate(), bucket.count, bucket.used, bucket.keyframes));
+        }
+        return views;
+    }
+
+    /** A consistent snapshot of one bucket for a reader. */
+    private static final class View {
+        final long start;
+        final ByteBuffer buffer;
+        final int count;
+        final int used;
+        final int keyframes;
+
+        View(long start, ByteBuffer buffer, int count, int used, int keyframes) {
+            this.start = start;
+            this.buffer = buffer;
+            this.count = count;
+            this.used = used;
+            this.keyframes = keyframes;
+        }
+
+        /** Returns false once the scan is over: past {@code toMillis} or stopped by the visitor. */
+        boolean scan(long fromMillis, long toMillis, Visitor visitor) throws IOException {
+            int keyframe = lastKeyframeAtOrBefore(fromMillis);
+            int index = keyframe * KEYFRAME_INTERVAL;
+            int position = keyframes > 0 ? buffer.getInt(HEADER_BYTES + keyframe * 8 + 4) : DATA_START;
+            long time = 0;
+            long lat = 0;
+            long lon = 0;
+            long accuracy = 0;
+            long step = 0;
+            long[] value = new long[1];
+            for (; index < count; index++) {
+                if (index % KEYFRAME_INTERVAL == 0) {
+                    position = getVarint(buffer, position, used, value);
+                    time = start + value[0];
+                    position = getVarint(buffer, position, used, value);
+                    lat = unzigzag(value[0]);
+                    position = getVarint(buffer, position, used, value);
+                    lon = unzigzag(value[0]);
+                    position = getVarint(buffer, position, used, value);
+                    accuracy = value[0];
+                    step = 0;
+                } else {
+                    position = getVarint(buffer, position, used, value);
+                    step += unzigzag(value[0]);
+                    time += step;
+                    position = getVarint(buffer, position, used, value);
+                    lat += unzigzag(value[0]);
+                    position = getVarint(buffer, position, used, value);
+                    lon += unzigzag(value[0]);
+                    position = getVarint(buffer, position, used, value);
+                    accuracy += unzigzag(value[0]);
+                }
+                if (time > toMillis) {
+                    return false;
+                }
+                if (time >= fromMillis && !visitor.visit(time, lat / E6, lon / E6, accuracy / 10f)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int lastKeyframeAtOrBefore(long timeMillis) {
+            if (timeMillis <= start) {
+                return 0;
+            }
+            long offset = timeMillis - start;
+            int low = 0;
+            int high = keyframes - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getInt(HEADER_BYTES + mid * 8) <= offset) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+
+    private static final class Bucket {
+        final File file;
+        final long start;
+        int count;
+        int used;
+        int keyframes;
+
+        Bucket(File file, long start) {
+            this.file = file;
+            this.start = start;
+        }
+    }
+
+    // --- Encoding ---
+
+    static int toE6(double degrees) {
+        return (int) Math.round(degrees * E6);
+    }
+
+    static int toDecimeters(float meters) {
+        if (!(meters > 0)) return 0;
+        return (int) Math.min(MAX_ACCURACY_DM, Math.round(meters * 10.0));
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int putVarint(ByteBuffer buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put(position++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(position++, (byte) value);
+        return position;
+    }
+
+    /** Reads a varint at {@code position} into {@code out[0]} and returns the next position. */
+    static int getVarint(ByteBuffer buffer, int position, int limit, long[] out) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) {
+                throw new IndexOutOfBoundsException("Varint runs past " + limit);
+            }
+            byte b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                out[0] = value;
+                return position;
+            }
+        }
+        throw new IndexOutOfBoundsException("Varint longer than 64 bits at " + position);
+    }
+
+    /** ISO 8601 UTC times; the date part is formatted once per day. */
+    private static final class UtcTimeFormatter {
+        private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'", Locale.US);
+        private long day = Long.MIN_VALUE;
+        private String date;
+
+        UtcTimeFormatter() {
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+
+        StringBuilder append(StringBuilder out, long millis) {
+            long currentDay = Math.floorDiv(millis, DAY_MILLIS);
+            if (currentDay != day) {
+                day = currentDay;
+                date = dateFormat.format(new Date(currentDay * DAY_MILLIS));
+            }
+            int ofDay = (int) Math.floorMod(millis, DAY_MILLIS);
+            out.append(date);
+            twoDigits(out, ofDay / 3_600_000).append(':');
+            twoDigits(out, ofDay / 60_000 % 60).append(':');
+            twoDigits(out, ofDay / 1000 % 60).append('.');
+            int fraction = ofDay % 1000;
+            if (fraction < 100) out.append('0');
+            if (fraction < 10) out.append('0');
+            return out.append(fraction).append('Z');
+        }
+
+        private static StringBuilder twoDigits(StringBuilder out, int value) {
+            if (value < 10) out.append('0');
+            return out.append(value);
+        }
+    }
+}
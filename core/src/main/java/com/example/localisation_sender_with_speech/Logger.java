@@ -0,0 +1,169 @@
+package com.example.localisation_sender_with_speech;
+
+/**
+ * Level-gated logging facade that formats lazily.
+ *
+ * Messages are templates with {@code {}} placeholders, filled in only when the level is
+ * enabled: a disabled call costs one volatile read and allocates nothing for reference
+ * arguments (box primitives yourself only behind {@link #isDebugEnabled()}). A {@code {*}}
+ * placeholder masks its argument down to the last two characters; use it for phone numbers.
+ * Message bodies are never logged.
+ *
+ * The sink and threshold are process-wide; the app's Diagnostics points them at logcat.
+ */
+public final class Logger {
+
+    public enum Level {
+        VERBOSE,
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR,
+        OFF
+    }
+
+    /** Where enabled messages go, e.g. logcat. */
+    public interface Sink {
+        void write(Level level, String tag, String message, Throwable error);
+    }
+
+    static final Sink STDERR = (level, tag, message, error) -> {
+        System.err.println(level.name().charAt(0) + "/" + tag + ": " + message);
+        if (error != null) {
+            error.printStackTrace();
+        }
+    };
+
+    private static final int VISIBLE_MASKED_CHARS = 2;
+
+    private static volatile Sink sink = STDERR;
+    private static volatile int threshold = Level.INFO.ordinal();
+
+    private final String tag;
+
+    private Logger(String tag) {
+        this.tag = tag;
+    }
+
+    public static Logger get(String tag) {
+        return new Logger(tag);
+    }
+
+    public static void configure(Level level, Sink newSink) {
+        sink = newSink;
+        threshold = level.ordinal();
+    }
+
+    public static Level getLevel() {
+        return Level.values()[threshold];
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    public boolean isDebugEnabled() {
+        return Level.DEBUG.ordinal() >= threshold;
+    }
+
+    public void d(String message) {
+        if (isDebugEnabled()) write(Level.DEBUG, message, null);
+    }
+
+    public void d(String template, Object a) {
+        if (isDebugEnabled()) write(Level.DEBUG, format(template, a, null, null), null);
+    }
+
+    public void d(String template, Object a, Object b) {
+        if (isDebugEnabled()) write(Level.DEBUG, format(template, a, b, null), null);
+    }
+
+    public void d(String template, Object a, Object b, Object c) {
+        if (isDebugEnabled()) write(Level.DEBUG, format(template, a, b, c), null);
+    }
+
+    public void i(String message) {
+        if (isEnabled(Level.INFO)) write(Level.INFO, message, null);
+    }
+
+    public void i(String template, Object a) {
+        if (isEnabled(Level.INFO)) write(Level.INFO, format(template, a, null, null), null);
+    }
+
+    public void i(String template, Object a, Object b) {
+        if (isEnabled(Level.INFO)) write(Level.INFO, format(template, a, b, null), null);
+    }
+
+    public void w(String message) {
+        if (isEnabled(Level.WARN)) write(Level.WARN, message, null);
+    }
+
+    public void w(String template, Object a) {
+        if (isEnabled(Level.WARN)) write(Level.WARN, format(template, a, null, null), null);
+    }
+
+    public void w(String template, Object a, Object b) {
+        if (isEnabled(Level.WARN)) write(Level.WARN, format(template, a, b, null), null);
+    }
+
+    public void w(String message, Throwable error) {
+        if (isEnabled(Level.WARN)) write(Level.WARN, message, error);
+    }
+
+    public void e(String message) {
+        if (isEnabled(Level.ERROR)) write(Level.ERROR, message, null);
+    }
+
+    public void e(String template, Object a) {
+        if (isEnabled(Level.ERROR)) write(Level.ERROR, format(template, a, null, null), null);
+    }
+
+    public void e(String template, Object a, Object b) {
+        if (isEnabled(Level.ERROR)) write(Level.ERROR, format(template, a, b, null), null);
+    }
+
+    public void e(String message, Throwable error) {
+        if (isEnabled(Level.ERROR)) write(Level.ERROR, message, error);
+    }
+
+    private void write(Level level, String message, Throwable error) {
+        sink.write(level, tag, message, error);
+    }
+
+    static String format(String template, Object a, Object b, Object c) {
+        StringBuilder out = new StringBuilder(template.length() + 32);
+        int arg = 0;
+        int i = 0;
+        int n = template.length();
+        while (i < n) {
+            char ch = template.charAt(i);
+            if (ch == '{' && i + 1 < n) {
+                boolean masked = template.charAt(i + 1) == '*' && i + 2 < n && template.charAt(i + 2) == '}';
+                if (template.charAt(i + 1) == '}' || masked) {
+                    Object value = arg == 0 ? a : arg == 1 ? b : c;
+                    arg++;
+                    if (masked) {
+                        appendMasked(out, String.valueOf(value));
+                        i += 3;
+                    } else {
+                        out.append(value);
+                        i += 2;
+                    }
+                    continue;
+                }
+            }
+            out.append(ch);
+            i++;
+        }
+        return out.toString();
+    }
+
+    private static void appendMasked(StringBuilder out, String value) {
+        int visible = Math.min(VISIBLE_MASKED_CHARS, value.length() / 2);
+        out.append("***").append(value, value.length() - visible, value.length());
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Append-only record of outbound messages, replayed after process death.
+ *
+ * Enqueues are synced to disk before the message is handed to the radio; state changes are
+ * only flushed, so a crash can at worst resend a message (at-least-once). Attempts after the
+ * first are recorded too, so the retry budget survives a restart. A torn record at the end of
+ * the file is ignored on replay, and {@link #compact} rewrites the file with only the live
+ * entries.
+ */
+final class OutboundJournal implements Closeable {
+
+    private static final byte ENQUEUED = 1;
+    private static final byte SENT = 2;
+    private static final byte DELIVERED = 3;
+    private static final byte FAILED = 4;
+    private static final byte ATTEMPT = 5;
+
+    private static final int MAX_PARTS = 255;
+
+    /** A message that was enqueued and not yet delivered or failed. */
+    static final class Entry {
+        final long id;
+        final long enqueuedAtMillis;
+        final String destination;
+        final List<String> parts;
+        boolean sent;
+        // Send attempts started; an enqueued message had its first one
+        int attempts = 1;
+
+        Entry(long id, long enqueuedAtMillis, String destination, List<String> parts) {
+            this.id = id;
+            this.enqueuedAtMillis = enqueuedAtMillis;
+            this.destination = destination;
+            this.parts = parts;
+        }
+    }
+
+    private final File file;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+
+    OutboundJournal(File file) {
+        this.file = file;
+    }
+
+    /** Replays the journal, compacts it and returns the live entries in enqueue order. */
+    synchronized List<Entry> open() throws IOException {
+        Map<Long, Entry> live = new LinkedHashMap<>();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                replay(in, live);
+            }
+        }
+        List<Entry> entries = new ArrayList<>(live.values());
+        compact(entries);
+        return entries;
+    }
+
+    private static void replay(DataInputStream in, Map<Long, Entry> live) throws IOException {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                switch (type) {
+                    case ENQUEUED:
+                        long at = in.readLong();
+                        String destination = in.readUTF();
+                        int count = in.readUnsignedByte();
+                        List<String> parts = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            parts.add(in.readUTF());
+                        }
+                        live.put(id, new Entry(id, at, destination, Collections.unmodifiableList(parts)));
+                        break;
+                    case SENT:
+                        Entry entry = live.get(id);
+                        if (entry != null) entry.sent = true;
+                        break;
+                    case ATTEMPT:
+                        int attempt = in.readUnsignedByte();
+                        Entry attempted = live.get(id);
+                        if (attempted != null) attempted.attempts = Math.max(attempted.attempts, attempt);
+                        break;
+                    case DELIVERED:
+                    case FAILED:
+                        live.remove(id);
+                        break;
+                    default:
+                        // Garbage after a torn write; nothing beyond it can be trusted
+                        return;
+                }
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // Torn final record
+        }
+    }
+
+    synchronized void appendEnqueued(long id, long enqueuedAtMillis, String destination, List<String> parts)
+            throws IOException {
+        if (parts.size() > MAX_PARTS) {
+            throw new IllegalArgumentException("Too many parts: " + parts.size());
+        }
+        ensureOpen();
+        writeEnqueued(out, id, enqueuedAtMillis, destination, parts);
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    /** Records that attempt number {@code attempt} (2 or more) is starting. */
+    synchronized void appendAttempt(long id, int attempt) throws IOException {
+        ensureOpen();
+        writeAttempt(out, id, attempt);
+        out.flush();
+    }
+
+    synchronized void appendSent(long id) throws IOException {
+        appendState(SENT, id);
+    }
+
+    synchronized void appendDelivered(long id) throws IOException {
+        appendState(DELIVERED, id);
+    }
+
+    synchronized void appendFailed(long id) throws IOException {
+        appendState(FAILED, id);
+    }
+
+    private void appendState(byte type, long id) throws IOException {
+        ensureOpen();
+        out.writeByte(type);
+        out.writeLong(id);
+        out.flush();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (out == null) {
+            throw new IOException("Journal not open: " + file);
+        }
+    }
+
+    /**
+     * Like {@link #compact(Collection)}, with the entries read while this journal's lock is held,
+     * so no append can slip in between reading them and rewriting the file. Does nothing if
+     * {@code live} returns null.
+     */
+    synchronized void compact(Supplier<? extends Collection<Entry>> live) throws IOException {
+        Collection<Entry> entries = live.get();
+        if (entries != null) {
+            compact(entries);
+        }
+    }
+
+    /**
+     * Atomically replaces the journal with just {@code live}. The append stream is reopened on
+     * the old file if that fails, so later appends still go somewhere.
+     */
+    synchronized void compact(Collection<Entry> live) throws IOException {
+        closeStream();
+        try {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream tmpOut = new FileOutputStream(tmp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(tmpOut))) {
+                for (Entry entry : live) {
+                    writeEnqueued(data, entry.id, entry.enqueuedAtMillis, entry.destination, entry.parts);
+                    if (entry.attempts > 1) {
+                        writeAttempt(data, entry.id, entry.attempts);
+                    }
+                    if (entry.sent) {
+                        data.writeByte(SENT);
+                        data.writeLong(entry.id);
+                    }
+                }
+                data.flush();
+                tmpOut.getFD().sync();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        } finally {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        }
+    }
+
+    synchronized long sizeBytes() {
+        return file.length();
+    }
+
+    private static void writeEnqueued(DataOutputStream data, long id, long enqueuedAtMillis, String destination,
+                                      List<String> parts) throws IOException {
+        data.writeByte(ENQUEUED);
+        data.writeLong(id);
+        data.writeLong(enqueuedAtMillis);
+        data.writeUTF(destination);
+        data.writeByte(parts.size());
+        for (String part : parts) {
+            data.writeUTF(part);
+        }
+    }
+
+    private static void writeAttempt(DataOutputStream data, long id, int attempt) throws IOException {
+        data.writeByte(ATTEMPT);
+        data.writeLong(id);
+        data.writeByte(Math.min(attempt, 255));
+    }
+
+    private void closeStream() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeStream();
+    }
+}
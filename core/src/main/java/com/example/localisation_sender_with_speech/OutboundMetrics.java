@@ -0,0 +1,58 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.IOException;
+
+/**
+ * Outbound queue listener that feeds sent, delivered and failed replies into
+ * {@link ResponderMetrics}, the {@link FlightRecorder} and, for auto-replies, the {@link AuditLog}.
+ */
+public final class OutboundMetrics implements OutboundSmsQueue.Listener {
+
+    private static final Logger LOG = Logger.get("OutboundSms");
+
+    private final ResponderMetrics metrics;
+    private final FlightRecorder recorder;
+    private final AuditLog audit;
+
+    public OutboundMetrics(ResponderMetrics metrics, FlightRecorder recorder, AuditLog audit) {
+        this.metrics = metrics;
+        this.recorder = recorder;
+        this.audit = audit;
+    }
+
+    @Override
+    public void onSent(long id, long latencyMillis) {
+        metrics.increment(ResponderMetrics.Counter.SENT);
+        metrics.recordMillis(ResponderMetrics.Stage.SENT, latencyMillis);
+        recorder.record(FlightRecorder.Event.SMS_SENT, (int) latencyMillis, id);
+        audit.replyOutcome(AuditLog.Type.SENT, id, latencyMillis + " ms");
+        if (LOG.isDebugEnabled()) {
+            LOG.d("SMS {} sent after {}ms", id, latencyMillis);
+        }
+    }
+
+    @Override
+    public void onDelivered(long id, long latencyMillis) {
+        metrics.increment(ResponderMetrics.Counter.DELIVERED);
+        metrics.recordMillis(ResponderMetrics.Stage.DELIVERED, latencyMillis);
+        recorder.record(FlightRecorder.Event.SMS_DELIVERED, (int) latencyMillis, id);
+        audit.replyOutcome(AuditLog.Type.DELIVERED, id, latencyMillis + " ms");
+        if (LOG.isDebugEnabled()) {
+            LOG.d("SMS {} delivered after {}ms", id, latencyMillis);
+        }
+    }
+
+    @Override
+    public void onFailed(long id, String reason) {
+        metrics.increment(ResponderMetrics.Counter.SEND_FAILED);
+        recorder.record(FlightRecorder.Event.SMS_FAILED, 0, id);
+        audit.replyOutcome(AuditLog.Type.FAILED, id, reason);
+        LOG.e("SMS {} failed: {}", id, reason);
+    }
+
+    @Override
+    public void onJournalError(IOException e) {
+        recorder.record(FlightRecorder.Event.ERROR);
+        LOG.e("Outbound journal error", e);
+    }
+}
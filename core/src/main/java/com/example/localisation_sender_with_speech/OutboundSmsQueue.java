@@ -0,0 +1,505 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Durable outbound SMS queue.
+ *
+ * Every message is journaled before it reaches the {@link SmsGateway} and is resent after
+ * process death until the radio confirms every part, unless it has grown too old to be worth
+ * sending: a location reply hours late would read as current. A restart counts as an attempt. Transient radio failures, and attempts
+ * that never report back, are retried with exponential backoff; delivery reports are tracked
+ * per part once the message is sent. All callbacks are tagged with an attempt number so
+ * that late results from an abandoned attempt are ignored.
+ */
+public final class OutboundSmsQueue {
+
+    /** Outcome of sending one part, as reported by the radio. */
+    public enum SendResult { OK, RETRY, FAILED }
+
+    public interface Listener {
+        /** Every part was accepted by the radio, {@code latencyMillis} after enqueue (or the given origin). */
+        void onSent(long id, long latencyMillis);
+        /** Every part was delivered, {@code latencyMillis} after enqueue (or the given origin). */
+        void onDelivered(long id, long latencyMillis);
+        void onFailed(long id, String reason);
+        void onJournalError(IOException e);
+    }
+
+    public static final class RetryPolicy {
+        public static final RetryPolicy DEFAULT = new RetryPolicy(5, 2_000, 60_000, 60_000,
+                TimeUnit.MINUTES.toMillis(30));
+
+        private final int maxAttempts;
+        private final long initialBackoffMillis;
+        private final long maxBackoffMillis;
+        private final long sentTimeoutMillis;
+        private final long maxReplayAgeMillis;
+
+        /** @param maxReplayAgeMillis messages older than this when replayed fail instead of being resent */
+        public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+                           long sentTimeoutMillis, long maxReplayAgeMillis) {
+            this.maxAttempts = maxAttempts;
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            this.sentTimeoutMillis = sentTimeoutMillis;
+            this.maxReplayAgeMillis = maxReplayAgeMillis;
+        }
+
+        /** Delay before attempt {@code attempt + 1}, doubling from the initial backoff. */
+        long backoffMillis(int attempt) {
+            long delay = initialBackoffMillis << Math.min(attempt - 1, 20);
+            return Math.min(delay, maxBackoffMillis);
+        }
+    }
+
+    private static final int MAX_AWAITING_DELIVERY = 256;
+    private static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    private final SmsGateway gateway;
+    private final OutboundJournal journal;
+    private final ScheduledExecutorService scheduler;
+    private final RetryPolicy retryPolicy;
+    private final LongSupplier clock;
+    private final Listener listener;
+
+    // Messages still being sent, in enqueue order
+    private final Map<Long, Message> pending = new LinkedHashMap<>();
+    // Sent messages waiting for status reports; the oldest are forgotten first
+    private final Map<Long, Message> awaitingDelivery = new LinkedHashMap<Long, Message>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Message> eldest) {
+            return size() > MAX_AWAITING_DELIVERY;
+        }
+    };
+
+    // Set by startInBackground, open until the journal has been replayed
+    private volatile CountDownLatch replaying;
+
+    private long nextId = 1;
+    private long sentCount;
+    private long deliveredCount;
+    private long failedCount;
+    private long retryCount;
+
+    public OutboundSmsQueue(SmsGateway gateway, OutboundJournal journal, ScheduledExecutorService scheduler,
+                            RetryPolicy retryPolicy, LongSupplier clock, Listener listener) {
+        this.gateway = gateway;
+        this.journal = journal;
+        this.scheduler = scheduler;
+        this.retryPolicy = retryPolicy;
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /** Replays the journal and resends whatever was not confirmed before the last shutdown. */
+    public void start() {
+        List<Message> expired = new ArrayList<>();
+        resend(replay(expired));
+        failExpired(expired);
+    }
+
+    /**
+     * Like {@link #start}, but replays the journal on the scheduler thread, so a caller on the
+     * main thread doesn't wait for the file. Enqueues and radio reports that arrive meanwhile
+     * wait for the replay, so ids and journal state stay in order.
+     */
+    public void startInBackground() {
+        CountDownLatch latch = new CountDownLatch(1);
+        replaying = latch;
+        scheduler.execute(() -> {
+            List<Message> expired = new ArrayList<>();
+            List<Message> resend;
+            try {
+                resend = replay(expired);
+            } finally {
+                latch.countDown();
+            }
+            resend(resend);
+            failExpired(expired);
+        });
+    }
+
+    /**
+     * Rebuilds the queue from the journal; returns the messages to send again, and adds those
+     * too old or out of attempts to {@code expired}.
+     */
+    private List<Message> replay(List<Message> expired) {
+        List<OutboundJournal.Entry> entries;
+        try {
+            entries = journal.open();
+        } catch (IOException e) {
+            listener.onJournalError(e);
+            return Collections.emptyList();
+        }
+        List<Message> resend = new ArrayList<>();
+        long now = clock.getAsLong();
+        synchronized (this) {
+            for (OutboundJournal.Entry entry : entries) {
+                Message message = new Message(entry.id, entry.destination, entry.parts, entry.enqueuedAtMillis);
+                nextId = Math.max(nextId, entry.id + 1);
+                if (entry.sent) {
+                    message.sentParts = message.parts.size();
+                    awaitingDelivery.put(message.id, message);
+                } else {
+                    // The attempt the process died in counts
+                    message.attempt = entry.attempts;
+                    pending.put(message.id, message);
+                    if (now - entry.enqueuedAtMillis > retryPolicy.maxReplayAgeMillis
+                            || entry.attempts >= retryPolicy.maxAttempts) {
+                        expired.add(message);
+                    } else {
+                        resend.add(message);
+                    }
+                }
+            }
+        }
+        return resend;
+    }
+
+    private void failExpired(List<Message> expired) {
+        long now = clock.getAsLong();
+        for (Message message : expired) {
+            fail(message.id, message.attempt, now - message.enqueuedAtMillis > retryPolicy.maxReplayAgeMillis
+                    ? "Too old to resend after a restart (" + (now - message.enqueuedAtMillis) / 1000 + " s)"
+                    : "Not sent after " + message.attempt + " attempts");
+        }
+    }
+
+    private void resend(List<Message> messages) {
+        for (Message message : messages) {
+            attempt(message);
+        }
+    }
+
+    private void awaitReplay() {
+        CountDownLatch latch = replaying;
+        if (latch == null) return;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Journals the message and hands it to the radio. Returns its id. */
+    public long enqueue(String destination, List<String> parts) {
+        return enqueue(destination, parts, clock.getAsLong());
+    }
+
+    /**
+     * Same as {@link #enqueue(String, List)}, with reported latencies measured from
+     * {@code originMillis} (e.g. when the request SMS arrived) instead of from now.
+     */
+    public long enqueue(String destination, List<String> parts, long originMillis) {
+        awaitReplay();
+        Message message;
+        synchronized (this) {
+            message = new Message(nextId++, destination,
+                    Collections.unmodifiableList(new ArrayList<>(parts)), originMillis);
+            pending.put(message.id, message);
+        }
+        try {
+            journal.appendEnqueued(message.id, message.enqueuedAtMillis, destination, message.parts);
+        } catch (IOException e) {
+            // Still worth sending, it just won't survive a restart
+            listener.onJournalError(e);
+        }
+        attempt(message);
+        return message.id;
+    }
+
+    private void attempt(Message message) {
+        int attempt;
+        synchronized (this) {
+            if (pending.get(message.id) != message) return;
+            attempt = ++message.attempt;
+            message.sentParts = 0;
+            message.partSent = new boolean[message.parts.size()];
+            message.timeout = scheduler.schedule(() -> onSentTimeout(message.id, attempt),
+                    retryPolicy.sentTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        if (attempt > 1) {
+            // The enqueue record stands for the first
+            try {
+                journal.appendAttempt(message.id, attempt);
+            } catch (IOException e) {
+                listener.onJournalError(e);
+            }
+        }
+        try {
+            gateway.send(message.id, attempt, message.destination, message.parts);
+        } catch (RuntimeException e) {
+            retryOrFail(message.id, attempt, "Gateway error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@link #onSent} on the scheduler thread, then {@code done}: for a caller on the main
+     * thread, which shouldn't wait for the replay or the journal.
+     */
+    public void reportSent(long id, int attempt, int part, SendResult result, Runnable done) {
+        post(() -> onSent(id, attempt, part, result), done);
+    }
+
+    /** {@link #onDelivered} on the scheduler thread, then {@code done}; see {@link #reportSent}. */
+    public void reportDelivered(long id, int part, boolean success, Runnable done) {
+        post(() -> onDelivered(id, part, success), done);
+    }
+
+    private void post(Runnable report, Runnable done) {
+        try {
+            scheduler.execute(() -> {
+                try {
+                    report.run();
+                } finally {
+                    done.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down; the report is lost, as it would be with the process
+            done.run();
+        }
+    }
+
+    /** Called by the gateway once per part. */
+    public void onSent(long id, int attempt, int part, SendResult result) {
+        awaitReplay();
+        if (result != SendResult.OK) {
+            if (result == SendResult.RETRY) {
+                retryOrFail(id, attempt, "Radio error on part " + part);
+            } else {
+                fail(id, attempt, "Send failed on part " + part);
+            }
+            return;
+        }
+        Message message;
+        long latency;
+        synchronized (this) {
+            message = pending.get(id);
+            if (message == null || message.attempt != attempt || part < 0 || part >= message.partSent.length
+                    || message.partSent[part]) {
+                return;
+            }
+            message.partSent[part] = true;
+            if (++message.sentParts < message.parts.size()) {
+                return;
+            }
+            cancelTimeout(message);
+            pending.remove(id);
+            awaitingDelivery.put(id, message);
+            sentCount++;
+            latency = clock.getAsLong() - message.enqueuedAtMillis;
+        }
+        try {
+            journal.appendSent(id);
+        } catch (IOException e) {
+            listener.onJournalError(e);
+        }
+        listener.onSent(id, latency);
+        compactIfIdle();
+    }
+
+    /** Called by the gateway for each status report; {@code success} is false for a permanent failure. */
+    public void onDelivered(long id, int part, boolean success) {
+        awaitReplay();
+        long latency;
+        synchronized (this) {
+            Message message = awaitingDelivery.get(id);
+            if (message == null) {
+                return;
+            }
+            if (!success) {
+                awaitingDelivery.remove(id);
+                failedCount++;
+                latency = -1;
+            } else {
+                if (message.partDelivered == null) {
+                    message.partDelivered = new boolean[message.parts.size()];
+                }
+                if (part < 0 || part >= message.partDelivered.length || message.partDelivered[part]) {
+                    return;
+                }
+                message.partDelivered[part] = true;
+                if (++message.deliveredParts < message.parts.size()) {
+                    return;
+                }
+                awaitingDelivery.remove(id);
+                deliveredCount++;
+                latency = clock.getAsLong() - message.enqueuedAtMillis;
+            }
+        }
+        try {
+            if (success) {
+                journal.appendDelivered(id);
+            } else {
+                journal.appendFailed(id);
+            }
+        } catch (IOException e) {
+            listener.onJournalError(e);
+        }
+        if (success) {
+            listener.onDelivered(id, latency);
+        } else {
+            listener.onFailed(id, "Delivery failed on part " + part);
+        }
+        compactIfIdle();
+    }
+
+    private void onSentTimeout(long id, int attempt) {
+        retryOrFail(id, attempt, "No send result");
+    }
+
+    private void retryOrFail(long id, int attempt, String reason) {
+        Message message;
+        long delay;
+        synchronized (this) {
+            message = pending.get(id);
+            if (message == null || message.attempt != attempt || message.retryScheduled) {
+                return;
+            }
+            if (attempt >= retryPolicy.maxAttempts) {
+                message = null;
+                delay = 0;
+            } else {
+                cancelTimeout(message);
+                message.retryScheduled = true;
+                retryCount++;
+                delay = retryPolicy.backoffMillis(attempt);
+            }
+        }
+        if (message == null) {
+            fail(id, attempt, reason + " after " + attempt + " attempts");
+            return;
+        }
+        Message retry = message;
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                retry.retryScheduled = false;
+            }
+            attempt(retry);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void fail(long id, int attempt, String reason) {
+        synchronized (this) {
+            Message message = pending.get(id);
+            if (message == null || message.attempt != attempt) {
+                return;
+            }
+            cancelTimeout(message);
+            pending.remove(id);
+            failedCount++;
+        }
+        try {
+            journal.appendFailed(id);
+        } catch (IOException e) {
+            listener.onJournalError(e);
+        }
+        listener.onFailed(id, reason);
+        compactIfIdle();
+    }
+
+    /**
+     * Rewrites the journal once nothing is pending. The live entries are read under the
+     * journal's lock but the file is written outside the queue's, so enqueues and radio reports
+     * only wait for it if they need the journal themselves.
+     */
+    private void compactIfIdle() {
+        if (journal.sizeBytes() < COMPACT_THRESHOLD_BYTES) {
+            return;
+        }
+        try {
+            journal.compact(this::liveEntries);
+        } catch (IOException e) {
+            listener.onJournalError(e);
+        }
+    }
+
+    /** What a compacted journal holds, or null while messages are pending. */
+    private synchronized List<OutboundJournal.Entry> liveEntries() {
+        if (!pending.isEmpty()) {
+            return null;
+        }
+        List<OutboundJournal.Entry> live = new ArrayList<>(awaitingDelivery.size());
+        for (Message message : awaitingDelivery.values()) {
+            OutboundJournal.Entry entry = new OutboundJournal.Entry(
+                    message.id, message.enqueuedAtMillis, message.destination, message.parts);
+            entry.sent = true;
+            entry.attempts = message.attempt;
+            live.add(entry);
+        }
+        return live;
+    }
+
+    private static void cancelTimeout(Message message) {
+        if (message.timeout != null) {
+            message.timeout.cancel(false);
+            message.timeout = null;
+        }
+    }
+
+    /** Messages not yet accepted by the radio. */
+    public synchronized int depth() {
+        return pending.size();
+    }
+
+    public synchronized int awaitingDeliveryCount() {
+        return awaitingDelivery.size();
+    }
+
+    public synchronized long sentCount() {
+        return sentCount;
+    }
+
+    public synchronized long deliveredCount() {
+        return deliveredCount;
+    }
+
+    public synchronized long failedCount() {
+        return failedCount;
+    }
+
+    public synchronized long retryCount() {
+        return retryCount;
+    }
+
+    private static final class Message {
+        final long id;
+        final String destination;
+        final List<String> parts;
+        final long enqueuedAtMillis;
+        int attempt;
+        boolean[] partSent;
+        int sentParts;
+        boolean[] partDelivered;
+        int deliveredParts;
+        boolean retryScheduled;
+        ScheduledFuture<?> timeout;
+
+        Message(long id, String destination, List<String> parts, long enqueuedAtMillis) {
+            this.id = id;
+            this.destination = destination;
+            this.parts = parts;
+            this.enqueuedAtMillis = enqueuedAtMillis;
+        }
+    }
+}
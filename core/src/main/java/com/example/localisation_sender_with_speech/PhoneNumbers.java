@@ -0,0 +1,93 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Canonical form of an originating address, so that "+33 6 12-34-56-78", "0033612345678"
+ * and, in France, "06 12 34 56 78" are the same sender.
+ */
+public final class PhoneNumbers {
+
+    // Numbers this short are operator short codes and are never rewritten
+    private static final int MAX_SHORT_CODE_DIGITS = 6;
+
+    private static final Map<String, String> CALLING_CODES = new HashMap<>();
+
+    static {
+        String[] regions = {
+            "us", "1", "ca", "1", "gb", "44", "ie", "353", "fr", "33", "be", "32", "lu", "352",
+            "ch", "41", "de", "49", "at", "43", "nl", "31", "es", "34", "pt", "351", "it", "39",
+            "se", "46", "no", "47", "dk", "45", "fi", "358", "pl", "48", "gr", "30", "tr", "90",
+            "ma", "212", "dz", "213", "tn", "216", "eg", "20", "sn", "221", "ci", "225", "za", "27",
+            "ng", "234", "in", "91", "cn", "86", "jp", "81", "kr", "82", "au", "61", "nz", "64",
+            "br", "55", "mx", "52", "ar", "54", "sa", "966", "ae", "971", "lb", "961"
+        };
+        for (int i = 0; i < regions.length; i += 2) {
+            CALLING_CODES.put(regions[i], regions[i + 1]);
+        }
+    }
+
+    private PhoneNumbers() {
+    }
+
+    /**
+     * Strips formatting from phone numbers and turns a leading "00" into "+". Alphanumeric
+     * senders (e.g. "MyBank") are lower-cased instead. Returns "" for null.
+     */
+    public static String normalize(String address) {
+        return toE164(address, null);
+    }
+
+    /**
+     * Like {@link #normalize}, and also rewrites national numbers into E.164 using
+     * {@code callingCode} (e.g. "33"): a trunk "0" is replaced by "+33", and a number that
+     * already starts with the calling code just gains the "+". Short codes are left alone.
+     */
+    public static String toE164(String address, String callingCode) {
+        if (address == null) return "";
+        StringBuilder digits = new StringBuilder(address.length() + 4);
+        boolean international = false;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+' && digits.length() == 0 && !international) {
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')' && c != '/') {
+                return address.trim().toLowerCase(Locale.ROOT);
+            }
+        }
+        if (!international && digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            digits.delete(0, 2);
+            international = true;
+        }
+        if (!international && callingCode != null && digits.length() > MAX_SHORT_CODE_DIGITS) {
+            if (digits.charAt(0) == '0') {
+                digits.replace(0, 1, callingCode);
+                international = true;
+            } else if (startsWith(digits, callingCode) && digits.length() > callingCode.length() + 8) {
+                international = true;
+            } else if (!"1".equals(callingCode) || digits.length() == 10) {
+                // National number without a trunk prefix (e.g. NANP ten-digit numbers)
+                digits.insert(0, callingCode);
+                international = true;
+            }
+        }
+        return international ? "+" + digits : digits.toString();
+    }
+
+    /** Calling code for an ISO 3166 region such as "fr", or null when it isn't known. */
+    public static String callingCodeForRegion(String region) {
+        return region == null ? null : CALLING_CODES.get(region.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean startsWith(CharSequence digits, String prefix) {
+        if (digits.length() < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (digits.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+}
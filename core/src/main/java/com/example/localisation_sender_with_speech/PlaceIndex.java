@@ -0,0 +1,338 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline reverse geocoding: the named place nearest to a fix, from a read-only index that is
+ * memory-mapped rather than parsed. Opening it reads the header only; lookups touch a few
+ * pages, which the kernel loads on demand and can drop again, so the index costs next to
+ * nothing on the heap whatever its size.
+ *
+ * Places are bucketed into a grid of square cells (in 1e-6 degrees, like the replies) and
+ * stored sorted by cell, so a lookup reads the offsets of the cells within the search radius
+ * and scans only their places. The file is, big-endian:
+ *
+ * <pre>
+ *   header   magic, version, cell size, rows, columns, place count, names offset, names length
+ *   cells    rows * columns + 1 ints: the index of each cell's first place, then the count
+ *   places   per place: latitude, longitude (1e-6 degrees), offset of its name
+ *   names    UTF-8, each after a length byte; places with the same name share it
+ * </pre>
+ *
+ * {@link Writer} builds the file; the :tools module builds the app's index from a GeoNames
+ * dump. Lookups are thread-safe and allocate only the {@link Place} they return.
+ */
+public final class PlaceIndex {
+
+    /** A place and how far it is from the point looked up. */
+    public static final class Place {
+        private final String name;
+        private final double latitude;
+        private final double longitude;
+        private final double distanceMeters;
+
+        Place(String name, double latitude, double longitude, double distanceMeters) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public double getDistanceMeters() {
+            return distanceMeters;
+        }
+
+        /** E.g. "Lyon, 3.2 km", "Bron, 800 m" or "Vienne, 24 km". */
+        public StringBuilder appendTo(StringBuilder out) {
+            out.append(name).append(", ");
+            if (distanceMeters < 995) {
+                return out.append(Math.round(distanceMeters / 10) * 10).append(" m");
+            }
+            return FixedPoint.append(out, distanceMeters / 1000, distanceMeters < 9950 ? 1 : 0).append(" km");
+        }
+
+        @Override
+        public String toString() {
+            return appendTo(new StringBuilder(name.length() + 12)).toString();
+        }
+    }
+
+    /** How far a place may be and still be worth naming: "near X, 80 km" tells nobody much. */
+    public static final double DEFAULT_MAX_DISTANCE_METERS = 50_000;
+    public static final int MAX_NAME_BYTES = 255;
+
+    private static final int MAGIC = 0x504c4958; // "PLIX"
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int CELL_AT = 8;
+    private static final int ROWS_AT = 12;
+    private static final int COLUMNS_AT = 16;
+    private static final int COUNT_AT = 20;
+    private static final int NAMES_AT = 24;
+    private static final int NAMES_LENGTH_AT = 28;
+    private static final int HEADER_BYTES = 32;
+    private static final int PLACE_BYTES = 12;
+
+    private static final int MIN_CELL_MICROS = 100_000;
+    private static final int LATITUDE_SPAN = 180_000_000;
+    private static final int LONGITUDE_SPAN = 360_000_000;
+    // Mean Earth radius; the equirectangular distance is within a fraction of a percent at
+    // the radii searched
+    private static final double METERS_PER_MICRODEGREE = 6_371_008.8 * Math.PI / 180 / 1e6;
+
+    private final ByteBuffer buffer;
+    private final int cellMicros;
+    private final int rows;
+    private final int columns;
+    private final int count;
+    private final int placesAt;
+    private final int namesAt;
+
+    private PlaceIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(MAGIC_AT) != MAGIC) {
+            throw new IOException("Not a place index");
+        }
+        if (buffer.getInt(VERSION_AT) != VERSION) {
+            throw new IOException("Unsupported place index version " + buffer.getInt(VERSION_AT));
+        }
+        this.buffer = buffer;
+        this.cellMicros = buffer.getInt(CELL_AT);
+        this.rows = buffer.getInt(ROWS_AT);
+        this.columns = buffer.getInt(COLUMNS_AT);
+        this.count = buffer.getInt(COUNT_AT);
+        this.namesAt = buffer.getInt(NAMES_AT);
+        this.placesAt = HEADER_BYTES + (rows * columns + 1) * 4;
+        if (!isValidCellSize(cellMicros) || rows != LATITUDE_SPAN / cellMicros || columns != LONGITUDE_SPAN / cellMicros
+                || count < 0 || namesAt != placesAt + count * PLACE_BYTES
+                || (long) namesAt + buffer.getInt(NAMES_LENGTH_AT) != buffer.capacity()) {
+            throw new IOException("Corrupt place index");
+        }
+    }
+
+    /** Maps the index in {@code file}. */
+    public static PlaceIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return map(raf.getChannel(), 0, raf.length());
+        }
+    }
+
+    /**
+     * Maps the index stored at {@code [offset, offset + length)} of {@code channel}, e.g. an
+     * uncompressed asset inside an APK. The mapping outlives the channel, which may be closed.
+     */
+    public static PlaceIndex map(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Place index too large: " + length + " bytes");
+        }
+        return new PlaceIndex(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** The place nearest to the point within {@link #DEFAULT_MAX_DISTANCE_METERS}, or null. */
+    public Place nearest(double latitude, double longitude) {
+        return nearest(latitude, longitude, DEFAULT_MAX_DISTANCE_METERS);
+    }
+
+    /** The place nearest to the point within {@code maxDistanceMeters}, or null. */
+    public Place nearest(double latitude, double longitude, double maxDistanceMeters) {
+        if (count == 0 || Double.isNaN(latitude) || Double.isInfinite(longitude) || Double.isNaN(longitude)) {
+            return null;
+        }
+        int lat = (int) Math.round(Math.max(-90, Math.min(90, latitude)) * 1e6);
+        int lon = normalizeLongitude(Math.round(longitude * 1e6));
+        double cosLat = Math.cos(Math.toRadians(lat / 1e6));
+
+        // Search the box of cells around the point that holds everything within the radius
+        int radius = (int) Math.min(LATITUDE_SPAN, Math.ceil(maxDistanceMeters / METERS_PER_MICRODEGREE));
+        int rowFrom = Math.max(0, Math.floorDiv(lat - radius + LATITUDE_SPAN / 2, cellMicros));
+        int rowTo = Math.min(rows - 1, Math.floorDiv(lat + radius + LATITUDE_SPAN / 2, cellMicros));
+        // Towards the poles a degree of longitude shrinks to nothing; take the whole ring
+        double lonRadius = cosLat > 1e-3 ? radius / cosLat : LONGITUDE_SPAN;
+        int columnFrom;
+        int columnTo;
+        if (2 * lonRadius + cellMicros >= LONGITUDE_SPAN) {
+            columnFrom = 0;
+            columnTo = columns - 1;
+        } else {
+            columnFrom = Math.floorDiv(lon - (int) Math.ceil(lonRadius) + LONGITUDE_SPAN / 2, cellMicros);
+            columnTo = Math.floorDiv(lon + (int) Math.ceil(lonRadius) + LONGITUDE_SPAN / 2, cellMicros);
+        }
+
+        double maxMicros = maxDistanceMeters / METERS_PER_MICRODEGREE;
+        double bestSquared = maxMicros * maxMicros;
+        int best = -1;
+        for (int row = rowFrom; row <= rowTo; row++) {
+            for (int column = columnFrom; column <= columnTo; column++) {
+                // Columns wrap around the antimeridian
+                int cell = row * columns + Math.floorMod(column, columns);
+                int end = buffer.getInt(HEADER_BYTES + (cell + 1) * 4);
+                for (int i = buffer.getInt(HEADER_BYTES + cell * 4); i < end; i++) {
+                    int at = placesAt + i * PLACE_BYTES;
+                    double dy = buffer.getInt(at) - lat;
+                    double dx = normalizeLongitude((long) buffer.getInt(at + 4) - lon) * cosLat;
+                    double squared = dx * dx + dy * dy;
+                    if (squared <= bestSquared) {
+                        bestSquared = squared;
+                        best = i;
+                    }
+                }
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        int at = placesAt + best * PLACE_BYTES;
+        return new Place(name(buffer.getInt(at + 8)), buffer.getInt(at) / 1e6, buffer.getInt(at + 4) / 1e6,
+                Math.sqrt(bestSquared) * METERS_PER_MICRODEGREE);
+    }
+
+    private String name(int offset) {
+        int at = namesAt + offset;
+        byte[] bytes = new byte[buffer.get(at) & 0xff];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(at + 1 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Into [-180, 180) degrees, in 1e-6 degrees. */
+    private static int normalizeLongitude(long micros) {
+        return (int) (Math.floorMod(micros + LONGITUDE_SPAN / 2, (long) LONGITUDE_SPAN) - LONGITUDE_SPAN / 2);
+    }
+
+    /**
+     * Cells must tile the globe exactly, so that columns wrap around cleanly, and be at least
+     * 0.1 degree, which already makes a 26 MB cell table.
+     */
+    static boolean isValidCellSize(int cellMicros) {
+        return cellMicros >= MIN_CELL_MICROS && cellMicros <= LATITUDE_SPAN && LATITUDE_SPAN % cellMicros == 0;
+    }
+
+    /** Collects places and writes them as an index file. */
+    public static final class Writer {
+
+        private final int cellMicros;
+        private final List<int[]> places = new ArrayList<>();
+        private final Map<String, Integer> nameOffsets = new HashMap<>();
+        private final List<byte[]> names = new ArrayList<>();
+        private int namesLength;
+
+        /**
+         * @param cellDegrees grid cell size, at least 0.1; 180 must be a multiple of it.
+         *                    Smaller cells hold fewer places each but a lookup reads more of
+         *                    them, and the cell table grows: 1 degree cells take 253 KB, 0.5
+         *                    degree cells 1 MB.
+         */
+        public Writer(double cellDegrees) {
+            long micros = Math.round(cellDegrees * 1e6);
+            if (micros > Integer.MAX_VALUE || !isValidCellSize((int) micros)) {
+                throw new IllegalArgumentException("Invalid cell size: " + cellDegrees + " degrees");
+            }
+            this.cellMicros = (int) micros;
+        }
+
+        /**
+         * Adds a place.
+         *
+         * @throws IllegalArgumentException if the name is empty or longer than
+         *                                  {@link #MAX_NAME_BYTES} in UTF-8, or the
+         *                                  coordinates are out of range
+         */
+        public Writer add(String name, double latitude, double longitude) {
+            if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+                throw new IllegalArgumentException("Coordinates out of range: " + latitude + "," + longitude);
+            }
+            Integer offset = nameOffsets.get(name);
+            if (offset == null) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length == 0 || bytes.length > MAX_NAME_BYTES) {
+                    throw new IllegalArgumentException("Name must be 1 to " + MAX_NAME_BYTES + " bytes: " + name);
+                }
+                offset = namesLength;
+                nameOffsets.put(name, offset);
+                names.add(bytes);
+                namesLength += 1 + bytes.length;
+            }
+            int lat = (int) Math.round(latitude * 1e6);
+            int lon = normalizeLongitude(Math.round(longitude * 1e6));
+            places.add(new int[] {cellOf(lat, lon), lat, lon, offset});
+            return this;
+        }
+
+        public int size() {
+            return places.size();
+        }
+
+        public void writeTo(File file) throws IOException {
+            int rows = LATITUDE_SPAN / cellMicros;
+            int columns = LONGITUDE_SPAN / cellMicros;
+            places.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+            int placesAt = HEADER_BYTES + (rows * columns + 1) * 4;
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(cellMicros);
+                out.writeInt(rows);
+                out.writeInt(columns);
+                out.writeInt(places.size());
+                out.writeInt(placesAt + places.size() * PLACE_BYTES);
+                out.writeInt(namesLength);
+
+                int next = 0;
+                for (int cell = 0; cell <= rows * columns; cell++) {
+                    while (next < places.size() && places.get(next)[0] < cell) {
+                        next++;
+                    }
+                    out.writeInt(next);
+                }
+                for (int[] place : places) {
+                    out.writeInt(place[1]);
+                    out.writeInt(place[2]);
+                    out.writeInt(place[3]);
+                }
+                for (byte[] name : names) {
+                    out.writeByte(name.length);
+                    out.write(name);
+                }
+            }
+        }
+
+        private int cellOf(int lat, int lon) {
+            int rows = LATITUDE_SPAN / cellMicros;
+            int columns = LONGITUDE_SPAN / cellMicros;
+            int row = Math.min(rows - 1, (lat + LATITUDE_SPAN / 2) / cellMicros);
+            int column = Math.min(columns - 1, (lon + LONGITUDE_SPAN / 2) / cellMicros);
+            return row * columns + column;
+        }
+    }
+}
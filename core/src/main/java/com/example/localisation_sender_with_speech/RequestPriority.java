@@ -0,0 +1,24 @@
+package com.example.localisation_sender_with_speech;
+
+/** Order in which queued location requests are served; earlier constants go first. */
+public enum RequestPriority {
+    /** A trusted sender's message contains an emergency keyword. */
+    EMERGENCY,
+    /** The sender is on the allow list, or the list is empty and lets everyone in. */
+    TRUSTED,
+    /**
+     * Anyone else's message with an emergency keyword: ahead of other unknown senders, but a
+     * flood can't put "SOS" in its texts to get ahead of trusted contacts.
+     */
+    UNKNOWN_EMERGENCY,
+    UNKNOWN;
+
+    public boolean outranks(RequestPriority other) {
+        return ordinal() < other.ordinal();
+    }
+
+    /** Whether requests of this priority may use the permits {@link StageLimiter} reserves. */
+    public boolean isReserved() {
+        return outranks(UNKNOWN_EMERGENCY);
+    }
+}
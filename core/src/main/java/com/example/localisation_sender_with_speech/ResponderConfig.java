@@ -0,0 +1,186 @@
+package com.example.localisation_sender_with_speech;
+
+/**
+ * Immutable snapshot of everything the auto-responder reads while handling an SMS.
+ *
+ * Published as a whole by ResponderSettings in the app, so one broadcast sees one consistent
+ * configuration and never touches preferences or the permission service itself.
+ */
+public final class ResponderConfig {
+
+    // Trigger phrases that will activate auto-response. Matched after folding case, accents
+    // and punctuation, and tolerating typos; see FuzzyPhraseMatcher
+    static final String[] TRIGGER_PHRASES = {
+        "give me your location",
+        "send location",
+        "where are you",
+        "share location",
+        "your location",
+        "location please",
+        "send me location",
+        "où es-tu",
+        "tu es où",
+        "t'es où",
+        "envoie ta position",
+        "ta position",
+        "ta localisation"
+    };
+
+    // Requests mentioning these are served ahead of everything else
+    static final String[] EMERGENCY_KEYWORDS = {
+        "sos",
+        "emergency",
+        "urgent",
+        "help me",
+        "accident"
+    };
+
+    // Trusted senders can ask for periodic updates instead of one reply; see LocationTracker
+    static final String[] TRACKING_PHRASES = {
+        "start tracking",
+        "track location",
+        "keep tracking"
+    };
+
+    static final String[] STOP_TRACKING_PHRASES = {
+        "stop tracking"
+    };
+
+    public enum TrackingCommand { NONE, START, STOP }
+
+    private static final TriggerPhraseMatcher TRACKING_MATCHER = TriggerPhraseMatcher.compile(TRACKING_PHRASES);
+    private static final TriggerPhraseMatcher STOP_TRACKING_MATCHER =
+            TriggerPhraseMatcher.compile(STOP_TRACKING_PHRASES);
+
+    private final boolean enabled;
+    private final boolean smsPermitted;
+    private final boolean locationPermitted;
+    private final FuzzyPhraseMatcher triggerMatcher;
+    private final TriggerPhraseMatcher emergencyMatcher;
+    private final AcquisitionPolicy acquisitionPolicy;
+    private final SmsPayloadEncoder replyPlan;
+    private final SmsPayloadEncoder degradedReplyPlan;
+    private final AllowList allowList;
+    private final String commandPin;
+
+    ResponderConfig(boolean enabled, boolean smsPermitted, boolean locationPermitted,
+                    FuzzyPhraseMatcher triggerMatcher, TriggerPhraseMatcher emergencyMatcher,
+                    AcquisitionPolicy acquisitionPolicy, SmsPayloadEncoder replyPlan,
+                    SmsPayloadEncoder degradedReplyPlan, AllowList allowList, String commandPin) {
+        this.enabled = enabled;
+        this.smsPermitted = smsPermitted;
+        this.locationPermitted = locationPermitted;
+        this.triggerMatcher = triggerMatcher;
+        this.emergencyMatcher = emergencyMatcher;
+        this.acquisitionPolicy = acquisitionPolicy;
+        this.replyPlan = replyPlan;
+        this.degradedReplyPlan = degradedReplyPlan;
+        this.allowList = allowList;
+        // A PIN that could never be typed as one would lock every command out
+        this.commandPin = SmsCommand.isValidPin(commandPin) ? commandPin : null;
+    }
+
+    public ResponderConfig withEnabled(boolean enabled) {
+        return new ResponderConfig(enabled, smsPermitted, locationPermitted, triggerMatcher, emergencyMatcher,
+                acquisitionPolicy, replyPlan, degradedReplyPlan, allowList, commandPin);
+    }
+
+    public ResponderConfig withPermissions(boolean smsPermitted, boolean locationPermitted) {
+        return new ResponderConfig(enabled, smsPermitted, locationPermitted, triggerMatcher, emergencyMatcher,
+                acquisitionPolicy, replyPlan, degradedReplyPlan, allowList, commandPin);
+    }
+
+    public ResponderConfig withAllowList(AllowList allowList) {
+        return new ResponderConfig(enabled, smsPermitted, locationPermitted, triggerMatcher, emergencyMatcher,
+                acquisitionPolicy, replyPlan, degradedReplyPlan, allowList, commandPin);
+    }
+
+    /** Commands other than STOP must start with {@code pin} (4 to 8 digits); null for none. */
+    public ResponderConfig withCommandPin(String pin) {
+        return new ResponderConfig(enabled, smsPermitted, locationPermitted, triggerMatcher, emergencyMatcher,
+                acquisitionPolicy, replyPlan, degradedReplyPlan, allowList, pin);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isSmsPermitted() {
+        return smsPermitted;
+    }
+
+    public boolean isLocationPermitted() {
+        return locationPermitted;
+    }
+
+    /** Enabled, and allowed to read SMS, send SMS and get a location. */
+    public boolean canRespond() {
+        return enabled && smsPermitted && locationPermitted;
+    }
+
+    public FuzzyPhraseMatcher getTriggerMatcher() {
+        return triggerMatcher;
+    }
+
+    public AcquisitionPolicy getAcquisitionPolicy() {
+        return acquisitionPolicy;
+    }
+
+    public SmsPayloadEncoder replyPlan(boolean degraded) {
+        return degraded ? degradedReplyPlan : replyPlan;
+    }
+
+    public AllowList getAllowList() {
+        return allowList;
+    }
+
+    /**
+     * The sender's address in the form the allow-list keys it by, with the home calling code,
+     * so that a national and an international number are the same sender everywhere.
+     */
+    public String senderKey(String sender) {
+        return allowList.getNormalizer().normalize(sender);
+    }
+
+    /** An empty allow-list lets everyone ask. */
+    public boolean isSenderAllowed(String sender) {
+        return allowList.isEmpty() || allowList.contains(sender);
+    }
+
+    /** Tracking is only for senders on the allow-list, so an empty list means nobody. */
+    public boolean isTrackingAllowed(String sender) {
+        return allowList.contains(sender);
+    }
+
+    public SmsCommand commandOf(String body) {
+        return SmsCommand.parse(body, commandPin);
+    }
+
+    /** Whether a PIN is configured, and so has to start every request but a STOP. */
+    public boolean hasCommandPin() {
+        return commandPin != null;
+    }
+
+    /** Whether a phrase request starts with the configured PIN, or needs none. */
+    public boolean carriesPin(String body) {
+        return commandPin == null || SmsCommand.startsWithPin(body, commandPin);
+    }
+
+    public TrackingCommand trackingCommandOf(String body) {
+        if (body == null) return TrackingCommand.NONE;
+        if (STOP_TRACKING_MATCHER.matches(body)) return TrackingCommand.STOP;
+        return TRACKING_MATCHER.matches(body) ? TrackingCommand.START : TrackingCommand.NONE;
+    }
+
+    /**
+     * Emergency keywords only rank a sender above the trusted ones if the sender is trusted
+     * too. With an empty allow-list everyone it lets in is trusted.
+     */
+    public RequestPriority priorityOf(String sender, String body) {
+        boolean emergency = emergencyMatcher.matches(body);
+        if (allowList.isEmpty() || allowList.contains(sender)) {
+            return emergency ? RequestPriority.EMERGENCY : RequestPriority.TRUSTED;
+        }
+        return emergency ? RequestPriority.UNKNOWN_EMERGENCY : RequestPriority.UNKNOWN;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms per auto-response stage, plus event counters.
+ *
+ * One process-wide instance; recording is lock-free and allocation-free, so it can stay on
+ * in production. {@link #snapshot()} gives an immutable view for display or export.
+ */
+public final class ResponderMetrics {
+
+    public enum Stage {
+        /** PDU decoding and multi-part reassembly. */
+        PARSE,
+        /** Trigger phrase matching. */
+        MATCH,
+        /** Time a request waited in the pipeline queue. */
+        QUEUE_WAIT,
+        /** Allow-list and rate-limit checks. */
+        POLICY,
+        /** Cached or fresh location resolution. */
+        LOCATION,
+        /** Rendering the reply. */
+        RENDER,
+        /** Handing the reply to the outbound queue. */
+        SEND_SUBMIT,
+        /** From broadcast receipt to the reply being queued. */
+        RECEIVE_TO_SEND,
+        /** From request (or manual send) to the radio accepting every part. */
+        SENT,
+        /** From request (or manual send) to every part being delivered. */
+        DELIVERED,
+        /** From process start to the first reply queued, when an incoming SMS started the process. */
+        COLD_START_TO_REPLY,
+        /** Checking a fix against the geofences. */
+        GEOFENCE
+    }
+
+    public enum Counter {
+        BROADCASTS,
+        DISABLED,
+        MATCHES,
+        NOT_ALLOWED,
+        COALESCED,
+        RATE_LIMITED,
+        SHED,
+        DEADLINE_EXCEEDED,
+        NO_FIX,
+        ERRORS,
+        REPLIES_QUEUED,
+        SENT,
+        DELIVERED,
+        SEND_FAILED,
+        TRACKING_UPDATES,
+        COMMANDS,
+        COMMANDS_REJECTED,
+        GEOFENCE_ALERTS
+    }
+
+    private static final ResponderMetrics INSTANCE = new ResponderMetrics();
+
+    private final EnumMap<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+    ResponderMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public static ResponderMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void recordNanos(Stage stage, long nanos) {
+        histograms.get(stage).recordNanos(nanos);
+    }
+
+    public void recordMillis(Stage stage, long millis) {
+        histograms.get(stage).recordMillis(millis);
+    }
+
+    /** Records the time since {@code startNanos} (a System.nanoTime value). */
+    public void recordSince(Stage stage, long startNanos) {
+        recordNanos(stage, System.nanoTime() - startNanos);
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public Snapshot snapshot() {
+        EnumMap<Stage, LatencyHistogram.Snapshot> stages = new EnumMap<>(Stage.class);
+        for (Map.Entry<Stage, LatencyHistogram> entry : histograms.entrySet()) {
+            stages.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        long[] counts = new long[counters.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counters.get(i);
+        }
+        return new Snapshot(System.currentTimeMillis(), stages, counts);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    public static final class Snapshot {
+        private final long takenAtMillis;
+        private final EnumMap<Stage, LatencyHistogram.Snapshot> stages;
+        private final long[] counters;
+
+        Snapshot(long takenAtMillis, EnumMap<Stage, LatencyHistogram.Snapshot> stages, long[] counters) {
+            this.takenAtMillis = takenAtMillis;
+            this.stages = stages;
+            this.counters = counters;
+        }
+
+        public long getTakenAtMillis() {
+            return takenAtMillis;
+        }
+
+        public LatencyHistogram.Snapshot stage(Stage stage) {
+            return stages.get(stage);
+        }
+
+        public long counter(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        /** Short summary for the UI: receive-to-send percentiles and the main counters. */
+        public String summary() {
+            LatencyHistogram.Snapshot e2e = stage(Stage.RECEIVE_TO_SEND);
+            return String.format(Locale.US,
+                    "Replies: %d queued, %d sent, %d delivered\n"
+                    + "Receive to send: p50 %.0f ms, p99 %.0f ms (%d samples)\n"
+                    + "Dropped: %d not allowed, %d rate-limited, %d shed, %d errors",
+                    counter(Counter.REPLIES_QUEUED), counter(Counter.SENT), counter(Counter.DELIVERED),
+                    e2e.percentileMillis(50), e2e.percentileMillis(99), e2e.getCount(),
+                    counter(Counter.NOT_ALLOWED), counter(Counter.RATE_LIMITED), counter(Counter.SHED),
+                    counter(Counter.ERRORS));
+        }
+
+        /** Full report: one line per stage with percentiles, then every counter. */
+        public void writeTo(Appendable out) throws IOException {
+            out.append("# Auto-response metrics at ")
+                    .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date(takenAtMillis)))
+                    .append('\n');
+            out.append(String.format(Locale.US, "%-16s %8s %10s %10s %10s %10s %10s%n",
+                    "stage", "count", "mean_ms", "p50_ms", "p90_ms", "p99_ms", "max_ms"));
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram.Snapshot histogram = stage(stage);
+                out.append(String.format(Locale.US, "%-16s %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                        stage.name().toLowerCase(Locale.US), histogram.getCount(), histogram.meanMillis(),
+                        histogram.percentileMillis(50), histogram.percentileMillis(90),
+                        histogram.percentileMillis(99), histogram.maxMillis()));
+            }
+            for (Counter counter : Counter.values()) {
+                out.append(String.format(Locale.US, "%-16s %8d%n",
+                        counter.name().toLowerCase(Locale.US), counter(counter)));
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(2048);
+            try {
+                writeTo(report);
+            } catch (IOException e) {
+                // StringBuilder doesn't throw
+            }
+            return report.toString();
+        }
+    }
+}
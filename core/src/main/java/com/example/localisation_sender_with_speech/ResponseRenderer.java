@@ -0,0 +1,134 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Renders reply templates and splits them into SMS segments, caching the result per fix.
+ *
+ * A burst of requests answered from the same cached {@link LocationFix} renders and splits
+ * the text once; later requests get the same immutable {@link Rendered} back. Templates with a
+ * {@code {place}} field name the nearest place from the {@link PlaceIndex}, if there is one
+ * and a place lies close enough; otherwise they are skipped.
+ */
+public final class ResponseRenderer {
+
+    /** Splits a message into SMS segments, e.g. SmsManager.divideMessage. */
+    public interface Splitter {
+        ArrayList<String> divide(String text);
+    }
+
+    /** Rendered text and its segments. Shared between callers; do not modify. */
+    public static final class Rendered {
+        final ResponseTemplate template;
+        final SmsPayloadEncoder plan;
+        final LocationFix fix;
+        private final String text;
+        private final ArrayList<String> parts;
+        private final SmsPayloadEncoder.Count count;
+
+        Rendered(ResponseTemplate template, SmsPayloadEncoder plan, LocationFix fix, String text,
+                 ArrayList<String> parts, SmsPayloadEncoder.Count count) {
+            this.template = template;
+            this.plan = plan;
+            this.fix = fix;
+            this.text = text;
+            this.parts = parts;
+            this.count = count;
+        }
+
+        public ResponseTemplate getTemplate() {
+            return template;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public ArrayList<String> getParts() {
+            return parts;
+        }
+
+        public boolean isMultipart() {
+            return parts.size() > 1;
+        }
+
+        /** Encoding and exact segment count of the text. */
+        public SmsPayloadEncoder.Count getCount() {
+            return count;
+        }
+    }
+
+    private static final int INITIAL_BUFFER = 512;
+
+    private final Splitter splitter;
+    private final Supplier<PlaceIndex> places;
+    private final AtomicReference<Rendered> last = new AtomicReference<>();
+    private final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_BUFFER);
+        }
+    };
+
+    public ResponseRenderer(Splitter splitter) {
+        this(splitter, () -> null);
+    }
+
+    /**
+     * @param places supplies the index to name places from, or null if there is none; it is
+     *               asked on every render that needs a place, so it can open the index lazily
+     */
+    public ResponseRenderer(Splitter splitter, Supplier<PlaceIndex> places) {
+        this.splitter = splitter;
+        this.places = places;
+    }
+
+    public Rendered render(ResponseTemplate template, LocationFix fix, long nowMillis) {
+        Rendered cached = last.get();
+        if (cached != null && cached.fix == fix && cached.plan == null && cached.template == template) {
+            return cached;
+        }
+
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        template.render(fix, template.usesPlace() ? placeNear(fix) : null, nowMillis, buffer);
+        Rendered rendered = newRendered(template, null, fix, buffer);
+
+        // Output that depends on the clock can't be reused for the next request
+        if (!template.isTimeDependent()) {
+            last.set(rendered);
+        }
+        return rendered;
+    }
+
+    /** Renders the richest template of {@code plan} that fits its segment budget. */
+    public Rendered render(SmsPayloadEncoder plan, LocationFix fix, long nowMillis) {
+        Rendered cached = last.get();
+        if (cached != null && cached.fix == fix && plan.sameAs(cached.plan)) {
+            return cached;
+        }
+
+        StringBuilder buffer = buffers.get();
+        int chosen = plan.renderBest(fix, plan.usesPlace() ? placeNear(fix) : null, nowMillis, buffer);
+        Rendered rendered = newRendered(plan.ladder()[chosen], plan, fix, buffer);
+
+        if (!plan.isTimeDependent()) {
+            last.set(rendered);
+        }
+        return rendered;
+    }
+
+    /** The place to name near {@code fix}, or null if there is no index or nothing close. */
+    public PlaceIndex.Place placeNear(LocationFix fix) {
+        PlaceIndex index = places.get();
+        return index != null ? index.nearest(fix.getLatitude(), fix.getLongitude()) : null;
+    }
+
+    private Rendered newRendered(ResponseTemplate template, SmsPayloadEncoder plan, LocationFix fix,
+                                 StringBuilder buffer) {
+        String text = buffer.toString();
+        return new Rendered(template, plan, fix, text, splitter.divide(text), SmsPayloadEncoder.count(text));
+    }
+}
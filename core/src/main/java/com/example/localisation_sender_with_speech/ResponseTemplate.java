@@ -0,0 +1,278 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reply template compiled once into literal runs and fields.
+ *
+ * Supported fields: {@code {lat}} and {@code {lon}} (6 decimals), {@code {lat:N}} and
+ * {@code {lon:N}} (shortest form at N decimals, e.g. "2.35"), {@code {acc}} (1 decimal),
+ * {@code {acc0}} (whole meters), {@code {age}} (age of the fix, e.g. "45s" or "12 min") and
+ * {@code {place}} (the nearest named place and its distance, e.g. "Lyon, 3.2 km"; see
+ * {@link PlaceIndex}). Rendering appends into a caller-supplied buffer without boxing or a
+ * Formatter.
+ */
+public final class ResponseTemplate {
+
+    static final int FIELD_LATITUDE = 0;
+    static final int FIELD_LONGITUDE = 1;
+    static final int FIELD_ACCURACY = 2;
+    static final int FIELD_ACCURACY_WHOLE = 3;
+    static final int FIELD_AGE = 4;
+    static final int FIELD_PLACE = 5;
+
+    private static final String[] FIELD_NAMES = {"lat", "lon", "acc", "acc0", "age", "place"};
+    private static final int COORDINATE_DECIMALS = 6;
+
+    /** The automatic reply to a trigger SMS. */
+    public static final ResponseTemplate AUTO_REPLY = compile(
+            "📍 My current location:\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "🗺️ Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "⏰ Sent automatically in response to your request");
+
+    /** {@link #AUTO_REPLY} naming the nearest place, for recipients who can't open a map. */
+    public static final ResponseTemplate AUTO_REPLY_NEAR = compile(
+            "📍 My current location:\n"
+            + "Near {place}\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "🗺️ Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "⏰ Sent automatically in response to your request");
+
+    /** The automatic reply when only an old or inaccurate fix was available. */
+    public static final ResponseTemplate AUTO_REPLY_DEGRADED = compile(
+            "📍 My current location:\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "🗺️ Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "⏰ Sent automatically in response to your request\n\n"
+            + "⚠️ Best available fix: {age} old, accuracy {acc0}m");
+
+    /** {@link #AUTO_REPLY_DEGRADED} naming the nearest place. */
+    public static final ResponseTemplate AUTO_REPLY_NEAR_DEGRADED = compile(
+            "📍 My current location:\n"
+            + "Near {place}\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "🗺️ Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "⏰ Sent automatically in response to your request\n\n"
+            + "⚠️ Best available fix: {age} old, accuracy {acc0}m");
+
+    /** {@link #AUTO_REPLY} without emoji, so it fits the GSM-7 alphabet. */
+    public static final ResponseTemplate AUTO_REPLY_PLAIN = compile(
+            "My current location:\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "Sent automatically in response to your request");
+
+    /** {@link #AUTO_REPLY_NEAR} without emoji, so it fits the GSM-7 alphabet. */
+    public static final ResponseTemplate AUTO_REPLY_PLAIN_NEAR = compile(
+            "My current location:\n"
+            + "Near {place}\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "Sent automatically in response to your request");
+
+    /** {@link #AUTO_REPLY_DEGRADED} without emoji, so it fits the GSM-7 alphabet. */
+    public static final ResponseTemplate AUTO_REPLY_PLAIN_DEGRADED = compile(
+            "My current location:\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "Sent automatically in response to your request\n\n"
+            + "Best available fix: {age} old, accuracy {acc0}m");
+
+    /** {@link #AUTO_REPLY_NEAR_DEGRADED} without emoji, so it fits the GSM-7 alphabet. */
+    public static final ResponseTemplate AUTO_REPLY_PLAIN_NEAR_DEGRADED = compile(
+            "My current location:\n"
+            + "Near {place}\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n"
+            + "Accuracy: {acc}m\n\n"
+            + "Google Maps: https://maps.google.com/?q={lat},{lon}\n\n"
+            + "Sent automatically in response to your request\n\n"
+            + "Best available fix: {age} old, accuracy {acc0}m");
+
+    /** The message sent from MainActivity's "Send SMS" button. */
+    public static final ResponseTemplate MANUAL = compile(
+            "My current location:\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n\n"
+            + "Google Maps: https://maps.google.com/?q={lat},{lon}");
+
+    /** {@link #MANUAL} naming the nearest place. */
+    public static final ResponseTemplate MANUAL_NEAR = compile(
+            "My current location:\n"
+            + "Near {place}\n"
+            + "Latitude: {lat}\n"
+            + "Longitude: {lon}\n\n"
+            + "Google Maps: https://maps.google.com/?q={lat},{lon}");
+
+    /** {@link #MANUAL_COMPACT} naming the nearest place. */
+    public static final ResponseTemplate MANUAL_COMPACT_NEAR = compile(
+            "My location: {lat:5},{lon:5}, near {place}. maps.google.com/?q={lat:5},{lon:5}");
+
+    /** Fallback for {@link #MANUAL} when it would not fit in one SMS. */
+    public static final ResponseTemplate MANUAL_COMPACT = compile(
+            "My location: {lat:5},{lon:5} maps.google.com/?q={lat:5},{lon:5}");
+
+    // Literal i is emitted before field i; the last literal has no field after it
+    private final String[] literals;
+    private final int[] fields;
+    // Per field: decimals for a trimmed coordinate, or -1 for the field's fixed format
+    private final int[] decimals;
+    private final boolean timeDependent;
+    private final boolean usesPlace;
+    private final int sizeHint;
+
+    private ResponseTemplate(String[] literals, int[] fields, int[] decimals) {
+        this.literals = literals;
+        this.fields = fields;
+        this.decimals = decimals;
+        boolean usesAge = false;
+        boolean place = false;
+        int size = 0;
+        for (String literal : literals) {
+            size += literal.length();
+        }
+        for (int field : fields) {
+            usesAge |= field == FIELD_AGE;
+            place |= field == FIELD_PLACE;
+            size += 12;
+        }
+        this.timeDependent = usesAge;
+        this.usesPlace = place;
+        this.sizeHint = size;
+    }
+
+    public static ResponseTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> fields = new ArrayList<>();
+        List<Integer> decimals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            int close = c == '{' ? template.indexOf('}', i) : -1;
+            String spec = close > 0 ? template.substring(i + 1, close) : "";
+            int colon = spec.indexOf(':');
+            int field = fieldIndex(colon >= 0 ? spec.substring(0, colon) : spec);
+            int precision = colon >= 0 ? parseDecimals(spec.substring(colon + 1)) : -1;
+            if (colon >= 0 && (precision < 0 || (field != FIELD_LATITUDE && field != FIELD_LONGITUDE))) {
+                field = -1;
+            }
+            if (field >= 0) {
+                literals.add(literal.toString());
+                fields.add(field);
+                decimals.add(precision);
+                literal.setLength(0);
+                i = close + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+
+        int[] fieldArray = new int[fields.size()];
+        int[] decimalArray = new int[fields.size()];
+        for (int f = 0; f < fieldArray.length; f++) {
+            fieldArray[f] = fields.get(f);
+            decimalArray[f] = decimals.get(f);
+        }
+        return new ResponseTemplate(literals.toArray(new String[0]), fieldArray, decimalArray);
+    }
+
+    /** True if the output depends on the current time, not only on the fix. */
+    public boolean isTimeDependent() {
+        return timeDependent;
+    }
+
+    /** True if the template has a {@code {place}} field, which needs a place to render. */
+    public boolean usesPlace() {
+        return usesPlace;
+    }
+
+    public int sizeHint() {
+        return sizeHint;
+    }
+
+    public StringBuilder render(LocationFix fix, long nowMillis, StringBuilder out) {
+        return render(fix, null, nowMillis, out);
+    }
+
+    /** @param place the place near {@code fix}; {@code {place}} renders as nothing when null */
+    public StringBuilder render(LocationFix fix, PlaceIndex.Place place, long nowMillis, StringBuilder out) {
+        for (int i = 0; i < fields.length; i++) {
+            out.append(literals[i]);
+            switch (fields[i]) {
+                case FIELD_LATITUDE:
+                    appendCoordinate(out, fix.getLatitude(), decimals[i]);
+                    break;
+                case FIELD_LONGITUDE:
+                    appendCoordinate(out, fix.getLongitude(), decimals[i]);
+                    break;
+                case FIELD_ACCURACY:
+                    FixedPoint.append(out, fix.getAccuracyMeters(), 1);
+                    break;
+                case FIELD_ACCURACY_WHOLE:
+                    FixedPoint.append(out, fix.getAccuracyMeters(), 0);
+                    break;
+                case FIELD_AGE:
+                    appendAge(out, fix.ageMillis(nowMillis));
+                    break;
+                case FIELD_PLACE:
+                    if (place != null) {
+                        place.appendTo(out);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return out.append(literals[literals.length - 1]);
+    }
+
+    private static void appendCoordinate(StringBuilder out, double value, int decimals) {
+        if (decimals < 0) {
+            FixedPoint.append(out, value, COORDINATE_DECIMALS);
+        } else {
+            FixedPoint.appendTrimmed(out, value, decimals);
+        }
+    }
+
+    private static int parseDecimals(String text) {
+        if (text.length() != 1 || text.charAt(0) < '0' || text.charAt(0) > '0' + FixedPoint.MAX_DECIMALS) {
+            return -1;
+        }
+        return text.charAt(0) - '0';
+    }
+
+    private static void appendAge(StringBuilder out, long ageMillis) {
+        long seconds = ageMillis / 1000;
+        if (seconds < 120) {
+            out.append(seconds).append('s');
+        } else {
+            out.append(seconds / 60).append(" min");
+        }
+    }
+
+    private static int fieldIndex(String name) {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (FIELD_NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+}
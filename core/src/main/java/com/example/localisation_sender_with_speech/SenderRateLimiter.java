@@ -0,0 +1,198 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-sender reply limiter: a token bucket per normalized address, plus a coalescing window
+ * so that a burst of requests from one sender gets a single reply. National numbers only meet
+ * their international form if the caller has already normalized them with the home calling
+ * code, as {@link ResponderConfig#senderKey} does.
+ *
+ * Each bucket is an immutable state swapped in with compare-and-set, so concurrent requests
+ * from the same sender never block each other. Idle senders are swept out periodically and
+ * the number of tracked senders is capped; a sender that gets evicted simply starts again
+ * with a full bucket. Senders in debt are never evicted, or a locked-out guesser would only
+ * have to pause, or a flood to add numbers, to get a full bucket back; the debt is capped,
+ * so they leave once it is paid off.
+ *
+ * Requests that fail authentication, like a wrong PIN, are {@linkplain #charge charged}: they
+ * take a token without a reply and can push the bucket into debt, and a sender in debt is
+ * {@linkplain #isLockedOut locked out} until it refills. Guessing a PIN then costs a refill
+ * interval per guess, and the right guess during a lockout looks just like a wrong one.
+ */
+public final class SenderRateLimiter {
+
+    public enum Decision {
+        /** Send a reply. */
+        ALLOW,
+        /** A reply to this sender went out within the coalescing window; it covers this request too. */
+        COALESCED,
+        /** The sender has used up their replies for now. */
+        LIMITED
+    }
+
+    public static final class Config {
+        /** Two replies in a burst, then one every five minutes; repeats within a minute are merged. */
+        public static final Config DEFAULT = new Config(2, 5 * 60_000, 60_000, 30 * 60_000, 1024);
+
+        final int capacity;
+        final long refillIntervalMillis;
+        final long coalesceWindowMillis;
+        final long idleEvictionMillis;
+        final int maxSenders;
+
+        public Config(int capacity, long refillIntervalMillis, long coalesceWindowMillis,
+                      long idleEvictionMillis, int maxSenders) {
+            if (capacity < 1 || refillIntervalMillis <= 0 || maxSenders < 1) {
+                throw new IllegalArgumentException("Invalid limiter config");
+            }
+            this.capacity = capacity;
+            this.refillIntervalMillis = refillIntervalMillis;
+            this.coalesceWindowMillis = coalesceWindowMillis;
+            this.idleEvictionMillis = idleEvictionMillis;
+            this.maxSenders = maxSenders;
+        }
+    }
+
+    private static final int SWEEP_EVERY = 64;
+    /** How far into debt charges can take a bucket, in refill intervals. */
+    static final int MAX_DEBT_TOKENS = 12;
+
+    private final Config config;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, AtomicReference<Bucket>> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger untilSweep = new AtomicInteger(SWEEP_EVERY);
+    // Senders in debt at the last sweep; they are kept on top of the size cap
+    private volatile int inDebt;
+
+    public SenderRateLimiter(Config config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public Decision tryAcquire(String sender) {
+        long now = clock.getAsLong();
+        AtomicReference<Bucket> ref = bucketOf(sender, now);
+
+        Decision decision;
+        while (true) {
+            Bucket current = ref.get();
+            Bucket next;
+            if (current.lastReplyMillis != Long.MIN_VALUE
+                    && now - current.lastReplyMillis < config.coalesceWindowMillis) {
+                decision = Decision.COALESCED;
+                next = current.touched(now);
+            } else {
+                double tokens = refill(current, now);
+                if (tokens >= 1) {
+                    decision = Decision.ALLOW;
+                    next = new Bucket(tokens - 1, now, now, now);
+                } else {
+                    decision = Decision.LIMITED;
+                    next = new Bucket(tokens, now, current.lastReplyMillis, now);
+                }
+            }
+            if (ref.compareAndSet(current, next)) {
+                break;
+            }
+        }
+
+        maybeSweep(now);
+        return decision;
+    }
+
+    /** Takes a token from the sender for a failed request, going up to {@link #MAX_DEBT_TOKENS} into debt. */
+    public void charge(String sender) {
+        long now = clock.getAsLong();
+        AtomicReference<Bucket> ref = bucketOf(sender, now);
+        while (true) {
+            Bucket current = ref.get();
+            double tokens = Math.max(-MAX_DEBT_TOKENS, refill(current, now) - 1);
+            if (ref.compareAndSet(current, new Bucket(tokens, now, current.lastReplyMillis, now))) {
+                break;
+            }
+        }
+        maybeSweep(now);
+    }
+
+    /** Whether charges have put the sender in debt; nothing they send should be honored until it refills. */
+    public boolean isLockedOut(String sender) {
+        AtomicReference<Bucket> ref = buckets.get(PhoneNumbers.normalize(sender));
+        return ref != null && refill(ref.get(), clock.getAsLong()) < 0;
+    }
+
+    private AtomicReference<Bucket> bucketOf(String sender, long now) {
+        String key = PhoneNumbers.normalize(sender);
+        AtomicReference<Bucket> ref = buckets.get(key);
+        if (ref == null) {
+            AtomicReference<Bucket> created = new AtomicReference<>(new Bucket(config.capacity, now, Long.MIN_VALUE, now));
+            ref = buckets.putIfAbsent(key, created);
+            if (ref == null) {
+                ref = created;
+            }
+        }
+        return ref;
+    }
+
+    private void maybeSweep(long now) {
+        if (untilSweep.decrementAndGet() <= 0 || buckets.size() > config.maxSenders + inDebt) {
+            untilSweep.set(SWEEP_EVERY);
+            sweep(now);
+        }
+    }
+
+    private double refill(Bucket bucket, long now) {
+        long elapsed = Math.max(0, now - bucket.refilledAtMillis);
+        return Math.min(config.capacity, bucket.tokens + (double) elapsed / config.refillIntervalMillis);
+    }
+
+    /**
+     * Drops senders idle for longer than the eviction timeout, then trims to the size cap;
+     * neither touches a sender in debt.
+     */
+    void sweep(long now) {
+        int debtors = 0;
+        for (Map.Entry<String, AtomicReference<Bucket>> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue().get();
+            if (refill(bucket, now) < 0) {
+                debtors++;
+            } else if (now - bucket.lastSeenMillis >= config.idleEvictionMillis) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        Iterator<AtomicReference<Bucket>> refs = buckets.values().iterator();
+        while (buckets.size() > config.maxSenders + debtors && refs.hasNext()) {
+            if (refill(refs.next().get(), now) >= 0) {
+                refs.remove();
+            }
+        }
+        inDebt = debtors;
+    }
+
+    public int trackedSenders() {
+        return buckets.size();
+    }
+
+    private static final class Bucket {
+        final double tokens;
+        final long refilledAtMillis;
+        final long lastReplyMillis;
+        final long lastSeenMillis;
+
+        Bucket(double tokens, long refilledAtMillis, long lastReplyMillis, long lastSeenMillis) {
+            this.tokens = tokens;
+            this.refilledAtMillis = refilledAtMillis;
+            this.lastReplyMillis = lastReplyMillis;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+
+        Bucket touched(long now) {
+            return new Bucket(tokens, refilledAtMillis, lastReplyMillis, now);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.localisation_sender_with_speech;
+
+/**
+ * The platform's share of SMS text handling, e.g. SmsManager and SmsMessage: splitting
+ * replies into parts and parsing PDUs that {@link SmsPdu#decode} doesn't handle.
+ */
+public interface SmsCodec extends ResponseRenderer.Splitter {
+
+    /**
+     * Parses a PDU in {@code format} (3GPP2, or a 3GPP PDU {@link SmsPdu} rejected) as a
+     * single part, or returns null if it can't be parsed.
+     */
+    SmsPdu parseSingle(byte[] pdu, String format);
+}
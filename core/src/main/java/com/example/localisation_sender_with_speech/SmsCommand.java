@@ -0,0 +1,260 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A structured request, as an alternative to the trigger phrases:
+ *
+ * <pre>
+ *   [pin] LOC [ACC&lt;meters]   location, from a fix at least that accurate if one comes in time
+ *   [pin] TRACK [30M | 2H]     start or extend a tracking session, 4 hours at most
+ *   [pin] STOP [TRACKING]      end the sender's tracking session
+ *   [pin] STATUS               short status reply
+ * </pre>
+ *
+ * Case does not matter and punctuation separates words like spaces do, so "loc acc<20?" is
+ * "LOC ACC&lt;20". When a PIN is configured every command but STOP has to start with it;
+ * STOP never needs it, so a session can always be ended. STOP takes nothing but an optional
+ * TRACKING after it, so that "stop by the bakery, where are you?" is still a location request.
+ *
+ * {@link #parse} reads the message's chars once, without regexes or substrings. Only messages
+ * of at most {@link #MAX_LENGTH} chars are considered, and the first word settles whether a
+ * message is a command at all, so junk is turned away after a bounded amount of work. Commands
+ * without arguments are shared constants; parsing them allocates nothing.
+ */
+public final class SmsCommand {
+
+    public enum Verb { LOC, TRACK, STOP, STATUS }
+
+    public enum Outcome {
+        /** Not a command; the message goes on to phrase matching. */
+        NOT_A_COMMAND,
+        COMMAND,
+        /** Starts with a verb but does not follow the grammar; dropped. */
+        MALFORMED,
+        /** A PIN is configured and the message did not carry it; dropped. */
+        BAD_PIN
+    }
+
+    static final int MAX_LENGTH = 40;
+    static final int MIN_PIN_LENGTH = 4;
+    static final int MAX_PIN_LENGTH = 8;
+    static final int MAX_ACCURACY_METERS = 9999;
+    static final long MAX_TRACKING_MILLIS = TimeUnit.HOURS.toMillis(4);
+
+    public static final SmsCommand NOT_A_COMMAND = new SmsCommand(Outcome.NOT_A_COMMAND, null, 0, 0);
+    public static final SmsCommand MALFORMED = new SmsCommand(Outcome.MALFORMED, null, 0, 0);
+    public static final SmsCommand BAD_PIN = new SmsCommand(Outcome.BAD_PIN, null, 0, 0);
+    public static final SmsCommand LOC = new SmsCommand(Outcome.COMMAND, Verb.LOC, 0, 0);
+    public static final SmsCommand TRACK = new SmsCommand(Outcome.COMMAND, Verb.TRACK, 0, 0);
+    public static final SmsCommand STOP = new SmsCommand(Outcome.COMMAND, Verb.STOP, 0, 0);
+    public static final SmsCommand STATUS = new SmsCommand(Outcome.COMMAND, Verb.STATUS, 0, 0);
+
+    private static final char[] WORD_LOC = {'L', 'O', 'C'};
+    private static final char[] WORD_TRACK = {'T', 'R', 'A', 'C', 'K'};
+    private static final char[] WORD_STOP = {'S', 'T', 'O', 'P'};
+    private static final char[] WORD_STATUS = {'S', 'T', 'A', 'T', 'U', 'S'};
+    private static final char[] WORD_TRACKING = {'T', 'R', 'A', 'C', 'K', 'I', 'N', 'G'};
+    private static final char[] WORD_ACC = {'A', 'C', 'C', '<'};
+
+    private final Outcome outcome;
+    private final Verb verb;
+    private final int accuracyMeters;
+    private final long durationMillis;
+
+    private SmsCommand(Outcome outcome, Verb verb, int accuracyMeters, long durationMillis) {
+        this.outcome = outcome;
+        this.verb = verb;
+        this.accuracyMeters = accuracyMeters;
+        this.durationMillis = durationMillis;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isCommand() {
+        return outcome == Outcome.COMMAND;
+    }
+
+    public boolean isRejected() {
+        return outcome == Outcome.MALFORMED || outcome == Outcome.BAD_PIN;
+    }
+
+    /** The verb of a {@link Outcome#COMMAND}, null otherwise. */
+    public Verb getVerb() {
+        return verb;
+    }
+
+    /** For LOC: the accuracy asked for, 0 for the configured policy. */
+    public int getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    /** For TRACK: how long to track, 0 for the tracker's default. */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Parses {@code text} against the grammar above.
+     *
+     * @param pin the configured PIN (4 to 8 digits), or null if commands need none
+     */
+    public static SmsCommand parse(CharSequence text, String pin) {
+        if (text == null) return NOT_A_COMMAND;
+        int length = text.length();
+        if (length > MAX_LENGTH) return NOT_A_COMMAND;
+
+        // [start, end) is the current word
+        int start = next(text, 0, length);
+        int end = wordEnd(text, start, length);
+        if (start == end) return NOT_A_COMMAND;
+
+        boolean pinMatched = false;
+        if (isDigits(text, start, end)) {
+            int digits = end - start;
+            if (digits < MIN_PIN_LENGTH || digits > MAX_PIN_LENGTH) return NOT_A_COMMAND;
+            pinMatched = pin != null && matchesPin(text, start, end, pin);
+            start = next(text, end, length);
+            end = wordEnd(text, start, length);
+        }
+
+        Verb verb = verbOf(text, start, end);
+        if (verb == null) return NOT_A_COMMAND;
+
+        int argStart = next(text, end, length);
+        int argEnd = wordEnd(text, argStart, length);
+        // At most one argument, and nothing after it
+        boolean extra = next(text, argEnd, length) != length;
+        boolean hasArgument = argStart < argEnd;
+        if (verb == Verb.STOP) {
+            // Anything else is a sentence that happens to start with "stop"
+            return !extra && (!hasArgument || equalsWord(text, argStart, argEnd, WORD_TRACKING))
+                    ? STOP
+                    : NOT_A_COMMAND;
+        }
+        if (pin != null && !pinMatched) return BAD_PIN;
+        if (extra) return MALFORMED;
+
+        switch (verb) {
+            case LOC: {
+                if (!hasArgument) return LOC;
+                if (!startsWith(text, argStart, argEnd, WORD_ACC)) return MALFORMED;
+                int digitsEnd = argEnd;
+                // "ACC<20M" is fine too
+                if (upper(text.charAt(argEnd - 1)) == 'M') digitsEnd--;
+                int meters = number(text, argStart + WORD_ACC.length, digitsEnd, MAX_ACCURACY_METERS);
+                return meters > 0 ? new SmsCommand(Outcome.COMMAND, Verb.LOC, meters, 0) : MALFORMED;
+            }
+            case TRACK: {
+                if (!hasArgument) return TRACK;
+                char unit = upper(text.charAt(argEnd - 1));
+                if (unit != 'M' && unit != 'H') return MALFORMED;
+                int amount = number(text, argStart, argEnd - 1, Integer.MAX_VALUE);
+                long millis = unit == 'M' ? TimeUnit.MINUTES.toMillis(amount) : TimeUnit.HOURS.toMillis(amount);
+                return amount > 0 && millis <= MAX_TRACKING_MILLIS
+                        ? new SmsCommand(Outcome.COMMAND, Verb.TRACK, 0, millis)
+                        : MALFORMED;
+            }
+            default:
+                return hasArgument ? MALFORMED : STATUS;
+        }
+    }
+
+    /** Whether the first word of {@code text} is {@code pin}, for requests made with a phrase. */
+    public static boolean startsWithPin(CharSequence text, String pin) {
+        if (text == null || pin == null) return false;
+        int length = text.length();
+        int start = next(text, 0, length);
+        int end = wordEnd(text, start, length);
+        return isDigits(text, start, end) && matchesPin(text, start, end, pin);
+    }
+
+    /** Whether {@code pin} can be used as the command PIN: 4 to 8 digits. */
+    public static boolean isValidPin(String pin) {
+        return pin != null && pin.length() >= MIN_PIN_LENGTH && pin.length() <= MAX_PIN_LENGTH
+                && isDigits(pin, 0, pin.length());
+    }
+
+    private static Verb verbOf(CharSequence text, int start, int end) {
+        switch (end - start) {
+            case 3: return equalsWord(text, start, end, WORD_LOC) ? Verb.LOC : null;
+            case 4: return equalsWord(text, start, end, WORD_STOP) ? Verb.STOP : null;
+            case 5: return equalsWord(text, start, end, WORD_TRACK) ? Verb.TRACK : null;
+            case 6: return equalsWord(text, start, end, WORD_STATUS) ? Verb.STATUS : null;
+            default: return null;
+        }
+    }
+
+    /** Index of the first word char at or after {@code from}, or {@code length}. */
+    private static int next(CharSequence text, int from, int length) {
+        int i = from;
+        while (i < length && !isWordChar(text.charAt(i))) i++;
+        return i;
+    }
+
+    private static int wordEnd(CharSequence text, int from, int length) {
+        int i = from;
+        while (i < length && isWordChar(text.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '<';
+    }
+
+    private static char upper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    private static boolean equalsWord(CharSequence text, int start, int end, char[] word) {
+        return end - start == word.length && startsWith(text, start, end, word);
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, char[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (upper(text.charAt(start + i)) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigits(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /** The decimal number in {@code [start, end)}, or -1 if it is empty, not digits or above max. */
+    private static int number(CharSequence text, int start, int end, int max) {
+        if (start >= end || end - start > 9) return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value <= max ? value : -1;
+    }
+
+    /** Compares every char whatever the first difference, so timing does not leak the PIN. */
+    private static boolean matchesPin(CharSequence text, int start, int end, String pin) {
+        int difference = (end - start) ^ pin.length();
+        for (int i = 0; i < pin.length(); i++) {
+            char c = start + i < end ? text.charAt(start + i) : 0;
+            difference |= c ^ pin.charAt(i);
+        }
+        return difference == 0;
+    }
+
+    @Override
+    public String toString() {
+        if (outcome != Outcome.COMMAND) return outcome.name();
+        if (accuracyMeters > 0) return verb + " ACC<" + accuracyMeters;
+        if (durationMillis > 0) return verb + " " + TimeUnit.MILLISECONDS.toMinutes(durationMillis) + "M";
+        return verb.name();
+    }
+}
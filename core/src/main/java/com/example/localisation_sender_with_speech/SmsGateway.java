@@ -0,0 +1,13 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.List;
+
+/**
+ * Hands messages to the radio. Implementations report the outcome of every part back to
+ * {@link OutboundSmsQueue#onSent} and, when the network returns a status report,
+ * {@link OutboundSmsQueue#onDelivered}, tagged with the same id and attempt.
+ */
+public interface SmsGateway {
+
+    void send(long messageId, int attempt, String destination, List<String> parts);
+}
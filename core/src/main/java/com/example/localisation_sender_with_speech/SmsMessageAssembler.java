@@ -0,0 +1,91 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the parts of one SMS_RECEIVED broadcast by sender and joins each group into a
+ * single logical message, so matching and replying happen once per message rather than
+ * once per PDU.
+ */
+public final class SmsMessageAssembler {
+
+    /** A complete inbound message from one sender. */
+    public static final class InboundMessage {
+        private final String sender;
+        private final String body;
+        private final int partCount;
+
+        InboundMessage(String sender, String body, int partCount) {
+            this.sender = sender;
+            this.body = body;
+            this.partCount = partCount;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public int getPartCount() {
+            return partCount;
+        }
+    }
+
+    private SmsMessageAssembler() {
+    }
+
+    /**
+     * Joins {@code parts} per originating address. Within a sender, concatenated parts are
+     * ordered by reference and sequence number; parts without a header keep arrival order.
+     * Duplicate copies of the same part are dropped.
+     */
+    public static List<InboundMessage> assemble(List<SmsPdu> parts) {
+        Map<String, List<SmsPdu>> bySender = new LinkedHashMap<>();
+        for (SmsPdu part : parts) {
+            String sender = part.getOriginatingAddress() != null ? part.getOriginatingAddress() : "";
+            List<SmsPdu> group = bySender.get(sender);
+            if (group == null) {
+                group = new ArrayList<>(2);
+                bySender.put(sender, group);
+            }
+            group.add(part);
+        }
+
+        List<InboundMessage> messages = new ArrayList<>(bySender.size());
+        for (Map.Entry<String, List<SmsPdu>> entry : bySender.entrySet()) {
+            List<SmsPdu> group = entry.getValue();
+            // Stable sort, so unheadered parts (all reference -1, sequence 1) stay in arrival order
+            Collections.sort(group, (a, b) -> {
+                if (a.getReference() != b.getReference()) {
+                    return Integer.compare(a.getReference(), b.getReference());
+                }
+                return Integer.compare(a.getSequence(), b.getSequence());
+            });
+
+            StringBuilder body = new StringBuilder();
+            int count = 0;
+            SmsPdu previous = null;
+            for (SmsPdu part : group) {
+                if (previous != null && part.isConcatenated()
+                        && part.getReference() == previous.getReference()
+                        && part.getSequence() == previous.getSequence()) {
+                    continue;
+                }
+                if (part.getBody() != null) {
+                    body.append(part.getBody());
+                }
+                count++;
+                previous = part;
+            }
+            messages.add(new InboundMessage(entry.getKey(), body.toString(), count));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts SMS segments exactly and picks the richest reply template that fits a segment budget.
+ *
+ * A single GSM-7 SMS holds 160 septets (153 per part once concatenated) while UCS-2 holds
+ * 70 UTF-16 units (67 per part), so one emoji can triple the cost of a reply. The encoder
+ * tries a ladder of templates from richest to most compact and takes the first one within
+ * the budget; if none fits, the one with the fewest segments wins. Templates naming the nearest
+ * place are skipped when there is no place to name.
+ */
+public final class SmsPayloadEncoder {
+
+    public enum Encoding { GSM7, UCS2 }
+
+    public static final int GSM7_SINGLE_SEPTETS = 160;
+    public static final int GSM7_PART_SEPTETS = 153;
+    public static final int UCS2_SINGLE_UNITS = 70;
+    public static final int UCS2_PART_UNITS = 67;
+
+    public static final int DEFAULT_SEGMENT_BUDGET = 1;
+    public static final int DEFAULT_COORDINATE_DECIMALS = 5;
+
+    /** Encoding and exact segment count of a message body. */
+    public static final class Count {
+        private final Encoding encoding;
+        private final int segments;
+        private final int codeUnits;
+
+        Count(Encoding encoding, int segments, int codeUnits) {
+            this.encoding = encoding;
+            this.segments = segments;
+            this.codeUnits = codeUnits;
+        }
+
+        public Encoding getEncoding() {
+            return encoding;
+        }
+
+        public int getSegments() {
+            return segments;
+        }
+
+        /** Septets for GSM-7, UTF-16 units for UCS-2. */
+        public int getCodeUnits() {
+            return codeUnits;
+        }
+    }
+
+    // Ladders are shared so that equal settings give identical templates for the render cache
+    private static final ConcurrentHashMap<Integer, ResponseTemplate[]> AUTO_REPLY_LADDERS = new ConcurrentHashMap<>();
+
+    private final int segmentBudget;
+    private final ResponseTemplate[] ladder;
+
+    /** @param ladder templates from richest to most compact */
+    public SmsPayloadEncoder(int segmentBudget, ResponseTemplate... ladder) {
+        boolean placeFree = false;
+        for (ResponseTemplate template : ladder) {
+            placeFree |= !template.usesPlace();
+        }
+        if (!placeFree) {
+            throw new IllegalArgumentException("At least one template without {place} is required");
+        }
+        this.segmentBudget = Math.max(1, segmentBudget);
+        this.ladder = ladder;
+    }
+
+    /**
+     * The auto-reply ladder: the full emoji reply, the same text in plain GSM-7, then compact
+     * GSM-7 forms with coordinates at {@code coordinateDecimals}, with and without a map link.
+     * Each comes first with the nearest place named; in the compact forms the place is kept
+     * over the map link, which is no use to a recipient without data.
+     */
+    public static SmsPayloadEncoder autoReply(int segmentBudget, int coordinateDecimals,
+                                              boolean includeMapLink, boolean degraded) {
+        int decimals = Math.max(0, Math.min(FixedPoint.MAX_DECIMALS, coordinateDecimals));
+        int key = decimals | (includeMapLink ? 0x10 : 0) | (degraded ? 0x20 : 0);
+        ResponseTemplate[] ladder = AUTO_REPLY_LADDERS.get(key);
+        if (ladder == null) {
+            ladder = buildAutoReplyLadder(decimals, includeMapLink, degraded);
+            ResponseTemplate[] raced = AUTO_REPLY_LADDERS.putIfAbsent(key, ladder);
+            if (raced != null) {
+                ladder = raced;
+            }
+        }
+        return new SmsPayloadEncoder(segmentBudget, ladder);
+    }
+
+    private static ResponseTemplate[] buildAutoReplyLadder(int decimals, boolean includeMapLink, boolean degraded) {
+        String coordinates = "{lat:" + decimals + "},{lon:" + decimals + "}";
+        String age = degraded ? " Fix is {age} old." : "";
+        ResponseTemplate compact = ResponseTemplate.compile(
+                "My location: " + coordinates + " (accuracy {acc0}m)." + age + " Auto-reply");
+        ResponseTemplate compactNear = ResponseTemplate.compile(
+                "My location: " + coordinates + " (accuracy {acc0}m), near {place}." + age + " Auto-reply");
+        ResponseTemplate full = degraded ? ResponseTemplate.AUTO_REPLY_DEGRADED : ResponseTemplate.AUTO_REPLY;
+        ResponseTemplate fullNear = degraded
+                ? ResponseTemplate.AUTO_REPLY_NEAR_DEGRADED : ResponseTemplate.AUTO_REPLY_NEAR;
+        ResponseTemplate plain = degraded
+                ? ResponseTemplate.AUTO_REPLY_PLAIN_DEGRADED : ResponseTemplate.AUTO_REPLY_PLAIN;
+        ResponseTemplate plainNear = degraded
+                ? ResponseTemplate.AUTO_REPLY_PLAIN_NEAR_DEGRADED : ResponseTemplate.AUTO_REPLY_PLAIN_NEAR;
+        if (!includeMapLink) {
+            return new ResponseTemplate[] {fullNear, full, plainNear, plain, compactNear, compact};
+        }
+        ResponseTemplate compactLink = ResponseTemplate.compile(
+                "My location: " + coordinates + " (accuracy {acc0}m)." + age
+                + " maps.google.com/?q=" + coordinates + " Auto-reply");
+        ResponseTemplate compactLinkNear = ResponseTemplate.compile(
+                "My location: " + coordinates + " (accuracy {acc0}m), near {place}." + age
+                + " maps.google.com/?q=" + coordinates + " Auto-reply");
+        return new ResponseTemplate[] {
+            fullNear, full, plainNear, plain, compactLinkNear, compactNear, compactLink, compact
+        };
+    }
+
+    public int getSegmentBudget() {
+        return segmentBudget;
+    }
+
+    ResponseTemplate[] ladder() {
+        return ladder;
+    }
+
+    boolean isTimeDependent() {
+        for (ResponseTemplate template : ladder) {
+            if (template.isTimeDependent()) return true;
+        }
+        return false;
+    }
+
+    boolean usesPlace() {
+        for (ResponseTemplate template : ladder) {
+            if (template.usesPlace()) return true;
+        }
+        return false;
+    }
+
+    boolean sameAs(SmsPayloadEncoder other) {
+        return other != null && other.segmentBudget == segmentBudget && other.ladder == ladder;
+    }
+
+    /**
+     * Renders the chosen template into {@code out} (which is cleared first) and returns its
+     * index in the ladder.
+     *
+     * @param place the place near {@code fix}, or null to skip the templates that name one
+     */
+    int renderBest(LocationFix fix, PlaceIndex.Place place, long nowMillis, StringBuilder out) {
+        int best = -1;
+        int bestSegments = Integer.MAX_VALUE;
+        for (int i = 0; i < ladder.length; i++) {
+            if (place == null && ladder[i].usesPlace()) continue;
+            out.setLength(0);
+            int segments = count(ladder[i].render(fix, place, nowMillis, out)).getSegments();
+            if (segments <= segmentBudget) {
+                return i;
+            }
+            if (segments < bestSegments) {
+                best = i;
+                bestSegments = segments;
+            }
+        }
+        out.setLength(0);
+        ladder[best].render(fix, place, nowMillis, out);
+        return best;
+    }
+
+    /** Exact encoding and segment count of {@code text}, as the radio would send it. */
+    public static Count count(CharSequence text) {
+        int length = text.length();
+        int septets = 0;
+        for (int i = 0; i < length; i++) {
+            int cost = Gsm7.septets(text.charAt(i));
+            if (cost == 0) {
+                return new Count(Encoding.UCS2, ucs2Segments(text), length);
+            }
+            septets += cost;
+        }
+        return new Count(Encoding.GSM7, gsm7Segments(text, septets), septets);
+    }
+
+    private static int gsm7Segments(CharSequence text, int septets) {
+        if (septets <= GSM7_SINGLE_SEPTETS) {
+            return 1;
+        }
+        // An escape and its extension character can't be split across parts
+        int segments = 1;
+        int used = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int cost = Gsm7.septets(text.charAt(i));
+            if (used + cost > GSM7_PART_SEPTETS) {
+                segments++;
+                used = 0;
+            }
+            used += cost;
+        }
+        return segments;
+    }
+
+    private static int ucs2Segments(CharSequence text) {
+        int length = text.length();
+        if (length <= UCS2_SINGLE_UNITS) {
+            return 1;
+        }
+        // Surrogate pairs stay together in one part
+        int segments = 1;
+        int used = 0;
+        for (int i = 0; i < length; i++) {
+            int cost = Character.isHighSurrogate(text.charAt(i)) && i + 1 < length ? 2 : 1;
+            if (used + cost > UCS2_PART_UNITS) {
+                segments++;
+                used = 0;
+            }
+            used += cost;
+            i += cost - 1;
+        }
+        return segments;
+    }
+}
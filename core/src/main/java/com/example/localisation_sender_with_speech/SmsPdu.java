@@ -0,0 +1,220 @@
+package com.example.localisation_sender_with_speech;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One received SMS part, decoded from a 3GPP SMS-DELIVER PDU (3GPP TS 23.040).
+ *
+ * Unlike {@code android.telephony.SmsMessage}, this exposes the concatenation header so
+ * that parts of a long message can be put back together in order.
+ */
+public final class SmsPdu {
+
+    public static final int NOT_CONCATENATED = -1;
+
+    private static final int IEI_CONCAT_8BIT = 0x00;
+    private static final int IEI_CONCAT_16BIT = 0x08;
+
+    private static final int ENCODING_GSM7 = 0;
+    private static final int ENCODING_8BIT = 1;
+    private static final int ENCODING_UCS2 = 2;
+
+    private final String originatingAddress;
+    private final String body;
+    private final int reference;
+    private final int sequence;
+    private final int partCount;
+
+    public SmsPdu(String originatingAddress, String body, int reference, int sequence, int partCount) {
+        this.originatingAddress = originatingAddress;
+        this.body = body;
+        this.reference = reference;
+        this.sequence = sequence;
+        this.partCount = partCount;
+    }
+
+    /** A part with no concatenation header, e.g. one decoded by the platform. */
+    public static SmsPdu single(String originatingAddress, String body) {
+        return new SmsPdu(originatingAddress, body, NOT_CONCATENATED, 1, 1);
+    }
+
+    public String getOriginatingAddress() {
+        return originatingAddress;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public int getReference() {
+        return reference;
+    }
+
+    /** 1-based position of this part in its message. */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getPartCount() {
+        return partCount;
+    }
+
+    public boolean isConcatenated() {
+        return reference != NOT_CONCATENATED;
+    }
+
+    /**
+     * Decodes an SMS-DELIVER PDU as delivered in the SMS_RECEIVED "pdus" extra, i.e. with the
+     * leading SMSC address.
+     *
+     * @throws IllegalArgumentException if the PDU is truncated or not an SMS-DELIVER
+     */
+    public static SmsPdu decode(byte[] pdu) {
+        try {
+            return decodeUnchecked(pdu);
+        } catch (IndexOutOfBoundsException e) {
+            // Whatever the field that overran, a stranger's malformed PDU must not crash the receiver
+            throw new IllegalArgumentException("Truncated PDU", e);
+        }
+    }
+
+    private static SmsPdu decodeUnchecked(byte[] pdu) {
+        int pos = 0;
+        int smscLength = pdu[pos++] & 0xFF;
+        pos += smscLength;
+
+        int firstOctet = pdu[pos++] & 0xFF;
+        if ((firstOctet & 0x03) != 0x00) {
+            throw new IllegalArgumentException("Not an SMS-DELIVER PDU");
+        }
+        boolean hasUserDataHeader = (firstOctet & 0x40) != 0;
+
+        int addressDigits = pdu[pos++] & 0xFF;
+        int typeOfAddress = pdu[pos++] & 0xFF;
+        int addressOctets = (addressDigits + 1) / 2;
+        String address = decodeAddress(pdu, pos, addressDigits, typeOfAddress);
+        pos += addressOctets;
+
+        pos++; // TP-PID
+        int dcs = pdu[pos++] & 0xFF;
+        pos += 7; // TP-SCTS
+        int userDataLength = pdu[pos++] & 0xFF;
+        int userDataStart = pos;
+        int encoding = encodingOf(dcs);
+        // TP-UDL counts septets for GSM 7-bit, octets otherwise
+        int userDataOctets = encoding == ENCODING_GSM7 ? (userDataLength * 7 + 7) / 8 : userDataLength;
+        checkOctets(pdu, userDataStart, userDataOctets);
+
+        int reference = NOT_CONCATENATED;
+        int sequence = 1;
+        int partCount = 1;
+        int headerOctets = 0;
+        if (hasUserDataHeader) {
+            int headerLength = pdu[pos] & 0xFF;
+            headerOctets = headerLength + 1;
+            if (headerOctets > userDataOctets) {
+                throw new IllegalArgumentException("User data header longer than the user data");
+            }
+            int ie = pos + 1;
+            int end = pos + headerOctets;
+            while (ie + 1 < end) {
+                int id = pdu[ie] & 0xFF;
+                int length = pdu[ie + 1] & 0xFF;
+                if (id == IEI_CONCAT_8BIT && length == 3) {
+                    reference = pdu[ie + 2] & 0xFF;
+                    partCount = pdu[ie + 3] & 0xFF;
+                    sequence = pdu[ie + 4] & 0xFF;
+                } else if (id == IEI_CONCAT_16BIT && length == 4) {
+                    reference = ((pdu[ie + 2] & 0xFF) << 8) | (pdu[ie + 3] & 0xFF);
+                    partCount = pdu[ie + 4] & 0xFF;
+                    sequence = pdu[ie + 5] & 0xFF;
+                }
+                ie += 2 + length;
+            }
+        }
+
+        String body;
+        switch (encoding) {
+            case ENCODING_GSM7: {
+                int headerSeptets = (headerOctets * 8 + 6) / 7;
+                int septets = userDataLength - headerSeptets;
+                body = Gsm7.unpack(pdu, userDataStart, headerSeptets * 7, Math.max(0, septets));
+                break;
+            }
+            case ENCODING_UCS2: {
+                int start = userDataStart + headerOctets;
+                int length = userDataLength - headerOctets;
+                body = new String(pdu, start, length & ~1, StandardCharsets.UTF_16BE);
+                break;
+            }
+            default: {
+                int start = userDataStart + headerOctets;
+                int length = userDataLength - headerOctets;
+                body = new String(pdu, start, length, StandardCharsets.ISO_8859_1);
+                break;
+            }
+        }
+
+        if (sequence < 1 || partCount < 1 || sequence > partCount) {
+            reference = NOT_CONCATENATED;
+            sequence = 1;
+            partCount = 1;
+        }
+        return new SmsPdu(address, body, reference, sequence, partCount);
+    }
+
+    private static void checkOctets(byte[] pdu, int start, int length) {
+        if (start + length > pdu.length) {
+            throw new IllegalArgumentException("Truncated PDU");
+        }
+    }
+
+    private static int encodingOf(int dcs) {
+        int group = dcs & 0xF0;
+        if ((dcs & 0xC0) == 0x00) {
+            if ((dcs & 0x20) != 0) {
+                throw new IllegalArgumentException("Compressed user data is not supported");
+            }
+            switch ((dcs >> 2) & 0x03) {
+                case 1: return ENCODING_8BIT;
+                case 2: return ENCODING_UCS2;
+                default: return ENCODING_GSM7;
+            }
+        }
+        if (group == 0xF0) {
+            return (dcs & 0x04) != 0 ? ENCODING_8BIT : ENCODING_GSM7;
+        }
+        if (group == 0xE0) {
+            return ENCODING_UCS2;
+        }
+        return ENCODING_GSM7;
+    }
+
+    private static String decodeAddress(byte[] pdu, int pos, int digits, int typeOfAddress) {
+        if ((typeOfAddress & 0x70) == 0x50) {
+            // Alphanumeric sender: GSM 7-bit packed, length given in semi-octets
+            return Gsm7.unpack(pdu, pos, 0, digits * 4 / 7);
+        }
+        StringBuilder sb = new StringBuilder(digits + 1);
+        if ((typeOfAddress & 0x70) == 0x10) {
+            sb.append('+');
+        }
+        for (int i = 0; i < digits; i++) {
+            int octet = pdu[pos + i / 2] & 0xFF;
+            int digit = (i & 1) == 0 ? octet & 0x0F : octet >> 4;
+            sb.append(bcdDigit(digit));
+        }
+        return sb.toString();
+    }
+
+    private static char bcdDigit(int digit) {
+        switch (digit) {
+            case 0x0A: return '*';
+            case 0x0B: return '#';
+            case 0x0C: return 'a';
+            case 0x0D: return 'b';
+            case 0x0E: return 'c';
+            default: return (char) ('0' + digit);
+        }
+    }
+}
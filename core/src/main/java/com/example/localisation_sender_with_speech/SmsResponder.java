@@ -0,0 +1,644 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The auto-responder itself: turns the PDUs of one SMS_RECEIVED broadcast into location
+ * replies on the outbound queue.
+ *
+ * Work is split in two so the receiver can hold the broadcast open only when needed:
+ * {@link #prepare} decodes, assembles and matches on the calling thread and returns null when
+ * there is nothing to answer; {@link #submit} runs the rest (policy, location, render, send)
+ * on the pipeline's workers. The radio, the location provider and the platform's SMS parsing
+ * are all reached through {@link SmsGateway}, {@link LocationSource} (via the resolver) and
+ * {@link SmsCodec}, so the same code runs on a device and in a JVM harness.
+ *
+ * Every request, the decision taken on it, the fix used and the reply's fate go to the
+ * {@link AuditLog}; message bodies never do.
+ *
+ * Besides the trigger phrases, senders can send {@link SmsCommand}s. Every request, phrase
+ * or command, is turned into a command in {@link #prepare} and dispatched through a table of
+ * handlers indexed by verb. Trusted senders can also start and stop a tracking session; those
+ * are handed to {@link Tracking} instead of being answered here.
+ */
+public final class SmsResponder {
+
+    /** Told about each queued reply, e.g. to show a toast. */
+    public interface Notifier {
+        void onReplyQueued(String sender);
+    }
+
+    /** Runs tracking sessions, e.g. in the foreground service. Called on a worker thread. */
+    public interface Tracking {
+        /**
+         * @param durationMillis how long to track, 0 for the tracker's default
+         * @return false if tracking can't run at the moment; the sender is told
+         */
+        boolean start(String sender, long durationMillis);
+        void stop(String sender);
+    }
+
+    /** Concurrency and admission limits. */
+    public static final class Limits {
+        // The budget stays under the 10s receiver timeout with room for the system to deliver
+        // the result. Unknown senders get two location lookups and three sends at a time; the
+        // rest of each stage limit is kept for emergency and trusted requests. Requests that
+        // join a lookup already running take no location permit.
+        public static final Limits DEFAULT = new Limits(8000, 4, 16, 4, 2, 4, 1,
+                SenderRateLimiter.Config.DEFAULT);
+
+        final long budgetMillis;
+        final int workerThreads;
+        final int maxQueuedRequests;
+        final int locationLimit;
+        final int locationReserved;
+        final int sendLimit;
+        final int sendReserved;
+        final SenderRateLimiter.Config rateLimit;
+
+        public Limits(long budgetMillis, int workerThreads, int maxQueuedRequests,
+                      int locationLimit, int locationReserved, int sendLimit, int sendReserved,
+                      SenderRateLimiter.Config rateLimit) {
+            this.budgetMillis = budgetMillis;
+            this.workerThreads = workerThreads;
+            this.maxQueuedRequests = maxQueuedRequests;
+            this.locationLimit = locationLimit;
+            this.locationReserved = locationReserved;
+            this.sendLimit = sendLimit;
+            this.sendReserved = sendReserved;
+            this.rateLimit = rateLimit;
+        }
+
+        public long getBudgetMillis() {
+            return budgetMillis;
+        }
+    }
+
+    /** Location requests found in one broadcast, ready to be submitted. */
+    public static final class Batch {
+        final ResponderConfig config;
+        final List<SmsMessageAssembler.InboundMessage> requests;
+        // What each request asks for, by index
+        final List<SmsCommand> commands;
+        final RequestPriority priority;
+        final long receivedNanos;
+
+        Batch(ResponderConfig config, List<SmsMessageAssembler.InboundMessage> requests, List<SmsCommand> commands,
+              RequestPriority priority, long receivedNanos) {
+            this.config = config;
+            this.requests = requests;
+            this.commands = commands;
+            this.priority = priority;
+            this.receivedNanos = receivedNanos;
+        }
+
+        public List<SmsMessageAssembler.InboundMessage> getRequests() {
+            return Collections.unmodifiableList(requests);
+        }
+
+        public RequestPriority getPriority() {
+            return priority;
+        }
+    }
+
+    /** Carries out one kind of command. Runs on a pipeline worker. */
+    private interface CommandHandler {
+        void handle(ResponderConfig config, String sender, SmsCommand command, RequestPriority priority,
+                    long receivedNanos, Deadline deadline) throws InterruptedException;
+    }
+
+    private static final Logger LOG = Logger.get("SmsAutoResponse");
+
+    private final Limits limits;
+    private final SmsResponsePipeline pipeline;
+    private final StageLimiter stages;
+    private final SenderRateLimiter rateLimiter;
+    private final LocationResolver resolver;
+    private final ResponseRenderer renderer;
+    private final SmsCodec codec;
+    private final OutboundSmsQueue outbound;
+    private final ResponderMetrics metrics;
+    private final FlightRecorder recorder;
+    private final AuditLog audit;
+    private final Tracking tracking;
+    private final Notifier notifier;
+    // Indexed by SmsCommand.Verb ordinal
+    private final CommandHandler[] commandTable;
+
+    public SmsResponder(Limits limits, LocationResolver resolver, ResponseRenderer renderer, SmsCodec codec,
+                        OutboundSmsQueue outbound, ResponderMetrics metrics, FlightRecorder recorder,
+                        AuditLog audit, Tracking tracking, Notifier notifier) {
+        this.limits = limits;
+        this.resolver = resolver;
+        this.renderer = renderer;
+        this.codec = codec;
+        this.outbound = outbound;
+        this.metrics = metrics;
+        this.recorder = recorder;
+        this.audit = audit;
+        this.tracking = tracking;
+        this.notifier = notifier;
+        this.commandTable = new CommandHandler[SmsCommand.Verb.values().length];
+        commandTable[SmsCommand.Verb.LOC.ordinal()] = this::handleLocate;
+        commandTable[SmsCommand.Verb.TRACK.ordinal()] = this::handleTracking;
+        commandTable[SmsCommand.Verb.STOP.ordinal()] = this::handleTracking;
+        commandTable[SmsCommand.Verb.STATUS.ordinal()] = this::handleStatus;
+        this.stages = new StageLimiter(limits.locationLimit, limits.locationReserved,
+                limits.sendLimit, limits.sendReserved);
+        // Repeated requests from one sender get one reply, and a contact can't drain the SMS quota
+        this.rateLimiter = new SenderRateLimiter(limits.rateLimit, System::currentTimeMillis);
+        this.pipeline = new SmsResponsePipeline(limits.workerThreads, limits.maxQueuedRequests,
+                limits.budgetMillis, new SmsResponsePipeline.Listener() {
+                    @Override
+                    public void onShed(RequestPriority priority) {
+                        metrics.increment(ResponderMetrics.Counter.SHED);
+                        recorder.record(FlightRecorder.Event.SHED, priority.ordinal(), 0);
+                        LOG.w("Too many pending SMS, shedding {} request", priority);
+                    }
+
+                    @Override
+                    public void onDeadlineExceeded() {
+                        metrics.increment(ResponderMetrics.Counter.DEADLINE_EXCEEDED);
+                        recorder.record(FlightRecorder.Event.DEADLINE_EXCEEDED);
+                        LOG.w("Auto-response did not finish within {}ms", limits.budgetMillis);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        metrics.increment(ResponderMetrics.Counter.ERRORS);
+                        recorder.record(FlightRecorder.Event.ERROR);
+                        LOG.e("Auto-response failed", e);
+                    }
+                });
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Decodes the broadcast's PDUs and picks out the location requests. Cheap enough for the
+     * main thread, and decides whether there is any work at all and how urgently it has to be
+     * served. Returns null when there is nothing to answer.
+     *
+     * @param pdus the raw PDUs (byte arrays) of one broadcast
+     */
+    public Batch prepare(ResponderConfig config, Object[] pdus, String format, long receivedNanos) {
+        metrics.increment(ResponderMetrics.Counter.BROADCASTS);
+        if (!config.isEnabled()) {
+            metrics.increment(ResponderMetrics.Counter.DISABLED);
+            recorder.record(FlightRecorder.Event.DISABLED);
+            LOG.d("Auto-response is disabled, returning");
+            return null;
+        }
+        if (!config.isSmsPermitted()) {
+            LOG.e("SMS permissions not granted");
+            return null;
+        }
+        if (!config.isLocationPermitted()) {
+            LOG.e("Location permissions not granted");
+            return null;
+        }
+
+        List<SmsMessageAssembler.InboundMessage> requests = new ArrayList<>();
+        List<SmsCommand> commands = new ArrayList<>();
+        locationRequests(config, pdus, format, requests, commands);
+        if (requests.isEmpty()) {
+            return null;
+        }
+        RequestPriority priority = RequestPriority.UNKNOWN;
+        for (int i = 0; i < requests.size(); i++) {
+            SmsMessageAssembler.InboundMessage message = requests.get(i);
+            RequestPriority messagePriority = config.priorityOf(message.getSender(), message.getBody());
+            if (messagePriority.outranks(priority)) {
+                priority = messagePriority;
+            }
+            audit.record(AuditLog.Type.REQUEST, message.getSender(), 0,
+                    messagePriority + ", " + commands.get(i) + ", " + message.getPartCount() + " part(s)");
+        }
+        return new Batch(config, requests, commands, priority, receivedNanos);
+    }
+
+    /**
+     * Answers the batch on a worker thread. {@code onComplete} runs exactly once: when the
+     * replies are queued, when the broadcast budget runs out, or right away if the batch is shed.
+     */
+    public void submit(Batch batch, Runnable onComplete) {
+        final long submittedNanos = System.nanoTime();
+        final AtomicBoolean started = new AtomicBoolean();
+        pipeline.submit(batch.priority, deadline -> {
+            started.set(true);
+            metrics.recordSince(ResponderMetrics.Stage.QUEUE_WAIT, submittedNanos);
+            process(batch, deadline);
+        }, () -> {
+            // Shed, or out of time while still queued
+            if (started.compareAndSet(false, true)) {
+                for (SmsMessageAssembler.InboundMessage message : batch.requests) {
+                    audit.record(AuditLog.Type.DECISION, message.getSender(), 0, "UNSERVED");
+                }
+            }
+            onComplete.run();
+        });
+    }
+
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
+    private void locationRequests(ResponderConfig config, Object[] pdus, String format,
+                                  List<SmsMessageAssembler.InboundMessage> requests, List<SmsCommand> commands) {
+        if (LOG.isDebugEnabled()) {
+            LOG.d("Processing {} SMS PDUs", pdus.length);
+        }
+
+        long parseStart = System.nanoTime();
+        List<SmsPdu> parts = new ArrayList<>(pdus.length);
+        for (Object pdu : pdus) {
+            SmsPdu part = decodePdu((byte[]) pdu, format);
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+
+        // One logical message per sender, so a trigger split across parts is still
+        // seen and a trigger repeated in several parts gets a single reply
+        List<SmsMessageAssembler.InboundMessage> messages = SmsMessageAssembler.assemble(parts);
+        metrics.recordSince(ResponderMetrics.Stage.PARSE, parseStart);
+
+        long matchStart = System.nanoTime();
+        for (SmsMessageAssembler.InboundMessage message : messages) {
+            // The body stays out of the logs and the recorder
+            recorder.record(FlightRecorder.Event.SMS_RECEIVED, message.getPartCount(), message.getSender());
+            LOG.d("SMS from {*}", message.getSender());
+
+            SmsCommand command = commandOf(config, message);
+            if (command.isCommand()) {
+                requests.add(message);
+                commands.add(command);
+            } else {
+                LOG.d("No trigger phrase found in message");
+            }
+        }
+        metrics.recordSince(ResponderMetrics.Stage.MATCH, matchStart);
+        metrics.add(ResponderMetrics.Counter.MATCHES, requests.size());
+    }
+
+    /**
+     * What the message asks for: a command, or the command a trigger phrase stands for. With a
+     * PIN configured, phrases have to start with it just like commands, and everything but a
+     * STOP without it is a failed attempt: audited and charged to the sender's rate limit.
+     */
+    private SmsCommand commandOf(ResponderConfig config, SmsMessageAssembler.InboundMessage message) {
+        String sender = message.getSender();
+        SmsCommand command = config.commandOf(message.getBody());
+        if (command.isCommand()) {
+            if (command.getVerb() != SmsCommand.Verb.STOP && isLockedOut(config, sender)) {
+                return reject(config, sender, SmsCommand.BAD_PIN, "LOCKED_OUT");
+            }
+            metrics.increment(ResponderMetrics.Counter.COMMANDS);
+            recorder.record(FlightRecorder.Event.COMMAND, command.getVerb().ordinal(), sender);
+            LOG.d("Command {} from {*}", command, sender);
+            return command;
+        }
+        if (command.isRejected()) {
+            return reject(config, sender, command, command.getOutcome().name());
+        }
+
+        SmsCommand phrase = phraseCommandOf(config, message);
+        if (phrase == SmsCommand.NOT_A_COMMAND || phrase == SmsCommand.STOP) {
+            return phrase;
+        }
+        if (!config.carriesPin(message.getBody())) {
+            return reject(config, sender, SmsCommand.BAD_PIN, SmsCommand.Outcome.BAD_PIN.name());
+        }
+        return isLockedOut(config, sender) ? reject(config, sender, SmsCommand.BAD_PIN, "LOCKED_OUT") : phrase;
+    }
+
+    private SmsCommand phraseCommandOf(ResponderConfig config, SmsMessageAssembler.InboundMessage message) {
+        if (containsTriggerPhrase(config.getTriggerMatcher(), message)) {
+            LOG.d("Trigger phrase detected! Processing location request...");
+            return SmsCommand.LOC;
+        }
+        switch (config.trackingCommandOf(message.getBody())) {
+            case START:
+                // An untrusted "start tracking" is still a location request and gets one reply
+                LOG.d("Tracking phrase detected");
+                return config.isTrackingAllowed(message.getSender()) ? SmsCommand.TRACK : SmsCommand.LOC;
+            case STOP:
+                LOG.d("Tracking phrase detected");
+                return SmsCommand.STOP;
+            default:
+                return SmsCommand.NOT_A_COMMAND;
+        }
+    }
+
+    private boolean isLockedOut(ResponderConfig config, String sender) {
+        return config.hasCommandPin() && rateLimiter.isLockedOut(config.senderKey(sender));
+    }
+
+    /**
+     * Drops a rejected command without a reply. Malformed ones aren't even audited, so a flood
+     * of junk stays cheap; a missing or wrong PIN is, and costs the sender a token.
+     */
+    private SmsCommand reject(ResponderConfig config, String sender, SmsCommand command, String detail) {
+        metrics.increment(ResponderMetrics.Counter.COMMANDS_REJECTED);
+        recorder.record(FlightRecorder.Event.COMMAND_REJECTED, command.getOutcome().ordinal(), sender);
+        LOG.d("Rejected command from {*}: {}", sender, detail);
+        if (command.getOutcome() == SmsCommand.Outcome.BAD_PIN) {
+            rateLimiter.charge(config.senderKey(sender));
+            audit.record(AuditLog.Type.DECISION, sender, 0, detail);
+        }
+        return command;
+    }
+
+    private SmsPdu decodePdu(byte[] pdu, String format) {
+        // Decode 3GPP PDUs ourselves to get at the concatenation header; anything else
+        // (3GPP2, or a PDU we can't parse) goes through the platform as a single part
+        if (format == null || "3gpp".equals(format)) {
+            try {
+                return SmsPdu.decode(pdu);
+            } catch (IllegalArgumentException e) {
+                LOG.d("Falling back to platform PDU parsing: {}", e.getMessage());
+            }
+        }
+        try {
+            return codec.parseSingle(pdu, format);
+        } catch (Exception e) {
+            LOG.e("Error parsing SMS: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean containsTriggerPhrase(FuzzyPhraseMatcher matcher, SmsMessageAssembler.InboundMessage message) {
+        if (message.getBody() == null) return false;
+
+        int match = matcher.find(message.getBody());
+        if (match != FuzzyPhraseMatcher.NO_MATCH) {
+            recorder.record(FlightRecorder.Event.TRIGGER_MATCHED, match, message.getSender());
+            LOG.d("Found trigger phrase: {}", matcher.phrase(match));
+            return true;
+        }
+        return false;
+    }
+
+    private void process(Batch batch, Deadline deadline) {
+        ResponderConfig config = batch.config;
+        for (int i = 0; i < batch.requests.size(); i++) {
+            if (deadline.isExpired()) {
+                LOG.w("Broadcast budget used up, skipping remaining messages");
+                for (SmsMessageAssembler.InboundMessage skipped : batch.requests.subList(i, batch.requests.size())) {
+                    audit.record(AuditLog.Type.DECISION, skipped.getSender(), 0, "PAST_DEADLINE");
+                }
+                break;
+            }
+            SmsMessageAssembler.InboundMessage message = batch.requests.get(i);
+            String sender = message.getSender();
+
+            SmsCommand command = batch.commands.get(i);
+            try {
+                commandTable[command.getVerb().ordinal()].handle(config, sender, command,
+                        config.priorityOf(sender, message.getBody()), batch.receivedNanos, deadline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                metrics.increment(ResponderMetrics.Counter.ERRORS);
+                recorder.record(FlightRecorder.Event.ERROR);
+                LOG.e("Error handling SMS", e);
+            }
+        }
+    }
+
+    private void handleLocate(ResponderConfig config, String sender, SmsCommand command, RequestPriority priority,
+                              long receivedNanos, Deadline deadline) throws InterruptedException {
+        if (!admit(config, sender)) return;
+        AcquisitionPolicy policy = config.getAcquisitionPolicy();
+        if (command.getAccuracyMeters() > 0) {
+            // "LOC ACC<20": wait as long as the accuracy-first preset would for a fix that good
+            policy = new AcquisitionPolicy("acc<" + command.getAccuracyMeters(), command.getAccuracyMeters(),
+                    Math.max(policy.getFreshTimeoutMillis(), AcquisitionPolicy.ACCURACY_FIRST.getFreshTimeoutMillis()));
+        }
+        handleLocationRequest(config, policy, sender, priority, receivedNanos, deadline);
+    }
+
+    private void handleTracking(ResponderConfig config, String sender, SmsCommand command, RequestPriority priority,
+                                long receivedNanos, Deadline deadline) {
+        long policyStart = System.nanoTime();
+        boolean allowed = config.isTrackingAllowed(sender);
+        metrics.recordSince(ResponderMetrics.Stage.POLICY, policyStart);
+        if (!allowed) {
+            metrics.increment(ResponderMetrics.Counter.NOT_ALLOWED);
+            recorder.record(FlightRecorder.Event.NOT_ALLOWED, 0, sender);
+            audit.record(AuditLog.Type.DECISION, sender, 0, "NOT_ALLOWED");
+            LOG.d("Sender not allowed to control tracking: {*}", sender);
+            return;
+        }
+        boolean start = command.getVerb() == SmsCommand.Verb.TRACK;
+        audit.record(AuditLog.Type.DECISION, sender, 0, start ? "TRACKING_START" : "TRACKING_STOP");
+        LOG.d("Tracking {} for {*}", command, sender);
+        if (!start) {
+            tracking.stop(sender);
+        } else if (!tracking.start(sender, command.getDurationMillis())) {
+            audit.record(AuditLog.Type.DECISION, sender, 0, "TRACKING_UNAVAILABLE");
+            LOG.w("Tracking unavailable for {*}", sender);
+            sendErrorResponse(sender, "tracking is not available right now");
+        }
+    }
+
+    private void handleStatus(ResponderConfig config, String sender, SmsCommand command, RequestPriority priority,
+                              long receivedNanos, Deadline deadline) {
+        if (!admit(config, sender)) return;
+        long now = System.currentTimeMillis();
+        LocationFix last = resolver.lastKnown(now);
+        StringBuilder text = new StringBuilder(80).append("Status: auto-reply on");
+        if (last != null) {
+            text.append(", last fix ");
+            appendAge(text, last.ageMillis(now)).append(" ago (accuracy ");
+            FixedPoint.append(text, last.getAccuracyMeters(), 0).append("m)");
+        } else {
+            text.append(", no fix yet");
+        }
+        text.append(config.isTrackingAllowed(sender) ? ", you can TRACK" : "");
+        try {
+            long id = outbound.enqueue(sender, codec.divide(text.toString()));
+            metrics.increment(ResponderMetrics.Counter.REPLIES_QUEUED);
+            recorder.record(FlightRecorder.Event.REPLY_QUEUED, 1, id);
+            audit.replyQueued(sender, id, "status reply");
+            notifier.onReplyQueued(sender);
+        } catch (Exception e) {
+            metrics.increment(ResponderMetrics.Counter.ERRORS);
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Failed to send status SMS", e);
+        }
+    }
+
+    private static StringBuilder appendAge(StringBuilder text, long ageMillis) {
+        long seconds = Math.max(0, ageMillis / 1000);
+        if (seconds < 60) return text.append(seconds).append(" s");
+        if (seconds < 3600) return text.append(seconds / 60).append(" min");
+        return text.append(seconds / 3600).append(" h");
+    }
+
+    /** The allow-list and the per-sender rate limit, as every reply goes through them. */
+    private boolean admit(ResponderConfig config, String sender) {
+        long policyStart = System.nanoTime();
+        if (!config.isSenderAllowed(sender)) {
+            metrics.recordSince(ResponderMetrics.Stage.POLICY, policyStart);
+            metrics.increment(ResponderMetrics.Counter.NOT_ALLOWED);
+            recorder.record(FlightRecorder.Event.NOT_ALLOWED, 0, sender);
+            audit.record(AuditLog.Type.DECISION, sender, 0, "NOT_ALLOWED");
+            LOG.d("Sender not allowed: {*}", sender);
+            return false;
+        }
+        SenderRateLimiter.Decision decision = rateLimiter.tryAcquire(config.senderKey(sender));
+        metrics.recordSince(ResponderMetrics.Stage.POLICY, policyStart);
+        audit.record(AuditLog.Type.DECISION, sender, 0, decision.name());
+        if (decision == SenderRateLimiter.Decision.ALLOW) {
+            return true;
+        }
+        boolean coalesced = decision == SenderRateLimiter.Decision.COALESCED;
+        metrics.increment(coalesced
+                ? ResponderMetrics.Counter.COALESCED
+                : ResponderMetrics.Counter.RATE_LIMITED);
+        recorder.record(coalesced
+                ? FlightRecorder.Event.COALESCED
+                : FlightRecorder.Event.RATE_LIMITED, 0, sender);
+        LOG.d("Not replying to {*}: {}", sender, decision);
+        return false;
+    }
+
+    private void handleLocationRequest(ResponderConfig config, AcquisitionPolicy policy, String sender,
+                                       RequestPriority priority, long receivedNanos, Deadline deadline)
+            throws InterruptedException {
+        LOG.d("Handling {} location request for sender: {*}", priority, sender);
+
+        LocationResolver.Resolution resolution;
+        String error = null;
+        long now = System.currentTimeMillis();
+        // Waiting on a fix someone else's request already asked for costs no extra lookup
+        boolean permit = !resolver.isShared(policy, now);
+        if (permit && !stages.acquire(StageLimiter.Stage.LOCATION, priority, deadline)) {
+            metrics.increment(ResponderMetrics.Counter.SHED);
+            recorder.record(FlightRecorder.Event.SHED, priority.ordinal(), 0);
+            audit.record(AuditLog.Type.DECISION, sender, 0, "SHED");
+            LOG.w("Location stage full, shedding request from {*}", sender);
+            return;
+        }
+        long locationStart = System.nanoTime();
+        try {
+            // Cached fix if good enough, otherwise a shared fresh request bounded by the policy
+            // and the broadcast deadline. Runs on a pipeline worker, so blocking here is fine.
+            resolution = resolver.resolve(policy, deadline, now);
+            if (resolution == null) {
+                metrics.increment(ResponderMetrics.Counter.NO_FIX);
+                recorder.record(FlightRecorder.Event.NO_FIX, 0, (System.nanoTime() - locationStart) / 1_000_000);
+                LOG.d("No location fix before deadline");
+                error = "Unable to get current location. Please make sure GPS is enabled.";
+            }
+        } catch (SecurityException e) {
+            metrics.increment(ResponderMetrics.Counter.ERRORS);
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Security exception when accessing location: {}", e.getMessage());
+            resolution = null;
+            error = "Location access denied";
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            metrics.increment(ResponderMetrics.Counter.ERRORS);
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Failed to get location", e);
+            resolution = null;
+            error = "Failed to get location: " + e.getMessage();
+        } finally {
+            if (permit) {
+                stages.release(StageLimiter.Stage.LOCATION);
+            }
+            metrics.recordSince(ResponderMetrics.Stage.LOCATION, locationStart);
+        }
+
+        if (!stages.acquire(StageLimiter.Stage.SEND, priority, deadline)) {
+            metrics.increment(ResponderMetrics.Counter.SHED);
+            recorder.record(FlightRecorder.Event.SHED, priority.ordinal(), 0);
+            audit.record(AuditLog.Type.DECISION, sender, 0, "SHED");
+            LOG.w("Send stage full, shedding reply to {*}", sender);
+            return;
+        }
+        try {
+            if (resolution != null) {
+                LocationFix fix = resolution.getFix();
+                recorder.record(FlightRecorder.Event.LOCATION_RESOLVED, resolution.getPath().ordinal(),
+                        fix.ageMillis(now));
+                StringBuilder detail = new StringBuilder(32).append(resolution.getPath()).append(", ±");
+                FixedPoint.append(detail, fix.getAccuracyMeters(), 0).append(" m, ");
+                String fixDetail = detail.append(fix.ageMillis(now) / 1000).append(" s old").toString();
+                audit.record(AuditLog.Type.FIX, sender, 0, fixDetail);
+                LOG.d("Location served ({}): {}", policy.getName(), fixDetail);
+                sendLocationResponse(config, sender, fix, resolution.getPath(), receivedNanos);
+            } else {
+                audit.record(AuditLog.Type.FIX, sender, 0, "none: " + error);
+                sendErrorResponse(sender, error);
+            }
+        } finally {
+            stages.release(StageLimiter.Stage.SEND);
+        }
+    }
+
+    private void sendLocationResponse(ResponderConfig config, String sender, LocationFix location,
+                                      LocationResolver.Path path, long receivedNanos) {
+        LOG.d("Sending location response to: {*}", sender);
+
+        try {
+            // Richest reply that fits the segment budget, rendered and split once per fix;
+            // a burst answered from the same fix reuses it
+            long renderStart = System.nanoTime();
+            SmsPayloadEncoder plan = config.replyPlan(path == LocationResolver.Path.DEGRADED);
+            ResponseRenderer.Rendered response = renderer.render(plan, location, System.currentTimeMillis());
+            metrics.recordSince(ResponderMetrics.Stage.RENDER, renderStart);
+            if (LOG.isDebugEnabled()) {
+                LOG.d("Reply is {} {} segment(s)", response.getCount().getSegments(), response.getCount().getEncoding());
+            }
+
+            // Journaled and retried until the radio accepts every part. Sent and delivered
+            // latencies are measured from when the request arrived.
+            long submitStart = System.nanoTime();
+            long receivedAtMillis = System.currentTimeMillis() - (submitStart - receivedNanos) / 1_000_000;
+            long id = outbound.enqueue(sender, response.getParts(), receivedAtMillis);
+            metrics.recordSince(ResponderMetrics.Stage.SEND_SUBMIT, submitStart);
+            metrics.recordSince(ResponderMetrics.Stage.RECEIVE_TO_SEND, receivedNanos);
+            metrics.increment(ResponderMetrics.Counter.REPLIES_QUEUED);
+            recorder.record(FlightRecorder.Event.REPLY_QUEUED, response.getCount().getSegments(), id);
+            audit.replyQueued(sender, id, response.getCount().getSegments() + " part(s), "
+                    + response.getCount().getEncoding());
+
+            if (LOG.isDebugEnabled()) {
+                LOG.d("Location SMS {} queued for: {*}", id, sender);
+            }
+            notifier.onReplyQueued(sender);
+        } catch (Exception e) {
+            metrics.increment(ResponderMetrics.Counter.ERRORS);
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Failed to send location SMS", e);
+            sendErrorResponse(sender, "Failed to send location");
+        }
+    }
+
+    private void sendErrorResponse(String sender, String error) {
+        LOG.d("Sending error response to: {*}, error: {}", sender, error);
+
+        try {
+            String response = "❌ Unable to share location: " + error;
+            long id = outbound.enqueue(sender, codec.divide(response));
+            recorder.record(FlightRecorder.Event.REPLY_QUEUED, 0, id);
+            audit.replyQueued(sender, id, "error reply");
+            if (LOG.isDebugEnabled()) {
+                LOG.d("Error SMS {} queued", id);
+            }
+        } catch (Exception e) {
+            recorder.record(FlightRecorder.Event.ERROR);
+            LOG.e("Failed to send error SMS", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs auto-response work off the main thread on a small bounded pool.
+ *
+ * Every submitted job gets a deadline, and its completion callback (the broadcast's
+ * PendingResult.finish) runs exactly once: when the job returns, when the deadline passes,
+ * or immediately if the job is shed.
+ *
+ * Queued jobs are served by {@link RequestPriority}, oldest first within a priority. When the
+ * queue is full, a new job displaces the newest queued job of a lower priority, or is shed
+ * itself if there is none, so a flood of unknown senders can't keep trusted ones waiting.
+ */
+public final class SmsResponsePipeline {
+
+    /** Runs on a worker thread and should stop early once the deadline has expired. */
+    public interface Job {
+        void run(Deadline deadline) throws Exception;
+    }
+
+    public interface Listener {
+        void onShed(RequestPriority priority);
+        void onDeadlineExceeded();
+        void onFailed(Exception e);
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService watchdog;
+    private final int queueCapacity;
+    private final long budgetMillis;
+    private final Listener listener;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray admitted = new AtomicLongArray(RequestPriority.values().length);
+    private final AtomicLongArray shed = new AtomicLongArray(RequestPriority.values().length);
+
+    public SmsResponsePipeline(int workerCount, int queueCapacity, long budgetMillis, Listener listener) {
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), namedThreads("sms-responder"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(namedThreads("sms-responder-watchdog"));
+        this.queueCapacity = queueCapacity;
+        this.budgetMillis = budgetMillis;
+        this.listener = listener;
+    }
+
+    public void submit(Job job, Runnable onComplete) {
+        submit(RequestPriority.UNKNOWN, job, onComplete);
+    }
+
+    public void submit(RequestPriority priority, Job job, Runnable onComplete) {
+        Deadline deadline = Deadline.after(budgetMillis, TimeUnit.MILLISECONDS);
+        Completion completion = new Completion(onComplete);
+
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            if (completion.complete()) {
+                listener.onDeadlineExceeded();
+            }
+        }, budgetMillis, TimeUnit.MILLISECONDS);
+
+        Task task = new Task(priority, sequence.incrementAndGet(), completion, timeout, () -> {
+            try {
+                if (!deadline.isExpired()) {
+                    job.run(deadline);
+                }
+            } catch (Exception e) {
+                listener.onFailed(e);
+            } finally {
+                timeout.cancel(false);
+                completion.complete();
+            }
+        });
+
+        Task displaced = null;
+        synchronized (this) {
+            if (workers.getQueue().size() >= queueCapacity) {
+                Task worst = worstQueued();
+                if (worst != null && priority.outranks(worst.priority) && workers.getQueue().remove(worst)) {
+                    displaced = worst;
+                } else {
+                    shed(task);
+                    return;
+                }
+            }
+            try {
+                workers.execute(task);
+                admitted.incrementAndGet(priority.ordinal());
+            } catch (RejectedExecutionException e) {
+                shed(task);
+                return;
+            }
+        }
+        if (displaced != null) {
+            shed(displaced);
+        }
+    }
+
+    private Task worstQueued() {
+        Task worst = null;
+        for (Runnable queued : workers.getQueue()) {
+            Task task = (Task) queued;
+            if (worst == null || task.compareTo(worst) > 0) {
+                worst = task;
+            }
+        }
+        return worst;
+    }
+
+    private void shed(Task task) {
+        task.timeout.cancel(false);
+        task.completion.complete();
+        shed.incrementAndGet(task.priority.ordinal());
+        listener.onShed(task.priority);
+    }
+
+    public int queuedJobs() {
+        return workers.getQueue().size();
+    }
+
+    public long admittedCount(RequestPriority priority) {
+        return admitted.get(priority.ordinal());
+    }
+
+    public long shedCount(RequestPriority priority) {
+        return shed.get(priority.ordinal());
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private static final class Task implements Runnable, Comparable<Task> {
+        final RequestPriority priority;
+        final long sequence;
+        final Completion completion;
+        final ScheduledFuture<?> timeout;
+        private final Runnable body;
+
+        Task(RequestPriority priority, long sequence, Completion completion, ScheduledFuture<?> timeout,
+             Runnable body) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.completion = completion;
+            this.timeout = timeout;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Completion {
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final Runnable onComplete;
+
+        Completion(Runnable onComplete) {
+            this.onComplete = onComplete;
+        }
+
+        boolean complete() {
+            if (done.compareAndSet(false, true)) {
+                onComplete.run();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limits for the location and send stages of a reply.
+ *
+ * Part of each limit is reserved for emergency and trusted requests: unknown senders only get
+ * the unreserved permits and wait at most {@link #UNRESERVED_WAIT_MILLIS} for one, while
+ * priority requests wait for a permit until their deadline. A flood from unknown numbers
+ * therefore can't occupy the workers that trusted contacts need, and two strangers asking at
+ * once are both answered.
+ */
+public final class StageLimiter {
+
+    public enum Stage { LOCATION, SEND }
+
+    static final long UNRESERVED_WAIT_MILLIS = 1000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final int[] limits;
+    private final int[] reserved;
+    private final int[] inFlight = new int[Stage.values().length];
+    private final AtomicLongArray shed = new AtomicLongArray(Stage.values().length);
+
+    public StageLimiter(int locationLimit, int locationReserved, int sendLimit, int sendReserved) {
+        if (locationReserved >= locationLimit || sendReserved >= sendLimit || locationReserved < 0 || sendReserved < 0) {
+            throw new IllegalArgumentException("Each stage needs at least one unreserved permit");
+        }
+        this.limits = new int[] {locationLimit, sendLimit};
+        this.reserved = new int[] {locationReserved, sendReserved};
+    }
+
+    /**
+     * Takes a permit for {@code stage}, or returns false (and counts the request as shed) if
+     * none is available for this priority before the deadline. Pair with {@link #release}.
+     */
+    public boolean acquire(Stage stage, RequestPriority priority, Deadline deadline) throws InterruptedException {
+        int s = stage.ordinal();
+        lock.lock();
+        try {
+            int limit = priority.isReserved() ? limits[s] : limits[s] - reserved[s];
+            Deadline wait = priority.isReserved() || deadline.remainingMillis() <= UNRESERVED_WAIT_MILLIS
+                    ? deadline : Deadline.after(UNRESERVED_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            while (inFlight[s] >= limit) {
+                long remaining = wait.remainingMillis();
+                if (remaining <= 0) break;
+                released.await(remaining, TimeUnit.MILLISECONDS);
+            }
+            if (inFlight[s] < limit) {
+                inFlight[s]++;
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        shed.incrementAndGet(s);
+        return false;
+    }
+
+    public void release(Stage stage) {
+        lock.lock();
+        try {
+            inFlight[stage.ordinal()]--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight(Stage stage) {
+        lock.lock();
+        try {
+            return inFlight[stage.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long shedCount(Stage stage) {
+        return shed.get(stage.ordinal());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Milestones of the current process's start, measured from when the process was forked.
+ *
+ * Each phase is recorded once, the first time it is reached; later marks are ignored, so
+ * the calls can stay on paths that run for every broadcast. The first entry point marked
+ * tells what started the process: when it is the SMS receiver, the time to
+ * {@link Phase#REPLY_QUEUED} is the cold-start time to first reply. Marking is lock-free and
+ * allocation-free.
+ */
+public final class StartupTrace {
+
+    public enum Phase {
+        /** The SMS receiver's onReceive was entered. */
+        RECEIVER(true),
+        /** The config snapshot was read. */
+        CONFIG(false),
+        /** The responder and what it needs to decide were ready. */
+        RESPONDER(false),
+        /** A broadcast was decoded and matched a request. */
+        MATCHED(false),
+        /** A reply was handed to the outbound queue. */
+        REPLY_QUEUED(false),
+        /** MainActivity.onCreate was entered. */
+        ACTIVITY(true),
+        /** MainActivity drew its first frame. */
+        FIRST_FRAME(false),
+        /** Another component was created first, e.g. the service being restarted. */
+        OTHER(true);
+
+        final boolean entryPoint;
+
+        Phase(boolean entryPoint) {
+            this.entryPoint = entryPoint;
+        }
+    }
+
+    private static final StartupTrace INSTANCE = new StartupTrace(System::nanoTime);
+
+    private final LongSupplier clock;
+    // System.nanoTime at process start; the class's first use until setProcessStart is called
+    private volatile long originNanos;
+    // Nanos since origin, plus one so that 0 means not reached
+    private final AtomicLongArray marks = new AtomicLongArray(Phase.values().length);
+    private final AtomicReference<Phase> entryPoint = new AtomicReference<>();
+
+    StartupTrace(LongSupplier clock) {
+        this.clock = clock;
+        this.originNanos = clock.getAsLong();
+    }
+
+    public static StartupTrace getInstance() {
+        return INSTANCE;
+    }
+
+    /** Sets when the process started, as a System.nanoTime value; call before the first mark. */
+    public void setProcessStart(long nanos) {
+        originNanos = nanos;
+    }
+
+    /** Records {@code phase} unless it was reached before. Returns true if this call recorded it. */
+    public boolean mark(Phase phase) {
+        long since = Math.max(0, clock.getAsLong() - originNanos) + 1;
+        if (!marks.compareAndSet(phase.ordinal(), 0, since)) {
+            return false;
+        }
+        if (phase.entryPoint) {
+            entryPoint.compareAndSet(null, phase);
+        }
+        return true;
+    }
+
+    /** Nanos from process start to {@code phase}, or -1 if it was not reached. */
+    public long sinceStartNanos(Phase phase) {
+        return marks.get(phase.ordinal()) - 1;
+    }
+
+    /** The entry point marked first, or null if none was. */
+    public Phase getEntryPoint() {
+        return entryPoint.get();
+    }
+
+    /** Whether an incoming SMS started this process. */
+    public boolean isReceiverStart() {
+        return entryPoint.get() == Phase.RECEIVER;
+    }
+
+    /** E.g. "started by RECEIVER: RECEIVER +212 ms, CONFIG +230 ms, ...". */
+    public String summary() {
+        Phase entry = entryPoint.get();
+        StringBuilder sb = new StringBuilder(160).append("started by ").append(entry != null ? entry : "unknown");
+        char separator = ':';
+        for (Phase phase : Phase.values()) {
+            long nanos = sinceStartNanos(phase);
+            if (nanos < 0) continue;
+            sb.append(separator).append(' ').append(phase).append(" +")
+                    .append(String.format(Locale.US, "%.1f", nanos / 1e6)).append(" ms");
+            separator = ',';
+        }
+        return sb.toString();
+    }
+
+    void reset() {
+        for (int i = 0; i < marks.length(); i++) {
+            marks.set(i, 0);
+        }
+        entryPoint.set(null);
+        originNanos = clock.getAsLong();
+    }
+}
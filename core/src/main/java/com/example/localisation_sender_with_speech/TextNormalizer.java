@@ -0,0 +1,88 @@
+package com.example.localisation_sender_with_speech;
+
+import java.text.Normalizer;
+
+/**
+ * Folds free text into the form trigger matching works on: lowercase, accents stripped and
+ * every run of whitespace, punctuation or symbols collapsed into a single space, with none at
+ * either end. "  Où ES-tu ?!" becomes "ou es tu".
+ *
+ * Writes into a caller-supplied buffer and stops when it is full, reading at most twice its
+ * length from the input, so the cost is bounded by the buffer and not by the message.
+ * Does not allocate.
+ */
+final class TextNormalizer {
+
+    static final char SEPARATOR = ' ';
+
+    // Marks a combining character, dropped without splitting the word it belongs to
+    private static final char SKIP = '\uFFFF';
+    private static final char LATIN_FIRST = '\u00C0';
+    private static final char LATIN_LAST = '\u024F';
+    // Folded form of U+00C0..U+024F (Latin-1 Supplement, Latin Extended-A and -B)
+    private static final char[] LATIN = latinTable();
+
+    private TextNormalizer() {
+    }
+
+    /** Normalizes {@code text} into {@code out} and returns the number of chars written. */
+    static int normalize(CharSequence text, char[] out) {
+        int length = 0;
+        boolean separate = false;
+        int end = (int) Math.min(text.length(), 2L * out.length);
+        for (int i = 0; i < end; i++) {
+            char c = fold(text.charAt(i));
+            if (c == SKIP) continue;
+            if (c == SEPARATOR) {
+                separate = length > 0;
+                continue;
+            }
+            if (separate) {
+                if (length + 1 >= out.length) break;
+                out[length++] = SEPARATOR;
+                separate = false;
+            }
+            if (length >= out.length) break;
+            out[length++] = c;
+        }
+        return length;
+    }
+
+    static String normalize(CharSequence text) {
+        char[] out = new char[text.length()];
+        return new String(out, 0, normalize(text, out));
+    }
+
+    static char fold(char c) {
+        if (c < 128) {
+            if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') return c;
+            if (c >= 'A' && c <= 'Z') return (char) (c + ('a' - 'A'));
+            return SEPARATOR;
+        }
+        if (c >= LATIN_FIRST && c <= LATIN_LAST) {
+            return LATIN[c - LATIN_FIRST];
+        }
+        if (c >= '\u0300' && c <= '\u036F') {
+            return SKIP;
+        }
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : SEPARATOR;
+    }
+
+    private static char[] latinTable() {
+        char[] table = new char[LATIN_LAST - LATIN_FIRST + 1];
+        for (char c = LATIN_FIRST; c <= LATIN_LAST; c++) {
+            char folded;
+            if (!Character.isLetter(c)) {
+                folded = SEPARATOR;
+            } else {
+                // "É" decomposes to "E" and a combining acute; letters with no decomposition
+                // (ß, æ, ø) keep their lowercase form
+                String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+                char base = Character.toLowerCase(decomposed.charAt(0));
+                folded = base >= 'a' && base <= 'z' ? base : Character.toLowerCase(c);
+            }
+            table[c - LATIN_FIRST] = folded;
+        }
+        return table;
+    }
+}
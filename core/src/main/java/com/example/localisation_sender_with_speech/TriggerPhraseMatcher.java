@@ -0,0 +1,223 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Case-insensitive multi-phrase matcher (Aho-Corasick).
+ *
+ * The automaton is built once from the phrase set and then scans a message in a single
+ * pass without allocating, so the cost per SMS no longer grows with the number of phrases.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class TriggerPhraseMatcher {
+
+    public static final int NO_MATCH = -1;
+
+    private static final int ROOT = 0;
+    private static final int ASCII = 128;
+
+    private final String[] phrases;
+
+    // Children of state s are edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1]), sorted by char
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    private final int[] fail;
+    // Index of a phrase ending at this state, directly or through the failure chain
+    private final int[] output;
+    // Dense transitions out of the root for ASCII input, the common case for the first char
+    private final int[] rootAscii;
+
+    private TriggerPhraseMatcher(String[] phrases, int[] edgeStart, char[] edgeChars,
+                                 int[] edgeTargets, int[] fail, int[] output, int[] rootAscii) {
+        this.phrases = phrases;
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+        this.rootAscii = rootAscii;
+    }
+
+    public static TriggerPhraseMatcher compile(String... phrases) {
+        return compile(Arrays.asList(phrases));
+    }
+
+    public static TriggerPhraseMatcher compile(Collection<String> phrases) {
+        List<String> kept = new ArrayList<>(phrases.size());
+        for (String phrase : phrases) {
+            if (phrase != null && !phrase.isEmpty()) {
+                kept.add(phrase);
+            }
+        }
+
+        // Build the trie with ordered maps first, then flatten it into arrays
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(NO_MATCH);
+
+        for (int i = 0; i < kept.size(); i++) {
+            String phrase = kept.get(i);
+            int state = ROOT;
+            for (int j = 0; j < phrase.length(); j++) {
+                char c = fold(phrase.charAt(j));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(NO_MATCH);
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            int existing = terminal.get(state);
+            if (existing == NO_MATCH) {
+                terminal.set(state, i);
+            }
+        }
+
+        int stateCount = trie.size();
+        int[] edgeStart = new int[stateCount + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += trie.get(s).size();
+        }
+        edgeStart[stateCount] = edgeCount;
+
+        char[] edgeChars = new char[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        for (int s = 0; s < stateCount; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> entry : trie.get(s).entrySet()) {
+                edgeChars[e] = entry.getKey();
+                edgeTargets[e] = entry.getValue();
+                e++;
+            }
+        }
+
+        int[] rootAscii = new int[ASCII];
+        for (int e = edgeStart[ROOT]; e < edgeStart[ROOT + 1]; e++) {
+            if (edgeChars[e] < ASCII) {
+                rootAscii[edgeChars[e]] = edgeTargets[e];
+            }
+        }
+
+        // Breadth-first pass to compute failure links and merged outputs
+        int[] fail = new int[stateCount];
+        int[] output = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            output[s] = terminal.get(s);
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[ROOT]; e < edgeStart[ROOT + 1]; e++) {
+            fail[edgeTargets[e]] = ROOT;
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                char c = edgeChars[e];
+                int child = edgeTargets[e];
+                int f = fail[state];
+                int target;
+                while ((target = step(edgeStart, edgeChars, edgeTargets, f, c)) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = target < 0 ? ROOT : target;
+                if (output[child] == NO_MATCH) {
+                    output[child] = output[fail[child]];
+                }
+                queue.add(child);
+            }
+        }
+
+        return new TriggerPhraseMatcher(kept.toArray(new String[0]), edgeStart, edgeChars, edgeTargets,
+                fail, output, rootAscii);
+    }
+
+    /**
+     * Returns the index of the phrase whose occurrence ends first in {@code text},
+     * or {@link #NO_MATCH}. Does not allocate.
+     */
+    public int find(CharSequence text) {
+        if (text == null) return NO_MATCH;
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next(state, fold(text.charAt(i)));
+            if (output[state] != NO_MATCH) {
+                return output[state];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /** Same as {@link #find(CharSequence)} over a slice of a char array. */
+    public int find(char[] text, int offset, int length) {
+        int state = ROOT;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            state = next(state, fold(text[i]));
+            if (output[state] != NO_MATCH) {
+                return output[state];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    public boolean matches(CharSequence text) {
+        return find(text) != NO_MATCH;
+    }
+
+    public String phrase(int index) {
+        return phrases[index];
+    }
+
+    public int phraseCount() {
+        return phrases.length;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            if (state == ROOT) {
+                if (c < ASCII) return rootAscii[c];
+                int target = step(edgeStart, edgeChars, edgeTargets, ROOT, c);
+                return target < 0 ? ROOT : target;
+            }
+            int target = step(edgeStart, edgeChars, edgeTargets, state, c);
+            if (target >= 0) return target;
+            state = fail[state];
+        }
+    }
+
+    private static int step(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int state, char c) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    static char fold(char c) {
+        if (c < ASCII) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+}
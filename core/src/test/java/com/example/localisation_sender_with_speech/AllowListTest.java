@@ -0,0 +1,81 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AllowListTest {
+
+    @Test
+    public void normalizesNationalAndInternationalForms() {
+        assertEquals("+33612345678", PhoneNumbers.toE164("06 12 34 56 78", "33"));
+        assertEquals("+33612345678", PhoneNumbers.toE164("+33 6 12 34 56 78", "33"));
+        assertEquals("+33612345678", PhoneNumbers.toE164("0033612345678", "33"));
+        assertEquals("+33612345678", PhoneNumbers.toE164("33612345678", "33"));
+        assertEquals("+14155551234", PhoneNumbers.toE164("(415) 555-1234", "1"));
+        assertEquals("+14155551234", PhoneNumbers.toE164("1 415 555 1234", "1"));
+        assertEquals("+447700900123", PhoneNumbers.toE164("07700 900123", "44"));
+        // Foreign numbers keep their own code
+        assertEquals("+447700900123", PhoneNumbers.toE164("+44 7700 900123", "33"));
+    }
+
+    @Test
+    public void leavesShortCodesAndAlphanumericSendersAlone() {
+        assertEquals("36180", PhoneNumbers.toE164("36180", "33"));
+        assertEquals("112", PhoneNumbers.toE164("112", "33"));
+        assertEquals("mybank", PhoneNumbers.toE164("MyBank", "33"));
+        assertEquals("0612345678", PhoneNumbers.toE164("0612345678", null));
+        assertEquals("33", PhoneNumbers.callingCodeForRegion("FR"));
+        assertNull(PhoneNumbers.callingCodeForRegion("zz"));
+    }
+
+    @Test
+    public void matchesSendersInAnyFormat() {
+        AllowList allowList = AllowList.build(Arrays.asList("06 12 34 56 78", "+1 415 555 1234", "36180"),
+                new AddressNormalizer("33"));
+        assertEquals(3, allowList.size());
+        assertTrue(allowList.contains("+33612345678"));
+        assertTrue(allowList.contains("0033 6 12 34 56 78"));
+        assertTrue(allowList.contains("+14155551234"));
+        assertTrue(allowList.contains("36180"));
+        assertFalse(allowList.contains("+33698765432"));
+        assertFalse(allowList.contains(null));
+    }
+
+    @Test
+    public void emptyListContainsNobody() {
+        AllowList allowList = AllowList.build(Collections.<String>emptyList(), new AddressNormalizer("33"));
+        assertTrue(allowList.isEmpty());
+        assertFalse(allowList.contains("+33612345678"));
+    }
+
+    @Test
+    public void memoizesNormalizedAddresses() {
+        AddressNormalizer normalizer = new AddressNormalizer("33");
+        String first = normalizer.normalize("06 12 34 56 78");
+        assertSame(first, normalizer.normalize("06 12 34 56 78"));
+        assertEquals(1, normalizer.cachedCount());
+
+        for (int i = 0; i < AddressNormalizer.MAX_CACHED + 10; i++) {
+            normalizer.normalize("+3361" + (1_000_000 + i));
+        }
+        assertTrue(normalizer.cachedCount() <= AddressNormalizer.MAX_CACHED);
+    }
+
+    @Test
+    public void handlesLargeLists() {
+        List<String> contacts = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            contacts.add("06 " + (10_000_000 + i));
+        }
+        AllowList allowList = AllowList.build(contacts, new AddressNormalizer("33"));
+        assertEquals(5000, allowList.size());
+        assertTrue(allowList.contains("+33610004999"));
+        assertFalse(allowList.contains("+33610005000"));
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AuditLogTest {
+
+    private static final String ALICE = "+33612345678";
+    private static final String BOB = "+447700900123";
+    private static final AuditLog.Config SMALL_SEGMENTS = new AuditLog.Config(TimeUnit.DAYS.toMillis(30), 4096,
+            TimeUnit.DAYS.toMillis(1), 10_000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private AuditLog log;
+
+    @After
+    public void tearDown() throws IOException {
+        if (log != null) log.close();
+    }
+
+    @Test
+    public void pagesNewestFirstAcrossSegments() throws Exception {
+        log = open(SMALL_SEGMENTS);
+        for (int i = 0; i < 1000; i++) {
+            clock.incrementAndGet();
+            log.record(AuditLog.Type.REQUEST, i % 2 == 0 ? ALICE : BOB, 0, "request " + i);
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+        assertEquals(1000, log.size());
+        assertTrue(log.segmentCount() > 5);
+
+        List<AuditLog.Entry> all = new ArrayList<>();
+        long cursor = AuditLog.NEWEST;
+        AuditLog.Page page;
+        do {
+            page = log.page(null, cursor, 70);
+            assertTrue(page.getEntries().size() <= 70);
+            all.addAll(page.getEntries());
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
+
+        assertEquals(1000, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(1000 - i, all.get(i).getSeq());
+            assertEquals("request " + (999 - i), all.get(i).getDetail());
+        }
+    }
+
+    @Test
+    public void senderFilterMatchesAnyAddressFormat() throws Exception {
+        log = open(SMALL_SEGMENTS);
+        for (int i = 0; i < 300; i++) {
+            log.record(AuditLog.Type.DECISION, i % 3 == 0 ? ALICE : BOB, 0, "decision " + i);
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+
+        List<AuditLog.Entry> alice = new ArrayList<>();
+        long cursor = AuditLog.NEWEST;
+        AuditLog.Page page;
+        do {
+            page = log.page("0033 6 12 34 56 78", cursor, 16);
+            alice.addAll(page.getEntries());
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
+
+        assertEquals(100, alice.size());
+        for (int i = 0; i < alice.size(); i++) {
+            assertEquals(ALICE, alice.get(i).getSender());
+            assertEquals("decision " + (297 - 3 * i), alice.get(i).getDetail());
+        }
+        assertTrue(log.page("+15550000000", AuditLog.NEWEST, 10).getEntries().isEmpty());
+    }
+
+    @Test
+    public void nationalNumbersShareTheHistoryOfTheirHomeCode() throws Exception {
+        log = AuditLog.open(folder.getRoot(), SMALL_SEGMENTS, new AddressNormalizer("33"), clock::get);
+        for (int i = 0; i < 300; i++) {
+            log.record(AuditLog.Type.DECISION, i % 2 == 0 ? ALICE : "06 12 34 56 78", 0, "decision " + i);
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+        assertTrue(log.segmentCount() > 2);
+        assertEquals(300, countFrom("0612345678"));
+        assertEquals(300, countFrom(ALICE));
+        log.close();
+
+        // Sealed indexes keyed with another code are rebuilt on opening
+        log = open(SMALL_SEGMENTS);
+        assertEquals(150, countFrom("0612345678"));
+        assertEquals(150, countFrom(ALICE));
+    }
+
+    @Test
+    public void survivesReopenAndTornTail() throws Exception {
+        log = open(SMALL_SEGMENTS);
+        for (int i = 0; i < 200; i++) {
+            log.record(AuditLog.Type.REQUEST, ALICE, 0, "before " + i);
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+        log.close();
+
+        File[] logs = folder.getRoot().listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(logs);
+        try (FileOutputStream out = new FileOutputStream(logs[logs.length - 1], true)) {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        }
+
+        log = open(SMALL_SEGMENTS);
+        assertEquals(200, log.size());
+        log.record(AuditLog.Type.REQUEST, BOB, 0, "after");
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+
+        AuditLog.Page page = log.page(null, AuditLog.NEWEST, 2);
+        assertEquals(201, page.getEntries().get(0).getSeq());
+        assertEquals("after", page.getEntries().get(0).getDetail());
+        assertEquals("before 199", page.getEntries().get(1).getDetail());
+        assertEquals(200, countFrom(ALICE));
+    }
+
+    @Test
+    public void retentionDropsWholeSegmentsPastTheirAge() throws Exception {
+        AuditLog.Config config = new AuditLog.Config(TimeUnit.DAYS.toMillis(3), 1 << 20, TimeUnit.DAYS.toMillis(1), 1000);
+        log = open(config);
+        for (int day = 0; day < 10; day++) {
+            for (int i = 0; i < 10; i++) {
+                log.record(AuditLog.Type.REQUEST, ALICE, 0, "day " + day);
+            }
+            assertTrue(log.sync(5, TimeUnit.SECONDS));
+            clock.addAndGet(TimeUnit.DAYS.toMillis(1));
+        }
+        log.enforceRetention();
+
+        // Only days 7 to 9 are inside the last three days
+        assertEquals(30, log.size());
+        AuditLog.Page page = log.page(null, AuditLog.NEWEST, 1000);
+        assertEquals("day 9", page.getEntries().get(0).getDetail());
+        assertFalse(page.hasMore());
+        for (AuditLog.Entry entry : page.getEntries()) {
+            assertTrue(entry.getDetail(), entry.getTimeMillis() >= clock.get() - TimeUnit.DAYS.toMillis(3));
+        }
+    }
+
+    @Test
+    public void cursorAtTimeStartsAtThatMoment() throws Exception {
+        log = open(SMALL_SEGMENTS);
+        for (int i = 0; i < 500; i++) {
+            clock.set(2_000_000 + i * 1000L);
+            log.record(AuditLog.Type.REQUEST, ALICE, 0, "at " + i);
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+
+        AuditLog.Page page = log.page(null, log.cursorAt(2_000_000 + 123_500), 3);
+        assertEquals("at 123", page.getEntries().get(0).getDetail());
+        assertEquals("at 121", page.getEntries().get(2).getDetail());
+        assertTrue(log.page(null, log.cursorAt(1_000), 3).getEntries().isEmpty());
+        assertEquals("at 499", log.page(null, log.cursorAt(Long.MAX_VALUE - 1), 1).getEntries().get(0).getDetail());
+    }
+
+    @Test
+    public void replyOutcomesLandInTheSendersHistory() throws Exception {
+        log = open(AuditLog.Config.DEFAULT);
+        log.replyQueued(ALICE, 42, "1 part");
+        log.replyOutcome(AuditLog.Type.SENT, 42, "120 ms");
+        log.replyOutcome(AuditLog.Type.DELIVERED, 42, "900 ms");
+        log.replyOutcome(AuditLog.Type.SENT, 7, "manual send, not audited");
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+
+        List<AuditLog.Entry> entries = log.page(ALICE, AuditLog.NEWEST, 10).getEntries();
+        assertEquals(3, entries.size());
+        assertEquals(AuditLog.Type.DELIVERED, entries.get(0).getType());
+        assertEquals(AuditLog.Type.SENT, entries.get(1).getType());
+        assertEquals(AuditLog.Type.QUEUED, entries.get(2).getType());
+        assertEquals(42, entries.get(0).getRef());
+        assertEquals(3, log.size());
+    }
+
+    @Test
+    public void backgroundOpenRecoversBeforeReads() throws Exception {
+        log = open(SMALL_SEGMENTS);
+        for (int i = 0; i < 300; i++) {
+            clock.incrementAndGet();
+            log.record(AuditLog.Type.REQUEST, ALICE, 0, "before " + i);
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+        log.close();
+
+        log = AuditLog.openInBackground(folder.getRoot(), SMALL_SEGMENTS, clock::get);
+        // Recorded while recovery may still be running, numbered after what it finds
+        log.record(AuditLog.Type.REQUEST, BOB, 0, "after");
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+        assertEquals(301, log.size());
+        AuditLog.Entry last = log.page(null, AuditLog.NEWEST, 1).getEntries().get(0);
+        assertEquals(301, last.getSeq());
+        assertEquals("after", last.getDetail());
+    }
+
+    @Test
+    public void fullQueueDropsInsteadOfBlocking() throws Exception {
+        log = open(new AuditLog.Config(TimeUnit.DAYS.toMillis(1), 1 << 20, TimeUnit.DAYS.toMillis(1), 8));
+        for (int i = 0; i < 10_000; i++) {
+            log.record(AuditLog.Type.REQUEST, ALICE, 0, "burst");
+        }
+        assertTrue(log.sync(5, TimeUnit.SECONDS));
+        assertEquals(10_000, log.size() + log.droppedCount());
+    }
+
+    private int countFrom(String sender) throws IOException {
+        int count = 0;
+        long cursor = AuditLog.NEWEST;
+        AuditLog.Page page;
+        do {
+            page = log.page(sender, cursor, 50);
+            count += page.getEntries().size();
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
+        return count;
+    }
+
+    private AuditLog open(AuditLog.Config config) throws IOException {
+        return AuditLog.open(folder.getRoot(), config, clock::get);
+    }
+}
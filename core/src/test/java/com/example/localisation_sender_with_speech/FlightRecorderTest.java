@@ -0,0 +1,109 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+
+    private static List<String> events(FlightRecorder recorder) {
+        List<String> events = new ArrayList<>();
+        String[] lines = recorder.toString().split("\n");
+        for (int i = 1; i < lines.length; i++) {
+            // Drop the date and time
+            String line = lines[i];
+            events.add(line.substring(line.indexOf('#')));
+        }
+        return events;
+    }
+
+    @Test
+    public void decodesEventsWithoutStoringTheSender() {
+        FlightRecorder recorder = new FlightRecorder(8);
+        recorder.record(FlightRecorder.Event.SMS_RECEIVED, 2, "+33612345678");
+        recorder.record(FlightRecorder.Event.SHED, RequestPriority.TRUSTED.ordinal(), 0);
+        recorder.record(FlightRecorder.Event.LOCATION_RESOLVED, LocationResolver.Path.CACHED.ordinal(), 1500);
+        recorder.record(FlightRecorder.Event.DEADLINE_EXCEEDED);
+
+        String dump = recorder.toString();
+        assertTrue(dump, dump.startsWith("# Flight recorder: 4 of 4 events\n"));
+        assertFalse(dump, dump.contains("612345678"));
+
+        List<String> events = events(recorder);
+        String key = String.format("%08x", recorder.senderKey("+33612345678"));
+        assertEquals("#0 SMS_RECEIVED parts=2 sender=" + key, events.get(0));
+        assertEquals("#1 SHED priority=TRUSTED", events.get(1));
+        assertEquals("#2 LOCATION_RESOLVED path=CACHED age_ms=1500", events.get(2));
+        assertEquals("#3 DEADLINE_EXCEEDED", events.get(3));
+    }
+
+    @Test
+    public void sendersAreKeyedWithTheSalt() {
+        // Key 00..0f: the reference vector for an empty input, then numbers as UTF-16LE
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        assertEquals(0x726fdb47dd0e0e31L, FlightRecorder.sipHash(k0, k1, ""));
+        assertEquals(0x36fc87abd1a67317L, FlightRecorder.sipHash(k0, k1, "+33612345678"));
+        assertEquals(0x4bf4abb895a21d40L, FlightRecorder.sipHash(k0, k1, "0612345678"));
+
+        FlightRecorder recorder = new FlightRecorder(8);
+        recorder.setSenderSalt(k0, k1);
+        assertEquals(0xd1a67317L, recorder.senderKey("+33612345678"));
+        recorder.setSenderSalt(k0, k1 + 1);
+        assertNotEquals(0xd1a67317L, recorder.senderKey("+33612345678"));
+        assertNotEquals(new FlightRecorder(8).senderKey("+33612345678"),
+                new FlightRecorder(8).senderKey("+33612345678"));
+    }
+
+    @Test
+    public void keepsOnlyTheMostRecentEvents() {
+        FlightRecorder recorder = new FlightRecorder(5);
+        assertEquals(8, recorder.capacity());
+        for (int i = 0; i < 20; i++) {
+            recorder.record(FlightRecorder.Event.REPLY_QUEUED, 1, i);
+        }
+
+        List<String> events = events(recorder);
+        assertEquals(8, events.size());
+        assertEquals("#12 REPLY_QUEUED segments=1 id=12", events.get(0));
+        assertEquals("#19 REPLY_QUEUED segments=1 id=19", events.get(7));
+        assertEquals(20, recorder.recordedCount());
+    }
+
+    @Test
+    public void concurrentWritersNeverProduceTornEvents() throws Exception {
+        FlightRecorder recorder = new FlightRecorder(64);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int writer = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    // The int and long arguments always agree, so a torn slot would show
+                    recorder.record(FlightRecorder.Event.SMS_SENT, writer * 100_000 + i, writer * 100_000 + i);
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+        // Dump while writing
+        for (int i = 0; i < 50; i++) {
+            checkConsistent(recorder);
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        checkConsistent(recorder);
+        assertEquals(80_000, recorder.recordedCount());
+        assertEquals(64, events(recorder).size());
+    }
+
+    private static void checkConsistent(FlightRecorder recorder) {
+        for (String event : events(recorder)) {
+            String[] fields = event.split(" ");
+            assertEquals(event, fields[2].substring("ms=".length()), fields[3].substring("id=".length()));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FuzzyPhraseMatcherTest {
+
+    private static final FuzzyPhraseMatcher TRIGGERS = FuzzyPhraseMatcher.compile(ResponderConfig.TRIGGER_PHRASES);
+
+    @Test
+    public void normalizesCaseAccentsAndPunctuation() {
+        assertEquals("ou es tu", TextNormalizer.normalize("  Où ES-tu ?!"));
+        assertEquals("ete a noel", TextNormalizer.normalize("ÉTÉ à Noël"));
+        assertEquals("t es ou", TextNormalizer.normalize("t’es où"));
+        // Decomposed input loses its combining marks without splitting the word
+        assertEquals("ou", TextNormalizer.normalize("où"));
+        assertEquals("где ты", TextNormalizer.normalize("ГДЕ ТЫ?"));
+        assertEquals("send location", TextNormalizer.normalize("🙏 send_location 🙏"));
+        assertEquals("", TextNormalizer.normalize("?! ..."));
+    }
+
+    @Test
+    public void normalizationStopsAtTheBuffer() {
+        char[] out = new char[8];
+        assertEquals(8, TextNormalizer.normalize("where are you", out));
+        assertEquals("where ar", new String(out));
+        // Separators are read too, but never more than twice the buffer
+        assertEquals(0, TextNormalizer.normalize("                 where", out));
+    }
+
+    @Test
+    public void matchesExactPhrasesFirst() {
+        assertEquals("where are you", TRIGGERS.phrase(TRIGGERS.find("Hey, WHERE ARE YOU right now?")));
+        assertEquals("où es-tu", TRIGGERS.phrase(TRIGGERS.find("ou es tu")));
+        assertEquals("t'es où", TRIGGERS.phrase(TRIGGERS.find("T ES OU ???")));
+        assertEquals(FuzzyPhraseMatcher.NO_MATCH, TRIGGERS.find("see you at the station"));
+        assertEquals(FuzzyPhraseMatcher.NO_MATCH, TRIGGERS.find(""));
+        assertEquals(FuzzyPhraseMatcher.NO_MATCH, TRIGGERS.find(null));
+    }
+
+    @Test
+    public void toleratesTyposAndShorthand() {
+        assertEquals("where are you", TRIGGERS.phrase(TRIGGERS.find("were r u")));
+        assertEquals("send location", TRIGGERS.phrase(TRIGGERS.find("sned location")));
+        assertEquals("send location", TRIGGERS.phrase(TRIGGERS.find("send locaiton pls")));
+        assertEquals("share location", TRIGGERS.phrase(TRIGGERS.find("shar locatoin")));
+        assertEquals("location please", TRIGGERS.phrase(TRIGGERS.find("loc plz")));
+        assertEquals("your location", TRIGGERS.phrase(TRIGGERS.find("ur location")));
+        assertTrue(TRIGGERS.matches("envoi ta positon stp"));
+    }
+
+    @Test
+    public void countsATranspositionAsOneEdit() {
+        int[] rows = new int[3 * 9];
+        assertEquals(1, distance("sned", "send", 3, rows));
+        assertEquals(1, distance("locaiton", "location", 3, rows));
+        assertEquals(2, distance("lcoaiton", "location", 3, rows));
+        assertEquals(3, distance("kitten", "sitting", 3, rows));
+        // Past the limit it stops counting
+        assertEquals(2, distance("abcdef", "ghijkl", 1, rows));
+    }
+
+    @Test
+    public void shortWordsMustMatchExactly() {
+        assertFalse(TRIGGERS.matches("Who are you?"));
+        assertFalse(TRIGGERS.matches("Our location is the hotel lobby"));
+        assertFalse(TRIGGERS.matches("Where were you yesterday?"));
+        assertFalse(TRIGGERS.matches("Ma position n'a pas changé"));
+        // Phrase words have to be consecutive
+        assertFalse(TRIGGERS.matches("I'll send you my location later"));
+    }
+
+    @Test
+    public void wordsThatOnlyRhymeDoNotMatch() {
+        assertFalse(TRIGGERS.matches("how was your vacation?"));
+        assertFalse(TRIGGERS.matches("send me a postcard from your vacation"));
+        assertFalse(TRIGGERS.matches("send donation"));
+        assertFalse(TRIGGERS.matches("your relocation"));
+        assertFalse(TRIGGERS.matches("your rotation"));
+        assertFalse(TRIGGERS.matches("signe ta pétition"));
+        // Still one typo in an eight-letter word
+        assertTrue(TRIGGERS.matches("your lcoation"));
+        assertTrue(TRIGGERS.matches("share locaton"));
+    }
+
+    @Test
+    public void onlyTheStartOfALongMessageIsRead() {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 100_000) {
+            body.append("nothing to see here, ");
+        }
+        assertFalse(TRIGGERS.matches(body + "where are you"));
+        assertTrue(TRIGGERS.matches("where are you " + body));
+    }
+
+    @Test
+    public void deletionIndexAgreesWithALinearScan() {
+        Random random = new Random(21);
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            vocabulary.add(randomWord(random, 2 + random.nextInt(9)));
+        }
+        FuzzyPhraseMatcher matcher = FuzzyPhraseMatcher.compile(vocabulary);
+        int[] rows = new int[3 * (FuzzyPhraseMatcher.MAX_WORD + 1)];
+        int matched = 0;
+        for (int i = 0; i < 3000; i++) {
+            String query = randomWord(random, 2 + random.nextInt(9));
+            boolean expected = false;
+            for (String word : vocabulary) {
+                // Exact occurrences are found inside longer words too
+                expected |= query.contains(word) || accepts(query, word, rows);
+            }
+            assertEquals(query, expected, matcher.matches(query));
+            if (expected) matched++;
+        }
+        // Enough near hits that the comparison means something
+        assertTrue(String.valueOf(matched), matched > 300);
+    }
+
+    @Test
+    public void beatsExactMatchingOnTheLabelledCorpus() {
+        TriggerPhraseMatcher exact = TriggerPhraseMatcher.compile(ResponderConfig.TRIGGER_PHRASES);
+        int requests = 0;
+        int found = 0;
+        int foundExactly = 0;
+        List<String> falseAlarms = new ArrayList<>();
+        for (TriggerCorpus.Sample sample : TriggerCorpus.samples()) {
+            boolean match = TRIGGERS.matches(sample.body);
+            if (sample.request) {
+                requests++;
+                if (match) found++;
+                if (exact.matches(sample.body)) foundExactly++;
+            } else if (match) {
+                falseAlarms.add(sample.body);
+            }
+        }
+        double recall = (double) found / requests;
+        double exactRecall = (double) foundExactly / requests;
+        double precision = (double) found / (found + falseAlarms.size());
+        assertTrue("recall " + recall + " vs exact " + exactRecall, recall >= 0.9 && exactRecall < 0.5);
+        assertTrue("precision " + precision + ", false alarms " + falseAlarms, precision >= 0.97);
+    }
+
+    /** The acceptance rule spelled out: the same first letter, within the tolerance of both words. */
+    private static boolean accepts(String query, String word, int[] rows) {
+        if (query.charAt(0) != word.charAt(0)) return false;
+        int tolerance = Math.min(FuzzyPhraseMatcher.tolerance(query.length()),
+                FuzzyPhraseMatcher.tolerance(word.length()));
+        char[] a = query.toCharArray();
+        char[] b = word.toCharArray();
+        return FuzzyPhraseMatcher.distance(a, 0, a.length, b, 0, b.length, 100, rows) <= tolerance;
+    }
+
+    private static int distance(String a, String b, int limit, int[] rows) {
+        return FuzzyPhraseMatcher.distance(a.toCharArray(), 0, a.length(), b.toCharArray(), 0, b.length(), limit, rows);
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(5)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class GeofenceEngineTest {
+
+    private static final String CONTACT = "+33612345678";
+    private static final double LAT = 48.85837;
+    private static final double LON = 2.29448;
+    private static final long START = 1_714_521_600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeSmsGateway gateway = new FakeSmsGateway();
+    private final AtomicLong clock = new AtomicLong(START);
+    private final ResponderMetrics metrics = new ResponderMetrics();
+
+    private ScheduledExecutorService scheduler;
+    private OutboundJournal journal;
+    private AuditLog audit;
+    private OutboundSmsQueue queue;
+    private long time = START;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        journal = new OutboundJournal(new File(folder.getRoot(), "outbound.journal"));
+        audit = AuditLog.open(folder.newFolder("audit"), AuditLog.Config.DEFAULT, clock::get);
+        queue = new OutboundSmsQueue(gateway, journal, scheduler, OutboundSmsQueue.RetryPolicy.DEFAULT, clock::get,
+                new OutboundMetrics(metrics, new FlightRecorder(64), audit));
+        queue.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        journal.close();
+        audit.close();
+    }
+
+    private GeofenceEngine engine(GeofenceEngine.Config config, Geofence... zones) {
+        return new GeofenceEngine(config, Arrays.asList(zones), queue, audit, new FlightRecorder(64), metrics);
+    }
+
+    private static Geofence home(Geofence.Transition... on) {
+        return Geofence.circle("home", "Home", new Geofence.Alert(CONTACT, EnumSet.of(on[0], on), 0), LAT, LON, 150);
+    }
+
+    /** A fix {@code meters} north of the center of home, five seconds after the last. */
+    private LocationFix north(double meters) {
+        double[] point = SyntheticTrack.offset(LAT, LON, meters, 0);
+        time += 5_000;
+        return new LocationFix(point[0], point[1], 8f, time);
+    }
+
+    private long alerts() {
+        return metrics.snapshot().counter(ResponderMetrics.Counter.GEOFENCE_ALERTS);
+    }
+
+    @Test
+    public void textsOnEnteringAndLeaving() throws Exception {
+        GeofenceEngine engine = engine(GeofenceEngine.Config.DEFAULT, home(Geofence.Transition.ENTER, Geofence.Transition.EXIT));
+        // Walk in from 300 m south, through the middle and out 300 m north
+        for (int meters = -300; meters <= 0; meters += 10) {
+            engine.onFix(north(meters));
+        }
+        assertTrue(engine.isInside("home"));
+        FakeSmsGateway.Send entered = gateway.next();
+        assertEquals(CONTACT, entered.destination);
+        String text = entered.parts.get(0);
+        assertTrue(text, text.startsWith("Entered Home: 48.85"));
+        assertTrue(text, text.contains(" (accuracy 8m) maps.google.com/?q=48.85"));
+        SmsPayloadEncoder.Count count = SmsPayloadEncoder.count(text);
+        assertEquals(SmsPayloadEncoder.Encoding.GSM7, count.getEncoding());
+        assertEquals(1, count.getSegments());
+
+        for (int meters = 10; meters <= 300; meters += 10) {
+            engine.onFix(north(meters));
+        }
+        assertFalse(engine.isInside("home"));
+        assertTrue(gateway.next().parts.get(0).startsWith("Left Home: 48.8"));
+        assertEquals(2, alerts());
+        assertTrue(gateway.sends.isEmpty());
+    }
+
+    @Test
+    public void jitterAlongTheBoundaryDoesNotFlap() throws Exception {
+        GeofenceEngine engine = engine(GeofenceEngine.Config.DEFAULT, home(Geofence.Transition.ENTER, Geofence.Transition.EXIT));
+        engine.onFix(north(-400));
+        // Within the margin either side of the edge
+        for (int i = 0; i < 200; i++) {
+            engine.onFix(north(150 + (i % 2 == 0 ? 15 : -15)));
+        }
+        // Beyond it, but never twice in a row
+        for (int i = 0; i < 200; i++) {
+            engine.onFix(north(150 + (i % 2 == 0 ? -40 : 40)));
+        }
+        assertEquals(0, alerts());
+        assertFalse(engine.isInside("home"));
+
+        // Two fixes well inside do count
+        engine.onFix(north(100));
+        engine.onFix(north(90));
+        assertTrue(engine.isInside("home"));
+        assertTrue(gateway.next().parts.get(0).startsWith("Entered Home"));
+        assertEquals(1, alerts());
+    }
+
+    @Test
+    public void theFirstFixOnlySetsTheStartingPoint() throws Exception {
+        Geofence.Alert alert = new Geofence.Alert(CONTACT, EnumSet.allOf(Geofence.Transition.class),
+                TimeUnit.MINUTES.toMillis(10));
+        GeofenceEngine engine = engine(GeofenceEngine.Config.DEFAULT,
+                Geofence.circle("home", "Home", alert, LAT, LON, 150));
+        for (int i = 0; i < 240; i++) {
+            engine.onFix(north(0));
+        }
+        assertTrue(engine.isInside("home"));
+        // No entry, and the time before watching began doesn't count as a stay
+        assertEquals(0, alerts());
+    }
+
+    @Test
+    public void textsOnceAfterTheDwellTime() throws Exception {
+        Geofence.Alert alert = new Geofence.Alert(CONTACT, EnumSet.of(Geofence.Transition.DWELL),
+                TimeUnit.MINUTES.toMillis(15));
+        GeofenceEngine engine = engine(GeofenceEngine.Config.DEFAULT,
+                Geofence.polygon("school", "School", alert, 48.8601, 2.3402, 48.8612, 2.3431, 48.8590, 2.3447));
+        engine.onFix(new LocationFix(48.8580, 2.3400, 10f, time));
+        // Fifteen minutes and then some, a fix every 30 seconds
+        for (int i = 1; i <= 40; i++) {
+            engine.onFix(new LocationFix(48.8601, 2.3430, 10f, time + i * 30_000));
+        }
+        assertEquals(1, alerts());
+        assertEquals("In School for 15 min: 48.8601,2.343 (accuracy 10m) maps.google.com/?q=48.8601,2.343",
+                gateway.next().parts.get(0));
+    }
+
+    @Test
+    public void ignoresInaccurateAndOutOfOrderFixes() {
+        GeofenceEngine engine = engine(GeofenceEngine.Config.DEFAULT, home(Geofence.Transition.ENTER));
+        engine.onFix(north(-400));
+        for (int i = 1; i <= 5; i++) {
+            engine.onFix(new LocationFix(LAT, LON, 200f, time + i * 1000));
+        }
+        // Accurate, but older than the last fix taken
+        engine.onFix(new LocationFix(LAT, LON, 5f, time - 1000));
+        engine.onFix(new LocationFix(LAT, LON, 5f, time - 500));
+        assertFalse(engine.isInside("home"));
+        assertEquals(0, alerts());
+    }
+
+    @Test
+    public void asksForMoreFixesCloserToAZone() {
+        GeofenceEngine engine = engine(GeofenceEngine.Config.DEFAULT, home(Geofence.Transition.ENTER));
+        assertNull(engine.request());
+        engine.onFix(north(-5000));
+        assertNull(engine.request());
+
+        // Within 2 km of the box: a balanced fix a minute, even from a rough fix
+        time += 5_000;
+        double[] rough = SyntheticTrack.offset(LAT, LON, 1500, 180);
+        engine.onFix(new LocationFix(rough[0], rough[1], 500f, time));
+        LocationTracker.Request approach = engine.request();
+        assertNotNull(approach);
+        assertFalse(approach.isHighAccuracy());
+        assertEquals(TimeUnit.MINUTES.toMillis(1), approach.getIntervalMillis());
+
+        // Within 150 m of the edge, on either side: high accuracy, often
+        engine.onFix(north(-250));
+        LocationTracker.Request edge = engine.request();
+        assertTrue(edge.isHighAccuracy());
+        assertEquals(TimeUnit.SECONDS.toMillis(GeofenceEngine.EDGE_INTERVAL_SECONDS), edge.getIntervalMillis());
+        engine.onFix(north(-100));
+        assertTrue(engine.request().isHighAccuracy());
+
+        // Back off once settled well inside a big zone
+        GeofenceEngine big = engine(GeofenceEngine.Config.DEFAULT, Geofence.circle("park", "Park",
+                new Geofence.Alert(CONTACT, EnumSet.of(Geofence.Transition.EXIT), 0), LAT, LON, 600));
+        big.onFix(north(0));
+        assertFalse(big.request().isHighAccuracy());
+    }
+
+    @Test
+    public void agreesWithEveryZoneAlongARandomTrack() {
+        Random random = new Random(5);
+        Geofence.Alert alert = new Geofence.Alert(CONTACT, EnumSet.noneOf(Geofence.Transition.class), 0);
+        List<Geofence> zones = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double lat = LAT - 0.05 + random.nextDouble() * 0.1;
+            double lon = LON - 0.08 + random.nextDouble() * 0.16;
+            if (i % 2 == 0) {
+                zones.add(Geofence.circle("c" + i, "Circle " + i, alert, lat, lon, 30 + random.nextDouble() * 300));
+            } else {
+                double size = 0.0005 + random.nextDouble() * 0.005;
+                zones.add(Geofence.polygon("p" + i, "Polygon " + i, alert,
+                        lat, lon, lat + size, lon + size / 3, lat + size / 2, lon + size, lat - size / 4, lon + size / 2));
+            }
+        }
+        GeofenceEngine.Config config = new GeofenceEngine.Config(15f, 75f, 1, 2000f, 150f);
+        GeofenceEngine engine = new GeofenceEngine(config, zones, queue, audit, new FlightRecorder(64), metrics);
+        assertEquals(2000, engine.zoneCount());
+
+        LocationFix[] track = SyntheticTrack.walk(random, LAT, LON, 45, 4, 10f, START, 2_000, 2000);
+        int changes = 0;
+        boolean[] was = new boolean[zones.size()];
+        for (LocationFix fix : track) {
+            engine.onFix(fix);
+            for (int i = 0; i < zones.size(); i++) {
+                Geofence zone = zones.get(i);
+                boolean inside = engine.isInside(zone.getId());
+                double distance = zone.signedDistanceMeters(fix.getLatitude(), fix.getLongitude());
+                if (distance <= -15) assertTrue(zone.getId(), inside);
+                if (distance >= 15) assertFalse(zone.getId(), inside);
+                if (inside != was[i]) changes++;
+                was[i] = inside;
+            }
+        }
+        assertTrue("Only " + changes + " transitions", changes > 50);
+        // Nobody to text for these zones
+        assertTrue(gateway.sends.isEmpty());
+    }
+}
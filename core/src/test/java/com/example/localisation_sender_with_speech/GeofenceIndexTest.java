@@ -0,0 +1,90 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeofenceIndexTest {
+
+    private static final Geofence.Alert ALERT = new Geofence.Alert("+33612345678",
+            EnumSet.of(Geofence.Transition.ENTER), 0);
+
+    private static List<Geofence> randomZones(Random random, int count) {
+        List<Geofence> zones = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double lat = 48 + random.nextDouble() * 2;
+            double lon = 1 + random.nextDouble() * 3;
+            if (random.nextBoolean()) {
+                zones.add(Geofence.circle("z" + i, "Zone " + i, ALERT, lat, lon, 20 + random.nextDouble() * 2000));
+            } else {
+                double size = 0.0005 + random.nextDouble() * 0.02;
+                zones.add(Geofence.polygon("z" + i, "Zone " + i, ALERT,
+                        lat, lon, lat + size, lon + size / 2, lat, lon + size));
+            }
+        }
+        return zones;
+    }
+
+    @Test
+    public void findsTheSameZonesAsABruteForceSearch() {
+        Random random = new Random(11);
+        for (int count : new int[] {1, 15, 16, 17, 256, 257, 5000}) {
+            List<Geofence> zones = randomZones(random, count);
+            GeofenceIndex index = GeofenceIndex.build(zones);
+            assertEquals(count, index.size());
+            int[] hits = new int[count];
+            for (int q = 0; q < 300; q++) {
+                double lat = 47.9 + random.nextDouble() * 2.2;
+                double lon = 0.9 + random.nextDouble() * 3.2;
+                double span = random.nextDouble() * 0.05;
+                int found = index.search(lat - span, lon - span, lat + span, lon + span, hits);
+                assertEquals(found > 0, index.intersects(lat - span, lon - span, lat + span, lon + span));
+
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    Geofence zone = zones.get(i);
+                    if (zone.minLatitude <= lat + span && zone.maxLatitude >= lat - span
+                            && zone.minLongitude <= lon + span && zone.maxLongitude >= lon - span) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> actual = new ArrayList<>();
+                for (int i = 0; i < found; i++) {
+                    actual.add(hits[i]);
+                }
+                Collections.sort(actual);
+                assertEquals(count + " zones", expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheZonesNumberedInTheOrderGiven() {
+        List<Geofence> zones = randomZones(new Random(3), 100);
+        GeofenceIndex index = GeofenceIndex.build(zones);
+        for (int i = 0; i < zones.size(); i++) {
+            assertSame(zones.get(i), index.get(i));
+        }
+        Geofence zone = zones.get(42);
+        int[] hits = new int[100];
+        double lat = (zone.minLatitude + zone.maxLatitude) / 2;
+        double lon = (zone.minLongitude + zone.maxLongitude) / 2;
+        int found = index.search(lat, lon, lat, lon, hits);
+        assertTrue(Arrays.stream(hits, 0, found).anyMatch(hit -> hit == 42));
+    }
+
+    @Test
+    public void searchesAnEmptyIndex() {
+        GeofenceIndex index = GeofenceIndex.build(Collections.emptyList());
+        assertEquals(0, index.size());
+        assertEquals(0, index.search(-90, -180, 90, 180, new int[0]));
+        assertFalse(index.intersects(-90, -180, 90, 180));
+    }
+}
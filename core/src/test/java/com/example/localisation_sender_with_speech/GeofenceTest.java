@@ -0,0 +1,125 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GeofenceTest {
+
+    private static final Geofence.Alert ENTER = new Geofence.Alert("+33612345678",
+            EnumSet.of(Geofence.Transition.ENTER), 0);
+
+    // About 110 m by 75 m around the Louvre's Cour Carrée, listed clockwise
+    private static final Geofence COURTYARD = Geofence.polygon("cour", "Cour Carree", ENTER,
+            48.8606, 2.3375, 48.8606, 2.3385, 48.8596, 2.3385, 48.8596, 2.3375);
+
+    @Test
+    public void measuresFromACircle() {
+        Geofence home = Geofence.circle("home", "Home", ENTER, 48.85837, 2.29448, 150);
+        assertEquals(-150, home.signedDistanceMeters(48.85837, 2.29448), 0.01);
+        double[] north = SyntheticTrack.offset(48.85837, 2.29448, 200, 0);
+        assertEquals(50, home.signedDistanceMeters(north[0], north[1]), 0.5);
+        double[] east = SyntheticTrack.offset(48.85837, 2.29448, 100, 90);
+        assertEquals(-50, home.signedDistanceMeters(east[0], east[1]), 0.5);
+        assertTrue(home.contains(east[0], east[1]));
+        assertTrue(home.isCircle());
+    }
+
+    @Test
+    public void measuresFromAPolygonInEitherWinding() {
+        // The center is nearest the east and west edges; then 10 m either side of the north edge
+        assertEquals(-36.6, COURTYARD.signedDistanceMeters(48.8601, 2.3380), 0.5);
+        double[] inside = SyntheticTrack.offset(48.8606, 2.3380, 10, 180);
+        assertEquals(-10, COURTYARD.signedDistanceMeters(inside[0], inside[1]), 0.1);
+        double[] outside = SyntheticTrack.offset(48.8606, 2.3380, 10, 0);
+        assertEquals(10, COURTYARD.signedDistanceMeters(outside[0], outside[1]), 0.1);
+        // Beyond a corner the distance is to the corner itself
+        double[] corner = SyntheticTrack.offset(48.8606, 2.3385, 30, 45);
+        assertEquals(30, COURTYARD.signedDistanceMeters(corner[0], corner[1]), 0.3);
+
+        Geofence counterClockwise = Geofence.polygon("ccw", "Cour Carree", ENTER,
+                48.8596, 2.3375, 48.8596, 2.3385, 48.8606, 2.3385, 48.8606, 2.3375);
+        assertEquals(COURTYARD.signedDistanceMeters(inside[0], inside[1]),
+                counterClockwise.signedDistanceMeters(inside[0], inside[1]), 1e-9);
+    }
+
+    @Test
+    public void handlesConcavePolygons() {
+        // An L: the notch at the top right is outside
+        Geofence l = Geofence.polygon("l", "L", ENTER, 0, 0, 0.002, 0, 0.002, 0.001, 0.001, 0.001, 0.001, 0.002, 0, 0.002);
+        assertTrue(l.contains(0.0015, 0.0005));
+        assertTrue(l.contains(0.0005, 0.0015));
+        assertFalse(l.contains(0.0015, 0.0015));
+        assertEquals(0.0005 * Geofence.METERS_PER_DEGREE, l.signedDistanceMeters(0.0015, 0.0015), 0.01);
+    }
+
+    @Test
+    public void parsesTheZoneFile() throws IOException {
+        String file = String.join("\n",
+                "# id | name | contact | alerts | shape",
+                "home | Home | +33612345678 | enter,exit | circle 48.85837,2.29448 150",
+                "",
+                "  school|School|+33698765432|ENTER, dwell=15m|polygon 48.8601,2.3402 48.8612,2.3431 48.8590,2.3447  ");
+        List<Geofence> zones = Geofence.readAll(new BufferedReader(new StringReader(file)));
+
+        assertEquals(2, zones.size());
+        Geofence home = zones.get(0);
+        assertEquals("home", home.getId());
+        assertEquals("Home", home.getName());
+        assertTrue(home.getAlert().isOn(Geofence.Transition.EXIT));
+        assertFalse(home.getAlert().isOn(Geofence.Transition.DWELL));
+        assertEquals("home | Home | +33612345678 | enter,exit | circle 48.85837,2.29448 150", home.toString());
+
+        Geofence school = zones.get(1);
+        assertEquals("+33698765432", school.getAlert().getContact());
+        assertEquals(TimeUnit.MINUTES.toMillis(15), school.getAlert().getDwellMillis());
+        assertFalse(school.isCircle());
+        assertEquals("school | School | +33698765432 | enter,dwell=900s"
+                + " | polygon 48.8601,2.3402 48.8612,2.3431 48.859,2.3447", school.toString());
+        assertEquals(school.toString(), Geofence.parse(school.toString()).toString());
+    }
+
+    @Test
+    public void rejectsTheWholeFileOverOneBadLine() {
+        String file = "a | A | +33612345678 | enter | circle 48.85,2.29 100\n"
+                + "a | B | +33612345678 | enter | circle 48.86,2.30 100\n";
+        try {
+            Geofence.readAll(new BufferedReader(new StringReader(file)));
+            fail();
+        } catch (IOException e) {
+            assertEquals("Line 2: Duplicate id a", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZonesAcrossTheAntimeridian() {
+        Geofence.polygon("fiji", "Fiji", ENTER, -16.5, 179.8, -16.5, -179.8, -17, -179.8, -17, 179.8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCirclesReachingTheAntimeridian() {
+        Geofence.circle("edge", "Edge", ENTER, -16.5, 179.999, 500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNamesThatWouldNotFitTheAlert() {
+        Geofence.circle("work", "Bureau à Kraków", ENTER, 50.06, 19.94, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDwellWithoutATime() {
+        Geofence.parse("home | Home | +33612345678 | dwell=0m | circle 48.85837,2.29448 150");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownShapes() {
+        Geofence.parse("home | Home | +33612345678 | enter | square 48.85837,2.29448 150");
+    }
+}
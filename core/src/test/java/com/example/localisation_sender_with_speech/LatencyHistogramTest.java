@@ -0,0 +1,81 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndOrdered() {
+        long previous = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long upper = LatencyHistogram.upperBoundOf(i);
+            assertTrue("bucket " + i, upper > previous);
+            assertEquals(i, LatencyHistogram.indexOf(previous + 1));
+            assertEquals(i, LatencyHistogram.indexOf(upper));
+            previous = upper;
+        }
+        assertTrue(previous >= Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void percentilesAreWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..10000 ms, uniformly
+        for (int ms = 1; ms <= 10_000; ms++) {
+            histogram.recordMillis(ms);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(5000, snapshot.percentileMillis(50), 5000 * 0.07);
+        assertEquals(9000, snapshot.percentileMillis(90), 9000 * 0.07);
+        assertEquals(9900, snapshot.percentileMillis(99), 9900 * 0.07);
+        assertEquals(10_000, snapshot.percentileMillis(100), 0.001);
+        assertEquals(5000.5, snapshot.meanMillis(), 0.001);
+        assertEquals(10_000, snapshot.maxMillis(), 0.001);
+    }
+
+    @Test
+    public void smallValuesAreExactAndOutliersAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(3);
+        histogram.recordMicros(-5);
+        histogram.recordMillis(Long.MAX_VALUE / 1000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.percentileMicros(1));
+        assertEquals(3, snapshot.percentileMicros(50));
+        assertEquals(Integer.MAX_VALUE, snapshot.percentileMicros(100));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.recordMicros(i % 1000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(200_000, histogram.count());
+        assertEquals(200_000, histogram.snapshot().getCount());
+        assertEquals(0.999, histogram.snapshot().maxMillis(), 0.0001);
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().percentileMicros(50));
+    }
+}
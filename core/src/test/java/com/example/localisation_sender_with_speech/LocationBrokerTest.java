@@ -0,0 +1,156 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LocationBrokerTest {
+
+    private static final LocationFix FIX = new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis());
+
+    @Test
+    public void concurrentCallersShareOneUnderlyingRequest() throws Exception {
+        FakeLocationSource source = new FakeLocationSource();
+        LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+        LocationBroker broker = new LocationBroker(source, cache, 50f);
+
+        int callers = 32;
+        CyclicBarrier start = new CyclicBarrier(callers);
+        CountDownLatch joined = new CountDownLatch(callers);
+        CountDownLatch delivered = new CountDownLatch(callers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    broker.requestFresh(new LocationSource.Callback() {
+                        @Override
+                        public void onFix(LocationFix fix) {
+                            assertSame(FIX, fix);
+                            delivered.countDown();
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            fail(e.getMessage());
+                        }
+                    });
+                    joined.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        assertTrue(joined.await(5, TimeUnit.SECONDS));
+        assertEquals(1, source.requests.get());
+        assertTrue(broker.isRequestInFlight());
+
+        source.deliver(FIX);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertFalse(broker.isRequestInFlight());
+        assertSame(FIX, cache.get(System.currentTimeMillis()).getFix());
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // The next request after delivery starts a new one
+        broker.requestFresh(new RecordingCallback());
+        assertEquals(2, source.requests.get());
+        assertEquals(2, broker.underlyingRequestCount());
+    }
+
+    @Test
+    public void cancellingEveryWaiterCancelsTheUnderlyingRequest() {
+        FakeLocationSource source = new FakeLocationSource();
+        LocationBroker broker = new LocationBroker(source, null, 50f);
+
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        LocationBroker.Waiter a = broker.requestFresh(first);
+        LocationBroker.Waiter b = broker.requestFresh(second);
+
+        a.cancel();
+        assertEquals(0, source.cancels.get());
+        assertTrue(broker.isRequestInFlight());
+
+        b.cancel();
+        assertEquals(1, source.cancels.get());
+        assertFalse(broker.isRequestInFlight());
+        assertTrue(source.pending.isEmpty());
+        assertEquals(0, first.fixes.get() + second.fixes.get());
+    }
+
+    @Test
+    public void cancelledWaiterIsNotNotified() {
+        FakeLocationSource source = new FakeLocationSource();
+        LocationBroker broker = new LocationBroker(source, null, 50f);
+
+        RecordingCallback cancelled = new RecordingCallback();
+        RecordingCallback kept = new RecordingCallback();
+        broker.requestFresh(cancelled).cancel();
+        broker.requestFresh(kept);
+        source.deliver(FIX);
+
+        assertEquals(0, cancelled.fixes.get());
+        assertEquals(1, kept.fixes.get());
+    }
+
+    @Test
+    public void lateJoinersReceiveTheBestCandidateSoFar() {
+        FakeLocationSource source = new FakeLocationSource();
+        LocationBroker broker = new LocationBroker(source, null, 20f);
+
+        broker.requestFresh(new RecordingCallback());
+        source.candidate(new LocationFix(48.85, 2.35, 300f, 0));
+        source.candidate(new LocationFix(48.85, 2.35, 120f, 0));
+
+        RecordingCallback late = new RecordingCallback();
+        broker.requestFresh(late);
+        assertEquals(1, late.candidates.get());
+        assertEquals(20f, source.lastTarget, 0f);
+    }
+
+    @Test
+    public void sourceErrorsReachEveryWaiter() {
+        LocationBroker broker = new LocationBroker((target, callback) -> {
+            callback.onError(new IllegalStateException("gps off"));
+            return () -> { };
+        }, null, 50f);
+
+        RecordingCallback callback = new RecordingCallback();
+        broker.requestFresh(callback);
+        assertEquals(1, callback.errors.get());
+        assertFalse(broker.isRequestInFlight());
+    }
+
+    private static final class RecordingCallback implements LocationSource.Callback {
+        final AtomicInteger fixes = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger candidates = new AtomicInteger();
+
+        @Override
+        public void onCandidate(LocationFix fix) {
+            candidates.incrementAndGet();
+        }
+
+        @Override
+        public void onFix(LocationFix fix) {
+            fixes.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationCacheTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void classifiesFreshnessAndAccuracyTiers() {
+        LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+        cache.offer(new LocationFix(48.85, 2.35, 15f, NOW - MINUTE));
+
+        LocationCache.Entry entry = cache.get(NOW);
+        assertEquals(LocationCache.Freshness.FRESH, entry.getFreshness());
+        assertEquals(LocationCache.Accuracy.PRECISE, entry.getAccuracy());
+        assertEquals(MINUTE, entry.getAgeMillis());
+        assertTrue(entry.isSendable());
+
+        assertEquals(LocationCache.Freshness.RECENT, cache.get(NOW + 5 * MINUTE).getFreshness());
+        assertEquals(LocationCache.Freshness.STALE, cache.get(NOW + 20 * MINUTE).getFreshness());
+        assertEquals(LocationCache.Freshness.EXPIRED, cache.get(NOW + 40 * MINUTE).getFreshness());
+    }
+
+    @Test
+    public void refusesToSendExpiredOrInaccurateFixes() {
+        LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+        assertNull(cache.getSendable(NOW));
+
+        cache.offer(new LocationFix(48.85, 2.35, 50f, NOW));
+        assertNotNull(cache.getSendable(NOW + 29 * MINUTE));
+        assertNull(cache.getSendable(NOW + 31 * MINUTE));
+
+        cache.clear();
+        cache.offer(new LocationFix(48.85, 2.35, 5000f, NOW));
+        assertEquals(LocationCache.Accuracy.POOR, cache.get(NOW).getAccuracy());
+        assertNull(cache.getSendable(NOW));
+    }
+
+    @Test
+    public void keepsTheBetterFix() {
+        LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+        LocationFix precise = new LocationFix(48.85, 2.35, 10f, NOW);
+
+        assertTrue(cache.offer(precise));
+        // Slightly newer but much less accurate: rejected
+        assertFalse(cache.offer(new LocationFix(48.86, 2.36, 800f, NOW + 10_000)));
+        // Older: rejected
+        assertFalse(cache.offer(new LocationFix(48.86, 2.36, 5f, NOW - 5 * MINUTE)));
+        assertSame(precise, cache.get(NOW).getFix());
+
+        // Slightly newer and comparably accurate: accepted
+        LocationFix newer = new LocationFix(48.86, 2.36, 30f, NOW + 10_000);
+        assertTrue(cache.offer(newer));
+        // Significantly newer wins even when coarse
+        LocationFix muchNewer = new LocationFix(48.87, 2.37, 900f, NOW + 5 * MINUTE);
+        assertTrue(cache.offer(muchNewer));
+        assertSame(muchNewer, cache.get(NOW + 5 * MINUTE).getFix());
+    }
+}
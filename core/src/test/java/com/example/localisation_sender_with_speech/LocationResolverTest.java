@@ -0,0 +1,124 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LocationResolverTest {
+
+    private static final AcquisitionPolicy POLICY = new AcquisitionPolicy("test", 25f, 300);
+
+    private final LocationCache cache = new LocationCache(LocationCache.Policy.DEFAULT);
+    private final FakeLocationSource source = new FakeLocationSource();
+    private final LocationBroker broker = new LocationBroker(source, cache, 25f);
+    private final LocationResolver resolver = new LocationResolver(cache, broker);
+
+    @Test
+    public void servesAccurateCachedFixWithoutRequesting() throws Exception {
+        long now = System.currentTimeMillis();
+        cache.offer(new LocationFix(48.85, 2.35, 10f, now - 30_000));
+
+        LocationResolver.Resolution resolution = resolver.resolve(POLICY, deadline(), now);
+        assertEquals(LocationResolver.Path.CACHED, resolution.getPath());
+        assertEquals(0, source.requests.get());
+        assertEquals(1, resolver.pathCount(LocationResolver.Path.CACHED));
+    }
+
+    @Test
+    public void olderCachedFixIsOnlyAFallback() throws Exception {
+        long now = System.currentTimeMillis();
+        // Accurate and sendable, but past the fresh age
+        LocationFix recent = new LocationFix(48.85, 2.35, 10f, now - TimeUnit.MINUTES.toMillis(5));
+        cache.offer(recent);
+
+        Future<LocationResolver.Resolution> result = resolveAsync(now, POLICY);
+        awaitRequest();
+        LocationResolver.Resolution resolution = result.get(2, TimeUnit.SECONDS);
+        assertEquals(LocationResolver.Path.DEGRADED, resolution.getPath());
+        assertSame(recent, resolution.getFix());
+        assertEquals(0, resolver.pathCount(LocationResolver.Path.CACHED));
+    }
+
+    @Test
+    public void waitsForFirstFixMeetingTheTarget() throws Exception {
+        long now = System.currentTimeMillis();
+        // Cached, but too coarse for the target
+        cache.offer(new LocationFix(48.85, 2.35, 400f, now));
+        LocationFix precise = new LocationFix(48.8584, 2.2945, 12f, now + 100);
+
+        Future<LocationResolver.Resolution> result = resolveAsync(now, new AcquisitionPolicy("test", 25f, 5000));
+        awaitRequest();
+        source.candidate(new LocationFix(48.85, 2.35, 80f, now + 50));
+        source.deliver(precise);
+
+        LocationResolver.Resolution resolution = result.get(1, TimeUnit.SECONDS);
+        assertEquals(LocationResolver.Path.FRESH, resolution.getPath());
+        assertSame(precise, resolution.getFix());
+    }
+
+    @Test
+    public void fallsBackToBestFixSeenWhenTimeRunsOut() throws Exception {
+        long now = System.currentTimeMillis();
+        LocationFix coarse = new LocationFix(48.85, 2.35, 60f, now);
+
+        Future<LocationResolver.Resolution> result = resolveAsync(now, POLICY);
+        awaitRequest();
+        source.candidate(new LocationFix(48.85, 2.35, 900f, now - 1000));
+        source.candidate(coarse);
+
+        LocationResolver.Resolution resolution = result.get(2, TimeUnit.SECONDS);
+        assertEquals(LocationResolver.Path.DEGRADED, resolution.getPath());
+        assertSame(coarse, resolution.getFix());
+        // The timed-out request was cancelled, not left running
+        assertEquals(1, source.cancels.get());
+        assertFalse(broker.isRequestInFlight());
+    }
+
+    @Test
+    public void expiredCacheEntryStillServesAsDegradedFallback() throws Exception {
+        long now = System.currentTimeMillis();
+        LocationFix old = new LocationFix(48.85, 2.35, 15f, now - TimeUnit.HOURS.toMillis(2));
+        cache.offer(old);
+
+        LocationResolver.Resolution resolution = resolver.resolve(POLICY, deadline(), now);
+        assertEquals(LocationResolver.Path.DEGRADED, resolution.getPath());
+        assertSame(old, resolution.getFix());
+    }
+
+    @Test
+    public void returnsNullWhenNothingArrives() throws Exception {
+        assertNull(resolver.resolve(POLICY, deadline(), System.currentTimeMillis()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagatesSourceErrorWhenNothingUsableWasSeen() throws Exception {
+        LocationBroker failing = new LocationBroker((target, callback) -> {
+            callback.onError(new IllegalStateException("location off"));
+            return () -> { };
+        }, cache, 25f);
+        new LocationResolver(cache, failing).resolve(POLICY, deadline(), System.currentTimeMillis());
+    }
+
+    private Future<LocationResolver.Resolution> resolveAsync(long now, AcquisitionPolicy policy) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<LocationResolver.Resolution> future = executor.submit(() -> resolver.resolve(policy, deadline(), now));
+        executor.shutdown();
+        return future;
+    }
+
+    private void awaitRequest() throws InterruptedException {
+        for (int i = 0; i < 100 && source.requests.get() == 0; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, source.requests.get());
+    }
+
+    private static Deadline deadline() {
+        return Deadline.after(8, TimeUnit.SECONDS);
+    }
+}
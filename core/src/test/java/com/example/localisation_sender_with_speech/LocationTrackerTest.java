@@ -0,0 +1,199 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LocationTrackerTest {
+
+    private static final String CONTACT = "+33612345678";
+    private static final Pattern KEYFRAME = Pattern.compile("Track (\\d+): (-?[\\d.]+),(-?[\\d.]+) \\(accuracy");
+    private static final Pattern DELTA = Pattern.compile("Track (\\d+): ([+-][\\d.]+),([+-][\\d.]+) from #");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeSmsGateway gateway = new FakeSmsGateway();
+    private final AtomicLong clock = new AtomicLong(1_714_521_600_000L);
+    private final ResponderMetrics metrics = new ResponderMetrics();
+
+    private ScheduledExecutorService scheduler;
+    private OutboundJournal journal;
+    private AuditLog audit;
+    private LocationTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        journal = new OutboundJournal(new File(folder.getRoot(), "outbound.journal"));
+        audit = AuditLog.open(folder.newFolder("audit"), AuditLog.Config.DEFAULT, clock::get);
+        OutboundSmsQueue queue = new OutboundSmsQueue(gateway, journal, scheduler,
+                OutboundSmsQueue.RetryPolicy.DEFAULT, clock::get,
+                new OutboundMetrics(metrics, new FlightRecorder(64), audit));
+        queue.start();
+        tracker = new LocationTracker(LocationTracker.Config.DEFAULT, queue, audit, new FlightRecorder(64), metrics,
+                clock::get);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        journal.close();
+        audit.close();
+    }
+
+    @Test
+    public void startsFromARecentFixAndStaysQuietWhileStationary() throws Exception {
+        tracker.onFix(new LocationFix(48.8566, 2.3522, 6f, clock.get()));
+        assertTrue(tracker.start(CONTACT));
+
+        String first = gateway.next().parts.get(0);
+        assertTrue(first, first.startsWith("Track 1: 48.8566,2.3522 (accuracy 6m) maps.google.com/?q=48.8566,2.3522."));
+        assertTrue(first, first.contains("reply STOP TRACKING"));
+        assertSingleGsm7Segment(first);
+
+        // Ten minutes of jitter in place
+        for (int i = 1; i <= 120; i++) {
+            clock.addAndGet(5_000);
+            double jitter = (i % 3 - 1) * 2e-5;
+            tracker.onFix(new LocationFix(48.8566 + jitter, 2.3522 - jitter, 6f, clock.get()));
+        }
+        assertTrue(gateway.sends.isEmpty());
+        LocationTracker.Request request = tracker.request();
+        assertFalse(request.isHighAccuracy());
+        assertEquals(TimeUnit.SECONDS.toMillis(60), request.getIntervalMillis());
+    }
+
+    @Test
+    public void deltasRebuildEveryPositionExactly() throws Exception {
+        tracker.start(CONTACT);
+        List<LocationFix> sentFixes = new ArrayList<>();
+        List<String> messages = drive(15, 600, sentFixes);
+
+        assertTrue(messages.toString(), messages.size() >= 9);
+        long lat = 0;
+        long lon = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            String message = messages.get(i);
+            assertSingleGsm7Segment(message);
+            if (i % 4 == 0) {
+                Matcher keyframe = KEYFRAME.matcher(message);
+                assertTrue(message, keyframe.find());
+                assertEquals(i + 1, Integer.parseInt(keyframe.group(1)));
+                lat = Math.round(Double.parseDouble(keyframe.group(2)) * 1e5);
+                lon = Math.round(Double.parseDouble(keyframe.group(3)) * 1e5);
+            } else {
+                Matcher delta = DELTA.matcher(message);
+                assertTrue(message, delta.find());
+                assertEquals(i + 1, Integer.parseInt(delta.group(1)));
+                lat += Math.round(Double.parseDouble(delta.group(2)) * 1e5);
+                lon += Math.round(Double.parseDouble(delta.group(3)) * 1e5);
+            }
+            // What the recipient reconstructs is the fix at 5 decimals, with no drift
+            assertEquals(message, Math.round(sentFixes.get(i).getLatitude() * 1e5), lat);
+            assertEquals(message, Math.round(sentFixes.get(i).getLongitude() * 1e5), lon);
+        }
+        assertTrue(tracker.request().isHighAccuracy());
+        assertEquals(TimeUnit.SECONDS.toMillis(15), tracker.request().getIntervalMillis());
+    }
+
+    @Test
+    public void updatesComeMoreOftenAtSpeed() throws Exception {
+        tracker.start(CONTACT);
+        int walking = drive(1.4, 600, new ArrayList<>()).size();
+
+        tracker.stop(CONTACT);
+        gateway.next();
+        tracker.start(CONTACT);
+        int driving = drive(15, 600, new ArrayList<>()).size();
+
+        assertTrue(walking + " vs " + driving, driving > walking);
+        // Never more often than the minimum interval
+        assertTrue(driving <= 600 / 30 + 1);
+    }
+
+    @Test
+    public void sessionsEndAfterTheirDuration() throws Exception {
+        tracker.onFix(new LocationFix(48.8566, 2.3522, 6f, clock.get()));
+        tracker.start(CONTACT);
+        gateway.next();
+        assertEquals(clock.get() + TimeUnit.MINUTES.toMillis(30), tracker.expire());
+
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(30));
+        assertEquals(0, tracker.expire());
+        assertFalse(tracker.isActive());
+        assertNull(tracker.request());
+        String last = gateway.next().parts.get(0);
+        assertEquals("Tracking ended after 1 update(s). Last: 48.8566,2.3522", last);
+    }
+
+    @Test
+    public void sessionsCanAskForTheirOwnDuration() throws Exception {
+        tracker.onFix(new LocationFix(48.8566, 2.3522, 6f, clock.get()));
+        tracker.start(CONTACT, TimeUnit.HOURS.toMillis(2));
+
+        String first = gateway.next().parts.get(0);
+        assertTrue(first, first.contains(" For 120 min, reply STOP TRACKING"));
+        assertEquals(clock.get() + TimeUnit.HOURS.toMillis(2), tracker.expire());
+    }
+
+    @Test
+    public void stopEndsTheSessionAndTheLimitHolds() throws Exception {
+        assertTrue(tracker.start("+33600000001"));
+        assertTrue(tracker.start("+33600000002"));
+        assertTrue(tracker.start("+33600000003"));
+        assertFalse(tracker.start("+33600000004"));
+        // Restarting a running session just extends it
+        assertTrue(tracker.start("+33600000001"));
+        assertEquals(3, tracker.sessionCount());
+
+        assertTrue(tracker.stop("+33600000002"));
+        assertFalse(tracker.stop("+33600000002"));
+        FakeSmsGateway.Send send = gateway.next();
+        assertEquals("+33600000002", send.destination);
+        assertEquals("Tracking stopped after 0 update(s).", send.parts.get(0));
+    }
+
+    /**
+     * Straight north-east at {@code speed} m/s, one fix a second. Returns the updates sent,
+     * with the fix that triggered each one in {@code sentFixes}.
+     */
+    private List<String> drive(double speed, int seconds, List<LocationFix> sentFixes) {
+        List<String> messages = new ArrayList<>();
+        double lat = 48.8566;
+        double lon = 2.3522;
+        for (int i = 0; i < seconds; i++) {
+            clock.addAndGet(1000);
+            lat += speed * 0.7071 / 111_320;
+            lon += speed * 0.7071 / (111_320 * Math.cos(Math.toRadians(lat)));
+            LocationFix fix = new LocationFix(lat, lon, 5f, clock.get());
+            tracker.onFix(fix);
+            FakeSmsGateway.Send send = gateway.sends.poll();
+            if (send != null) {
+                messages.add(send.parts.get(0));
+                sentFixes.add(fix);
+            }
+        }
+        return messages;
+    }
+
+    private static void assertSingleGsm7Segment(String text) {
+        SmsPayloadEncoder.Count count = SmsPayloadEncoder.count(text);
+        assertEquals(text, SmsPayloadEncoder.Encoding.GSM7, count.getEncoding());
+        assertEquals(text, 1, count.getSegments());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LocationTrailTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // 2024-05-01T00:00:00Z
+    private static final long MAY_FIRST = 1_714_521_600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocationTrail trail;
+
+    @After
+    public void tearDown() {
+        if (trail != null) trail.close();
+    }
+
+    @Test
+    public void roundTripsAtStoredPrecision() throws Exception {
+        trail = LocationTrail.open(folder.getRoot(), LocationTrail.Config.DEFAULT);
+        LocationFix[] walk = walk(MAY_FIRST, 1000, 1000, new Random(1));
+        for (LocationFix fix : walk) {
+            assertTrue(trail.append(fix));
+        }
+
+        List<LocationFix> read = trail.range(Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(walk.length, read.size());
+        for (int i = 0; i < walk.length; i++) {
+            assertEquals(walk[i].getTimeMillis(), read.get(i).getTimeMillis());
+            assertEquals(walk[i].getLatitude(), read.get(i).getLatitude(), 0.5e-6);
+            assertEquals(walk[i].getLongitude(), read.get(i).getLongitude(), 0.5e-6);
+            assertEquals(walk[i].getAccuracyMeters(), read.get(i).getAccuracyMeters(), 0.05);
+        }
+        assertEquals(walk[walk.length - 1].getTimeMillis(), trail.last().getTimeMillis());
+    }
+
+    @Test
+    public void aDayAtOneHertzFitsInAFewBytesPerFix() throws Exception {
+        trail = LocationTrail.open(folder.getRoot(), LocationTrail.Config.DEFAULT);
+        int count = (int) (DAY / 1000);
+        for (LocationFix fix : walk(MAY_FIRST, count, 1000, new Random(2))) {
+            trail.append(fix);
+        }
+        assertEquals(count, trail.size());
+        double bytesPerFix = (double) trail.dataBytes() / count;
+        // Four weeks of this would be well under 10 MB
+        assertTrue("bytes per fix: " + bytesPerFix, bytesPerFix < 4.5);
+    }
+
+    @Test
+    public void rangeLookupsCrossBuckets() throws Exception {
+        trail = LocationTrail.open(folder.getRoot(), LocationTrail.Config.DEFAULT);
+        // Three days, one fix a minute
+        LocationFix[] walk = walk(MAY_FIRST, 3 * 24 * 60, 60_000, new Random(3));
+        for (LocationFix fix : walk) {
+            trail.append(fix);
+        }
+        assertEquals(3, trail.bucketCount());
+
+        long from = MAY_FIRST + DAY - TimeUnit.HOURS.toMillis(1);
+        long to = MAY_FIRST + DAY + TimeUnit.HOURS.toMillis(1);
+        List<LocationFix> read = trail.range(from, to, Integer.MAX_VALUE);
+        assertEquals(121, read.size());
+        assertEquals(from, read.get(0).getTimeMillis());
+        assertEquals(to, read.get(120).getTimeMillis());
+
+        // Mid-bucket start that is not on a keyframe
+        List<LocationFix> limited = trail.range(MAY_FIRST + 300 * 60_000L, Long.MAX_VALUE, 5);
+        assertEquals(5, limited.size());
+        assertEquals(MAY_FIRST + 300 * 60_000L, limited.get(0).getTimeMillis());
+        assertEquals(walk[300].getLatitude(), limited.get(0).getLatitude(), 0.5e-6);
+
+        assertTrue(trail.range(MAY_FIRST - DAY, MAY_FIRST - 1, 10).isEmpty());
+    }
+
+    @Test
+    public void dropsDuplicatesAndOutOfOrderFixes() throws Exception {
+        trail = LocationTrail.open(folder.getRoot(), LocationTrail.Config.DEFAULT);
+        assertTrue(trail.append(new LocationFix(48.8566, 2.3522, 5f, MAY_FIRST + 2000)));
+        assertFalse(trail.append(new LocationFix(48.8566, 2.3522, 5f, MAY_FIRST + 2000)));
+        assertFalse(trail.append(new LocationFix(48.8, 2.3, 50f, MAY_FIRST + 1000)));
+        assertTrue(trail.append(new LocationFix(48.8567, 2.3523, 4f, MAY_FIRST + 3000)));
+        assertEquals(2, trail.size());
+    }
+
+    @Test
+    public void survivesReopenAndATornHeader() throws Exception {
+        File dir = folder.getRoot();
+        trail = LocationTrail.open(dir, LocationTrail.Config.DEFAULT);
+        LocationFix[] walk = walk(MAY_FIRST, 1000, 1000, new Random(4));
+        for (int i = 0; i < 600; i++) {
+            trail.append(walk[i]);
+        }
+        trail.close();
+
+        trail = LocationTrail.open(dir, LocationTrail.Config.DEFAULT);
+        assertEquals(600, trail.size());
+        assertEquals(walk[599].getTimeMillis(), trail.last().getTimeMillis());
+        // Appending continues the delta chain where it stopped
+        for (int i = 600; i < walk.length; i++) {
+            assertTrue(trail.append(walk[i]));
+        }
+        trail.close();
+
+        // A header claiming more fixes than were written, as after a power cut
+        File bucket = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(bucket, "rw")) {
+            raf.seek(16);
+            raf.writeInt(5000);
+        }
+        trail = LocationTrail.open(dir, LocationTrail.Config.DEFAULT);
+        List<LocationFix> read = trail.range(Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(walk.length, read.size());
+        assertEquals(walk[999].getLatitude(), read.get(999).getLatitude(), 0.5e-6);
+    }
+
+    @Test
+    public void retentionDeletesWholeBuckets() throws Exception {
+        trail = LocationTrail.open(folder.getRoot(), new LocationTrail.Config(DAY, 7 * DAY));
+        for (LocationFix fix : walk(MAY_FIRST, 10 * 24, TimeUnit.HOURS.toMillis(1), new Random(5))) {
+            trail.append(fix);
+        }
+        // The current day plus seven full days
+        assertEquals(8, trail.bucketCount());
+        assertEquals(8, folder.getRoot().listFiles().length);
+        assertEquals(8 * 24, trail.size());
+        assertTrue(trail.range(MAY_FIRST, MAY_FIRST + 2 * DAY - 1, 10).isEmpty());
+    }
+
+    @Test
+    public void exportsGpxAndCsvInTimeOrder() throws Exception {
+        trail = LocationTrail.open(folder.getRoot(), LocationTrail.Config.DEFAULT);
+        trail.append(new LocationFix(48.8566, 2.3522, 4.5f, MAY_FIRST + 1_500));
+        trail.append(new LocationFix(-33.8688, 151.2093, 12f, MAY_FIRST + DAY + 61_000));
+
+        StringWriter csv = new StringWriter();
+        assertEquals(2, trail.export(Long.MIN_VALUE, Long.MAX_VALUE, LocationTrail.Format.CSV, csv));
+        assertEquals("time_utc,epoch_ms,latitude,longitude,accuracy_m\n"
+                + "2024-05-01T00:00:01.500Z,1714521601500,48.856600,2.352200,4.5\n"
+                + "2024-05-02T00:01:01.000Z,1714608061000,-33.868800,151.209300,12.0\n", csv.toString());
+
+        StringWriter gpx = new StringWriter();
+        assertEquals(1, trail.export(MAY_FIRST + DAY, Long.MAX_VALUE, LocationTrail.Format.GPX, gpx));
+        assertTrue(gpx.toString(), gpx.toString().contains(
+                "<trkpt lat=\"-33.868800\" lon=\"151.209300\"><time>2024-05-02T00:01:01.000Z</time></trkpt>"));
+        assertTrue(gpx.toString().endsWith("</trkseg></trk>\n</gpx>\n"));
+    }
+
+    @Test
+    public void varintsRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        long[] out = new long[1];
+        for (long value : new long[]{0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            int end = LocationTrail.putVarint(buffer, 0, LocationTrail.zigzag(value));
+            assertEquals(end, LocationTrail.getVarint(buffer, 0, end, out));
+            assertEquals(value, LocationTrail.unzigzag(out[0]));
+        }
+        assertEquals(1, LocationTrail.putVarint(buffer, 0, LocationTrail.zigzag(-64)));
+    }
+
+    /** A walker at about 1.4 m/s with GPS jitter on position, time and accuracy. */
+    static LocationFix[] walk(long startMillis, int count, long stepMillis, Random random) {
+        LocationFix[] fixes = new LocationFix[count];
+        double lat = 48.8566;
+        double lon = 2.3522;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < count; i++) {
+            heading += random.nextGaussian() * 0.1;
+            lat += Math.cos(heading) * 1.3e-5 * stepMillis / 1000 + random.nextGaussian() * 2e-6;
+            lon += Math.sin(heading) * 1.9e-5 * stepMillis / 1000 + random.nextGaussian() * 2e-6;
+            long jitter = stepMillis >= 60_000 ? 0 : random.nextInt(21) - 10;
+            float accuracy = 3.5f + (float) Math.abs(random.nextGaussian());
+            fixes[i] = new LocationFix(lat, lon, accuracy, startMillis + i * stepMillis + (i > 0 ? jitter : 0));
+        }
+        return fixes;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoggerTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final Logger.Sink capture = (level, tag, message, error) ->
+            lines.add(level + " " + tag + " " + message + (error != null ? " !" + error.getMessage() : ""));
+
+    @After
+    public void restore() {
+        Logger.configure(Logger.Level.INFO, Logger.STDERR);
+    }
+
+    @Test
+    public void disabledLevelsNeverFormatArguments() {
+        Logger.configure(Logger.Level.INFO, capture);
+        Logger log = Logger.get("Test");
+        Object explosive = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("formatted while disabled");
+            }
+        };
+
+        log.d("value {}", explosive);
+        log.d("values {} {} {}", explosive, explosive, explosive);
+        assertFalse(log.isDebugEnabled());
+        assertTrue(lines.isEmpty());
+
+        log.i("kept {}", 1);
+        assertEquals(1, lines.size());
+        assertEquals("INFO Test kept 1", lines.get(0));
+    }
+
+    @Test
+    public void formatsPlaceholdersInOrder() {
+        Logger.configure(Logger.Level.DEBUG, capture);
+        Logger log = Logger.get("Test");
+
+        log.d("{} then {} then {}", "a", 2, null);
+        log.w("no placeholders", new IllegalStateException("boom"));
+        log.e("dangling {} {}", "x");
+
+        assertEquals("DEBUG Test a then 2 then null", lines.get(0));
+        assertEquals("WARN Test no placeholders !boom", lines.get(1));
+        assertEquals("ERROR Test dangling x null", lines.get(2));
+        assertEquals(Logger.Level.DEBUG, Logger.getLevel());
+    }
+
+    @Test
+    public void maskedPlaceholderHidesAllButTheLastDigits() {
+        assertEquals("from ***67", Logger.format("from {*}", "+33612345567", null, null));
+        assertEquals("from ***", Logger.format("from {*}", "7", null, null));
+        assertEquals("{x} ***89 {", Logger.format("{x} {*} {", "0123456789", null, null));
+    }
+}
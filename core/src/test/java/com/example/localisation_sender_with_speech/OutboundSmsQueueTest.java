@@ -0,0 +1,335 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class OutboundSmsQueueTest {
+
+    private static final OutboundSmsQueue.RetryPolicy FAST_RETRY = new OutboundSmsQueue.RetryPolicy(3, 10, 40, 60_000, 60_000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final OutboundSmsQueue.Listener listener = new OutboundSmsQueue.Listener() {
+        @Override
+        public void onSent(long id, long latencyMillis) {
+            events.add("sent " + id + " " + latencyMillis);
+        }
+
+        @Override
+        public void onDelivered(long id, long latencyMillis) {
+            events.add("delivered " + id + " " + latencyMillis);
+        }
+
+        @Override
+        public void onFailed(long id, String reason) {
+            events.add("failed " + id);
+        }
+
+        @Override
+        public void onJournalError(IOException e) {
+            events.add("journal " + e.getMessage());
+        }
+    };
+
+    private ScheduledExecutorService scheduler;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        journalFile = new File(folder.getRoot(), "outbound.journal");
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private OutboundSmsQueue newQueue(SmsGateway gateway, OutboundSmsQueue.RetryPolicy policy) {
+        OutboundSmsQueue queue = new OutboundSmsQueue(gateway, new OutboundJournal(journalFile), scheduler,
+                policy, clock::get, listener);
+        queue.start();
+        return queue;
+    }
+
+    private String nextEvent() throws InterruptedException {
+        String event = events.poll(5, TimeUnit.SECONDS);
+        if (event == null) throw new AssertionError("No event");
+        return event;
+    }
+
+    @Test
+    public void tracksEveryPartUntilDelivered() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+
+        long id = queue.enqueue("+33600000000", Arrays.asList("part one", "part two"));
+        FakeSmsGateway.Send send = gateway.next();
+        assertEquals(id, send.id);
+        assertEquals(Arrays.asList("part one", "part two"), send.parts);
+        assertEquals(1, queue.depth());
+
+        clock.addAndGet(300);
+        queue.onSent(id, send.attempt, 0, OutboundSmsQueue.SendResult.OK);
+        queue.onSent(id, send.attempt, 0, OutboundSmsQueue.SendResult.OK);
+        assertEquals(1, queue.depth());
+        queue.onSent(id, send.attempt, 1, OutboundSmsQueue.SendResult.OK);
+        assertEquals("sent " + id + " 300", nextEvent());
+        assertEquals(0, queue.depth());
+        assertEquals(1, queue.awaitingDeliveryCount());
+
+        clock.addAndGet(2_000);
+        queue.onDelivered(id, 1, true);
+        queue.onDelivered(id, 0, true);
+        assertEquals("delivered " + id + " 2300", nextEvent());
+        assertEquals(0, queue.awaitingDeliveryCount());
+        assertEquals(1, queue.deliveredCount());
+    }
+
+    @Test
+    public void retriesTransientFailuresAndIgnoresStaleAttempts() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+
+        long id = queue.enqueue("+33600000000", Collections.singletonList("hello"));
+        FakeSmsGateway.Send first = gateway.next();
+        queue.onSent(id, first.attempt, 0, OutboundSmsQueue.SendResult.RETRY);
+
+        FakeSmsGateway.Send second = gateway.next();
+        assertEquals(first.attempt + 1, second.attempt);
+        assertEquals(1, queue.retryCount());
+
+        // A late success for the abandoned attempt doesn't complete the message
+        queue.onSent(id, first.attempt, 0, OutboundSmsQueue.SendResult.OK);
+        assertEquals(1, queue.depth());
+
+        queue.onSent(id, second.attempt, 0, OutboundSmsQueue.SendResult.OK);
+        assertTrue(nextEvent().startsWith("sent " + id));
+        assertEquals(1, queue.sentCount());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+
+        long id = queue.enqueue("+33600000000", Collections.singletonList("hello"));
+        for (int i = 0; i < 3; i++) {
+            FakeSmsGateway.Send send = gateway.next();
+            queue.onSent(id, send.attempt, 0, OutboundSmsQueue.SendResult.RETRY);
+        }
+        assertEquals("failed " + id, nextEvent());
+        assertEquals(0, queue.depth());
+        assertEquals(1, queue.failedCount());
+    }
+
+    @Test
+    public void permanentFailureIsNotRetried() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+
+        long id = queue.enqueue("+33600000000", Collections.singletonList("hello"));
+        queue.onSent(id, gateway.next().attempt, 0, OutboundSmsQueue.SendResult.FAILED);
+        assertEquals("failed " + id, nextEvent());
+        assertNull(gateway.sends.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void retriesWhenNoResultArrives() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, new OutboundSmsQueue.RetryPolicy(3, 10, 40, 50, 60_000));
+
+        long id = queue.enqueue("+33600000000", Collections.singletonList("hello"));
+        assertEquals(1, gateway.next().attempt);
+        FakeSmsGateway.Send retry = gateway.next();
+        assertEquals(2, retry.attempt);
+        queue.onSent(id, retry.attempt, 0, OutboundSmsQueue.SendResult.OK);
+        assertTrue(nextEvent().startsWith("sent " + id));
+    }
+
+    @Test
+    public void resendsUnconfirmedMessagesAfterRestart() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+        long sent = queue.enqueue("+33600000001", Collections.singletonList("already sent"));
+        queue.onSent(sent, gateway.next().attempt, 0, OutboundSmsQueue.SendResult.OK);
+        long unsent = queue.enqueue("+33600000002", Arrays.asList("never", "confirmed"));
+        gateway.next();
+
+        // Simulated process death: a new queue over the same journal
+        FakeSmsGateway restarted = new FakeSmsGateway();
+        OutboundSmsQueue recovered = newQueue(restarted, FAST_RETRY);
+        FakeSmsGateway.Send resend = restarted.next();
+        assertEquals(unsent, resend.id);
+        assertEquals(2, resend.attempt);
+        assertEquals(Arrays.asList("never", "confirmed"), resend.parts);
+        assertEquals(1, recovered.depth());
+        assertEquals(1, recovered.awaitingDeliveryCount());
+        assertNull(restarted.sends.poll(100, TimeUnit.MILLISECONDS));
+
+        // Ids keep increasing, and a late delivery report for the old message still counts
+        assertTrue(recovered.enqueue("+33600000003", Collections.singletonList("new")) > unsent);
+        events.clear();
+        recovered.onDelivered(sent, 0, true);
+        assertTrue(nextEvent().startsWith("delivered " + sent));
+    }
+
+    @Test
+    public void restartsCountAgainstTheRetryBudget() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        long id = newQueue(gateway, FAST_RETRY).enqueue("+33600000000", Collections.singletonList("hello"));
+        assertEquals(1, gateway.next().attempt);
+        for (int attempt = 2; attempt <= 3; attempt++) {
+            // Simulated process death before the radio reported back
+            newQueue(gateway, FAST_RETRY);
+            FakeSmsGateway.Send resend = gateway.next();
+            assertEquals(id, resend.id);
+            assertEquals(attempt, resend.attempt);
+        }
+
+        // Out of attempts: the next restart gives up instead of sending a fourth time
+        OutboundSmsQueue last = newQueue(gateway, FAST_RETRY);
+        assertEquals("failed " + id, nextEvent());
+        assertNull(gateway.sends.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, last.depth());
+        assertEquals(0, newQueue(gateway, FAST_RETRY).depth());
+    }
+
+    @Test
+    public void messagesTooOldAfterARestartFailInsteadOfGoingOut() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        long id = newQueue(gateway, FAST_RETRY).enqueue("+33600000000", Collections.singletonList("stale fix"));
+        gateway.next();
+
+        clock.addAndGet(61_000);
+        FakeSmsGateway restarted = new FakeSmsGateway();
+        OutboundSmsQueue recovered = newQueue(restarted, FAST_RETRY);
+        assertEquals("failed " + id, nextEvent());
+        assertNull(restarted.sends.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, recovered.depth());
+        assertEquals(1, recovered.failedCount());
+    }
+
+    @Test
+    public void enqueueWaitsForABackgroundReplay() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+        long unsent = queue.enqueue("+33600000002", Collections.singletonList("never confirmed"));
+        gateway.next();
+
+        // Hold the scheduler so the replay can't have run when enqueue is called
+        CountDownLatch gate = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        FakeSmsGateway restarted = new FakeSmsGateway();
+        OutboundSmsQueue recovered = new OutboundSmsQueue(restarted, new OutboundJournal(journalFile), scheduler,
+                FAST_RETRY, clock::get, listener);
+        recovered.startInBackground();
+        BlockingQueue<Long> ids = new LinkedBlockingQueue<>();
+        Thread caller = new Thread(() -> ids.add(recovered.enqueue("+33600000003", Collections.singletonList("new"))));
+        caller.start();
+        assertNull(ids.poll(100, TimeUnit.MILLISECONDS));
+
+        gate.countDown();
+        long id = ids.poll(5, TimeUnit.SECONDS);
+        assertTrue(id > unsent);
+        // The resend and the new message, in either order
+        assertEquals(unsent + id, restarted.next().id + restarted.next().id);
+        caller.join();
+    }
+
+    @Test
+    public void reportsFromTheMainThreadAreHandledOnTheScheduler() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+        long id = queue.enqueue("+33600000000", Collections.singletonList("hello"));
+        FakeSmsGateway.Send send = gateway.next();
+
+        BlockingQueue<Thread> done = new LinkedBlockingQueue<>();
+        queue.reportSent(id, send.attempt, 0, OutboundSmsQueue.SendResult.OK, () -> done.add(Thread.currentThread()));
+        Thread reporter = done.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reporter);
+        assertNotSame(Thread.currentThread(), reporter);
+        assertTrue(nextEvent().startsWith("sent " + id));
+
+        queue.reportDelivered(id, 0, true, () -> done.add(Thread.currentThread()));
+        assertSame(reporter, done.poll(5, TimeUnit.SECONDS));
+        assertTrue(nextEvent().startsWith("delivered " + id));
+
+        // Once the queue is gone the broadcast is still finished
+        scheduler.shutdownNow();
+        queue.reportDelivered(id, 0, true, () -> done.add(Thread.currentThread()));
+        assertSame(Thread.currentThread(), done.poll());
+    }
+
+    @Test
+    public void journalKeepsAppendingAfterAFailedCompaction() throws Exception {
+        OutboundJournal journal = new OutboundJournal(journalFile);
+        journal.open();
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        try {
+            journal.compact(Collections.<OutboundJournal.Entry>emptyList());
+            fail();
+        } catch (IOException expected) {
+        }
+        journal.appendEnqueued(7, 1_000, "+33600000000", Collections.singletonList("hello"));
+        journal.appendSent(7);
+        journal.close();
+        assertTrue(tmp.delete());
+
+        List<OutboundJournal.Entry> live = new OutboundJournal(journalFile).open();
+        assertEquals(1, live.size());
+        assertEquals(7, live.get(0).id);
+        assertTrue(live.get(0).sent);
+    }
+
+    @Test(expected = IOException.class)
+    public void appendingToAJournalThatIsNotOpenFails() throws Exception {
+        new OutboundJournal(journalFile).appendSent(1);
+    }
+
+    @Test
+    public void ignoresTornTailOfJournal() throws Exception {
+        FakeSmsGateway gateway = new FakeSmsGateway();
+        OutboundSmsQueue queue = newQueue(gateway, FAST_RETRY);
+        long id = queue.enqueue("+33600000000", Collections.singletonList("hello"));
+        gateway.next();
+
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(new byte[] {1, 0, 0, 0});
+        }
+
+        FakeSmsGateway restarted = new FakeSmsGateway();
+        newQueue(restarted, FAST_RETRY);
+        assertEquals(id, restarted.next().id);
+        assertNull(restarted.sends.poll(100, TimeUnit.MILLISECONDS));
+    }
+}
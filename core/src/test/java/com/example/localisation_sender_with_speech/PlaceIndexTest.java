@@ -0,0 +1,171 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlaceIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final LocationFix EIFFEL_TOWER = new LocationFix(48.858370, 2.294481, 12.34f, 0);
+
+    private PlaceIndex write(PlaceIndex.Writer writer) throws IOException {
+        File file = folder.newFile();
+        writer.writeTo(file);
+        return PlaceIndex.open(file);
+    }
+
+    private PlaceIndex france() throws IOException {
+        return write(new PlaceIndex.Writer(0.5)
+                .add("Paris", 48.85341, 2.3488)
+                .add("Versailles", 48.80359, 2.13424)
+                .add("Lyon", 45.74846, 4.84671)
+                .add("Bron", 45.73865, 4.91303));
+    }
+
+    @Test
+    public void findsTheNearestPlace() throws IOException {
+        PlaceIndex index = france();
+        assertEquals(4, index.size());
+
+        PlaceIndex.Place place = index.nearest(EIFFEL_TOWER.getLatitude(), EIFFEL_TOWER.getLongitude());
+        assertEquals("Paris", place.getName());
+        assertEquals(4003, place.getDistanceMeters(), 20);
+        assertEquals("Paris, 4.0 km", place.toString());
+        assertEquals("Versailles", index.nearest(48.79, 2.10).getName());
+        assertEquals("Bron", index.nearest(45.74, 4.90).getName());
+    }
+
+    @Test
+    public void namesNothingBeyondTheRadius() throws IOException {
+        PlaceIndex index = france();
+        // Orleans is over 100 km from Versailles
+        assertNull(index.nearest(47.90, 1.90));
+        assertEquals("Versailles", index.nearest(47.90, 1.90, 150_000).getName());
+        assertNull(index.nearest(EIFFEL_TOWER.getLatitude(), EIFFEL_TOWER.getLongitude(), 1000));
+        assertNull(index.nearest(Double.NaN, 2.35));
+        assertNull(write(new PlaceIndex.Writer(1)).nearest(48.85, 2.35));
+    }
+
+    @Test
+    public void searchesAcrossCellsTheAntimeridianAndThePoles() throws IOException {
+        PlaceIndex index = write(new PlaceIndex.Writer(1)
+                .add("East", -17.0, 179.95)
+                .add("West", -17.0, -179.5)
+                .add("Cell edge", 45.999, 7.001)
+                .add("Pole", 89.99, 0));
+        PlaceIndex.Place east = index.nearest(-17.0, -179.98);
+        assertEquals("East", east.getName());
+        assertEquals(7450, east.getDistanceMeters(), 50);
+        assertEquals("West", index.nearest(-17.0, 180.0 - 360.0 + 0.3).getName());
+        assertEquals("Cell edge", index.nearest(46.001, 6.999).getName());
+        // A degree of longitude is nothing up there
+        assertEquals("Pole", index.nearest(89.9, 120).getName());
+    }
+
+    @Test
+    public void keepsNamesAsWritten() throws IOException {
+        PlaceIndex index = write(new PlaceIndex.Writer(0.5)
+                .add("Zürich", 47.36667, 8.55)
+                .add("São Paulo", -23.5475, -46.63611)
+                .add("Springfield", 39.80172, -89.64371)
+                .add("Springfield", 37.21533, -93.29824));
+        assertEquals("Zürich", index.nearest(47.37, 8.54).getName());
+        assertEquals("São Paulo", index.nearest(-23.55, -46.63).getName());
+        assertEquals(-93.29824, index.nearest(37.2, -93.3).getLongitude(), 1e-6);
+        assertEquals("Springfield", index.nearest(39.8, -89.6).getName());
+    }
+
+    @Test
+    public void matchesABruteForceSearch() throws IOException {
+        Random random = new Random(7);
+        PlaceIndex.Writer writer = new PlaceIndex.Writer(0.5);
+        double[][] places = new double[2000][];
+        for (int i = 0; i < places.length; i++) {
+            places[i] = new double[] {44 + random.nextDouble() * 4, -1 + random.nextDouble() * 8};
+            writer.add("P" + i, places[i][0], places[i][1]);
+        }
+        PlaceIndex index = write(writer);
+
+        for (int q = 0; q < 500; q++) {
+            double lat = 44 + random.nextDouble() * 4;
+            double lon = -1 + random.nextDouble() * 8;
+            double cos = Math.cos(Math.toRadians(lat));
+            int nearest = -1;
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < places.length; i++) {
+                double dy = places[i][0] - lat;
+                double dx = (places[i][1] - lon) * cos;
+                if (dx * dx + dy * dy < best) {
+                    best = dx * dx + dy * dy;
+                    nearest = i;
+                }
+            }
+            assertEquals("P" + nearest, index.nearest(lat, lon).getName());
+        }
+    }
+
+    @Test
+    public void formatsDistances() {
+        assertEquals("Bron, 800 m", new PlaceIndex.Place("Bron", 0, 0, 803).toString());
+        assertEquals("Bron, 1.0 km", new PlaceIndex.Place("Bron", 0, 0, 996).toString());
+        assertEquals("Lyon, 3.2 km", new PlaceIndex.Place("Lyon", 0, 0, 3160).toString());
+        assertEquals("Vienne, 10 km", new PlaceIndex.Place("Vienne", 0, 0, 9960).toString());
+        assertEquals("Vienne, 24 km", new PlaceIndex.Place("Vienne", 0, 0, 24_400).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCellsThatDoNotTileTheGlobe() {
+        new PlaceIndex.Writer(0.7);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNamesOverALengthByte() {
+        new PlaceIndex.Writer(0.5).add(new String(new char[256]).replace('\0', 'a'), 1, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNotAnIndex() throws IOException {
+        File junk = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(junk)) {
+            out.write(new byte[64]);
+        }
+        PlaceIndex.open(junk);
+    }
+
+    @Test
+    public void repliesNameTheNearestPlaceWhenThereIsOne() throws IOException {
+        PlaceIndex index = france();
+        ResponseRenderer renderer = new ResponseRenderer(PlaceIndexTest::noSplit, () -> index);
+        SmsPayloadEncoder plan = SmsPayloadEncoder.autoReply(1, 5, true, false);
+
+        ResponseRenderer.Rendered rendered = renderer.render(plan, EIFFEL_TOWER, 0);
+        assertEquals("My location: 48.85837,2.29448 (accuracy 12m), near Paris, 4.0 km."
+                + " maps.google.com/?q=48.85837,2.29448 Auto-reply", rendered.getText());
+        assertEquals(1, rendered.getCount().getSegments());
+        assertSame(ResponseTemplate.AUTO_REPLY_PLAIN_NEAR,
+                renderer.render(SmsPayloadEncoder.autoReply(2, 5, true, false), EIFFEL_TOWER, 0).getTemplate());
+
+        // Nothing close enough: the same ladder without the place
+        LocationFix atSea = new LocationFix(46.5, -5.0, 10f, 0);
+        assertEquals("My location: 46.5,-5 (accuracy 10m). maps.google.com/?q=46.5,-5 Auto-reply",
+                renderer.render(plan, atSea, 0).getText());
+        assertNull(new ResponseRenderer(PlaceIndexTest::noSplit).placeNear(EIFFEL_TOWER));
+    }
+
+    private static ArrayList<String> noSplit(String text) {
+        ArrayList<String> parts = new ArrayList<>();
+        parts.add(text);
+        return parts;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ResponderConfigTest {
+
+    private static ResponderConfig config(AllowList allowList) {
+        return new ResponderConfig(true, true, true,
+                FuzzyPhraseMatcher.compile("where are you"),
+                TriggerPhraseMatcher.compile("sos", "emergency"),
+                AcquisitionPolicy.BALANCED,
+                SmsPayloadEncoder.autoReply(1, 5, true, false),
+                SmsPayloadEncoder.autoReply(1, 5, true, true),
+                allowList, null);
+    }
+
+    private static AllowList allowList(String... contacts) {
+        return AllowList.build(Arrays.asList(contacts), new AddressNormalizer("33"));
+    }
+
+    @Test
+    public void emptyAllowListTrustsEveryone() {
+        ResponderConfig config = config(AllowList.build(Collections.<String>emptyList(), new AddressNormalizer("33")));
+        assertTrue(config.isSenderAllowed("+33612345678"));
+        assertEquals(RequestPriority.TRUSTED, config.priorityOf("+33612345678", "where are you"));
+        assertEquals(RequestPriority.EMERGENCY, config.priorityOf("+33612345678", "SOS where are you"));
+    }
+
+    @Test
+    public void allowListGatesAndPrioritizesSenders() {
+        ResponderConfig config = config(allowList("06 12 34 56 78"));
+        assertTrue(config.isSenderAllowed("+33612345678"));
+        assertFalse(config.isSenderAllowed("+33698765432"));
+        assertEquals(RequestPriority.TRUSTED, config.priorityOf("+33612345678", "where are you"));
+        assertEquals(RequestPriority.UNKNOWN, config.priorityOf("+33698765432", "where are you"));
+        assertEquals(RequestPriority.EMERGENCY, config.priorityOf("+33612345678", "SOS where are you"));
+        // A stranger's keyword doesn't get ahead of the contacts
+        assertEquals(RequestPriority.UNKNOWN_EMERGENCY, config.priorityOf("+33698765432", "SOS where are you"));
+        assertTrue(RequestPriority.TRUSTED.outranks(RequestPriority.UNKNOWN_EMERGENCY));
+    }
+
+    @Test
+    public void copiesChangeOnlyTheirField() {
+        ResponderConfig config = config(allowList("06 12 34 56 78"));
+        assertTrue(config.canRespond());
+
+        ResponderConfig disabled = config.withEnabled(false);
+        assertFalse(disabled.canRespond());
+        assertSame(config.getAllowList(), disabled.getAllowList());
+        assertSame(config.replyPlan(true), disabled.replyPlan(true));
+
+        ResponderConfig noLocation = config.withPermissions(true, false);
+        assertTrue(noLocation.isEnabled());
+        assertFalse(noLocation.canRespond());
+        assertTrue(config.canRespond());
+    }
+}
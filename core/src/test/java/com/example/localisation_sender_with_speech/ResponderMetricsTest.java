@@ -0,0 +1,57 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResponderMetricsTest {
+
+    @Test
+    public void snapshotIsIsolatedFromLaterRecording() {
+        ResponderMetrics metrics = new ResponderMetrics();
+        metrics.recordMillis(ResponderMetrics.Stage.LOCATION, 120);
+        metrics.increment(ResponderMetrics.Counter.MATCHES);
+        metrics.add(ResponderMetrics.Counter.BROADCASTS, 3);
+
+        ResponderMetrics.Snapshot before = metrics.snapshot();
+        metrics.recordMillis(ResponderMetrics.Stage.LOCATION, 80);
+        metrics.increment(ResponderMetrics.Counter.MATCHES);
+
+        assertEquals(1, before.stage(ResponderMetrics.Stage.LOCATION).getCount());
+        assertEquals(1, before.counter(ResponderMetrics.Counter.MATCHES));
+        assertEquals(3, before.counter(ResponderMetrics.Counter.BROADCASTS));
+        assertEquals(2, metrics.snapshot().stage(ResponderMetrics.Stage.LOCATION).getCount());
+        assertEquals(0, before.stage(ResponderMetrics.Stage.RENDER).getCount());
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().counter(ResponderMetrics.Counter.MATCHES));
+        assertEquals(0, metrics.snapshot().stage(ResponderMetrics.Stage.LOCATION).getCount());
+    }
+
+    @Test
+    public void reportListsEveryStageAndCounter() throws Exception {
+        ResponderMetrics metrics = new ResponderMetrics();
+        metrics.recordMillis(ResponderMetrics.Stage.RECEIVE_TO_SEND, 250);
+        metrics.increment(ResponderMetrics.Counter.REPLIES_QUEUED);
+        metrics.increment(ResponderMetrics.Counter.RATE_LIMITED);
+
+        ResponderMetrics.Snapshot snapshot = metrics.snapshot();
+        StringBuilder report = new StringBuilder();
+        snapshot.writeTo(report);
+        String text = report.toString();
+
+        for (ResponderMetrics.Stage stage : ResponderMetrics.Stage.values()) {
+            assertTrue(stage.name(), text.contains(stage.name().toLowerCase() + " "));
+        }
+        for (ResponderMetrics.Counter counter : ResponderMetrics.Counter.values()) {
+            assertTrue(counter.name(), text.contains(counter.name().toLowerCase() + " "));
+        }
+        assertTrue(text.contains("receive_to_send         1"));
+        assertEquals(text, snapshot.toString());
+
+        String summary = snapshot.summary();
+        assertTrue(summary, summary.startsWith("Replies: 1 queued, 0 sent, 0 delivered"));
+        assertTrue(summary, summary.contains("(1 samples)"));
+        assertTrue(summary, summary.contains("1 rate-limited"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResponseRendererTest {
+
+    @Test
+    public void fixedPointMatchesStringFormat() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            double value = (random.nextDouble() * 360) - 180;
+            assertEquals(String.format(Locale.US, "%.6f", value),
+                    FixedPoint.append(new StringBuilder(), value, 6).toString());
+            float accuracy = random.nextFloat() * 2000;
+            assertEquals(String.format(Locale.US, "%.1f", accuracy),
+                    FixedPoint.append(new StringBuilder(), accuracy, 1).toString());
+        }
+        assertEquals("0.000000", FixedPoint.append(new StringBuilder(), 0.0, 6).toString());
+        assertEquals("-0.500000", FixedPoint.append(new StringBuilder(), -0.5, 6).toString());
+        assertEquals("12", FixedPoint.append(new StringBuilder(), 11.5, 0).toString());
+    }
+
+    @Test
+    public void autoReplyMatchesPreviousFormatOutput() {
+        LocationFix fix = new LocationFix(48.858370, 2.294481, 12.34f, 0);
+        String expected = String.format(Locale.US,
+                "📍 My current location:\n" +
+                "Latitude: %.6f\n" +
+                "Longitude: %.6f\n" +
+                "Accuracy: %.1fm\n\n" +
+                "🗺️ Google Maps: https://maps.google.com/?q=%.6f,%.6f\n\n" +
+                "⏰ Sent automatically in response to your request",
+                fix.getLatitude(), fix.getLongitude(), fix.getAccuracyMeters(),
+                fix.getLatitude(), fix.getLongitude());
+        assertEquals(expected, ResponseTemplate.AUTO_REPLY.render(fix, 0, new StringBuilder()).toString());
+    }
+
+    @Test
+    public void rendersAgeForDegradedReplies() {
+        LocationFix fix = new LocationFix(-33.8688, 151.2093, 640f, 0);
+        String degraded = ResponseTemplate.AUTO_REPLY_DEGRADED.render(fix, 14 * 60_000, new StringBuilder()).toString();
+        assertTrue(degraded.endsWith("⚠️ Best available fix: 14 min old, accuracy 640m"));
+        assertTrue(ResponseTemplate.AUTO_REPLY_DEGRADED.isTimeDependent());
+        assertFalse(ResponseTemplate.AUTO_REPLY.isTimeDependent());
+    }
+
+    @Test
+    public void leavesUnknownPlaceholdersAsText() {
+        ResponseTemplate template = ResponseTemplate.compile("{lat} {nope} {");
+        assertEquals("1.000000 {nope} {",
+                template.render(new LocationFix(1, 2, 3, 0), 0, new StringBuilder()).toString());
+    }
+
+    @Test
+    public void rendersAndSplitsOncePerFix() {
+        AtomicInteger splits = new AtomicInteger();
+        ResponseRenderer renderer = new ResponseRenderer(text -> {
+            splits.incrementAndGet();
+            ArrayList<String> parts = new ArrayList<>();
+            for (int i = 0; i < text.length(); i += 67) {
+                parts.add(text.substring(i, Math.min(text.length(), i + 67)));
+            }
+            return parts;
+        });
+        LocationFix fix = new LocationFix(48.85, 2.35, 10f, 0);
+
+        ResponseRenderer.Rendered first = renderer.render(ResponseTemplate.AUTO_REPLY, fix, 0);
+        for (int i = 0; i < 10; i++) {
+            assertSame(first, renderer.render(ResponseTemplate.AUTO_REPLY, fix, i));
+        }
+        assertEquals(1, splits.get());
+        assertTrue(first.isMultipart());
+        assertEquals(first.getText(), String.join("", first.getParts()));
+
+        // A new fix or a time-dependent template renders again
+        renderer.render(ResponseTemplate.AUTO_REPLY, new LocationFix(48.85, 2.35, 10f, 1), 0);
+        renderer.render(ResponseTemplate.AUTO_REPLY_DEGRADED, fix, 0);
+        renderer.render(ResponseTemplate.AUTO_REPLY_DEGRADED, fix, 0);
+        assertEquals(4, splits.get());
+    }
+}
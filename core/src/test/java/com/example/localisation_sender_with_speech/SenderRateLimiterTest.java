@@ -0,0 +1,163 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SenderRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    // Burst of 2, one token per 10s, 1s coalescing window, 60s idle eviction, 100 senders
+    private SenderRateLimiter newLimiter() {
+        return new SenderRateLimiter(new SenderRateLimiter.Config(2, 10_000, 1_000, 60_000, 100), clock::get);
+    }
+
+    @Test
+    public void coalescesRepeatsWithinWindow() {
+        SenderRateLimiter limiter = newLimiter();
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33612345678"));
+        for (int i = 0; i < 4; i++) {
+            clock.addAndGet(200);
+            assertEquals(SenderRateLimiter.Decision.COALESCED, limiter.tryAcquire("+33612345678"));
+        }
+        clock.addAndGet(200);
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33612345678"));
+    }
+
+    @Test
+    public void limitsOnceBucketIsEmptyAndRefills() {
+        SenderRateLimiter limiter = newLimiter();
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33612345678"));
+        clock.addAndGet(1_000);
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33612345678"));
+        clock.addAndGet(1_000);
+        assertEquals(SenderRateLimiter.Decision.LIMITED, limiter.tryAcquire("+33612345678"));
+        clock.addAndGet(7_000);
+        // One token per 10s: 0.9 tokens after 9s, a full one after 10s
+        assertEquals(SenderRateLimiter.Decision.LIMITED, limiter.tryAcquire("+33612345678"));
+        clock.addAndGet(1_000);
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33612345678"));
+    }
+
+    @Test
+    public void chargesLockASenderOutUntilTheyRefill() {
+        SenderRateLimiter limiter = newLimiter();
+        // Two guesses use up the burst, the third goes into debt
+        for (int i = 0; i < 3; i++) {
+            assertFalse(limiter.isLockedOut("+33612345678"));
+            limiter.charge("+33612345678");
+        }
+        assertTrue(limiter.isLockedOut("+33612345678"));
+        assertFalse(limiter.isLockedOut("+33698765432"));
+        clock.addAndGet(10_000);
+        assertFalse(limiter.isLockedOut("+33612345678"));
+        assertEquals(SenderRateLimiter.Decision.LIMITED, limiter.tryAcquire("+33612345678"));
+
+        // The debt is capped, so a lockout never lasts longer than that many refills
+        for (int i = 0; i < 100; i++) {
+            limiter.charge("+33612345678");
+        }
+        clock.addAndGet(SenderRateLimiter.MAX_DEBT_TOKENS * 10_000L);
+        assertFalse(limiter.isLockedOut("+33612345678"));
+    }
+
+    @Test
+    public void keysOnNormalizedAddress() {
+        SenderRateLimiter limiter = newLimiter();
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33 6 12-34-56-78"));
+        assertEquals(SenderRateLimiter.Decision.COALESCED, limiter.tryAcquire("0033612345678"));
+        assertEquals(SenderRateLimiter.Decision.ALLOW, limiter.tryAcquire("+33698765432"));
+        assertEquals(2, limiter.trackedSenders());
+    }
+
+    @Test
+    public void normalizesAddresses() {
+        assertEquals("+33612345678", PhoneNumbers.normalize(" +33 (6) 12.34.56/78 "));
+        assertEquals("+33612345678", PhoneNumbers.normalize("0033612345678"));
+        assertEquals("0612345678", PhoneNumbers.normalize("06 12 34 56 78"));
+        assertEquals("mybank", PhoneNumbers.normalize("MyBank"));
+        assertEquals("", PhoneNumbers.normalize(null));
+    }
+
+    @Test
+    public void evictsIdleSendersAndCapsSize() {
+        SenderRateLimiter limiter = newLimiter();
+        for (int i = 0; i < 50; i++) {
+            limiter.tryAcquire("+3361000" + (1000 + i));
+        }
+        clock.addAndGet(60_000);
+        limiter.tryAcquire("+33699999999");
+        limiter.sweep(clock.get());
+        assertEquals(1, limiter.trackedSenders());
+
+        for (int i = 0; i < 500; i++) {
+            limiter.tryAcquire("+3362000" + (1000 + i));
+            assertTrue(limiter.trackedSenders() <= 100);
+        }
+    }
+
+    @Test
+    public void lockedOutSendersAreNotEvictedWhenIdle() {
+        SenderRateLimiter limiter = newLimiter();
+        for (int i = 0; i < 3 + SenderRateLimiter.MAX_DEBT_TOKENS; i++) {
+            limiter.charge("+33612345678");
+        }
+        // Idle for longer than the eviction timeout, but not long enough to pay off the debt
+        clock.addAndGet(60_000);
+        limiter.sweep(clock.get());
+        assertEquals(1, limiter.trackedSenders());
+        assertTrue(limiter.isLockedOut("+33612345678"));
+
+        // Once it is paid off, the sender goes like any other
+        clock.addAndGet(SenderRateLimiter.MAX_DEBT_TOKENS * 10_000L);
+        limiter.sweep(clock.get());
+        assertEquals(0, limiter.trackedSenders());
+    }
+
+    @Test
+    public void aFloodOfSendersDoesNotPushOutLockedOutOnes() {
+        SenderRateLimiter limiter = newLimiter();
+        for (int i = 0; i < 10; i++) {
+            for (int charge = 0; charge < 3; charge++) {
+                limiter.charge("+3361000" + (1000 + i));
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("+3362000" + (1000 + i));
+            assertTrue(limiter.trackedSenders() <= 110);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.isLockedOut("+3361000" + (1000 + i)));
+        }
+    }
+
+    @Test
+    public void concurrentBurstGetsOneReply() throws Exception {
+        SenderRateLimiter limiter = newLimiter();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SenderRateLimiter.Decision>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return limiter.tryAcquire("+33612345678");
+            }));
+        }
+        start.countDown();
+        int allowed = 0;
+        for (Future<SenderRateLimiter.Decision> result : results) {
+            if (result.get() == SenderRateLimiter.Decision.ALLOW) allowed++;
+        }
+        pool.shutdown();
+        assertEquals(1, allowed);
+    }
+}
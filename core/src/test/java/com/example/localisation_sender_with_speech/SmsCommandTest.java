@@ -0,0 +1,95 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SmsCommandTest {
+
+    @Test
+    public void parsesEachVerb() {
+        assertSame(SmsCommand.LOC, SmsCommand.parse("LOC", null));
+        assertSame(SmsCommand.TRACK, SmsCommand.parse("track", null));
+        assertSame(SmsCommand.STOP, SmsCommand.parse("Stop", null));
+        assertSame(SmsCommand.STATUS, SmsCommand.parse("  status?", null));
+    }
+
+    @Test
+    public void parsesArguments() {
+        SmsCommand loc = SmsCommand.parse("loc acc<20", null);
+        assertEquals(SmsCommand.Verb.LOC, loc.getVerb());
+        assertEquals(20, loc.getAccuracyMeters());
+        assertEquals(15, SmsCommand.parse("LOC ACC<15M", null).getAccuracyMeters());
+
+        assertEquals(TimeUnit.HOURS.toMillis(2), SmsCommand.parse("TRACK 2H", null).getDurationMillis());
+        assertEquals(TimeUnit.MINUTES.toMillis(45), SmsCommand.parse("track 45m", null).getDurationMillis());
+        assertEquals("TRACK 120M", SmsCommand.parse("TRACK 2H", null).toString());
+    }
+
+    @Test
+    public void rejectsBadArguments() {
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("LOC now", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("LOC ACC<", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("LOC ACC<0", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("LOC ACC<10000", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("LOC ACC<20 please", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("TRACK 2", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("TRACK 0M", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("TRACK 5H", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("TRACK 99999999999M", null));
+        assertSame(SmsCommand.MALFORMED, SmsCommand.parse("STATUS now", null));
+    }
+
+    @Test
+    public void ordinaryMessagesAreNotCommands() {
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("Where are you?", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("location please", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("Tracking number 12345", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("123 LOC", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("?!", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse(null, null));
+        // Past the length cap nothing is read
+        assertSame(SmsCommand.LOC, SmsCommand.parse(String.format("%-40s", "LOC"), null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse(String.format("%-41s", "LOC"), null));
+    }
+
+    @Test
+    public void stopTakesOnlyTracking() {
+        assertSame(SmsCommand.STOP, SmsCommand.parse("Stop tracking.", null));
+        assertSame(SmsCommand.STOP, SmsCommand.parse("STOP!!", "4821"));
+        assertSame(SmsCommand.STOP, SmsCommand.parse("4821 STOP TRACKING", "4821"));
+        // Sentences that start with "stop" go on to phrase matching
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("stop tracking please", null));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("Stop by the bakery, where are you?", "4821"));
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("stop it", null));
+    }
+
+    @Test
+    public void pinIsRequiredWhenConfigured() {
+        assertSame(SmsCommand.LOC, SmsCommand.parse("4821 LOC", "4821"));
+        assertEquals(30, SmsCommand.parse("4821 loc acc<30", "4821").getAccuracyMeters());
+        assertSame(SmsCommand.BAD_PIN, SmsCommand.parse("LOC", "4821"));
+        assertSame(SmsCommand.BAD_PIN, SmsCommand.parse("4822 LOC", "4821"));
+        assertSame(SmsCommand.BAD_PIN, SmsCommand.parse("48210 STATUS", "4821"));
+        // A PIN that isn't configured is simply ignored
+        assertSame(SmsCommand.STATUS, SmsCommand.parse("1234 STATUS", null));
+        // Junk is still junk, PIN or not
+        assertSame(SmsCommand.NOT_A_COMMAND, SmsCommand.parse("4821 where are you", "4821"));
+        assertTrue(SmsCommand.startsWithPin("4821 where are you", "4821"));
+        assertFalse(SmsCommand.startsWithPin("48211 where are you", "4821"));
+        assertFalse(SmsCommand.startsWithPin("where are you 4821", "4821"));
+    }
+
+    @Test
+    public void validatesPins() {
+        assertTrue(SmsCommand.isValidPin("0000"));
+        assertTrue(SmsCommand.isValidPin("12345678"));
+        assertFalse(SmsCommand.isValidPin("123"));
+        assertFalse(SmsCommand.isValidPin("123456789"));
+        assertFalse(SmsCommand.isValidPin("12a4"));
+        assertFalse(SmsCommand.isValidPin(null));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SmsMessageAssemblerTest {
+
+    private static final TriggerPhraseMatcher TRIGGERS = TriggerPhraseMatcher.compile(
+            "give me your location", "send location", "where are you", "share location",
+            "your location", "location please", "send me location");
+
+    @Test
+    public void decodesReferencePdu() {
+        SmsPdu pdu = SmsPdu.decode(SmsPduFixtures.hex(
+                "07917283010010F5040BC87238880900F10000993092516195800AE8329BFD4697D9EC37"));
+        assertEquals("27838890001", pdu.getOriginatingAddress());
+        assertEquals("hellohello", pdu.getBody());
+        assertFalse(pdu.isConcatenated());
+    }
+
+    @Test
+    public void roundTripsGsm7AndUcs2Bodies() {
+        String gsm = "Où es-tu? {Ça va} 5€ @home";
+        assertEquals(gsm, SmsPdu.decode(SmsPduFixtures.gsm7("+33780542575", gsm)).getBody());
+        String unicode = "Где ты? 📍";
+        SmsPdu pdu = SmsPdu.decode(SmsPduFixtures.ucs2("0612345678", unicode));
+        assertEquals(unicode, pdu.getBody());
+        assertEquals("0612345678", pdu.getOriginatingAddress());
+    }
+
+    @Test
+    public void readsConcatenationHeaders() {
+        List<byte[]> pdus = SmsPduFixtures.concatenated("+33780542575", "abcdefghij", 4, 0x1234, false, true);
+        SmsPdu second = SmsPdu.decode(pdus.get(1));
+        assertEquals(0x1234, second.getReference());
+        assertEquals(2, second.getSequence());
+        assertEquals(3, second.getPartCount());
+        assertEquals("efgh", second.getBody());
+    }
+
+    @Test
+    public void findsTriggerStraddlingPartBoundary() {
+        String text = "Hi, I'm at the station but can't see you. Where are you exactly?";
+        int split = text.indexOf("are you") - 3;
+        List<byte[]> pdus = SmsPduFixtures.concatenated("+33780542575", text, split, 7, false, false);
+        // Each part on its own misses the trigger
+        for (byte[] pdu : pdus) {
+            assertFalse(TRIGGERS.matches(SmsPdu.decode(pdu).getBody()));
+        }
+
+        List<SmsMessageAssembler.InboundMessage> messages = SmsMessageAssembler.assemble(decode(pdus));
+        assertEquals(1, messages.size());
+        assertEquals(text, messages.get(0).getBody());
+        assertTrue(TRIGGERS.matches(messages.get(0).getBody()));
+    }
+
+    @Test
+    public void repeatedTriggerAcrossPartsYieldsOneMessage() {
+        String text = "send location please. I repeat, send location now, it's urgent!!";
+        List<byte[]> pdus = SmsPduFixtures.concatenated("+447700900123", text, 30, 200, true, false);
+        assertEquals(3, pdus.size());
+
+        List<SmsMessageAssembler.InboundMessage> messages = SmsMessageAssembler.assemble(decode(pdus));
+        assertEquals(1, messages.size());
+        assertEquals(3, messages.get(0).getPartCount());
+        assertEquals(text, messages.get(0).getBody());
+    }
+
+    @Test
+    public void reordersPartsAndDropsDuplicates() {
+        String text = "could you share location with me when you get there?";
+        List<byte[]> pdus = SmsPduFixtures.concatenated("+33780542575", text, 10, 9, false, false);
+        List<SmsPdu> parts = decode(pdus);
+        parts.add(parts.get(2));
+        Collections.reverse(parts);
+
+        List<SmsMessageAssembler.InboundMessage> messages = SmsMessageAssembler.assemble(parts);
+        assertEquals(1, messages.size());
+        assertEquals(text, messages.get(0).getBody());
+    }
+
+    @Test
+    public void keepsSendersApart() {
+        List<byte[]> pdus = new ArrayList<>();
+        List<byte[]> first = SmsPduFixtures.concatenated("+33780542575", "where are you?", 6, 1, false, false);
+        List<byte[]> second = SmsPduFixtures.concatenated("+33600000001", "dinner at eight", 6, 1, false, false);
+        for (int i = 0; i < 3; i++) {
+            pdus.add(first.get(i));
+            pdus.add(second.get(i));
+        }
+
+        List<SmsMessageAssembler.InboundMessage> messages = SmsMessageAssembler.assemble(decode(pdus));
+        assertEquals(2, messages.size());
+        assertEquals("+33780542575", messages.get(0).getSender());
+        assertEquals("where are you?", messages.get(0).getBody());
+        assertEquals("+33600000001", messages.get(1).getSender());
+        assertEquals("dinner at eight", messages.get(1).getBody());
+    }
+
+    @Test
+    public void unheaderedPartsKeepArrivalOrder() {
+        List<SmsPdu> parts = new ArrayList<>();
+        parts.add(SmsPdu.single("5554", "send "));
+        parts.add(SmsPdu.single("5554", "location"));
+        List<SmsMessageAssembler.InboundMessage> messages = SmsMessageAssembler.assemble(parts);
+        assertEquals("send location", messages.get(0).getBody());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedPdu() {
+        byte[] pdu = SmsPduFixtures.gsm7("+33780542575", "where are you");
+        byte[] truncated = new byte[pdu.length - 4];
+        System.arraycopy(pdu, 0, truncated, 0, truncated.length);
+        SmsPdu.decode(truncated);
+    }
+
+    @Test
+    public void rejectsAHeaderLongerThanTheUserData() {
+        // UCS-2 and 8-bit: TP-UDL 2, but a six-octet concatenation header
+        for (String dcs : new String[] {"08", "04"}) {
+            byte[] pdu = SmsPduFixtures.hex("00" + "44" + "0281" + "21" + "00" + dcs + "99309251619580"
+                    + "02" + "050003010201" + "0041004200430044004500460047");
+            try {
+                SmsPdu.decode(pdu);
+                fail(dcs);
+            } catch (IllegalArgumentException expected) {
+                // Not a StringIndexOutOfBoundsException out of the receiver
+            }
+        }
+        // GSM 7-bit: two septets can't hold it either
+        try {
+            SmsPdu.decode(SmsPduFixtures.hex("00" + "44" + "0281" + "21" + "00" + "00" + "99309251619580"
+                    + "02" + "050003010201" + "00000000"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static List<SmsPdu> decode(List<byte[]> pdus) {
+        List<SmsPdu> parts = new ArrayList<>();
+        for (byte[] pdu : pdus) {
+            parts.add(SmsPdu.decode(pdu));
+        }
+        return parts;
+    }
+}
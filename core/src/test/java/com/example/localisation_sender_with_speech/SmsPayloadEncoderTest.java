@@ -0,0 +1,122 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SmsPayloadEncoderTest {
+
+    private static final LocationFix FIX = new LocationFix(48.858370, 2.294481, 12.34f, 0);
+
+    private static String repeat(char c, int count) {
+        return String.join("", Collections.nCopies(count, String.valueOf(c)));
+    }
+
+    @Test
+    public void countsGsm7SegmentBoundaries() {
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 1, 160, repeat('a', 160));
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 2, 161, repeat('a', 161));
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 2, 306, repeat('a', 306));
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 3, 307, repeat('a', 307));
+        // Extension characters cost two septets
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 1, 160, repeat('€', 80));
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 2, 162, repeat('€', 81));
+    }
+
+    @Test
+    public void neverSplitsAnEscapePair() {
+        // 152 septets then an escape pair: the pair moves to the second part as a whole
+        String text = repeat('a', 152) + "€" + repeat('a', 152);
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 3, 306, text);
+        assertCount(SmsPayloadEncoder.Encoding.GSM7, 2, 306, repeat('a', 151) + "€" + repeat('a', 153));
+    }
+
+    @Test
+    public void countsUcs2SegmentBoundaries() {
+        assertCount(SmsPayloadEncoder.Encoding.UCS2, 1, 70, "é" + repeat('ж', 69));
+        assertCount(SmsPayloadEncoder.Encoding.UCS2, 2, 71, repeat('ж', 71));
+        assertCount(SmsPayloadEncoder.Encoding.UCS2, 2, 134, repeat('ж', 134));
+        assertCount(SmsPayloadEncoder.Encoding.UCS2, 3, 135, repeat('ж', 135));
+        // A surrogate pair straddling the 67-unit boundary moves to the next part
+        assertCount(SmsPayloadEncoder.Encoding.UCS2, 3, 134, repeat('ж', 66) + "📍" + repeat('ж', 66));
+    }
+
+    @Test
+    public void emojiReplyIsMultipartUcs2() {
+        String text = ResponseTemplate.AUTO_REPLY.render(FIX, 0, new StringBuilder()).toString();
+        SmsPayloadEncoder.Count count = SmsPayloadEncoder.count(text);
+        assertEquals(SmsPayloadEncoder.Encoding.UCS2, count.getEncoding());
+        assertEquals(3, count.getSegments());
+    }
+
+    @Test
+    public void picksCompactReplyForSingleSegmentBudget() {
+        ResponseRenderer renderer = new ResponseRenderer(SmsPayloadEncoderTest::noSplit);
+        ResponseRenderer.Rendered rendered = renderer.render(
+                SmsPayloadEncoder.autoReply(1, 5, true, false), FIX, 0);
+        assertEquals("My location: 48.85837,2.29448 (accuracy 12m)."
+                + " maps.google.com/?q=48.85837,2.29448 Auto-reply", rendered.getText());
+        assertEquals(SmsPayloadEncoder.Encoding.GSM7, rendered.getCount().getEncoding());
+        assertEquals(1, rendered.getCount().getSegments());
+    }
+
+    @Test
+    public void keepsRicherReplyWhenBudgetAllows() {
+        ResponseRenderer renderer = new ResponseRenderer(SmsPayloadEncoderTest::noSplit);
+        assertSame(ResponseTemplate.AUTO_REPLY_PLAIN,
+                renderer.render(SmsPayloadEncoder.autoReply(2, 5, true, false), FIX, 0).getTemplate());
+        assertSame(ResponseTemplate.AUTO_REPLY,
+                renderer.render(SmsPayloadEncoder.autoReply(3, 5, true, false), FIX, 0).getTemplate());
+    }
+
+    @Test
+    public void degradedCompactReplyKeepsAge() {
+        ResponseRenderer renderer = new ResponseRenderer(SmsPayloadEncoderTest::noSplit);
+        ResponseRenderer.Rendered rendered = renderer.render(
+                SmsPayloadEncoder.autoReply(1, 4, false, true), FIX, 14 * 60_000);
+        assertEquals("My location: 48.8584,2.2945 (accuracy 12m). Fix is 14 min old. Auto-reply",
+                rendered.getText());
+    }
+
+    @Test
+    public void fallsBackToFewestSegments() {
+        ResponseTemplate longer = ResponseTemplate.compile(repeat('a', 400));
+        ResponseTemplate shorter = ResponseTemplate.compile(repeat('a', 200));
+        SmsPayloadEncoder plan = new SmsPayloadEncoder(1, longer, shorter);
+        ResponseRenderer renderer = new ResponseRenderer(SmsPayloadEncoderTest::noSplit);
+        assertSame(shorter, renderer.render(plan, FIX, 0).getTemplate());
+    }
+
+    @Test
+    public void cachesPerPlanAndFix() {
+        ResponseRenderer renderer = new ResponseRenderer(SmsPayloadEncoderTest::noSplit);
+        ResponseRenderer.Rendered first = renderer.render(SmsPayloadEncoder.autoReply(1, 5, true, false), FIX, 0);
+        assertSame(first, renderer.render(SmsPayloadEncoder.autoReply(1, 5, true, false), FIX, 0));
+        assertNotSame(first, renderer.render(SmsPayloadEncoder.autoReply(2, 5, true, false), FIX, 0));
+    }
+
+    @Test
+    public void trimsCoordinatesToShortestForm() {
+        ResponseTemplate template = ResponseTemplate.compile("{lat:5},{lon:5}");
+        assertEquals("48.5,-2", template.render(new LocationFix(48.500001, -2.000001, 1, 0), 0,
+                new StringBuilder()).toString());
+        assertEquals("0,0", template.render(new LocationFix(-0.000001, 0, 1, 0), 0,
+                new StringBuilder()).toString());
+    }
+
+    private static void assertCount(SmsPayloadEncoder.Encoding encoding, int segments, int units, String text) {
+        SmsPayloadEncoder.Count count = SmsPayloadEncoder.count(text);
+        assertEquals(encoding, count.getEncoding());
+        assertEquals(segments, count.getSegments());
+        assertEquals(units, count.getCodeUnits());
+    }
+
+    private static ArrayList<String> noSplit(String text) {
+        ArrayList<String> parts = new ArrayList<>();
+        parts.add(text);
+        return parts;
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SmsResponderTest {
+
+    private static final String CONTACT = "+33612345678";
+    private static final String STRANGER = "+447700900123";
+
+    private static final SmsCodec CODEC = new SmsCodec() {
+        @Override
+        public ArrayList<String> divide(String text) {
+            return new ArrayList<>(Collections.singletonList(text));
+        }
+
+        @Override
+        public SmsPdu parseSingle(byte[] pdu, String format) {
+            return null;
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeSmsGateway gateway = new FakeSmsGateway();
+    private final FakeLocationSource location = new FakeLocationSource();
+    private final ResponderMetrics metrics = new ResponderMetrics();
+    private final List<String> notified = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> tracking = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean trackingAvailable = true;
+
+    private ScheduledExecutorService scheduler;
+    private OutboundJournal journal;
+    private AuditLog audit;
+    private LocationCache cache;
+    private SmsResponder responder;
+    private ResponderConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        journal = new OutboundJournal(new File(folder.getRoot(), "outbound.journal"));
+        audit = AuditLog.open(folder.newFolder("audit"), AuditLog.Config.DEFAULT, System::currentTimeMillis);
+        OutboundSmsQueue queue = new OutboundSmsQueue(gateway, journal, scheduler,
+                OutboundSmsQueue.RetryPolicy.DEFAULT, System::currentTimeMillis,
+                new OutboundMetrics(metrics, new FlightRecorder(64), audit));
+        queue.start();
+
+        cache = new LocationCache(LocationCache.Policy.DEFAULT);
+        LocationBroker broker = new LocationBroker(location, cache, 50f);
+        responder = new SmsResponder(SmsResponder.Limits.DEFAULT, new LocationResolver(cache, broker),
+                new ResponseRenderer(CODEC), CODEC, queue, metrics, new FlightRecorder(64), audit,
+                new SmsResponder.Tracking() {
+                    @Override
+                    public boolean start(String sender, long durationMillis) {
+                        tracking.add("start " + sender + (durationMillis > 0 ? " " + durationMillis : ""));
+                        return trackingAvailable;
+                    }
+
+                    @Override
+                    public void stop(String sender) {
+                        tracking.add("stop " + sender);
+                    }
+                }, notified::add);
+
+        config = new ResponderConfig(true, true, true,
+                FuzzyPhraseMatcher.compile(ResponderConfig.TRIGGER_PHRASES),
+                TriggerPhraseMatcher.compile(ResponderConfig.EMERGENCY_KEYWORDS),
+                AcquisitionPolicy.BALANCED,
+                SmsPayloadEncoder.autoReply(1, 5, true, false),
+                SmsPayloadEncoder.autoReply(1, 5, true, true),
+                AllowList.build(Collections.singletonList(CONTACT), new AddressNormalizer("33")), null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        responder.shutdown();
+        scheduler.shutdownNow();
+        journal.close();
+        audit.close();
+    }
+
+    @Test
+    public void triggerFromContactQueuesLocationReplyFromCache() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+
+        SmsResponder.Batch batch = prepare(SmsPduFixtures.gsm7(CONTACT, "Where are you?"));
+        assertNotNull(batch);
+        assertEquals(RequestPriority.TRUSTED, batch.getPriority());
+        submitAndWait(batch);
+
+        FakeSmsGateway.Send send = gateway.next();
+        assertEquals(CONTACT, send.destination);
+        assertTrue(send.parts.get(0), send.parts.get(0).contains("48.8584"));
+        assertEquals(Collections.singletonList(CONTACT), notified);
+        assertEquals(0, location.requests.get());
+        assertEquals(1, metrics.snapshot().counter(ResponderMetrics.Counter.REPLIES_QUEUED));
+    }
+
+    @Test
+    public void triggerSplitAcrossPartsIsAnsweredOnce() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+        List<byte[]> parts = SmsPduFixtures.concatenated(CONTACT, "SOS where are you, please reply", 14, 7,
+                false, false);
+
+        SmsResponder.Batch batch = prepare(parts.toArray());
+        assertNotNull(batch);
+        assertEquals(1, batch.getRequests().size());
+        assertEquals(RequestPriority.EMERGENCY, batch.getPriority());
+        submitAndWait(batch);
+
+        gateway.next();
+        assertEquals(1, metrics.snapshot().counter(ResponderMetrics.Counter.MATCHES));
+    }
+
+    @Test
+    public void freshFixIsRequestedWhenCacheIsEmpty() throws Exception {
+        SmsResponder.Batch batch = prepare(SmsPduFixtures.gsm7(CONTACT, "send location"));
+        CountDownLatch done = new CountDownLatch(1);
+        responder.submit(batch, done::countDown);
+
+        long until = System.currentTimeMillis() + 5000;
+        while (location.requests.get() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        location.deliver(new LocationFix(45.764, 4.8357, 10f, System.currentTimeMillis()));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(gateway.next().parts.get(0).contains("45.764"));
+    }
+
+    @Test
+    public void nothingToAnswerReturnsNull() {
+        assertNull(prepare(SmsPduFixtures.gsm7(CONTACT, "See you at dinner")));
+        assertNull(responder.prepare(config.withEnabled(false),
+                new Object[] {SmsPduFixtures.gsm7(CONTACT, "Where are you?")}, "3gpp", System.nanoTime()));
+        assertNull(responder.prepare(config.withPermissions(true, false),
+                new Object[] {SmsPduFixtures.gsm7(CONTACT, "Where are you?")}, "3gpp", System.nanoTime()));
+
+        ResponderMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.counter(ResponderMetrics.Counter.BROADCASTS));
+        assertEquals(1, snapshot.counter(ResponderMetrics.Counter.DISABLED));
+        assertEquals(0, snapshot.counter(ResponderMetrics.Counter.MATCHES));
+    }
+
+    @Test
+    public void senderNotOnAllowListGetsNoReply() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+
+        SmsResponder.Batch batch = prepare(SmsPduFixtures.gsm7(STRANGER, "Where are you?"));
+        assertEquals(RequestPriority.UNKNOWN, batch.getPriority());
+        submitAndWait(batch);
+
+        assertTrue(gateway.sends.isEmpty());
+        assertEquals(1, metrics.snapshot().counter(ResponderMetrics.Counter.NOT_ALLOWED));
+    }
+
+    @Test
+    public void auditTrailFollowsRequestToReply() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "Where are you?")));
+        submitAndWait(prepare(SmsPduFixtures.gsm7(STRANGER, "send location")));
+        assertTrue(audit.sync(5, TimeUnit.SECONDS));
+
+        List<AuditLog.Entry> contact = audit.page(CONTACT, AuditLog.NEWEST, 10).getEntries();
+        assertEquals(4, contact.size());
+        assertEquals(AuditLog.Type.QUEUED, contact.get(0).getType());
+        assertEquals(AuditLog.Type.FIX, contact.get(1).getType());
+        assertTrue(contact.get(1).getDetail(), contact.get(1).getDetail().startsWith("CACHED"));
+        assertEquals("ALLOW", contact.get(2).getDetail());
+        assertEquals(AuditLog.Type.REQUEST, contact.get(3).getType());
+
+        List<AuditLog.Entry> stranger = audit.page(STRANGER, AuditLog.NEWEST, 10).getEntries();
+        assertEquals(2, stranger.size());
+        assertEquals("NOT_ALLOWED", stranger.get(0).getDetail());
+    }
+
+    @Test
+    public void trackingCommandsFromContactGoToTheTracker() throws Exception {
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "Please start tracking, I'm worried")));
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "OK stop tracking")));
+
+        assertEquals(Arrays.asList("start " + CONTACT, "stop " + CONTACT), tracking);
+        // The tracker sends the updates, the responder doesn't reply itself
+        assertTrue(gateway.sends.isEmpty());
+        assertEquals(0, location.requests.get());
+    }
+
+    @Test
+    public void senderIsToldWhenTrackingCannotStart() throws Exception {
+        trackingAvailable = false;
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "start tracking")));
+
+        assertEquals("❌ Unable to share location: tracking is not available right now",
+                gateway.next().parts.get(0));
+        assertTrue(audit.sync(5, TimeUnit.SECONDS));
+        assertEquals("TRACKING_UNAVAILABLE", audit.page(CONTACT, AuditLog.NEWEST, 10).getEntries().get(1).getDetail());
+    }
+
+    @Test
+    public void strangersCannotControlTracking() throws Exception {
+        submitAndWait(prepare(SmsPduFixtures.gsm7(STRANGER, "start tracking")));
+        submitAndWait(prepare(SmsPduFixtures.gsm7(STRANGER, "stop tracking")));
+
+        assertTrue(tracking.isEmpty());
+        assertTrue(gateway.sends.isEmpty());
+        assertEquals(2, metrics.snapshot().counter(ResponderMetrics.Counter.NOT_ALLOWED));
+    }
+
+    @Test
+    public void commandsAreDispatchedByVerb() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "TRACK 2H")));
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "stop")));
+        assertEquals(Arrays.asList("start " + CONTACT + " " + TimeUnit.HOURS.toMillis(2), "stop " + CONTACT),
+                tracking);
+
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "status")));
+        String reply = gateway.next().parts.get(0);
+        assertTrue(reply, reply.startsWith("Status: auto-reply on, last fix "));
+        assertTrue(reply, reply.endsWith("(accuracy 8m), you can TRACK"));
+        assertEquals(3, metrics.snapshot().counter(ResponderMetrics.Counter.COMMANDS));
+    }
+
+    @Test
+    public void locationCommandCanAskForBetterAccuracy() throws Exception {
+        // Good enough for the configured policy, not for the command
+        cache.offer(new LocationFix(48.8584, 2.2945, 40f, System.currentTimeMillis()));
+        SmsResponder.Batch batch = prepare(SmsPduFixtures.gsm7(CONTACT, "LOC ACC<10"));
+        CountDownLatch done = new CountDownLatch(1);
+        responder.submit(batch, done::countDown);
+
+        long until = System.currentTimeMillis() + 5000;
+        while (location.requests.get() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        location.deliver(new LocationFix(45.764, 4.8357, 6f, System.currentTimeMillis()));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(gateway.next().parts.get(0).contains("45.764"));
+    }
+
+    @Test
+    public void rejectedCommandsGetNoReply() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+        config = config.withCommandPin("4821");
+
+        assertNull(prepare(SmsPduFixtures.gsm7(CONTACT, "LOC")));
+        assertNull(prepare(SmsPduFixtures.gsm7(CONTACT, "4821 LOC now")));
+        assertEquals(2, metrics.snapshot().counter(ResponderMetrics.Counter.COMMANDS_REJECTED));
+
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "4821 LOC")));
+        assertTrue(gateway.next().parts.get(0).contains("48.8584"));
+    }
+
+    @Test
+    public void phrasesNeedThePinTooExceptToStopTracking() {
+        config = config.withCommandPin("4821");
+
+        assertNull(prepare(SmsPduFixtures.gsm7(CONTACT, "Where are you?")));
+        assertNotNull(prepare(SmsPduFixtures.gsm7(CONTACT, "4821 where are you?")));
+        assertNotNull(prepare(SmsPduFixtures.gsm7(CONTACT, "stop tracking")));
+        assertEquals(1, metrics.snapshot().counter(ResponderMetrics.Counter.COMMANDS_REJECTED));
+    }
+
+    @Test
+    public void guessingThePinLocksTheSenderOut() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+        config = config.withCommandPin("4821");
+
+        for (int pin = 1000; pin < 1003; pin++) {
+            assertNull(prepare(SmsPduFixtures.gsm7(STRANGER, pin + " LOC")));
+        }
+        // The right guess is turned away like the wrong ones
+        assertNull(prepare(SmsPduFixtures.gsm7(STRANGER, "4821 LOC")));
+        assertNull(prepare(SmsPduFixtures.gsm7(STRANGER, "4821 where are you")));
+        assertNotNull(prepare(SmsPduFixtures.gsm7(CONTACT, "4821 LOC")));
+
+        assertTrue(audit.sync(5, TimeUnit.SECONDS));
+        List<AuditLog.Entry> stranger = audit.page(STRANGER, AuditLog.NEWEST, 10).getEntries();
+        assertEquals(5, stranger.size());
+        assertEquals("LOCKED_OUT", stranger.get(0).getDetail());
+        assertEquals("BAD_PIN", stranger.get(4).getDetail());
+        assertEquals(AuditLog.Type.DECISION, stranger.get(4).getType());
+    }
+
+    @Test
+    public void guessesCountAgainstTheSenderWhateverTheAddressFormat() {
+        config = config.withCommandPin("4821");
+
+        for (int pin = 1000; pin < 1003; pin++) {
+            assertNull(prepare(SmsPduFixtures.gsm7(pin % 2 == 0 ? "0612345678" : CONTACT, pin + " LOC")));
+        }
+        assertNull(prepare(SmsPduFixtures.gsm7(CONTACT, "4821 LOC")));
+        assertNull(prepare(SmsPduFixtures.gsm7("0612345678", "4821 LOC")));
+    }
+
+    @Test
+    public void repeatedRequestIsCoalesced() throws Exception {
+        cache.offer(new LocationFix(48.8584, 2.2945, 8f, System.currentTimeMillis()));
+
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "Where are you?")));
+        submitAndWait(prepare(SmsPduFixtures.gsm7(CONTACT, "where are you??")));
+
+        gateway.next();
+        assertTrue(gateway.sends.isEmpty());
+        assertEquals(1, metrics.snapshot().counter(ResponderMetrics.Counter.COALESCED));
+    }
+
+    @Test
+    public void locationErrorIsReportedToSender() throws Exception {
+        SmsResponder.Batch batch = prepare(SmsPduFixtures.gsm7(CONTACT, "share location"));
+        CountDownLatch done = new CountDownLatch(1);
+        responder.submit(batch, done::countDown);
+
+        long until = System.currentTimeMillis() + 5000;
+        while (location.requests.get() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        location.fail(new IllegalStateException("provider off"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        String reply = gateway.next().parts.get(0);
+        assertTrue(reply, reply.startsWith("❌ Unable to share location"));
+        assertTrue(notified.isEmpty());
+    }
+
+    @Test
+    public void concurrentRequestsShareTheFixUnderTheDefaultLimits() throws Exception {
+        ResponderConfig open = config.withAllowList(
+                AllowList.build(Collections.<String>emptyList(), new AddressNormalizer("33")));
+        SmsResponder.Batch first = responder.prepare(open,
+                new Object[] {SmsPduFixtures.gsm7(STRANGER, "Where are you?")}, "3gpp", System.nanoTime());
+        SmsResponder.Batch second = responder.prepare(open,
+                new Object[] {SmsPduFixtures.gsm7("+447700900456", "Where are you?")}, "3gpp", System.nanoTime());
+        assertEquals(RequestPriority.TRUSTED, first.getPriority());
+
+        CountDownLatch done = new CountDownLatch(2);
+        responder.submit(first, done::countDown);
+        long until = System.currentTimeMillis() + 5000;
+        while (location.requests.get() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        responder.submit(second, done::countDown);
+        Thread.sleep(200);
+        location.deliver(new LocationFix(45.764, 4.8357, 10f, System.currentTimeMillis()));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, location.requests.get());
+        assertEquals(2, gateway.sends.size());
+        assertEquals(0, metrics.snapshot().counter(ResponderMetrics.Counter.SHED));
+    }
+
+    private SmsResponder.Batch prepare(Object... pdus) {
+        return responder.prepare(config, pdus, "3gpp", System.nanoTime());
+    }
+
+    private void submitAndWait(SmsResponder.Batch batch) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        responder.submit(batch, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SmsResponsePipelineTest {
+
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger timedOut = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final SmsResponsePipeline.Listener listener = new SmsResponsePipeline.Listener() {
+        @Override
+        public void onShed(RequestPriority priority) {
+            rejected.incrementAndGet();
+        }
+
+        @Override
+        public void onDeadlineExceeded() {
+            timedOut.incrementAndGet();
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            failed.incrementAndGet();
+        }
+    };
+
+    private SmsResponsePipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) pipeline.shutdown();
+    }
+
+    @Test
+    public void completesOnceAfterJobRuns() throws Exception {
+        pipeline = new SmsResponsePipeline(1, 4, 1000, listener);
+        AtomicInteger finished = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        pipeline.submit(deadline -> assertFalse(deadline.isExpired()), () -> {
+            finished.incrementAndGet();
+            done.countDown();
+        });
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, finished.get());
+        assertEquals(0, timedOut.get());
+    }
+
+    @Test
+    public void completesAtDeadlineWhenJobOverruns() throws Exception {
+        pipeline = new SmsResponsePipeline(1, 4, 100, listener);
+        AtomicInteger finished = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch jobDone = new CountDownLatch(1);
+
+        pipeline.submit(deadline -> {
+            release.await();
+            jobDone.countDown();
+        }, finished::incrementAndGet);
+
+        Thread.sleep(300);
+        assertEquals(1, finished.get());
+        assertEquals(1, timedOut.get());
+
+        release.countDown();
+        assertTrue(jobDone.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, finished.get());
+    }
+
+    @Test
+    public void rejectsAndCompletesWhenQueueIsFull() throws Exception {
+        pipeline = new SmsResponsePipeline(1, 1, 1000, listener);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+
+        pipeline.submit(deadline -> release.await(), finished::incrementAndGet);
+        pipeline.submit(deadline -> { }, finished::incrementAndGet);
+        pipeline.submit(deadline -> { }, finished::incrementAndGet);
+
+        assertEquals(1, rejected.get());
+        assertEquals(1, finished.get());
+
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(3, finished.get());
+    }
+
+    @Test
+    public void servesHigherPriorityFirst() throws Exception {
+        pipeline = new SmsResponsePipeline(1, 8, 1000, listener);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        pipeline.submit(RequestPriority.UNKNOWN, deadline -> release.await(), done::countDown);
+        pipeline.submit(RequestPriority.UNKNOWN, deadline -> order.add("unknown"), done::countDown);
+        pipeline.submit(RequestPriority.TRUSTED, deadline -> order.add("trusted"), done::countDown);
+        pipeline.submit(RequestPriority.EMERGENCY, deadline -> order.add("emergency"), done::countDown);
+        release.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("emergency", "trusted", "unknown"), order);
+    }
+
+    @Test
+    public void displacesLowerPriorityWhenFull() throws Exception {
+        pipeline = new SmsResponsePipeline(1, 1, 1000, listener);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger unknownFinished = new AtomicInteger();
+        CountDownLatch trustedRan = new CountDownLatch(1);
+
+        pipeline.submit(RequestPriority.UNKNOWN, deadline -> release.await(), () -> { });
+        pipeline.submit(RequestPriority.UNKNOWN, deadline -> fail("displaced job ran"), unknownFinished::incrementAndGet);
+        pipeline.submit(RequestPriority.TRUSTED, deadline -> trustedRan.countDown(), () -> { });
+        assertEquals(1, unknownFinished.get());
+
+        // A full queue of higher-priority work sheds the newcomer instead
+        pipeline.submit(RequestPriority.UNKNOWN, deadline -> fail("shed job ran"), unknownFinished::incrementAndGet);
+        assertEquals(2, unknownFinished.get());
+        assertEquals(2, pipeline.shedCount(RequestPriority.UNKNOWN));
+        assertEquals(0, pipeline.shedCount(RequestPriority.TRUSTED));
+
+        release.countDown();
+        assertTrue(trustedRan.await(1, TimeUnit.SECONDS));
+        assertEquals(0, failed.get());
+    }
+
+    @Test
+    public void reportsFailuresAndStillCompletes() throws Exception {
+        pipeline = new SmsResponsePipeline(1, 4, 1000, listener);
+        CountDownLatch done = new CountDownLatch(1);
+
+        pipeline.submit(deadline -> {
+            throw new IllegalStateException("boom");
+        }, done::countDown);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(1, failed.get());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class StageLimiterTest {
+
+    private static Deadline in(long millis) {
+        return Deadline.after(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void unknownSendersOnlyGetUnreservedPermits() throws Exception {
+        StageLimiter stages = new StageLimiter(3, 2, 2, 1);
+        assertTrue(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.UNKNOWN, in(100)));
+        assertFalse(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.UNKNOWN, in(100)));
+        assertFalse(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.UNKNOWN_EMERGENCY, in(100)));
+        assertEquals(2, stages.shedCount(StageLimiter.Stage.LOCATION));
+
+        assertTrue(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.TRUSTED, in(100)));
+        assertTrue(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.EMERGENCY, in(100)));
+        assertEquals(3, stages.inFlight(StageLimiter.Stage.LOCATION));
+
+        // Stages are independent
+        assertTrue(stages.acquire(StageLimiter.Stage.SEND, RequestPriority.UNKNOWN, in(100)));
+    }
+
+    @Test
+    public void priorityRequestsWaitForAPermit() throws Exception {
+        StageLimiter stages = new StageLimiter(2, 1, 2, 1);
+        assertTrue(stages.acquire(StageLimiter.Stage.SEND, RequestPriority.TRUSTED, in(100)));
+        assertTrue(stages.acquire(StageLimiter.Stage.SEND, RequestPriority.TRUSTED, in(100)));
+
+        assertFalse(stages.acquire(StageLimiter.Stage.SEND, RequestPriority.TRUSTED, in(50)));
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                acquired.set(stages.acquire(StageLimiter.Stage.SEND, RequestPriority.EMERGENCY, in(2000)));
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        waiter.start();
+        Thread.sleep(50);
+        stages.release(StageLimiter.Stage.SEND);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(acquired.get());
+    }
+
+    @Test
+    public void unknownSendersWaitBrieflyForAnUnreservedPermit() throws Exception {
+        StageLimiter stages = new StageLimiter(2, 1, 2, 1);
+        assertTrue(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.UNKNOWN, in(5000)));
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            stages.release(StageLimiter.Stage.LOCATION);
+        });
+        releaser.start();
+        assertTrue(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.UNKNOWN, in(5000)));
+        releaser.join();
+
+        // But not until their deadline
+        long start = System.nanoTime();
+        assertFalse(stages.acquire(StageLimiter.Stage.LOCATION, RequestPriority.UNKNOWN, in(5000)));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waited + " ms", waited < 3000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFullyReservedStage() {
+        new StageLimiter(2, 2, 2, 1);
+    }
+}
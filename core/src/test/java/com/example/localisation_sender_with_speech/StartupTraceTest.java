@@ -0,0 +1,53 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+    private final StartupTrace trace = new StartupTrace(clock::get);
+
+    @Test
+    public void measuresPhasesFromProcessStart() {
+        trace.setProcessStart(clock.get() - TimeUnit.MILLISECONDS.toNanos(150));
+        assertTrue(trace.mark(StartupTrace.Phase.RECEIVER));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        trace.mark(StartupTrace.Phase.MATCHED);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        trace.mark(StartupTrace.Phase.REPLY_QUEUED);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(150), trace.sinceStartNanos(StartupTrace.Phase.RECEIVER));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), trace.sinceStartNanos(StartupTrace.Phase.REPLY_QUEUED));
+        assertEquals(-1, trace.sinceStartNanos(StartupTrace.Phase.CONFIG));
+        assertEquals("started by RECEIVER: RECEIVER +150.0 ms, MATCHED +190.0 ms, REPLY_QUEUED +200.0 ms",
+                trace.summary());
+    }
+
+    @Test
+    public void onlyTheFirstMarkCounts() {
+        assertTrue(trace.mark(StartupTrace.Phase.MATCHED));
+        long first = trace.sinceStartNanos(StartupTrace.Phase.MATCHED);
+        clock.addAndGet(1_000_000);
+        assertFalse(trace.mark(StartupTrace.Phase.MATCHED));
+        assertEquals(first, trace.sinceStartNanos(StartupTrace.Phase.MATCHED));
+    }
+
+    @Test
+    public void theFirstEntryPointSaysWhatStartedTheProcess() {
+        assertNull(trace.getEntryPoint());
+        trace.mark(StartupTrace.Phase.OTHER);
+        trace.mark(StartupTrace.Phase.RECEIVER);
+        assertEquals(StartupTrace.Phase.OTHER, trace.getEntryPoint());
+        assertFalse(trace.isReceiverStart());
+
+        trace.reset();
+        trace.mark(StartupTrace.Phase.RECEIVER);
+        trace.mark(StartupTrace.Phase.ACTIVITY);
+        assertTrue(trace.isReceiverStart());
+    }
+}
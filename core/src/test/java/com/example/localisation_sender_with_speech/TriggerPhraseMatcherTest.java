@@ -0,0 +1,98 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TriggerPhraseMatcherTest {
+
+    private static final String[] PHRASES = {
+        "give me your location",
+        "send location",
+        "where are you",
+        "share location",
+        "your location",
+        "location please",
+        "send me location"
+    };
+
+    @Test
+    public void findsPhraseCaseInsensitively() {
+        TriggerPhraseMatcher matcher = TriggerPhraseMatcher.compile(PHRASES);
+        int match = matcher.find("Hey, WHERE ARE YOU right now?");
+        assertEquals("where are you", matcher.phrase(match));
+    }
+
+    @Test
+    public void reportsNoMatch() {
+        TriggerPhraseMatcher matcher = TriggerPhraseMatcher.compile(PHRASES);
+        assertEquals(TriggerPhraseMatcher.NO_MATCH, matcher.find("see you at the station"));
+        assertEquals(TriggerPhraseMatcher.NO_MATCH, matcher.find(""));
+        assertEquals(TriggerPhraseMatcher.NO_MATCH, matcher.find((CharSequence) null));
+    }
+
+    @Test
+    public void followsFailureLinksAcrossOverlappingPhrases() {
+        TriggerPhraseMatcher matcher = TriggerPhraseMatcher.compile("abcd", "bce", "ce");
+        assertEquals("bce", matcher.phrase(matcher.find("xxabcexx")));
+        // "your location" is a suffix of "give me your location"; both end at the same char
+        TriggerPhraseMatcher triggers = TriggerPhraseMatcher.compile("your location", "give me your location");
+        assertEquals("give me your location", triggers.phrase(triggers.find("give me your location")));
+        assertEquals("your location", triggers.phrase(triggers.find("is that your location?")));
+    }
+
+    @Test
+    public void matchesNonAsciiPhrases() {
+        TriggerPhraseMatcher matcher = TriggerPhraseMatcher.compile("où es-tu", "ДЕ ТЫ");
+        assertEquals("où es-tu", matcher.phrase(matcher.find("Salut, OÙ ES-TU ?")));
+        assertEquals("ДЕ ТЫ", matcher.phrase(matcher.find("где ты? де ты")));
+    }
+
+    @Test
+    public void findsInCharArraySlice() {
+        TriggerPhraseMatcher matcher = TriggerPhraseMatcher.compile(PHRASES);
+        char[] text = "....send location....".toCharArray();
+        assertEquals("send location", matcher.phrase(matcher.find(text, 4, 13)));
+        assertEquals(TriggerPhraseMatcher.NO_MATCH, matcher.find(text, 4, 12));
+    }
+
+    @Test
+    public void agreesWithLinearScanOnRandomInput() {
+        Random random = new Random(42);
+        List<String> phrases = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            phrases.add(randomWord(random, 2 + random.nextInt(5)).toLowerCase(Locale.ROOT));
+        }
+        TriggerPhraseMatcher matcher = TriggerPhraseMatcher.compile(phrases);
+        for (int i = 0; i < 2000; i++) {
+            String text = randomWord(random, random.nextInt(40));
+            String lower = text.toLowerCase(Locale.ROOT);
+            boolean expected = false;
+            for (String phrase : phrases) {
+                if (lower.contains(phrase)) {
+                    expected = true;
+                    break;
+                }
+            }
+            int match = matcher.find(text);
+            assertEquals(text, expected, match != TriggerPhraseMatcher.NO_MATCH);
+            if (match != TriggerPhraseMatcher.NO_MATCH) {
+                assertTrue(lower.contains(matcher.phrase(match)));
+            }
+        }
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(4));
+            sb.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+        }
+        return sb.toString();
+    }
+}
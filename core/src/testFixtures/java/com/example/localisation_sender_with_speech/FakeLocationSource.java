@@ -0,0 +1,53 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Records requests and lets the test decide when (and whether) they complete. */
+final class FakeLocationSource implements LocationSource {
+
+    final List<Callback> pending = new ArrayList<>();
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger cancels = new AtomicInteger();
+    volatile float lastTarget;
+
+    @Override
+    public synchronized Request request(float accuracyTargetMeters, Callback callback) {
+        requests.incrementAndGet();
+        lastTarget = accuracyTargetMeters;
+        pending.add(callback);
+        return () -> {
+            cancels.incrementAndGet();
+            synchronized (FakeLocationSource.this) {
+                pending.remove(callback);
+            }
+        };
+    }
+
+    void candidate(LocationFix fix) {
+        for (Callback callback : snapshot(false)) {
+            callback.onCandidate(fix);
+        }
+    }
+
+    void deliver(LocationFix fix) {
+        for (Callback callback : snapshot(true)) {
+            callback.onFix(fix);
+        }
+    }
+
+    void fail(Exception e) {
+        for (Callback callback : snapshot(true)) {
+            callback.onError(e);
+        }
+    }
+
+    private synchronized List<Callback> snapshot(boolean clear) {
+        List<Callback> callbacks = new ArrayList<>(pending);
+        if (clear) {
+            pending.clear();
+        }
+        return callbacks;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** Records sends; the test reports the radio results back to the queue. */
+final class FakeSmsGateway implements SmsGateway {
+
+    static final class Send {
+        final long id;
+        final int attempt;
+        final String destination;
+        final List<String> parts;
+
+        Send(long id, int attempt, String destination, List<String> parts) {
+            this.id = id;
+            this.attempt = attempt;
+            this.destination = destination;
+            this.parts = new ArrayList<>(parts);
+        }
+    }
+
+    final BlockingQueue<Send> sends = new LinkedBlockingQueue<>();
+
+    @Override
+    public void send(long messageId, int attempt, String destination, List<String> parts) {
+        sends.add(new Send(messageId, attempt, destination, parts));
+    }
+
+    Send next() throws InterruptedException {
+        Send send = sends.poll(5, TimeUnit.SECONDS);
+        if (send == null) throw new AssertionError("No send");
+        return send;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds SMS-DELIVER PDUs in the same layout the radio hands to SmsMessage.createFromPdu,
+ * including the concatenation header used for long messages.
+ */
+final class SmsPduFixtures {
+
+    private static final byte[] SMSC = {0x07, (byte) 0x91, 0x33, 0x06, 0x09, 0x10, (byte) 0x93, (byte) 0xF0};
+    private static final byte[] TIMESTAMP = {0x52, 0x60, 0x51, 0x21, 0x43, 0x05, 0x08};
+
+    private SmsPduFixtures() {
+    }
+
+    static byte[] gsm7(String sender, String text) {
+        return deliver(sender, text, false, -1, 1, 1, false);
+    }
+
+    static byte[] ucs2(String sender, String text) {
+        return deliver(sender, text, true, -1, 1, 1, false);
+    }
+
+    /** Splits {@code text} into parts of at most {@code partLength} chars with a concat header. */
+    static List<byte[]> concatenated(String sender, String text, int partLength, int reference,
+                                     boolean ucs2, boolean reference16) {
+        List<byte[]> pdus = new ArrayList<>();
+        int total = (text.length() + partLength - 1) / partLength;
+        for (int i = 0; i < total; i++) {
+            String part = text.substring(i * partLength, Math.min(text.length(), (i + 1) * partLength));
+            pdus.add(deliver(sender, part, ucs2, reference, i + 1, total, reference16));
+        }
+        return pdus;
+    }
+
+    static byte[] deliver(String sender, String text, boolean ucs2, int reference, int sequence,
+                          int total, boolean reference16) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(SMSC, 0, SMSC.length);
+
+        boolean concatenated = reference >= 0;
+        out.write(concatenated ? 0x44 : 0x04);
+
+        boolean international = sender.startsWith("+");
+        String digits = international ? sender.substring(1) : sender;
+        out.write(digits.length());
+        out.write(international ? 0x91 : 0x81);
+        for (int i = 0; i < digits.length(); i += 2) {
+            int low = digits.charAt(i) - '0';
+            int high = i + 1 < digits.length() ? digits.charAt(i + 1) - '0' : 0x0F;
+            out.write((high << 4) | low);
+        }
+
+        out.write(0x00); // TP-PID
+        out.write(ucs2 ? 0x08 : 0x00);
+        out.write(TIMESTAMP, 0, TIMESTAMP.length);
+
+        byte[] header = new byte[0];
+        if (concatenated) {
+            header = reference16
+                    ? new byte[]{0x06, 0x08, 0x04, (byte) (reference >> 8), (byte) reference, (byte) total, (byte) sequence}
+                    : new byte[]{0x05, 0x00, 0x03, (byte) reference, (byte) total, (byte) sequence};
+        }
+
+        if (ucs2) {
+            byte[] body = text.getBytes(StandardCharsets.UTF_16BE);
+            out.write(header.length + body.length);
+            out.write(header, 0, header.length);
+            out.write(body, 0, body.length);
+        } else {
+            int headerSeptets = (header.length * 8 + 6) / 7;
+            List<Integer> septets = new ArrayList<>();
+            for (int i = 0; i < text.length(); i++) {
+                int code = Gsm7.encode(text.charAt(i));
+                if (code == Gsm7.UNENCODABLE) {
+                    throw new IllegalArgumentException("Not GSM-7: " + text.charAt(i));
+                }
+                if ((code & 0x80) != 0) {
+                    septets.add(Gsm7.ESCAPE);
+                }
+                septets.add(code & 0x7F);
+            }
+            int totalSeptets = headerSeptets + septets.size();
+            byte[] packed = new byte[(totalSeptets * 7 + 7) / 8];
+            System.arraycopy(header, 0, packed, 0, header.length);
+            for (int i = 0; i < septets.size(); i++) {
+                int bit = (headerSeptets + i) * 7;
+                int value = septets.get(i);
+                packed[bit >> 3] |= (byte) (value << (bit & 7));
+                if ((bit & 7) > 1) {
+                    packed[(bit >> 3) + 1] |= (byte) (value >> (8 - (bit & 7)));
+                }
+            }
+            out.write(totalSeptets);
+            out.write(packed, 0, packed.length);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.localisation_sender_with_speech;
+
+import java.util.Random;
+
+/**
+ * GPS tracks for geofence tests and benchmarks: a walk that turns gradually, at a steady
+ * speed, reported with Gaussian position noise of about the stated accuracy.
+ */
+final class SyntheticTrack {
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_000;
+
+    private SyntheticTrack() {
+    }
+
+    /**
+     * {@code count} fixes {@code intervalMillis} apart from {@code startMillis}, starting at the
+     * given point and heading, moving {@code speedMetersPerSecond}.
+     */
+    static LocationFix[] walk(Random random, double latitude, double longitude, double headingDegrees,
+                              double speedMetersPerSecond, float accuracyMeters, long startMillis,
+                              long intervalMillis, int count) {
+        LocationFix[] fixes = new LocationFix[count];
+        double heading = Math.toRadians(headingDegrees);
+        double step = speedMetersPerSecond * intervalMillis / 1000.0;
+        for (int i = 0; i < count; i++) {
+            double noiseNorth = random.nextGaussian() * accuracyMeters / 2;
+            double noiseEast = random.nextGaussian() * accuracyMeters / 2;
+            fixes[i] = new LocationFix(latitude + noiseNorth / METERS_PER_DEGREE,
+                    longitude + noiseEast / metersPerDegreeOfLongitude(latitude),
+                    accuracyMeters, startMillis + i * intervalMillis);
+            heading += random.nextGaussian() * 0.15;
+            latitude += step * Math.cos(heading) / METERS_PER_DEGREE;
+            longitude += step * Math.sin(heading) / metersPerDegreeOfLongitude(latitude);
+        }
+        return fixes;
+    }
+
+    /** A point {@code meters} from the given one, {@code bearingDegrees} clockwise from north. */
+    static double[] offset(double latitude, double longitude, double meters, double bearingDegrees) {
+        double bearing = Math.toRadians(bearingDegrees);
+        return new double[] {latitude + meters * Math.cos(bearing) / METERS_PER_DEGREE,
+                longitude + meters * Math.sin(bearing) / metersPerDegreeOfLongitude(latitude)};
+    }
+
+    private static double metersPerDegreeOfLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The labelled trigger corpus in trigger-corpus.tsv, shared by the accuracy test and the benchmark. */
+final class TriggerCorpus {
+
+    static final class Sample {
+        final boolean request;
+        final String body;
+
+        Sample(boolean request, String body) {
+            this.request = request;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return (request ? "1 " : "0 ") + body;
+        }
+    }
+
+    private static final List<Sample> SAMPLES = load();
+
+    private TriggerCorpus() {
+    }
+
+    static List<Sample> samples() {
+        return SAMPLES;
+    }
+
+    private static List<Sample> load() {
+        InputStream in = TriggerCorpus.class.getResourceAsStream("trigger-corpus.tsv");
+        if (in == null) {
+            throw new IllegalStateException("trigger-corpus.tsv not on the classpath");
+        }
+        List<Sample> samples = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int tab = line.indexOf('\t');
+                if (tab != 1 || (line.charAt(0) != '0' && line.charAt(0) != '1')) {
+                    throw new IllegalStateException("Malformed corpus line: " + line);
+                }
+                samples.add(new Sample(line.charAt(0) == '1', line.substring(tab + 1)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Collections.unmodifiableList(samples);
+    }
+}
@@ -21,4 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "localisation_sender_with_speech"
 include(":app")
+include(":core")
+include(":benchmark")
+include(":tools")
  
\ No newline at end of file
@@ -0,0 +1,32 @@
+// Build-time tools; nothing here ships in the app.
+// Offline place index from a GeoNames dump: ./gradlew :tools:placeIndex --args="cities1000.zip",
+// or -PplaceGazetteer=cities1000.zip on any app build to have it built first (see app/build.gradle.kts)
+plugins {
+    java
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":core"))
+    testImplementation(libs.junit)
+}
+
+tasks.register<JavaExec>("placeIndex") {
+    group = "build"
+    description = "Builds the app's offline place index (app/src/main/assets/places.idx) from a GeoNames dump."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.localisation_sender_with_speech.PlaceIndexTool")
+    // Relative paths in --args are taken from the repository root
+    workingDir = rootDir
+    val gazetteer = providers.gradleProperty("placeGazetteer")
+    if (gazetteer.isPresent) {
+        args(gazetteer.get())
+        // Up to date until the dump or the generator changes
+        inputs.file(rootDir.resolve(gazetteer.get()))
+        outputs.file(rootDir.resolve("app/src/main/assets/places.idx"))
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.localisation_sender_with_speech;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Builds the app's offline {@link PlaceIndex} from a GeoNames dump
+ * (https://download.geonames.org/export/dump/, CC BY 4.0), e.g. cities1000.zip, which holds
+ * every populated place of 1000 people or more.
+ *
+ * <pre>
+ * ./gradlew :tools:placeIndex --args="cities1000.zip"
+ * ./gradlew :tools:placeIndex --args="cities500.txt --min-population 2000 --cell 0.5 --output places.idx"
+ * </pre>
+ *
+ * Only populated places (feature class P) are kept, less the sections of other places,
+ * historical, abandoned and destroyed ones. A name that needs more than the GSM-7 alphabet
+ * is replaced by its ASCII form, so that naming a place doesn't turn a one-part reply into a
+ * three-part UCS-2 one.
+ */
+public final class PlaceIndexTool {
+
+    static final String DEFAULT_OUTPUT = "app/src/main/assets/places.idx";
+
+    // Sections of populated places, historical, abandoned and destroyed ones
+    private static final Set<String> EXCLUDED_CODES = new HashSet<>(Arrays.asList("PPLX", "PPLH", "PPLQ", "PPLW"));
+
+    // GeoNames columns
+    private static final int NAME = 1;
+    private static final int ASCII_NAME = 2;
+    private static final int LATITUDE = 4;
+    private static final int LONGITUDE = 5;
+    private static final int FEATURE_CLASS = 6;
+    private static final int FEATURE_CODE = 7;
+    private static final int POPULATION = 14;
+    private static final int COLUMNS = 15;
+
+    static final class Options {
+        File input;
+        File output = new File(DEFAULT_OUTPUT);
+        long minPopulation;
+        double cellDegrees = 1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String flag = args[i];
+                if (!flag.startsWith("--")) {
+                    if (options.input != null) {
+                        throw new IllegalArgumentException("More than one input: " + flag);
+                    }
+                    options.input = new File(flag);
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + flag);
+                }
+                String value = args[++i];
+                switch (flag) {
+                    case "--output":
+                        options.output = new File(value);
+                        break;
+                    case "--min-population":
+                        options.minPopulation = Long.parseLong(value);
+                        break;
+                    case "--cell":
+                        options.cellDegrees = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + flag);
+                }
+            }
+            if (options.input == null) {
+                throw new IllegalArgumentException("No GeoNames dump given");
+            }
+            return options;
+        }
+    }
+
+    /** What {@link #read} kept and why it dropped the rest. */
+    static final class Stats {
+        int kept;
+        int filtered;
+        int malformed;
+        int asciiNames;
+    }
+
+    private static final String USAGE = "Usage: PlaceIndexTool <dump.txt | dump.zip> [--output file]"
+            + " [--min-population n] [--cell degrees]";
+
+    private PlaceIndexTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options;
+        PlaceIndex.Writer writer;
+        try {
+            options = Options.parse(args);
+            writer = new PlaceIndex.Writer(options.cellDegrees);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Stats stats;
+        try (InputStream in = open(options.input)) {
+            stats = read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), options, writer);
+        }
+        File parent = options.output.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        writer.writeTo(options.output);
+
+        // Check that what was written maps back
+        PlaceIndex index = PlaceIndex.open(options.output);
+        System.out.printf("Wrote %d places to %s (%d KB): %d filtered out, %d malformed lines, %d ASCII names%n",
+                index.size(), options.output, options.output.length() / 1024, stats.filtered, stats.malformed,
+                stats.asciiNames);
+    }
+
+    /** Reads a GeoNames dump, plain or zipped. */
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (!file.getName().endsWith(".zip")) {
+            return in;
+        }
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            // The dump is the .txt entry; skip any readme
+            if (!entry.isDirectory() && entry.getName().endsWith(".txt") && !entry.getName().startsWith("readme")) {
+                return zip;
+            }
+        }
+        zip.close();
+        throw new IOException("No dump in " + file);
+    }
+
+    /** Adds the places of a tab-separated GeoNames dump to {@code writer}. */
+    static Stats read(BufferedReader in, Options options, PlaceIndex.Writer writer) throws IOException {
+        Stats stats = new Stats();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] columns = line.split("\t", -1);
+            if (columns.length < COLUMNS) {
+                stats.malformed++;
+                continue;
+            }
+            if (!"P".equals(columns[FEATURE_CLASS]) || EXCLUDED_CODES.contains(columns[FEATURE_CODE])) {
+                stats.filtered++;
+                continue;
+            }
+            try {
+                long population = columns[POPULATION].isEmpty() ? 0 : Long.parseLong(columns[POPULATION]);
+                if (population < options.minPopulation) {
+                    stats.filtered++;
+                    continue;
+                }
+                String name = columns[NAME];
+                if (!isGsm7(name) && !columns[ASCII_NAME].isEmpty()) {
+                    name = columns[ASCII_NAME];
+                    stats.asciiNames++;
+                }
+                writer.add(name, Double.parseDouble(columns[LATITUDE]), Double.parseDouble(columns[LONGITUDE]));
+                stats.kept++;
+            } catch (IllegalArgumentException e) {
+                // Bad numbers, coordinates out of range or an unusable name
+                stats.malformed++;
+            }
+        }
+        return stats;
+    }
+
+    private static boolean isGsm7(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Gsm7.septets(text.charAt(i)) == 0) return false;
+        }
+        return true;
+    }
+}
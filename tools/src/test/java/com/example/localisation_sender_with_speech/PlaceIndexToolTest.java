@@ -0,0 +1,74 @@
+package com.example.localisation_sender_with_speech;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class PlaceIndexToolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Shortened GeoNames lines: id, name, ascii name, alternate names, lat, lon, class, code,
+    // country, cc2, admin1-4, population, elevation, dem, timezone, modified
+    private static final String DUMP = String.join("\n",
+            "2988507\tParis\tParis\t\t48.85341\t2.3488\tP\tPPLC\tFR\t\t11\t75\t751\t75056\t2138551\t\t42\tEurope/Paris\t2024-01-01",
+            "2996944\tLyon\tLyon\t\t45.74846\t4.84671\tP\tPPLA\tFR\t\t84\t69\t691\t69123\t522969\t\t171\tEurope/Paris\t2024-01-01",
+            "3094802\tKraków\tKrakow\t\t50.06143\t19.93658\tP\tPPLA\tPL\t\t72\t1261\t126101\t\t804237\t\t219\tEurope/Warsaw\t2024-01-01",
+            "2657896\tZürich\tZurich\t\t47.36667\t8.55\tP\tPPLA\tCH\t\tZH\t112\t261\t\t341730\t\t\t415\tEurope/Zurich\t2024-01-01",
+            "6545270\tPalais-Royal\tPalais-Royal\t\t48.86466\t2.33612\tP\tPPLX\tFR\t\t11\t75\t751\t75101\t3195\t\t\t36\tEurope/Paris\t2024-01-01",
+            "2973783\tStrasbourg\tStrasbourg\t\t48.58392\t7.74553\tP\tPPLA\tFR\t\t44\t67\t674\t67482\t274845\t\t\t144\tEurope/Paris",
+            "3017382\tFrance\tFrance\t\t46\t2\tA\tPCLI\tFR\t\t00\t\t\t\t66987244\t\t\t543\tEurope/Paris\t2024-01-01",
+            "1000000\tHamlet\tHamlet\t\t46.1\t2.1\tP\tPPL\tFR\t\t\t\t\t\t120\t\t\t300\tEurope/Paris\t2024-01-01",
+            "broken line");
+
+    private static PlaceIndexTool.Stats read(PlaceIndexTool.Options options, PlaceIndex.Writer writer) throws Exception {
+        return PlaceIndexTool.read(new BufferedReader(new StringReader(DUMP)), options, writer);
+    }
+
+    @Test
+    public void keepsPopulatedPlacesWithGsm7Names() throws Exception {
+        PlaceIndexTool.Options options = PlaceIndexTool.Options.parse(new String[] {"cities.txt", "--min-population", "1000"});
+        PlaceIndex.Writer writer = new PlaceIndex.Writer(options.cellDegrees);
+
+        PlaceIndexTool.Stats stats = read(options, writer);
+
+        assertEquals(5, stats.kept);
+        // The section of Paris, the country and the hamlet
+        assertEquals(3, stats.filtered);
+        assertEquals(1, stats.malformed);
+        assertEquals(1, stats.asciiNames);
+
+        File file = folder.newFile("places.idx");
+        writer.writeTo(file);
+        PlaceIndex index = PlaceIndex.open(file);
+        assertEquals(5, index.size());
+        assertEquals("Paris", index.nearest(48.8647, 2.3361).getName());
+        assertEquals("Krakow", index.nearest(50.06, 19.94).getName());
+        // ü is in the GSM-7 alphabet
+        assertEquals("Zürich", index.nearest(47.37, 8.54).getName());
+    }
+
+    @Test
+    public void parsesOptions() {
+        PlaceIndexTool.Options options = PlaceIndexTool.Options.parse(new String[] {"cities1000.zip"});
+        assertEquals("cities1000.zip", options.input.getName());
+        assertEquals(new File(PlaceIndexTool.DEFAULT_OUTPUT), options.output);
+        assertEquals(1, options.cellDegrees, 0);
+
+        options = PlaceIndexTool.Options.parse(new String[] {"--cell", "0.25", "dump.txt", "--output", "out.idx"});
+        assertEquals(0.25, options.cellDegrees, 0);
+        assertEquals("out.idx", options.output.getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresADump() {
+        PlaceIndexTool.Options.parse(new String[] {"--cell", "1"});
+    }
+}